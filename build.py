@@ -195,6 +195,7 @@ CTX.INPUT['executors'] = """
  deleteexecutor.cpp
  distinctexecutor.cpp
  executorutil.cpp
+ hashjoinexecutor.cpp
  indexscanexecutor.cpp
  insertexecutor.cpp
  limitexecutor.cpp
@@ -224,6 +225,7 @@ CTX.INPUT['plannodes'] = """
  aggregatenode.cpp
  deletenode.cpp
  distinctnode.cpp
+ hashjoinnode.cpp
  indexscannode.cpp
  insertnode.cpp
  limitnode.cpp
@@ -321,6 +323,8 @@ CTX.TESTS['expressions'] = """
 """
 
 CTX.TESTS['indexes'] = """
+ bplustree_test
+ open_hash_table_test
  index_key_test
  index_scripted_test
  index_test
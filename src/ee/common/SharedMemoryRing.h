@@ -0,0 +1,200 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef SHAREDMEMORYRING_H_
+#define SHAREDMEMORYRING_H_
+
+#include <cassert>
+#include <cstring>
+#include <stdint.h>
+#include <sched.h>
+#include <unistd.h>
+#include <sys/types.h>
+
+namespace voltdb {
+
+/*
+ * Single-producer/single-consumer byte ring in a memory-mapped file that is
+ * shared with ExecutionEngineIPC. The layout must match
+ * org.voltdb.jni.SharedMemoryRing. All header fields are in host byte order
+ * and are on separate cache lines.
+ *
+ * Each side spins on the counters first. If nothing shows up, it sets its
+ * waiting flag and blocks reading a single "doorbell" byte from the control
+ * socket. The other side only writes a doorbell byte when it sees that flag.
+ * If the socket is closed while we are blocked, read() returns 0.
+ */
+class SharedMemoryRing {
+  public:
+    static const size_t HEAD_OFFSET = 0;
+    static const size_t TAIL_OFFSET = 64;
+    static const size_t READER_WAITING_OFFSET = 128;
+    static const size_t WRITER_WAITING_OFFSET = 192;
+    static const size_t HEADER_SIZE = 256;
+
+    static const int SPIN_LIMIT = 20000;
+    static const int YIELD_LIMIT = 100;
+
+    SharedMemoryRing(char *base, size_t capacity, int doorbell) :
+        m_head(reinterpret_cast<volatile int64_t*>(base + HEAD_OFFSET)),
+        m_tail(reinterpret_cast<volatile int64_t*>(base + TAIL_OFFSET)),
+        m_readerWaiting(reinterpret_cast<volatile int32_t*>(base + READER_WAITING_OFFSET)),
+        m_writerWaiting(reinterpret_cast<volatile int32_t*>(base + WRITER_WAITING_OFFSET)),
+        m_data(base + HEADER_SIZE),
+        m_capacity(static_cast<int64_t>(capacity)),
+        m_mask(static_cast<int64_t>(capacity) - 1),
+        m_doorbell(doorbell)
+    {
+        assert((capacity & (capacity - 1)) == 0);
+    }
+
+    /*
+     * Blocking write of all of the given bytes. Returns the number of bytes
+     * written or -1 if the other side went away.
+     */
+    ssize_t write(const void *src, size_t length) {
+        const char *pos = static_cast<const char*>(src);
+        size_t remaining = length;
+        int64_t head = *m_head;
+        while (remaining > 0) {
+            int64_t free = m_capacity - (head - *m_tail);
+            if (free == 0) {
+                if (!awaitSpace(head)) return -1;
+                continue;
+            }
+            int64_t index = head & m_mask;
+            int64_t chunk = min(min(free, static_cast<int64_t>(remaining)), m_capacity - index);
+            ::memcpy(m_data + index, pos, static_cast<size_t>(chunk));
+            pos += chunk;
+            remaining -= static_cast<size_t>(chunk);
+
+            // Publish the new bytes before we look at the reader's flag
+            head += chunk;
+            __sync_synchronize();
+            *m_head = head;
+            __sync_synchronize();
+            if (*m_readerWaiting != 0 && !ring()) return -1;
+        }
+        return static_cast<ssize_t>(length);
+    }
+
+    /*
+     * Blocking read of exactly the given number of bytes. Returns the number
+     * of bytes read or 0 if the other side went away.
+     */
+    ssize_t read(void *dst, size_t length) {
+        char *pos = static_cast<char*>(dst);
+        size_t remaining = length;
+        int64_t tail = *m_tail;
+        while (remaining > 0) {
+            int64_t available = *m_head - tail;
+            if (available == 0) {
+                if (!awaitData(tail)) return 0;
+                continue;
+            }
+            __sync_synchronize();
+            int64_t index = tail & m_mask;
+            int64_t chunk = min(min(available, static_cast<int64_t>(remaining)), m_capacity - index);
+            ::memcpy(pos, m_data + index, static_cast<size_t>(chunk));
+            pos += chunk;
+            remaining -= static_cast<size_t>(chunk);
+
+            tail += chunk;
+            __sync_synchronize();
+            *m_tail = tail;
+            __sync_synchronize();
+            if (*m_writerWaiting != 0 && !ring()) return 0;
+        }
+        return static_cast<ssize_t>(length);
+    }
+
+  private:
+    static int64_t min(int64_t a, int64_t b) {
+        return (a < b ? a : b);
+    }
+
+    bool hasData(int64_t tail) const {
+        return (*m_head != tail);
+    }
+
+    bool hasSpace(int64_t head) const {
+        return (head - *m_tail < m_capacity);
+    }
+
+    bool awaitData(int64_t tail) {
+        for (int i = 0; i < SPIN_LIMIT; i++) {
+            if (hasData(tail)) return true;
+        }
+        for (int i = 0; i < YIELD_LIMIT; i++) {
+            sched_yield();
+            if (hasData(tail)) return true;
+        }
+        bool alive = true;
+        while (alive) {
+            *m_readerWaiting = 1;
+            __sync_synchronize();
+            if (hasData(tail)) break;
+            alive = sleep();
+        }
+        *m_readerWaiting = 0;
+        return alive;
+    }
+
+    bool awaitSpace(int64_t head) {
+        for (int i = 0; i < SPIN_LIMIT; i++) {
+            if (hasSpace(head)) return true;
+        }
+        for (int i = 0; i < YIELD_LIMIT; i++) {
+            sched_yield();
+            if (hasSpace(head)) return true;
+        }
+        bool alive = true;
+        while (alive) {
+            *m_writerWaiting = 1;
+            __sync_synchronize();
+            if (hasSpace(head)) break;
+            alive = sleep();
+        }
+        *m_writerWaiting = 0;
+        return alive;
+    }
+
+    /* Wake up the other process */
+    bool ring() {
+        const char b = 1;
+        return (::write(m_doorbell, &b, 1) == 1);
+    }
+
+    /* Block until the other process rings the doorbell. Wake ups may be spurious. */
+    bool sleep() {
+        char b;
+        return (::read(m_doorbell, &b, 1) == 1);
+    }
+
+    volatile int64_t *m_head;
+    volatile int64_t *m_tail;
+    volatile int32_t *m_readerWaiting;
+    volatile int32_t *m_writerWaiting;
+    char *m_data;
+    const int64_t m_capacity;
+    const int64_t m_mask;
+    const int m_doorbell;
+};
+
+}
+
+#endif /* SHAREDMEMORYRING_H_ */
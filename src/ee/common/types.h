@@ -162,6 +162,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -282,6 +283,7 @@ enum TableIndexType {
     BALANCED_TREE_INDEX     = 1,
     HASH_TABLE_INDEX        = 2,
     ARRAY_INDEX             = 3,
+    BTREE_INDEX             = 4,
 };
 
 // ------------------------------------------------------------------
@@ -307,6 +309,22 @@ enum StatisticsSelectorType {
     STATISTICS_SELECTOR_TYPE_TABLE
 };
 
+// ------------------------------------------------------------------
+// Copy On Write Modes (must match ExecutionEngine.java)
+// ------------------------------------------------------------------
+enum CopyOnWriteMode {
+    // Every tuple in the table
+    COW_MODE_FULL = 0,
+    // Every tuple in the table, but each chunk only holds the tuples from one
+    // tuple block and ends with the index of that block. This is the base of
+    // a chain of delta snapshots.
+    COW_MODE_FULL_BLOCKS = 1,
+    // Same as COW_MODE_FULL_BLOCKS except that only the tuple blocks that were
+    // modified since the last COW_MODE_FULL_BLOCKS or COW_MODE_DELTA snapshot
+    // are serialized
+    COW_MODE_DELTA = 2
+};
+
 // ------------------------------------------------------------------
 // Utility functions.
 // -----------------------------------------------------------------
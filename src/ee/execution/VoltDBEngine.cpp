@@ -607,7 +607,9 @@ bool VoltDBEngine::loadTable(bool allowELT, int32_t tableId,
     }
 
     try {
+        MaterializedViewBatch viewBatch(table);
         table->loadTuplesFrom(allowELT, serializeIn);
+        viewBatch.flush();
     } catch (SerializableEEException e) {
         throwFatalException("%s", e.message().c_str());
     }
@@ -1236,14 +1238,14 @@ int64_t VoltDBEngine::uniqueIdForFragment(catalog::PlanFragment *frag) {
 /**
  * Activate copy on write mode for the specified table
  */
-bool VoltDBEngine::activateCopyOnWrite(const CatalogId tableId) {
+bool VoltDBEngine::activateCopyOnWrite(const CatalogId tableId, CopyOnWriteMode mode) {
     PersistentTable *table = dynamic_cast<PersistentTable*>(m_tables[tableId]);
     assert(table != NULL);
     if (table == NULL) {
         return false;
     }
 
-    if (table->activateCopyOnWrite(&m_tupleSerializer, m_partitionId)) {
+    if (table->activateCopyOnWrite(&m_tupleSerializer, m_partitionId, mode)) {
         return false;
     }
 
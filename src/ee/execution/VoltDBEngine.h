@@ -292,7 +292,14 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         }
 
         inline void setUndoToken(int64_t nextUndoToken) {
-            if (nextUndoToken == INT64_MAX) { return; }
+            // Undo logging is disabled for this work, so anything that it does is released
+            // right away. We can't reuse the last quantum because it may already be released
+            if (nextUndoToken == INT64_MAX) {
+                if (m_currentUndoQuantum == NULL || m_currentUndoQuantum->isDummy() == false) {
+                    m_currentUndoQuantum = new DummyUndoQuantum();
+                }
+                return;
+            }
             if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->isDummy()) {
                 //std::cout << "Deleting dummy undo quantum " << std::endl;
                 delete m_currentUndoQuantum;
@@ -309,6 +316,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         inline void releaseUndoToken(int64_t undoToken) {
             if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->isDummy()) {
+                // The quanta for earlier work may still be waiting to be released
+                if (undoToken != INT64_MAX) m_undoLog.release(undoToken);
                 return;
             }
             if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->getUndoToken() == undoToken) {
@@ -340,7 +349,7 @@ class __attribute__((visibility("default"))) VoltDBEngine {
          * Activate copy on write mode for the specified table.
          * Returns true on success and false on failure
          */
-        bool activateCopyOnWrite(const CatalogId tableId);
+        bool activateCopyOnWrite(const CatalogId tableId, CopyOnWriteMode mode = COW_MODE_FULL);
 
         /**
          * Serialize more tuples from the specified table that is in COW mode.
@@ -53,6 +53,7 @@
 
 #include "common/Pool.hpp"
 #include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "common/common.h"
 #include "common/common.h"
 #include "common/debuglog.h"
@@ -153,13 +154,13 @@ public:
             return;
         }
         if (m_weighted) {
-            NValue weighted_val = val.op_multiply(delta);
+            // val is the partial sum of delta values from another partition
             if (m_count == 0) {
-                m_value = weighted_val;
+                m_value = val;
             } else {
-                m_value = m_value.op_add(weighted_val);
+                m_value = m_value.op_add(val);
             }
-            m_count += delta.getInteger();
+            m_count += ValuePeeker::peekAsBigInt(delta);
         } else {
             if (m_count == 0) {
                 m_value = val;
@@ -530,7 +531,24 @@ public:
                          (memoryPool->
                           allocate(groupByKeySchema->tupleLength())));
         m_numAggColumns = static_cast<int>(m_colTypes->size());
-        m_lastColumnIndex = m_inputTable->columnCount()-1;
+
+        // Each weighted average has a column with the count of values that
+        // went into its partial sum. These are the last columns of the
+        // input, in the same order as the averages.
+        int numWeighted = 0;
+        for (int i = 0; i < m_aggTypes->size(); i++) {
+            if ((*m_aggTypes)[i] == EXPRESSION_TYPE_AGGREGATE_WEIGHTED_AVG) {
+                numWeighted++;
+            }
+        }
+        int weightColumn = m_inputTable->columnCount() - numWeighted;
+        for (int i = 0; i < m_aggTypes->size(); i++) {
+            if ((*m_aggTypes)[i] == EXPRESSION_TYPE_AGGREGATE_WEIGHTED_AVG) {
+                m_weightColumns.push_back(weightColumn++);
+            } else {
+                m_weightColumns.push_back(-1);
+            }
+        }
     }
 
     inline bool nextTuple(TableTuple nextTuple, TableTuple)
@@ -585,8 +603,8 @@ public:
             // other aggregates because we need to get the column that has the count
             // and pass that to our special DistributedAvgAgg
             if ((*m_aggTypes)[i] == EXPRESSION_TYPE_AGGREGATE_WEIGHTED_AVG) {
-                // We also need the last column, which is our count
-                NValue weightColumn = nextTuple.getNValue(m_lastColumnIndex);
+                // We also need the column that has our count
+                NValue weightColumn = nextTuple.getNValue(m_weightColumns[i]);
                 ((AvgAgg*)aggregateList->m_aggregates[i])->advance(targetColumn, weightColumn);
             } else {
                 aggregateList->m_aggregates[i]->advance(targetColumn);
@@ -649,7 +667,7 @@ private:
     std::vector<ValueType>* m_colTypes;
     HashAggregateMapType m_aggregates;
     int m_numAggColumns;
-    int m_lastColumnIndex;
+    std::vector<int> m_weightColumns;
     TableTuple groupByKeyTuple;
 };
 
@@ -104,6 +104,7 @@ bool DeleteExecutor::p_execute(const NValueArray &params) {
 
     assert(m_inputTuple.sizeInValues() == m_inputTable->columnCount());
     assert(m_targetTuple.sizeInValues() == m_targetTable->columnCount());
+    MaterializedViewBatch viewBatch(m_targetTable, m_inputTable->activeTupleCount() > 1);
     TableIterator inputIterator(m_inputTable);
     while (inputIterator.next(m_inputTuple)) {
         //
@@ -123,6 +124,7 @@ bool DeleteExecutor::p_execute(const NValueArray &params) {
             return false;
         }
     }
+    viewBatch.flush();
 
     // add to the planfragments count of modified tuples
     m_engine->m_tuplesModified += m_inputTable->activeTupleCount();
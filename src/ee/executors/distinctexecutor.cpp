@@ -49,12 +49,12 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "plannodes/distinctnode.h"
+#include "plannodes/limitnode.h"
 #include "storage/table.h"
 #include "storage/temptable.h"
 #include "storage/tableiterator.h"
 #include "storage/tablefactory.h"
 
-#include <set>
 #include <cassert>
 
 namespace voltdb {
@@ -90,6 +90,9 @@ bool DistinctExecutor::p_init(AbstractPlanNode*, const catalog::Database* catalo
         assert(node->getDistinctColumn() >= 0);
         this->distinct_column = node->getDistinctColumn();
         this->distinct_column_type = node->getInputTables()[0]->schema()->columnType(this->distinct_column);
+
+        // pickup an inlined limit, if one exists
+        this->limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
     }
     return (true);
 }
@@ -102,19 +105,28 @@ bool DistinctExecutor::p_execute(const NValueArray &params) {
     Table* input_table = node->getInputTables()[0];
     assert(input_table);
 
-    TableIterator iterator = input_table->tableIterator();
-    TableTuple tuple(input_table->schema());
     //
-    // HACK: Use BIGINT for now...
+    // OPTIMIZATION: NESTED LIMIT
+    // We can stop scanning as soon as we have found enough unique values
     //
-    std::set<NValue, NValue::ltNValue> found_values;
-    while (iterator.next(tuple)) {
+    int limit = -1;
+    int offset = 0;
+    if (this->limit_node != NULL) {
+        this->limit_node->getLimitAndOffsetByReference(params, limit, offset);
+        if (offset < 0) offset = 0;
+    }
+
+    TableIterator iterator = input_table->tableIterator();
+    TableTuple tuple(input_table->schema());
+    int tuple_ctr = 0;
+    this->found_values.clear();
+    while ((limit < 0 || tuple_ctr < limit + offset) && iterator.next(tuple)) {
         //
-        // Check whether this value already exists in our list
+        // Check whether this value already exists in our set
         //
         NValue tuple_value = tuple.getNValue(this->distinct_column);
-        if (found_values.find(tuple_value) == found_values.end()) {
-            found_values.insert(tuple_value);
+        if (this->found_values.insert(tuple_value).second) {
+            if (tuple_ctr++ < offset) continue;
             if (!output_table->insertTuple(tuple)) {
                 VOLT_ERROR("Failed to insert tuple from input table '%s' into"
                            " output table '%s'",
@@ -124,6 +136,7 @@ bool DistinctExecutor::p_execute(const NValueArray &params) {
             }
         } // IF unique
     }
+    this->found_values.clear();
 
     return true;
 }
@@ -51,10 +51,14 @@
 #include "executors/abstractexecutor.h"
 #include "plannodes/distinctnode.h"
 
+#include "boost/unordered_set.hpp"
+#include "boost/pool/pool_alloc.hpp"
+
 namespace voltdb {
 
 class UndoLog;
 class ReadWriteSet;
+class LimitPlanNode;
 
 /**
  *
@@ -64,6 +68,7 @@ class DistinctExecutor : public AbstractExecutor {
         DistinctExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) : AbstractExecutor(engine, abstract_node) {
             this->distinct_column = -1;
             this->distinct_column_type = VALUE_TYPE_INVALID;
+            this->limit_node = NULL;
         }
         ~DistinctExecutor();
     protected:
@@ -72,6 +77,16 @@ class DistinctExecutor : public AbstractExecutor {
 
         int distinct_column;
         ValueType distinct_column_type;
+
+        // The values that we have already seen. The set's nodes come out
+        // of a pool so that they are not allocated one at a time
+        boost::unordered_set<NValue,
+            NValue::hash,
+            NValue::equal_to,
+            boost::pool_allocator<NValue> > found_values;
+
+        // Inline Limit
+        LimitPlanNode *limit_node;
 };
 
 }
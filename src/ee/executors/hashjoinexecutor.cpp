@@ -0,0 +1,240 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+#include <algorithm>
+#include "hashjoinexecutor.h"
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "expressions/abstractexpression.h"
+#include "expressions/tuplevalueexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "plannodes/hashjoinnode.h"
+
+namespace voltdb {
+
+static bool isIntegralType(ValueType type) {
+    switch (type) {
+      case VALUE_TYPE_TINYINT:
+      case VALUE_TYPE_SMALLINT:
+      case VALUE_TYPE_INTEGER:
+      case VALUE_TYPE_BIGINT:
+        return true;
+      default:
+        return false;
+    }
+}
+
+HashJoinExecutor::~HashJoinExecutor() {
+    if (m_keySchema != NULL) {
+        TupleSchema::freeTupleSchema(m_keySchema);
+    }
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstract_node, const catalog::Database* catalog_db, int* tempTableMemoryInBytes) {
+    VOLT_TRACE("init HashJoin Executor");
+
+    // The output table and the predicate are the same as a regular nest loop join
+    if (!NestLoopExecutor::p_init(abstract_node, catalog_db, tempTableMemoryInBytes)) {
+        return false;
+    }
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+    const TupleSchema *outerSchema = node->getInputTables()[0]->schema();
+    const TupleSchema *innerSchema = node->getInputTables()[1]->schema();
+    const std::vector<AbstractExpression*> &outerKeys = node->getOuterKeys();
+    const std::vector<AbstractExpression*> &innerKeys = node->getInnerKeys();
+    assert(outerKeys.size() == innerKeys.size());
+
+    // Both sides of the join key have to be stored in the same format so that
+    // equal values end up with the same hash code. The planner only picks a hash
+    // join for keys that are the same type or are both integers.
+    std::vector<ValueType> keyColumnTypes;
+    std::vector<int32_t> keyColumnSizes;
+    std::vector<bool> keyColumnAllowNull;
+    for (int ii = 0; ii < outerKeys.size(); ii++) {
+        const TupleValueExpression *outerKey = dynamic_cast<const TupleValueExpression*>(outerKeys[ii]);
+        const TupleValueExpression *innerKey = dynamic_cast<const TupleValueExpression*>(innerKeys[ii]);
+        if (outerKey == NULL || innerKey == NULL ||
+            outerKey->getColumnId() >= outerSchema->columnCount() ||
+            innerKey->getColumnId() >= innerSchema->columnCount()) {
+            VOLT_ERROR("Hash join key #%d is not a column of its input table", ii);
+            return false;
+        }
+        const ValueType outerType = outerSchema->columnType(outerKey->getColumnId());
+        const ValueType innerType = innerSchema->columnType(innerKey->getColumnId());
+        ValueType keyType = innerType;
+        if (outerType != innerType) {
+            if (!isIntegralType(outerType) || !isIntegralType(innerType)) {
+                VOLT_ERROR("Hash join key #%d compares incompatible types %s and %s", ii,
+                           getTypeName(outerType).c_str(), getTypeName(innerType).c_str());
+                return false;
+            }
+            keyType = VALUE_TYPE_BIGINT;
+        }
+        keyColumnTypes.push_back(keyType);
+        if (keyType == VALUE_TYPE_VARCHAR) {
+            keyColumnSizes.push_back(std::max(outerSchema->columnLength(outerKey->getColumnId()),
+                                              innerSchema->columnLength(innerKey->getColumnId())));
+        } else {
+            keyColumnSizes.push_back(NValue::getTupleStorageSize(keyType));
+        }
+        keyColumnAllowNull.push_back(true);
+    }
+
+    // Strings are never inlined so the keys only point at the values in the input tables
+    if (m_keySchema != NULL) {
+        TupleSchema::freeTupleSchema(m_keySchema);
+    }
+    m_keySchema = TupleSchema::createTupleSchema(keyColumnTypes, keyColumnSizes, keyColumnAllowNull, false);
+    return true;
+}
+
+/*
+ * Fill in the key for the given tuple. Returns false if any part of the
+ * key is null, since a null never joins with anything.
+ */
+inline bool HashJoinExecutor::setKey(TableTuple &key, const std::vector<AbstractExpression*> &keys, const TableTuple &tuple) {
+    for (int ii = 0; ii < keys.size(); ii++) {
+        const NValue value = keys[ii]->eval(&tuple, &tuple);
+        if (value.isNull()) {
+            return false;
+        }
+        key.setNValue(ii, value);
+    }
+    return true;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+    m_memoryPool.purge();
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+    assert(node->getInputTables().size() == 2);
+
+    // output table must be a temp table
+    TempTable* output_table = dynamic_cast<TempTable*>(node->getOutputTable());
+    assert(output_table);
+
+    Table* outer_table = node->getInputTables()[0];
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTables()[1];
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    //
+    // Join Expression
+    //
+    AbstractExpression *predicate = node->getPredicate();
+    if (predicate) {
+        predicate->substitute(params);
+        VOLT_TRACE ("predicate: %s", predicate == NULL ?
+                    "NULL" : predicate->debug(true).c_str());
+    }
+
+    //
+    // Build: hash every inner tuple on its join key
+    //
+    HashJoinMapType innerTuples;
+    TableTuple key(m_keySchema);
+    key.moveNoHeader(m_memoryPool.allocate(m_keySchema->tupleLength()));
+    TableTuple inner_tuple(inner_table->schema());
+    TableIterator iterator1(inner_table);
+    while (iterator1.next(inner_tuple)) {
+        if (setKey(key, node->getInnerKeys(), inner_tuple)) {
+            innerTuples.insert(HashJoinMapType::value_type(key, inner_tuple));
+            key.moveNoHeader(m_memoryPool.allocate(m_keySchema->tupleLength()));
+        }
+    }
+    VOLT_TRACE("Built hash table with %d inner tuples", (int)innerTuples.size());
+    if (innerTuples.empty()) {
+        return (true);
+    }
+
+    //
+    // Probe: look up the inner tuples with the same key as each outer tuple
+    //
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(outer_table->schema());
+    TableTuple &joined = output_table->tempTuple();
+
+    TableIterator iterator0(outer_table);
+    while (iterator0.next(outer_tuple)) {
+        if (!setKey(key, node->getOuterKeys(), outer_tuple)) {
+            continue;
+        }
+        std::pair<HashJoinMapType::const_iterator, HashJoinMapType::const_iterator> matches =
+            innerTuples.equal_range(key);
+        if (matches.first == matches.second) {
+            continue;
+        }
+
+        for (int col_ctr = 0; col_ctr < outer_cols; col_ctr++) {
+            joined.setNValue(col_ctr, outer_tuple.getNValue(col_ctr));
+        }
+        for (HashJoinMapType::const_iterator iter = matches.first; iter != matches.second; iter++) {
+            inner_tuple = iter->second;
+            if (predicate == NULL || predicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                // Matched! Complete the joined tuple with the inner column values.
+                for (int col_ctr = 0; col_ctr < inner_cols; col_ctr++) {
+                    joined.setNValue(col_ctr + outer_cols, inner_tuple.getNValue(col_ctr));
+                }
+                output_table->insertTupleNonVirtual(joined);
+            }
+        }
+    }
+
+    return (true);
+}
+
+}
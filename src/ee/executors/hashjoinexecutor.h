@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREHASHJOINEXECUTOR_H
+#define HSTOREHASHJOINEXECUTOR_H
+
+#include <vector>
+#include "boost/unordered_map.hpp"
+#include "common/common.h"
+#include "common/Pool.hpp"
+#include "common/tabletuple.h"
+#include "common/valuevector.h"
+#include "executors/nestloopexecutor.h"
+
+namespace voltdb {
+
+class AbstractExpression;
+class TupleSchema;
+
+/*
+ * The inner tuples with the same join key. The keys point into the memory pool
+ * and the inner tuples point into the inner input table.
+ */
+typedef boost::unordered_multimap<TableTuple,
+                                  TableTuple,
+                                  TableTupleHasher,
+                                  TableTupleEqualityChecker> HashJoinMapType;
+
+/**
+ * Builds a hash table on the join keys of the inner input table and then probes it
+ * with the join keys of every tuple in the outer input table. This is a replacement for
+ * the NestLoopExecutor's scan over the entire inner table for every outer tuple, so the
+ * output table and the predicate are set up the exact same way.
+ */
+class HashJoinExecutor : public NestLoopExecutor {
+    public:
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
+            : NestLoopExecutor(engine, abstract_node), m_keySchema(NULL) { }
+        ~HashJoinExecutor();
+    protected:
+        bool p_init(AbstractPlanNode*, const catalog::Database* catalog_db, int* tempTableMemoryInBytes);
+        bool p_execute(const NValueArray &params);
+    private:
+        bool setKey(TableTuple &key, const std::vector<AbstractExpression*> &keys, const TableTuple &tuple);
+
+        TupleSchema *m_keySchema;
+        Pool m_memoryPool;
+};
+
+}
+
+#endif
@@ -328,6 +328,56 @@ bool IndexScanExecutor::p_init(AbstractPlanNode *abstractNode,
     m_lookupType = m_node->getLookupType();
     m_sortDirection = m_node->getSortDirection();
 
+    //
+    // INDEX-ONLY SCAN
+    // The planner tells us when the key holds every column that we need, but
+    // we can only use that if the index can give us its keys back and the key
+    // columns are stored the same way as they are in the table. The inline
+    // aggregate keeps the address of the tuple in the table, so it always
+    // has to read the real thing.
+    //
+    m_indexOnly = (m_node->isIndexOnly() &&
+                   m_aggregateNode == NULL &&
+                   m_index->supportsCurrentKey());
+    if (m_indexOnly)
+    {
+        const TupleSchema *keySchema = m_index->getKeySchema();
+        const TupleSchema *tableSchema = m_targetTable->schema();
+        m_indexColumns = m_index->getColumnIndices();
+        for (int ctr = 0; ctr < (int)m_indexColumns.size(); ctr++)
+        {
+            if (keySchema->columnType(ctr) !=
+                    tableSchema->columnType(m_indexColumns[ctr]) ||
+                keySchema->columnIsInlined(ctr) !=
+                    tableSchema->columnIsInlined(m_indexColumns[ctr]))
+            {
+                m_indexOnly = false;
+                break;
+            }
+        }
+    }
+    if (m_indexOnly)
+    {
+        VOLT_DEBUG("Index-only scan on %s.%s", m_targetTable->name().c_str(),
+                   m_index->getName().c_str());
+        m_indexKey = TableTuple(m_index->getKeySchema());
+        m_indexKeyBackingStore =
+            new char[m_index->getKeySchema()->tupleLength() + TUPLE_HEADER_SIZE];
+        ::memset(m_indexKeyBackingStore, 0,
+                 m_index->getKeySchema()->tupleLength() + TUPLE_HEADER_SIZE);
+        m_indexKey.move(m_indexKeyBackingStore);
+
+        // The columns that are not in the key are never read, but we zero
+        // them out so that the tuple is always safe to look at (a zeroed
+        // header also marks the tuple as active)
+        m_coveringTuple = TableTuple(m_targetTable->schema());
+        m_coveringTupleBackingStore =
+            new char[m_targetTable->schema()->tupleLength() + TUPLE_HEADER_SIZE];
+        ::memset(m_coveringTupleBackingStore, 0,
+                 m_targetTable->schema()->tupleLength() + TUPLE_HEADER_SIZE);
+        m_coveringTuple.move(m_coveringTupleBackingStore);
+    }
+
     return true;
 }
 
@@ -504,6 +554,20 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
            ((m_lookupType != INDEX_LOOKUP_TYPE_EQ || m_numOfSearchkeys == 0) &&
             !(m_tuple = m_index->nextValue()).isNullTuple()))
     {
+        //
+        // Swap in the values from the index key for the table's tuple
+        //
+        if (m_indexOnly)
+        {
+            m_index->currentKey(&m_indexKey);
+            for (int ctr = 0; ctr < (int)m_indexColumns.size(); ctr++)
+            {
+                m_coveringTuple.setNValue(m_indexColumns[ctr],
+                                          m_indexKey.getNValue(ctr));
+            }
+            m_tuple = m_coveringTuple;
+        }
+
         //
         // First check whether the end_expression is now false
         //
@@ -646,5 +710,7 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
 
 IndexScanExecutor::~IndexScanExecutor() {
     delete [] m_searchKeyBackingStore;
+    delete [] m_indexKeyBackingStore;
+    delete [] m_coveringTupleBackingStore;
     delete [] m_projectionExpressions;
 }
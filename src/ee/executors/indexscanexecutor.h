@@ -76,7 +76,8 @@ class IndexScanExecutor : public AbstractExecutor
 {
 public:
     IndexScanExecutor(VoltDBEngine* engine, AbstractPlanNode* abstractNode)
-        : AbstractExecutor(engine, abstractNode), m_searchKeyBackingStore(NULL)
+        : AbstractExecutor(engine, abstractNode), m_searchKeyBackingStore(NULL),
+          m_indexKeyBackingStore(NULL), m_coveringTupleBackingStore(NULL)
     {
         m_projectionExpressions = NULL;
     }
@@ -138,6 +139,16 @@ protected:
     TableTuple m_dummy;
     TableTuple m_tuple;
 
+    // Index-only scan
+    // When every column that we need is in the index key, the key of the
+    // current entry is unpacked into m_indexKey and its values are copied
+    // into m_coveringTuple (which uses the table's schema) so that the rest
+    // of the scan never has to read the tuple in the table.
+    bool m_indexOnly;
+    TableTuple m_indexKey;
+    TableTuple m_coveringTuple;
+    std::vector<int> m_indexColumns;
+
     // arrange the memory mgmt aids at the bottom to try to maximize
     // cache hits (by keeping them out of the way of useful runtime data)
     boost::shared_array<bool> m_needsSubstituteSearchKeyPtr;
@@ -148,6 +159,8 @@ protected:
     boost::shared_array<int> m_searchKeyAllParamArrayPtr;
     // So Valgrind doesn't complain:
     char* m_searchKeyBackingStore;
+    char* m_indexKeyBackingStore;
+    char* m_coveringTupleBackingStore;
 };
 
 }
@@ -132,6 +132,9 @@ bool InsertExecutor::p_execute(const NValueArray &params) {
     // and insert any tuple that we find into our m_targetTable. It doesn't get any easier than that!
     //
     assert (m_tuple.sizeInValues() == m_inputTable->columnCount());
+    // Apply all of the changes to each view row at once when there are
+    // multiple tuples going in
+    MaterializedViewBatch viewBatch(m_targetTable, m_inputTable->activeTupleCount() > 1);
     TableIterator iterator(m_inputTable);
     while (iterator.next(m_tuple)) {
         VOLT_TRACE("Inserting tuple '%s' into target table '%s' with table schema: %s",
@@ -185,6 +188,7 @@ bool InsertExecutor::p_execute(const NValueArray &params) {
         // successfully inserted
         modifiedTuples++;
     }
+    viewBatch.flush();
 
     // add to the planfragments count of modified tuples
     m_engine->m_tuplesModified += modifiedTuples;
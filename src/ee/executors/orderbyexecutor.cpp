@@ -178,35 +178,62 @@ OrderByExecutor::p_execute(const NValueArray &params)
     // How nice! We can also cut off our scanning with a nested limit!
     //
     int limit = -1;
-    int offset = -1;
+    int offset = 0;
     if (limit_node != NULL)
     {
         limit_node->getLimitAndOffsetByReference(params, limit, offset);
-        if (offset > 0)
-        {
-            VOLT_ERROR("Nested Limit Offset is not yet supported for PlanNode"
-                       " '%s'", node->debug().c_str());
-            return false;
-        }
+        if (offset < 0) offset = 0;
     }
 
     VOLT_TRACE("Running OrderBy '%s'", abstract_node->debug().c_str());
     VOLT_TRACE("Input Table:\n '%s'", input_table->debug().c_str());
+    TupleComparer comparer(node->getSortColumns(), node->getSortDirections());
     TableIterator iterator(input_table);
     TableTuple tuple(input_table->schema());
     vector<TableTuple> xs;
-    while (iterator.next(tuple))
+    if (limit >= 0)
+    {
+        //
+        // OPTIMIZATION: TOP-N
+        // We only need the first limit+offset tuples in sort order, so we
+        // keep them in a heap whose front is the last of them. Every other
+        // tuple is either thrown away or replaces the front, so we never
+        // have to sort the entire input table.
+        //
+        size_t heap_size = limit + offset;
+        xs.reserve(min(heap_size, (size_t)input_table->activeTupleCount()));
+        while (heap_size > 0 && iterator.next(tuple))
+        {
+            assert(tuple.isActive());
+            if (xs.size() < heap_size)
+            {
+                xs.push_back(tuple);
+                push_heap(xs.begin(), xs.end(), comparer);
+            }
+            else if (comparer(tuple, xs.front()))
+            {
+                pop_heap(xs.begin(), xs.end(), comparer);
+                xs.back() = tuple;
+                push_heap(xs.begin(), xs.end(), comparer);
+            }
+        }
+        sort_heap(xs.begin(), xs.end(), comparer);
+    }
+    else
     {
-        assert(tuple.isActive());
-        xs.push_back(tuple);
+        while (iterator.next(tuple))
+        {
+            assert(tuple.isActive());
+            xs.push_back(tuple);
+        }
+        VOLT_TRACE("\n***** Input Table PreSort:\n '%s'",
+                   input_table->debug().c_str());
+        sort(xs.begin(), xs.end(), comparer);
     }
-    VOLT_TRACE("\n***** Input Table PreSort:\n '%s'",
-               input_table->debug().c_str());
-    sort(xs.begin(), xs.end(), TupleComparer(node->getSortColumns(),
-                                             node->getSortDirections()));
 
     int tuple_ctr = 0;
-    for (vector<TableTuple>::iterator it = xs.begin(); it != xs.end(); it++)
+    for (vector<TableTuple>::iterator it = xs.begin() + min(xs.size(), (size_t)offset);
+         it != xs.end(); it++)
     {
         VOLT_TRACE("\n***** Input Table PostSort:\n '%s'",
                    input_table->debug().c_str());
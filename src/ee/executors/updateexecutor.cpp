@@ -153,6 +153,7 @@ bool UpdateExecutor::p_execute(const NValueArray &params) {
 
     assert(m_inputTuple.sizeInValues() == m_inputTable->columnCount());
     assert(m_targetTuple.sizeInValues() == m_targetTable->columnCount());
+    MaterializedViewBatch viewBatch(m_targetTable, m_inputTable->activeTupleCount() > 1);
     TableIterator input_iterator(m_inputTable);
     while (input_iterator.next(m_inputTuple)) {
         //
@@ -208,6 +209,7 @@ bool UpdateExecutor::p_execute(const NValueArray &params) {
             return false;
         }
     }
+    viewBatch.flush();
 
     VOLT_TRACE("TARGET TABLE - AFTER: %s\n", m_targetTable->debug().c_str());
     // TODO lets output result table here, not in result executor. same thing in
@@ -0,0 +1,485 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef BPLUSTREE_H_
+#define BPLUSTREE_H_
+
+#include <cassert>
+#include <cstddef>
+#include <iterator>
+#include <utility>
+
+namespace voltdb {
+
+/**
+ * An in-memory B+tree with an interface that looks enough like std::map and
+ * std::multimap for the tree indexes. Entries are kept in sorted arrays
+ * inside of nodes that are about 1KB each instead of in one heap node
+ * per entry, and the leaves are linked together so that range scans
+ * walk through contiguous memory.
+ *
+ * If Unique is true, insert() refuses keys that are already in the tree.
+ * Otherwise new entries go after all of the entries with an equal key.
+ *
+ * Unlike std::map, any insert or erase invalidates every iterator.
+ * Leaves that become empty are removed, but we don't merge nodes that
+ * are only partially full.
+ */
+template<typename Key, typename Data, class KeyComparator, bool Unique>
+class BPlusTree
+{
+public:
+    typedef std::pair<Key, Data> value_type;
+
+private:
+    enum {
+        NODE_BYTES = 1024,
+        LEAF_SLOTS = (NODE_BYTES / sizeof(value_type) > 8 ?
+                      NODE_BYTES / sizeof(value_type) : 8),
+        INNER_SLOTS = (NODE_BYTES / (sizeof(Key) + sizeof(void*)) > 8 ?
+                       NODE_BYTES / (sizeof(Key) + sizeof(void*)) : 8)
+    };
+
+    struct InnerNode;
+
+    struct Node {
+        InnerNode *parent;
+        // 0 for leaves
+        unsigned short level;
+        unsigned short slotuse;
+
+        Node(unsigned short l) : parent(NULL), level(l), slotuse(0) {}
+        inline bool isLeaf() const { return level == 0; }
+    };
+
+    // Child i holds keys that are no greater than slotkey[i] and that are
+    // no less than slotkey[i - 1]
+    struct InnerNode : public Node {
+        Key slotkey[INNER_SLOTS];
+        Node *childid[INNER_SLOTS + 1];
+
+        InnerNode(unsigned short l) : Node(l) {}
+        inline bool isFull() const { return this->slotuse == INNER_SLOTS; }
+    };
+
+    struct LeafNode : public Node {
+        LeafNode *prev;
+        LeafNode *next;
+        value_type slotdata[LEAF_SLOTS];
+
+        LeafNode() : Node(0), prev(NULL), next(NULL) {}
+        inline bool isFull() const { return this->slotuse == LEAF_SLOTS; }
+    };
+
+public:
+
+    /**
+     * Bidirectional iterator over the entries. Every leaf other than
+     * the root is non-empty, so only the end() iterator ever points
+     * past the last slot of a leaf.
+     */
+    class const_iterator {
+        friend class BPlusTree;
+    public:
+        typedef std::bidirectional_iterator_tag iterator_category;
+        typedef typename BPlusTree::value_type value_type;
+        typedef std::ptrdiff_t difference_type;
+        typedef const value_type* pointer;
+        typedef const value_type& reference;
+
+        const_iterator() : m_leaf(NULL), m_slot(0) {}
+
+        inline reference operator*() const { return m_leaf->slotdata[m_slot]; }
+        inline pointer operator->() const { return &m_leaf->slotdata[m_slot]; }
+
+        inline const_iterator& operator++() {
+            if (m_slot + 1 < m_leaf->slotuse || m_leaf->next == NULL) {
+                ++m_slot;
+            } else {
+                m_leaf = m_leaf->next;
+                m_slot = 0;
+            }
+            return *this;
+        }
+        inline const_iterator operator++(int) {
+            const_iterator tmp = *this;
+            ++(*this);
+            return tmp;
+        }
+        inline const_iterator& operator--() {
+            if (m_slot > 0 || m_leaf->prev == NULL) {
+                --m_slot;
+            } else {
+                m_leaf = m_leaf->prev;
+                m_slot = m_leaf->slotuse - 1;
+            }
+            return *this;
+        }
+        inline const_iterator operator--(int) {
+            const_iterator tmp = *this;
+            --(*this);
+            return tmp;
+        }
+
+        inline bool operator==(const const_iterator &other) const {
+            return m_leaf == other.m_leaf && m_slot == other.m_slot;
+        }
+        inline bool operator!=(const const_iterator &other) const {
+            return !(*this == other);
+        }
+
+    private:
+        const_iterator(const LeafNode *leaf, unsigned short slot) : m_leaf(leaf), m_slot(slot) {}
+
+        const LeafNode *m_leaf;
+        unsigned short m_slot;
+    };
+
+    // The entries can't be modified in place, so the two are the same
+    typedef const_iterator iterator;
+    typedef std::reverse_iterator<const_iterator> const_reverse_iterator;
+    typedef const_reverse_iterator reverse_iterator;
+
+    BPlusTree(const KeyComparator &comparator) :
+        m_less(comparator), m_size(0)
+    {
+        m_root = m_head = m_tail = new LeafNode();
+    }
+
+    ~BPlusTree() {
+        freeNode(m_root);
+    }
+
+    inline size_t size() const { return m_size; }
+    inline bool empty() const { return m_size == 0; }
+
+    void clear() {
+        freeNode(m_root);
+        m_root = m_head = m_tail = new LeafNode();
+        m_size = 0;
+    }
+
+    inline const_iterator begin() const { return const_iterator(m_head, 0); }
+    inline const_iterator end() const { return const_iterator(m_tail, m_tail->slotuse); }
+    inline const_reverse_iterator rbegin() const { return const_reverse_iterator(end()); }
+    inline const_reverse_iterator rend() const { return const_reverse_iterator(begin()); }
+
+    /**
+     * Iterator to the first entry whose key is not less than the given key
+     */
+    const_iterator lower_bound(const Key &key) const {
+        const Node *node = m_root;
+        while (!node->isLeaf()) {
+            const InnerNode *inner = static_cast<const InnerNode*>(node);
+            node = inner->childid[innerLowerSlot(inner, key)];
+        }
+        const LeafNode *leaf = static_cast<const LeafNode*>(node);
+        return makeIterator(leaf, leafLowerSlot(leaf, key));
+    }
+
+    /**
+     * Iterator to the first entry whose key is greater than the given key
+     */
+    const_iterator upper_bound(const Key &key) const {
+        const Node *node = m_root;
+        while (!node->isLeaf()) {
+            const InnerNode *inner = static_cast<const InnerNode*>(node);
+            node = inner->childid[innerUpperSlot(inner, key)];
+        }
+        const LeafNode *leaf = static_cast<const LeafNode*>(node);
+        return makeIterator(leaf, leafUpperSlot(leaf, key));
+    }
+
+    std::pair<const_iterator, const_iterator> equal_range(const Key &key) const {
+        return std::pair<const_iterator, const_iterator>(lower_bound(key), upper_bound(key));
+    }
+
+    const_iterator find(const Key &key) const {
+        const_iterator iter = lower_bound(key);
+        if (iter == end() || m_less(key, iter->first))
+            return end();
+        return iter;
+    }
+
+    /**
+     * Add a new entry. For unique trees the second value of the result is
+     * false if the key was already there, in which case the first value
+     * points at the existing entry.
+     */
+    std::pair<const_iterator, bool> insert(const value_type &value) {
+        const Key &key = value.first;
+
+        // Find our way down to the leaf
+        Node *node = m_root;
+        while (!node->isLeaf()) {
+            InnerNode *inner = static_cast<InnerNode*>(node);
+            node = inner->childid[Unique ? innerLowerSlot(inner, key) : innerUpperSlot(inner, key)];
+        }
+        LeafNode *leaf = static_cast<LeafNode*>(node);
+        unsigned short slot = (Unique ? leafLowerSlot(leaf, key) : leafUpperSlot(leaf, key));
+        if (Unique && slot < leaf->slotuse && !m_less(key, leaf->slotdata[slot].first)) {
+            return std::pair<const_iterator, bool>(const_iterator(leaf, slot), false);
+        }
+
+        // Make room by splitting the leaf in half. The upper half moves
+        // into a new leaf that goes into the parent right after this one
+        if (leaf->isFull()) {
+            LeafNode *right = new LeafNode();
+            unsigned short mid = leaf->slotuse / 2;
+            for (unsigned short i = mid; i < leaf->slotuse; i++) {
+                right->slotdata[i - mid] = leaf->slotdata[i];
+            }
+            right->slotuse = static_cast<unsigned short>(leaf->slotuse - mid);
+            leaf->slotuse = mid;
+
+            right->next = leaf->next;
+            if (right->next != NULL) right->next->prev = right;
+            else m_tail = right;
+            right->prev = leaf;
+            leaf->next = right;
+
+            if (slot > mid) {
+                slot = static_cast<unsigned short>(slot - mid);
+                leaf = right;
+            }
+            insertIntoLeaf(leaf, slot, value);
+            LeafNode *left = right->prev;
+            insertIntoParent(left, left->slotdata[left->slotuse - 1].first, right);
+        } else {
+            insertIntoLeaf(leaf, slot, value);
+        }
+
+        ++m_size;
+        return std::pair<const_iterator, bool>(const_iterator(leaf, slot), true);
+    }
+
+    void erase(const_iterator iter) {
+        assert(iter != end());
+        LeafNode *leaf = const_cast<LeafNode*>(iter.m_leaf);
+        for (unsigned short i = iter.m_slot; i + 1 < leaf->slotuse; i++) {
+            leaf->slotdata[i] = leaf->slotdata[i + 1];
+        }
+        --leaf->slotuse;
+        --m_size;
+
+        if (leaf->slotuse == 0 && leaf != m_root) {
+            if (leaf->prev != NULL) leaf->prev->next = leaf->next;
+            else m_head = leaf->next;
+            if (leaf->next != NULL) leaf->next->prev = leaf->prev;
+            else m_tail = leaf->prev;
+            removeFromParent(leaf);
+        }
+    }
+
+    size_t erase(const Key &key) {
+        size_t count = 0;
+        const_iterator iter;
+        while ((iter = find(key)) != end()) {
+            erase(iter);
+            ++count;
+            if (Unique) break;
+        }
+        return count;
+    }
+
+private:
+    // Disallow copying
+    BPlusTree(const BPlusTree&);
+    BPlusTree& operator=(const BPlusTree&);
+
+    inline const_iterator makeIterator(const LeafNode *leaf, unsigned short slot) const {
+        // Keep the iterators canonical so that they can be compared
+        if (slot == leaf->slotuse && leaf->next != NULL)
+            return const_iterator(leaf->next, 0);
+        return const_iterator(leaf, slot);
+    }
+
+    inline unsigned short innerLowerSlot(const InnerNode *node, const Key &key) const {
+        unsigned short lo = 0, hi = node->slotuse;
+        while (lo < hi) {
+            unsigned short mid = static_cast<unsigned short>((lo + hi) >> 1);
+            if (m_less(node->slotkey[mid], key)) lo = static_cast<unsigned short>(mid + 1);
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    inline unsigned short innerUpperSlot(const InnerNode *node, const Key &key) const {
+        unsigned short lo = 0, hi = node->slotuse;
+        while (lo < hi) {
+            unsigned short mid = static_cast<unsigned short>((lo + hi) >> 1);
+            if (m_less(key, node->slotkey[mid])) hi = mid;
+            else lo = static_cast<unsigned short>(mid + 1);
+        }
+        return lo;
+    }
+
+    inline unsigned short leafLowerSlot(const LeafNode *node, const Key &key) const {
+        unsigned short lo = 0, hi = node->slotuse;
+        while (lo < hi) {
+            unsigned short mid = static_cast<unsigned short>((lo + hi) >> 1);
+            if (m_less(node->slotdata[mid].first, key)) lo = static_cast<unsigned short>(mid + 1);
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    inline unsigned short leafUpperSlot(const LeafNode *node, const Key &key) const {
+        unsigned short lo = 0, hi = node->slotuse;
+        while (lo < hi) {
+            unsigned short mid = static_cast<unsigned short>((lo + hi) >> 1);
+            if (m_less(key, node->slotdata[mid].first)) hi = mid;
+            else lo = static_cast<unsigned short>(mid + 1);
+        }
+        return lo;
+    }
+
+    inline void insertIntoLeaf(LeafNode *leaf, unsigned short slot, const value_type &value) {
+        assert(!leaf->isFull());
+        for (unsigned short i = leaf->slotuse; i > slot; i--) {
+            leaf->slotdata[i] = leaf->slotdata[i - 1];
+        }
+        leaf->slotdata[slot] = value;
+        ++leaf->slotuse;
+    }
+
+    /**
+     * Link a node that was split off from left into left's parent, with
+     * key as the separator between the two. This will split the parent
+     * (and its ancestors) if they are already full.
+     */
+    void insertIntoParent(Node *left, const Key &key, Node *right) {
+        InnerNode *parent = left->parent;
+        if (parent == NULL) {
+            assert(left == m_root);
+            InnerNode *root = new InnerNode(static_cast<unsigned short>(left->level + 1));
+            root->slotkey[0] = key;
+            root->childid[0] = left;
+            root->childid[1] = right;
+            root->slotuse = 1;
+            left->parent = root;
+            right->parent = root;
+            m_root = root;
+            return;
+        }
+
+        unsigned short pos = 0;
+        while (parent->childid[pos] != left) pos++;
+
+        if (!parent->isFull()) {
+            insertIntoInner(parent, pos, key, right);
+            return;
+        }
+
+        // Split the parent. The middle key moves up to the grandparent,
+        // and everything after it goes to the new node.
+        InnerNode *sibling = new InnerNode(parent->level);
+        unsigned short mid = static_cast<unsigned short>(parent->slotuse / 2);
+        Key upkey = parent->slotkey[mid];
+        for (unsigned short i = static_cast<unsigned short>(mid + 1); i < parent->slotuse; i++) {
+            sibling->slotkey[i - mid - 1] = parent->slotkey[i];
+        }
+        for (unsigned short i = static_cast<unsigned short>(mid + 1); i <= parent->slotuse; i++) {
+            sibling->childid[i - mid - 1] = parent->childid[i];
+            sibling->childid[i - mid - 1]->parent = sibling;
+        }
+        sibling->slotuse = static_cast<unsigned short>(parent->slotuse - mid - 1);
+        parent->slotuse = mid;
+
+        if (pos <= mid) {
+            insertIntoInner(parent, pos, key, right);
+        } else {
+            insertIntoInner(sibling, static_cast<unsigned short>(pos - mid - 1), key, right);
+        }
+        insertIntoParent(parent, upkey, sibling);
+    }
+
+    inline void insertIntoInner(InnerNode *node, unsigned short pos, const Key &key, Node *right) {
+        assert(!node->isFull());
+        for (unsigned short i = node->slotuse; i > pos; i--) {
+            node->slotkey[i] = node->slotkey[i - 1];
+            node->childid[i + 1] = node->childid[i];
+        }
+        node->slotkey[pos] = key;
+        node->childid[pos + 1] = right;
+        ++node->slotuse;
+        right->parent = node;
+    }
+
+    /**
+     * Unlink an empty node from its parent and free it. Any ancestors that
+     * are left without children get removed too, and the root collapses
+     * when it only has one child left.
+     */
+    void removeFromParent(Node *node) {
+        InnerNode *parent = node->parent;
+        assert(parent != NULL);
+        unsigned short pos = 0;
+        while (parent->childid[pos] != node) pos++;
+        deleteNode(node);
+
+        if (parent->slotuse == 0) {
+            // That was the only child
+            removeFromParent(parent);
+            return;
+        }
+
+        // Drop the separator to the left of the child (or to its right
+        // if it was the first one), which merges the key ranges of its
+        // neighbors
+        unsigned short keypos = static_cast<unsigned short>(pos > 0 ? pos - 1 : 0);
+        for (unsigned short i = keypos; i + 1 < parent->slotuse; i++) {
+            parent->slotkey[i] = parent->slotkey[i + 1];
+        }
+        for (unsigned short i = pos; i < parent->slotuse; i++) {
+            parent->childid[i] = parent->childid[i + 1];
+        }
+        --parent->slotuse;
+
+        while (!m_root->isLeaf() && m_root->slotuse == 0) {
+            InnerNode *root = static_cast<InnerNode*>(m_root);
+            m_root = root->childid[0];
+            m_root->parent = NULL;
+            delete root;
+        }
+    }
+
+    inline void deleteNode(Node *node) {
+        if (node->isLeaf()) delete static_cast<LeafNode*>(node);
+        else delete static_cast<InnerNode*>(node);
+    }
+
+    void freeNode(Node *node) {
+        if (!node->isLeaf()) {
+            InnerNode *inner = static_cast<InnerNode*>(node);
+            for (unsigned short i = 0; i <= inner->slotuse; i++) {
+                freeNode(inner->childid[i]);
+            }
+        }
+        deleteNode(node);
+    }
+
+    KeyComparator m_less;
+    Node *m_root;
+    LeafNode *m_head;
+    LeafNode *m_tail;
+    size_t m_size;
+};
+
+}
+
+#endif // BPLUSTREE_H_
@@ -170,11 +170,13 @@ public:
             if (m_seqIter == m_entries.end())
                 return TableTuple();
             retval.move(const_cast<void*>(m_seqIter->second));
+            m_currentKey = &m_seqIter->first;
             ++m_seqIter;
         } else {
             if (m_seqRIter == (typename MapType::const_reverse_iterator) m_entries.rend())
                 return TableTuple();
             retval.move(const_cast<void*>(m_seqRIter->second));
+            m_currentKey = &m_seqRIter->first;
             ++m_seqRIter;
         }
 
@@ -185,6 +187,7 @@ public:
     {
         if (m_match.isNullTuple()) return m_match;
         TableTuple retval = m_match;
+        m_currentKey = &m_keyIter.first->first;
         ++(m_keyIter.first);
         if (m_keyIter.first == m_keyIter.second)
             m_match.move(NULL);
@@ -200,6 +203,14 @@ public:
         return moveToKey(m_keyIter.second->first);
     }
 
+    bool supportsCurrentKey() const { return true; }
+
+    void currentKey(TableTuple *keyTuple) const
+    {
+        assert(m_currentKey != NULL);
+        m_currentKey->toTuple(keyTuple);
+    }
+
     size_t getSize() const { return m_entries.size(); }
     std::string getTypeName() const { return "BinaryTreeMultiMapIndex"; };
 
@@ -208,6 +219,7 @@ protected:
         TableIndex(scheme),
         m_entries(KeyComparator(m_keySchema)),
         m_begin(true),
+        m_currentKey(NULL),
         m_eq(m_keySchema)
     {
         m_match = TableTuple(m_tupleSchema);
@@ -263,6 +275,7 @@ protected:
     MMCIter m_seqIter;
     MMCRIter m_seqRIter;
     TableTuple m_match;
+    const KeyType *m_currentKey;
 
     // comparison stuff
     KeyEqualityChecker m_eq;
@@ -126,6 +126,7 @@ public:
             return false;
         }
         m_match.move(const_cast<void*>(m_keyIter->second));
+        m_matchKey = &m_keyIter->first;
         return !m_match.isNullTuple();
     }
 
@@ -140,6 +141,7 @@ public:
             return false;
         }
         m_match.move(const_cast<void*>(m_keyIter->second));
+        m_matchKey = &m_keyIter->first;
         return !m_match.isNullTuple();
     }
 
@@ -177,11 +179,13 @@ public:
             if (m_keyIter == m_entries.end())
                 return TableTuple();
             retval.move(const_cast<void*>(m_keyIter->second));
+            m_currentKey = &m_keyIter->first;
             ++m_keyIter;
         } else {
             if (m_keyRIter == (typename MapType::const_reverse_iterator) m_entries.rend())
                 return TableTuple();
             retval.move(const_cast<void*>(m_keyRIter->second));
+            m_currentKey = &m_keyRIter->first;
             ++m_keyRIter;
         }
 
@@ -191,6 +195,7 @@ public:
     TableTuple nextValueAtKey()
     {
         TableTuple retval = m_match;
+        m_currentKey = m_matchKey;
         m_match.move(NULL);
         return retval;
     }
@@ -205,6 +210,7 @@ public:
                 return false;
             }
             m_match.move(const_cast<void*>(m_keyIter->second));
+            m_matchKey = &m_keyIter->first;
         } else {
             ++m_keyRIter;
             if (m_keyRIter == (typename MapType::const_reverse_iterator) m_entries.rend())
@@ -213,11 +219,20 @@ public:
                 return false;
             }
             m_match.move(const_cast<void*>(m_keyRIter->second));
+            m_matchKey = &m_keyRIter->first;
         }
 
         return !m_match.isNullTuple();
     }
 
+    bool supportsCurrentKey() const { return true; }
+
+    void currentKey(TableTuple *keyTuple) const
+    {
+        assert(m_currentKey != NULL);
+        m_currentKey->toTuple(keyTuple);
+    }
+
     size_t getSize() const { return m_entries.size(); }
     std::string getTypeName() const { return "BinaryTreeUniqueIndex"; };
     std::string debug() const
@@ -240,6 +255,8 @@ protected:
         TableIndex(scheme),
         m_entries(KeyComparator(m_keySchema)),
         m_begin(true),
+        m_matchKey(NULL),
+        m_currentKey(NULL),
         m_eq(m_keySchema)
     {
         m_match = TableTuple(m_tupleSchema);
@@ -273,6 +290,8 @@ protected:
     typename MapType::const_iterator m_keyIter;
     typename MapType::const_reverse_iterator m_keyRIter;
     TableTuple m_match;
+    const KeyType *m_matchKey;
+    const KeyType *m_currentKey;
 
     // comparison stuff
     KeyEqualityChecker m_eq;
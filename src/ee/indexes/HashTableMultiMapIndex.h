@@ -47,7 +47,7 @@
 #define HASHTABLEMULTIMAPINDEX_H_
 
 #include <iostream>
-#include "boost/unordered_map.hpp"
+#include "indexes/OpenHashTable.h"
 #include "indexes/tableindex.h"
 #include "common/tabletuple.h"
 
@@ -55,6 +55,7 @@ namespace voltdb {
 
 /**
  * Index implemented as a Hash Table Multimap.
+ * The keys and values are stored inline in an open-addressing table.
  * @see TableIndex
  */
 template<typename KeyType, class KeyHasher, class KeyEqualityChecker>
@@ -62,9 +63,7 @@ class HashTableMultiMapIndex : public TableIndex {
 
     friend class TableIndexFactory;
 
-    typedef boost::unordered_multimap<KeyType, const void*, KeyHasher, KeyEqualityChecker> MapType;
-    typedef typename MapType::const_iterator MMCIter;
-    typedef typename MapType::iterator MMIter;
+    typedef OpenHashTable<KeyType, const void*, KeyHasher, KeyEqualityChecker, false> MapType;
 
 public:
 
@@ -107,7 +106,8 @@ public:
     bool exists(const TableTuple* values) {
         ++m_lookups;
         m_tmp1.setFromTuple(values, column_indices_, m_keySchema);
-        return (m_entries.find(m_tmp1) != m_entries.end());
+        typename MapType::Cursor cursor;
+        return m_entries.find(m_tmp1, cursor);
     }
 
     bool moveToKey(const TableTuple *searchKey) {
@@ -123,14 +123,21 @@ public:
     TableTuple nextValueAtKey() {
         if (m_match.isNullTuple()) return m_match;
         TableTuple retval = m_match;
-        ++(m_keyIter.first);
-        if (m_keyIter.first == m_keyIter.second)
-            m_match.move(NULL);
+        m_currentKey = &m_keyIter.key;
+        if (m_entries.next(m_keyIter))
+            m_match.move(const_cast<void*>(m_keyIter.data));
         else
-            m_match.move(const_cast<void*>(m_keyIter.first->second));
+            m_match.move(NULL);
         return retval;
     }
 
+    bool supportsCurrentKey() const { return true; }
+
+    void currentKey(TableTuple *keyTuple) const {
+        assert(m_currentKey != NULL);
+        m_currentKey->toTuple(keyTuple);
+    }
+
     size_t getSize() const { return m_entries.size(); }
     std::string getTypeName() const { return "HashTableMultiMapIndex"; };
 
@@ -144,39 +151,30 @@ protected:
     HashTableMultiMapIndex(const TableIndexScheme &scheme) :
         TableIndex(scheme),
         m_entries(100, KeyHasher(m_keySchema), KeyEqualityChecker(m_keySchema)),
+        m_currentKey(NULL),
         m_eq(m_keySchema)
     {
         m_match = TableTuple(m_tupleSchema);
-        m_entries.max_load_factor(.5f);
-        //m_entries.rehash(300000);
     }
 
     inline bool addEntryPrivate(const TableTuple *tuple, const KeyType &key) {
         ++m_inserts;
-        m_entries.insert(std::pair<KeyType, const void*>(key, tuple->address()));
+        m_entries.insert(key, tuple->address());
         return true;
     }
 
     inline bool deleteEntryPrivate(const TableTuple *tuple, const KeyType &key) {
         ++m_deletes;
-        std::pair<MMIter,MMIter> key_iter;
-        for (key_iter = m_entries.equal_range(key); key_iter.first != key_iter.second; ++(key_iter.first)) {
-            if (key_iter.first->second == tuple->address()) {
-                m_entries.erase(key_iter.first);
-                return true; //deleted
-            }
-        }
-        return false;
+        return m_entries.erase(key, tuple->address());
     }
 
     bool moveToKey(const KeyType &key) {
         ++m_lookups;
-        m_keyIter = m_entries.equal_range(key);
-        if (m_keyIter.first == m_keyIter.second) {
+        if (!m_entries.find(key, m_keyIter)) {
             m_match.move(NULL);
             return false;
         }
-        m_match.move(const_cast<void*>(m_keyIter.first->second));
+        m_match.move(const_cast<void*>(m_keyIter.data));
         return m_match.address() != NULL;
     }
 
@@ -185,11 +183,12 @@ protected:
     KeyType m_tmp2;
 
     // iteration stuff
-    typename std::pair<MMCIter, MMCIter> m_keyIter;
+    typename MapType::Cursor m_keyIter;
     TableTuple m_match;
+    const KeyType *m_currentKey;
 
     // comparison stuff
-    typename MapType::key_equal m_eq;
+    KeyEqualityChecker m_eq;
 };
 
 }
@@ -48,19 +48,20 @@
 
 #include <iostream>
 #include "indexes/tableindex.h"
-#include "boost/unordered_map.hpp"
+#include "indexes/OpenHashTable.h"
 
 namespace voltdb {
 
 /**
  * Index implemented as a Hash Table Unique Map.
+ * The keys and values are stored inline in an open-addressing table.
  * @see TableIndex
  */
 template<typename KeyType, class KeyHasher, class KeyEqualityChecker>
 class HashTableUniqueIndex : public TableIndex {
     friend class TableIndexFactory;
 
-    typedef boost::unordered_map<KeyType, const void*, KeyHasher, KeyEqualityChecker> MapType;
+    typedef OpenHashTable<KeyType, const void*, KeyHasher, KeyEqualityChecker, true> MapType;
 
 public:
 
@@ -99,35 +100,40 @@ public:
     bool exists(const TableTuple* values) {
         ++m_lookups;
         m_tmp1.setFromTuple(values, column_indices_, m_keySchema);
-        return (m_entries.find(m_tmp1) != m_entries.end());
+        typename MapType::Cursor cursor;
+        return m_entries.find(m_tmp1, cursor);
     }
     bool moveToKey(const TableTuple *searchKey) {
         ++m_lookups;
         m_tmp1.setFromKey(searchKey);
-        m_keyIter = m_entries.find(m_tmp1);
-        if (m_keyIter == m_entries.end()) {
+        if (!m_entries.find(m_tmp1, m_keyIter)) {
             m_match.move(NULL);
             return false;
         }
-        m_match.move(const_cast<void*>(m_keyIter->second));
+        m_match.move(const_cast<void*>(m_keyIter.data));
         return m_match.address() != NULL;
     }
     bool moveToTuple(const TableTuple *searchTuple) {
         ++m_lookups;
         m_tmp1.setFromTuple(searchTuple, column_indices_, m_keySchema);
-        m_keyIter = m_entries.find(m_tmp1);
-        if (m_keyIter == m_entries.end()) {
+        if (!m_entries.find(m_tmp1, m_keyIter)) {
             m_match.move(NULL);
             return false;
         }
-        m_match.move(const_cast<void*>(m_keyIter->second));
+        m_match.move(const_cast<void*>(m_keyIter.data));
         return m_match.address() != NULL;
     }
     TableTuple nextValueAtKey() {
         TableTuple retval = m_match;
+        if (!m_match.isNullTuple()) m_currentKey = &m_keyIter.key;
         m_match.move(NULL);
         return retval;
     }
+    bool supportsCurrentKey() const { return true; }
+    void currentKey(TableTuple *keyTuple) const {
+        assert(m_currentKey != NULL);
+        m_currentKey->toTuple(keyTuple);
+    }
     size_t getSize() const { return m_entries.size(); }
     std::string getTypeName() const { return "HashTableUniqueIndex"; };
 
@@ -141,26 +147,20 @@ protected:
     HashTableUniqueIndex(const TableIndexScheme &scheme) :
         TableIndex(scheme),
         m_entries(100, KeyHasher(m_keySchema), KeyEqualityChecker(m_keySchema)),
+        m_currentKey(NULL),
         m_eq(m_keySchema)
     {
         m_match = TableTuple(m_tupleSchema);
-        m_entries.max_load_factor(.5f);
-        //m_entries.rehash(200000);
     }
 
     inline bool addEntryPrivate(const TableTuple *tuple, const KeyType &key) {
         ++m_inserts;
-        std::pair<typename MapType::iterator, bool> retval = m_entries.insert(std::pair<KeyType, const void*>(key, tuple->address()));
-        return retval.second;
+        return m_entries.insert(key, tuple->address());
     }
 
     inline bool deleteEntryPrivate(const KeyType &key) {
         ++m_deletes;
-        typename MapType::iterator mapiter = m_entries.find(key);
-        if (mapiter == m_entries.end())
-            return false; //key not exists
-        m_entries.erase(mapiter);
-        return true; //deleted
+        return m_entries.erase(key);
     }
 
     MapType m_entries;
@@ -168,11 +168,12 @@ protected:
     KeyType m_tmp2;
 
     // iteration stuff
-    typename MapType::const_iterator m_keyIter;
+    typename MapType::Cursor m_keyIter;
     TableTuple m_match;
+    const KeyType *m_currentKey;
 
     // comparison stuff
-    typename MapType::key_equal m_eq;
+    KeyEqualityChecker m_eq;
 };
 
 }
@@ -0,0 +1,337 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef OPENHASHTABLE_H_
+#define OPENHASHTABLE_H_
+
+#include <cassert>
+#include <cstddef>
+#include <cstdlib>
+#include <new>
+#include <stdint.h>
+
+namespace voltdb {
+
+/**
+ * A hash table that stores its keys and values inline in one array of
+ * slots and resolves collisions with Robin Hood linear probing: an entry
+ * that is further away from its home slot takes the place of one that is
+ * closer to its own, so that the probe sequences stay short even when the
+ * table is 3/4 full. Deletes shift the following entries back instead of
+ * leaving tombstones.
+ *
+ * When the table needs to grow, the new array is allocated right away but
+ * the entries are moved over a few at a time by later inserts and
+ * deletes, so no single operation has to rehash the whole table. Lookups
+ * check both arrays until the old one is empty.
+ *
+ * If Unique is false the table may hold many entries with the same key,
+ * and find()/next() visit each of them.
+ *
+ * Any insert or erase invalidates every Cursor.
+ */
+template<typename Key, typename Data, class KeyHasher, class KeyEqualityChecker, bool Unique>
+class OpenHashTable
+{
+    struct Slot {
+        // Distance from the home slot plus one, or zero if the slot is empty
+        uint32_t dist;
+        uint32_t hash;
+        Key key;
+        Data data;
+    };
+
+    struct Table {
+        Slot *slots;
+        uint32_t mask;
+        size_t count;
+
+        Table() : slots(NULL), mask(0), count(0) {}
+        inline size_t capacity() const { return static_cast<size_t>(mask) + 1; }
+    };
+
+    enum {
+        // the number of old slots to move into the new array per modification
+        MIGRATE_STEP = 8
+    };
+
+public:
+
+    /**
+     * The position of an entry found by find() or next()
+     */
+    struct Cursor {
+        Key key;
+        Data data;
+    private:
+        friend class OpenHashTable;
+        uint32_t hash;
+        uint32_t slot;
+        uint32_t dist;
+        int table;
+    };
+
+    OpenHashTable(size_t initialCapacity, const KeyHasher &hasher, const KeyEqualityChecker &eq) :
+        m_hasher(hasher), m_eq(eq), m_size(0), m_migratePos(0)
+    {
+        size_t capacity = 16;
+        while (capacity < initialCapacity) capacity <<= 1;
+        allocate(m_tables[0], capacity);
+    }
+
+    ~OpenHashTable() {
+        release(m_tables[0]);
+        release(m_tables[1]);
+    }
+
+    inline size_t size() const { return m_size; }
+
+    inline float load_factor() const {
+        return static_cast<float>(m_size) / static_cast<float>(m_tables[0].capacity());
+    }
+
+    /**
+     * Position the cursor at the first entry with the given key.
+     * @return false if there isn't one
+     */
+    bool find(const Key &key, Cursor &cursor) const {
+        const uint32_t hash = hashOf(key);
+        for (int ii = 0; ii < 2; ii++) {
+            const Table &table = m_tables[ii];
+            if (table.slots == NULL) continue;
+            if (findIn(table, key, hash, hash & table.mask, 1, cursor)) {
+                cursor.table = ii;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the cursor to the next entry with the same key.
+     * @return false if there aren't any more
+     */
+    bool next(Cursor &cursor) const {
+        if (Unique) return false;
+        const Table &table = m_tables[cursor.table];
+        if (findIn(table, cursor.key, cursor.hash, (cursor.slot + 1) & table.mask, cursor.dist + 1, cursor))
+            return true;
+        if (cursor.table == 0 && m_tables[1].slots != NULL) {
+            const Table &old = m_tables[1];
+            if (findIn(old, cursor.key, cursor.hash, cursor.hash & old.mask, 1, cursor)) {
+                cursor.table = 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add an entry.
+     * @return false if the table is unique and already has the key
+     */
+    bool insert(const Key &key, const Data &data) {
+        migrateStep();
+        if (Unique) {
+            Cursor cursor;
+            if (find(key, cursor)) return false;
+        }
+
+        Table &table = m_tables[0];
+        if ((table.count + 1) * 4 > table.capacity() * 3) {
+            grow();
+        }
+
+        Slot entry;
+        entry.dist = 1;
+        entry.hash = hashOf(key);
+        entry.key = key;
+        entry.data = data;
+        insertInto(m_tables[0], entry);
+        ++m_size;
+        return true;
+    }
+
+    /**
+     * Remove the entry with the given key (and, if the table isn't
+     * unique, with the given data).
+     * @return false if there wasn't one
+     */
+    bool erase(const Key &key, const Data &data) {
+        migrateStep();
+        Cursor cursor;
+        bool found = find(key, cursor);
+        while (found && !Unique && cursor.data != data) {
+            found = next(cursor);
+        }
+        if (!found) return false;
+        eraseAt(m_tables[cursor.table], cursor.slot);
+        --m_size;
+        return true;
+    }
+
+    /**
+     * Remove the entry with the given key from a unique table.
+     * @return false if there wasn't one
+     */
+    bool erase(const Key &key) {
+        assert(Unique);
+        return erase(key, Data());
+    }
+
+private:
+    // Disallow copying
+    OpenHashTable(const OpenHashTable&);
+    OpenHashTable& operator=(const OpenHashTable&);
+
+    /**
+     * The hashers are not great at spreading out the low bits, which is
+     * all that we use to pick the home slot, so mix them up some more
+     */
+    inline uint32_t hashOf(const Key &key) const {
+        uint64_t h = static_cast<uint64_t>(m_hasher(key));
+        h ^= h >> 33;
+        h *= 0xff51afd7ed558ccdULL;
+        h ^= h >> 33;
+        h *= 0xc4ceb9fe1a85ec53ULL;
+        h ^= h >> 33;
+        return static_cast<uint32_t>(h);
+    }
+
+    inline bool findIn(const Table &table, const Key &key, uint32_t hash,
+                       uint32_t slot, uint32_t dist, Cursor &cursor) const {
+        while (true) {
+            const Slot &s = table.slots[slot];
+            // Every entry for this key would have displaced anything that
+            // is closer to its home than we are now (or is empty)
+            if (s.dist < dist) return false;
+            if (s.hash == hash && m_eq(s.key, key)) {
+                cursor.key = s.key;
+                cursor.data = s.data;
+                cursor.hash = hash;
+                cursor.slot = slot;
+                cursor.dist = dist;
+                return true;
+            }
+            slot = (slot + 1) & table.mask;
+            ++dist;
+        }
+    }
+
+    inline void insertInto(Table &table, Slot entry) {
+        assert(table.count < table.capacity());
+        uint32_t slot = entry.hash & table.mask;
+        while (true) {
+            Slot &s = table.slots[slot];
+            if (s.dist == 0) {
+                s = entry;
+                break;
+            }
+            if (s.dist < entry.dist) {
+                Slot tmp = s;
+                s = entry;
+                entry = tmp;
+            }
+            slot = (slot + 1) & table.mask;
+            ++entry.dist;
+        }
+        ++table.count;
+    }
+
+    inline void eraseAt(Table &table, uint32_t slot) {
+        uint32_t following = (slot + 1) & table.mask;
+        while (table.slots[following].dist > 1) {
+            table.slots[slot] = table.slots[following];
+            --table.slots[slot].dist;
+            slot = following;
+            following = (following + 1) & table.mask;
+        }
+        table.slots[slot].dist = 0;
+        --table.count;
+    }
+
+    /**
+     * Start moving everything into an array that's twice as big
+     */
+    void grow() {
+        // Only one resize at a time. This can only happen if the table
+        // grows again really fast after the last one.
+        while (m_tables[1].slots != NULL) migrateStep();
+
+        m_tables[1] = m_tables[0];
+        allocate(m_tables[0], m_tables[1].capacity() * 2);
+        m_migratePos = 0;
+    }
+
+    /**
+     * Move a few more entries from the old array into the new one. We pull
+     * each one out through eraseAt() so that the rest of the old array
+     * stays a valid table that lookups can use.
+     */
+    void migrateStep() {
+        Table &old = m_tables[1];
+        if (old.slots == NULL) return;
+        for (int ii = 0; ii < MIGRATE_STEP; ii++) {
+            Slot &s = old.slots[m_migratePos];
+            if (s.dist == 0) {
+                m_migratePos = (m_migratePos + 1) & old.mask;
+                continue;
+            }
+            Slot entry = s;
+            entry.dist = 1;
+            eraseAt(old, m_migratePos);
+            insertInto(m_tables[0], entry);
+            // Don't make lookups keep checking an empty array
+            if (old.count == 0) {
+                release(old);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The keys and values are plain old data, and a zeroed slot is an
+     * empty one. A big calloc() gets its zeroed pages from the OS as they
+     * are touched, so the insert that triggers a resize doesn't pay for
+     * clearing the whole new array.
+     */
+    static void allocate(Table &table, size_t capacity) {
+        table.slots = static_cast<Slot*>(::calloc(capacity, sizeof(Slot)));
+        if (table.slots == NULL) throw std::bad_alloc();
+        table.mask = static_cast<uint32_t>(capacity - 1);
+        table.count = 0;
+    }
+
+    static void release(Table &table) {
+        ::free(table.slots);
+        table.slots = NULL;
+        table.mask = 0;
+        table.count = 0;
+    }
+
+    KeyHasher m_hasher;
+    KeyEqualityChecker m_eq;
+    // [0] is where new entries go, [1] is the array that we are
+    // moving out of, if we are in the middle of growing
+    Table m_tables[2];
+    size_t m_size;
+    uint32_t m_migratePos;
+};
+
+}
+
+#endif // OPENHASHTABLE_H_
@@ -47,6 +47,7 @@
 #define INDEXKEY_H
 
 #include "common/ValuePeeker.hpp"
+#include "common/ValueFactory.hpp"
 #include "common/tabletuple.h"
 
 #include "boost/array.hpp"
@@ -256,6 +257,43 @@ public:
         }
     }
 
+    /*
+     * Inverse of setFromKey. Unpack the key's values into a tuple that uses the key schema.
+     */
+    inline void toTuple(TableTuple *keyTuple) const {
+        const TupleSchema *keySchema = keyTuple->getSchema();
+        const int columnCount = keySchema->columnCount();
+        int keyOffset = 0;
+        int intraKeyOffset = sizeof(uint64_t) - 1;
+        for (int ii = 0; ii < columnCount; ii++) {
+            switch(keySchema->columnType(ii)) {
+            case voltdb::VALUE_TYPE_BIGINT: {
+                const uint64_t keyValue = extractKeyValue<uint64_t>(keyOffset, intraKeyOffset);
+                keyTuple->setNValue(ii, ValueFactory::getBigIntValue(convertUnsignedValueToSignedValue< int64_t, INT64_MAX>(keyValue)));
+                break;
+            }
+            case voltdb::VALUE_TYPE_INTEGER: {
+                const uint64_t keyValue = extractKeyValue<uint32_t>(keyOffset, intraKeyOffset);
+                keyTuple->setNValue(ii, ValueFactory::getIntegerValue(convertUnsignedValueToSignedValue< int32_t, INT32_MAX>(keyValue)));
+                break;
+            }
+            case voltdb::VALUE_TYPE_SMALLINT: {
+                const uint64_t keyValue = extractKeyValue<uint16_t>(keyOffset, intraKeyOffset);
+                keyTuple->setNValue(ii, ValueFactory::getSmallIntValue(convertUnsignedValueToSignedValue< int16_t, INT16_MAX>(keyValue)));
+                break;
+            }
+            case voltdb::VALUE_TYPE_TINYINT: {
+                const uint64_t keyValue = extractKeyValue<uint8_t>(keyOffset, intraKeyOffset);
+                keyTuple->setNValue(ii, ValueFactory::getTinyIntValue(convertUnsignedValueToSignedValue< int8_t, INT8_MAX>(keyValue)));
+                break;
+            }
+            default:
+                throwFatalException("We currently only support a specific set of column index sizes...");
+                break;
+            }
+        }
+    }
+
     inline void setFromTuple(const TableTuple *tuple, const int *indices, const TupleSchema *keySchema) {
         ::memset(data, 0, keySize * sizeof(uint64_t));
         const int columnCount = keySchema->columnCount();
@@ -380,6 +418,13 @@ public:
         ::memcpy(data, tuple->m_data + TUPLE_HEADER_SIZE, tuple->getSchema()->tupleLength());
     }
 
+    /*
+     * Inverse of setFromKey. The key is already laid out like a tuple in the key schema.
+     */
+    inline void toTuple(TableTuple *keyTuple) const {
+        ::memcpy(keyTuple->m_data + TUPLE_HEADER_SIZE, data, keyTuple->getSchema()->tupleLength());
+    }
+
     inline void setFromTuple(const TableTuple *tuple, const int *indices, const TupleSchema *keySchema) {
         TableTuple keyTuple(keySchema);
         keyTuple.moveNoHeader(reinterpret_cast<void*>(data));
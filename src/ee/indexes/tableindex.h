@@ -251,6 +251,26 @@ public:
         throwFatalException("Invoked TableIndex virtual method nextValue which has no implementation");
     };
 
+    /**
+     * @return true if this index can hand back the key of the entries
+     * that it returns through currentKey().
+     */
+    virtual bool supportsCurrentKey() const
+    {
+        return false;
+    }
+
+    /**
+     * copies the key of the entry that was last returned by nextValue()
+     * or nextValueAtKey() into the given tuple, which must use this
+     * index's key schema. This lets a scan read the indexed columns
+     * without having to touch the tuple in the table.
+     */
+    virtual void currentKey(TableTuple *keyTuple) const
+    {
+        throwFatalException("Invoked TableIndex virtual method currentKey which has no implementation");
+    };
+
     /**
      * @return true if lhs is different from rhs in this index, which
      * means replaceEntry has to follow.
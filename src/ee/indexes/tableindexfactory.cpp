@@ -53,6 +53,8 @@
 #include "indexes/arrayuniqueindex.h"
 #include "indexes/BinaryTreeUniqueIndex.h"
 #include "indexes/BinaryTreeMultiMapIndex.h"
+#include "indexes/BPlusTreeUniqueIndex.h"
+#include "indexes/BPlusTreeMultiMapIndex.h"
 #include "indexes/HashTableUniqueIndex.h"
 #include "indexes/HashTableMultiMapIndex.h"
 
@@ -114,6 +116,34 @@ TableIndex *TableIndexFactory::getInstance(const TableIndexScheme &scheme) {
         }
     }
 
+    if ((ints_only) && (type == BTREE_INDEX) && (unique)) {
+        if (keySize <= sizeof(uint64_t)) {
+            return new BPlusTreeUniqueIndex<IntsKey<1>, IntsComparator<1>, IntsEqualityChecker<1> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 2) {
+            return new BPlusTreeUniqueIndex<IntsKey<2>, IntsComparator<2>, IntsEqualityChecker<2> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 3) {
+            return new BPlusTreeUniqueIndex<IntsKey<3>, IntsComparator<3>, IntsEqualityChecker<3> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 4) {
+            return new BPlusTreeUniqueIndex<IntsKey<4>, IntsComparator<4>, IntsEqualityChecker<4> >(schemeCopy);
+        } else {
+            throwFatalException("We currently only support btree index on unique integer keys of size 32 bytes or smaller...");
+        }
+    }
+
+    if ((ints_only) && (type == BTREE_INDEX) && (!unique)) {
+        if (keySize <= sizeof(uint64_t)) {
+            return new BPlusTreeMultiMapIndex<IntsKey<1>, IntsComparator<1>, IntsEqualityChecker<1> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 2) {
+            return new BPlusTreeMultiMapIndex<IntsKey<2>, IntsComparator<2>, IntsEqualityChecker<2> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 3) {
+            return new BPlusTreeMultiMapIndex<IntsKey<3>, IntsComparator<3>, IntsEqualityChecker<3> >(schemeCopy);
+        } else if (keySize <= sizeof(int64_t) * 4) {
+            return new BPlusTreeMultiMapIndex<IntsKey<4>, IntsComparator<4>, IntsEqualityChecker<4> >(schemeCopy);
+        } else {
+            throwFatalException( "We currently only support btree index on non-unique integer keys of size 32 bytes or smaller..." );
+        }
+    }
+
     if ((ints_only) && (type == HASH_TABLE_INDEX) && (unique)) {
         if (keySize <= sizeof(uint64_t)) {
             return new HashTableUniqueIndex<IntsKey<1>, IntsHasher<1>, IntsEqualityChecker<1> >(schemeCopy);
@@ -142,6 +172,62 @@ TableIndex *TableIndexFactory::getInstance(const TableIndexScheme &scheme) {
         }
     }
 
+    if ((type == BTREE_INDEX) && (unique)) {
+        if (keySize <= 4) {
+            return new BPlusTreeUniqueIndex<GenericKey<4>, GenericComparator<4>, GenericEqualityChecker<4> >(schemeCopy);
+        } else if (keySize <= 8) {
+            return new BPlusTreeUniqueIndex<GenericKey<8>, GenericComparator<8>, GenericEqualityChecker<8> >(schemeCopy);
+        } else if (keySize <= 12) {
+            return new BPlusTreeUniqueIndex<GenericKey<12>, GenericComparator<12>, GenericEqualityChecker<12> >(schemeCopy);
+        } else if (keySize <= 16) {
+            return new BPlusTreeUniqueIndex<GenericKey<16>, GenericComparator<16>, GenericEqualityChecker<16> >(schemeCopy);
+        } else if (keySize <= 24) {
+            return new BPlusTreeUniqueIndex<GenericKey<24>, GenericComparator<24>, GenericEqualityChecker<24> >(schemeCopy);
+        } else if (keySize <= 32) {
+            return new BPlusTreeUniqueIndex<GenericKey<32>, GenericComparator<32>, GenericEqualityChecker<32> >(schemeCopy);
+        } else if (keySize <= 48) {
+            return new BPlusTreeUniqueIndex<GenericKey<48>, GenericComparator<48>, GenericEqualityChecker<48> >(schemeCopy);
+        } else if (keySize <= 64) {
+            return new BPlusTreeUniqueIndex<GenericKey<64>, GenericComparator<64>, GenericEqualityChecker<64> >(schemeCopy);
+        } else if (keySize <= 96) {
+            return new BPlusTreeUniqueIndex<GenericKey<96>, GenericComparator<96>, GenericEqualityChecker<96> >(schemeCopy);
+        } else if (keySize <= 128) {
+            return new BPlusTreeUniqueIndex<GenericKey<128>, GenericComparator<128>, GenericEqualityChecker<128> >(schemeCopy);
+        } else if (keySize <= 256) {
+            return new BPlusTreeUniqueIndex<GenericKey<256>, GenericComparator<256>, GenericEqualityChecker<256> >(schemeCopy);
+        } else {
+            throwFatalException( "We currently only support generic column indexes with keys 256 bytes or less..." );
+        }
+    }
+
+    if ((type == BTREE_INDEX) && (!unique)) {
+        if (keySize <= 4) {
+            return new BPlusTreeMultiMapIndex<GenericKey<4>, GenericComparator<4>, GenericEqualityChecker<4> >(schemeCopy);
+        } else if (keySize <= 8) {
+            return new BPlusTreeMultiMapIndex<GenericKey<8>, GenericComparator<8>, GenericEqualityChecker<8> >(schemeCopy);
+        } else if (keySize <= 12) {
+            return new BPlusTreeMultiMapIndex<GenericKey<12>, GenericComparator<12>, GenericEqualityChecker<12> >(schemeCopy);
+        } else if (keySize <= 16) {
+            return new BPlusTreeMultiMapIndex<GenericKey<16>, GenericComparator<16>, GenericEqualityChecker<16> >(schemeCopy);
+        } else if (keySize <= 24) {
+            return new BPlusTreeMultiMapIndex<GenericKey<24>, GenericComparator<24>, GenericEqualityChecker<24> >(schemeCopy);
+        } else if (keySize <= 32) {
+            return new BPlusTreeMultiMapIndex<GenericKey<32>, GenericComparator<32>, GenericEqualityChecker<32> >(schemeCopy);
+        } else if (keySize <= 48) {
+            return new BPlusTreeMultiMapIndex<GenericKey<48>, GenericComparator<48>, GenericEqualityChecker<48> >(schemeCopy);
+        } else if (keySize <= 64) {
+            return new BPlusTreeMultiMapIndex<GenericKey<64>, GenericComparator<64>, GenericEqualityChecker<64> >(schemeCopy);
+        } else if (keySize <= 96) {
+            return new BPlusTreeMultiMapIndex<GenericKey<96>, GenericComparator<96>, GenericEqualityChecker<96> >(schemeCopy);
+        } else if (keySize <= 128) {
+            return new BPlusTreeMultiMapIndex<GenericKey<128>, GenericComparator<128>, GenericEqualityChecker<128> >(schemeCopy);
+        } else if (keySize <= 256) {
+            return new BPlusTreeMultiMapIndex<GenericKey<256>, GenericComparator<256>, GenericEqualityChecker<256> >(schemeCopy);
+        } else {
+            throwFatalException( "We currently only support generic column indexes with keys 256 bytes or less..." );
+        }
+    }
+
     if (/*(type == BALANCED_TREE_INDEX) &&*/ (unique)) {
         if (keySize <= 4) {
             return new BinaryTreeUniqueIndex<GenericKey<4>, GenericComparator<4>, GenericEqualityChecker<4> >(schemeCopy);
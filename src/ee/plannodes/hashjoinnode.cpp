@@ -0,0 +1,139 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "hashjoinnode.h"
+
+#include <stdexcept>
+#include "expressions/abstractexpression.h"
+
+using namespace json_spirit;
+using namespace std;
+using namespace voltdb;
+
+HashJoinPlanNode::HashJoinPlanNode(CatalogId id)
+  : NestLoopPlanNode(id)
+{
+    // Do nothing
+}
+
+HashJoinPlanNode::HashJoinPlanNode()
+  : NestLoopPlanNode()
+{
+    // Do nothing
+}
+
+HashJoinPlanNode::~HashJoinPlanNode()
+{
+    for (int ii = 0; ii < m_outerKeys.size(); ii++) {
+        delete m_outerKeys[ii];
+    }
+    for (int ii = 0; ii < m_innerKeys.size(); ii++) {
+        delete m_innerKeys[ii];
+    }
+}
+
+PlanNodeType
+HashJoinPlanNode::getPlanNodeType() const
+{
+    return PLAN_NODE_TYPE_HASHJOIN;
+}
+
+const vector<AbstractExpression*>&
+HashJoinPlanNode::getOuterKeys() const
+{
+    return m_outerKeys;
+}
+
+const vector<AbstractExpression*>&
+HashJoinPlanNode::getInnerKeys() const
+{
+    return m_innerKeys;
+}
+
+string HashJoinPlanNode::debugInfo(const string& spacer) const
+{
+    ostringstream buffer;
+    buffer << NestLoopPlanNode::debugInfo(spacer);
+    buffer << spacer << "JoinKeys[" << m_outerKeys.size() << "]\n";
+    for (int ii = 0; ii < m_outerKeys.size(); ii++) {
+        buffer << spacer << "  [" << ii << "] Outer\n";
+        buffer << m_outerKeys[ii]->debug(spacer + "    ");
+        buffer << spacer << "  [" << ii << "] Inner\n";
+        buffer << m_innerKeys[ii]->debug(spacer + "    ");
+    }
+    return (buffer.str());
+}
+
+void
+HashJoinPlanNode::loadFromJSONObject(Object& obj,
+                                     const catalog::Database* catalog_db)
+{
+    NestLoopPlanNode::loadFromJSONObject(obj, catalog_db);
+
+    Value outerKeysValue = find_value(obj, "OUTER_KEYS");
+    Value innerKeysValue = find_value(obj, "INNER_KEYS");
+    if (outerKeysValue == Value::null || innerKeysValue == Value::null)
+    {
+        throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
+                                      "HashJoinPlanNode::loadFromJSONObject:"
+                                      " Couldn't find OUTER_KEYS or INNER_KEYS value");
+    }
+    Array outerKeysArray = outerKeysValue.get_array();
+    for (int ii = 0; ii < outerKeysArray.size(); ii++) {
+        Object keyObject = outerKeysArray[ii].get_obj();
+        m_outerKeys.push_back(AbstractExpression::buildExpressionTree(keyObject));
+    }
+    Array innerKeysArray = innerKeysValue.get_array();
+    for (int ii = 0; ii < innerKeysArray.size(); ii++) {
+        Object keyObject = innerKeysArray[ii].get_obj();
+        m_innerKeys.push_back(AbstractExpression::buildExpressionTree(keyObject));
+    }
+    if (m_outerKeys.empty() || m_outerKeys.size() != m_innerKeys.size())
+    {
+        throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
+                                      "HashJoinPlanNode::loadFromJSONObject:"
+                                      " Mismatched OUTER_KEYS and INNER_KEYS");
+    }
+}
@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREHASHJOINNODE_H
+#define HSTOREHASHJOINNODE_H
+
+#include "nestloopnode.h"
+#include "json_spirit/json_spirit.h"
+
+namespace voltdb
+{
+
+class AbstractExpression;
+
+/**
+ * An equi-join that builds a hash table on the join keys of the inner table
+ * and probes it with the join keys of each tuple in the outer table. The
+ * predicate from AbstractJoinPlanNode is still checked for every match.
+ */
+class HashJoinPlanNode : public NestLoopPlanNode
+{
+public:
+    HashJoinPlanNode(CatalogId id);
+    HashJoinPlanNode();
+    ~HashJoinPlanNode();
+
+    virtual PlanNodeType getPlanNodeType() const;
+
+    const std::vector<AbstractExpression*>& getOuterKeys() const;
+    const std::vector<AbstractExpression*>& getInnerKeys() const;
+
+    virtual std::string debugInfo(const std::string& spacer) const;
+
+protected:
+    friend AbstractPlanNode*
+        AbstractPlanNode::fromJSONObject(json_spirit::Object& obj,
+                                         const catalog::Database *catalog_db);
+
+    virtual void loadFromJSONObject(json_spirit::Object& obj,
+                                    const catalog::Database *catalog_db);
+
+    //
+    // The expressions that are evaluated on the outer and inner tuples to
+    // get their join key. They are matched up by their position.
+    //
+    std::vector<AbstractExpression*> m_outerKeys;
+    std::vector<AbstractExpression*> m_innerKeys;
+};
+
+}
+
+#endif
@@ -75,6 +75,13 @@ bool IndexScanPlanNode::getKeyIterate() const {
     return (this->key_iterate);
 }
 
+void IndexScanPlanNode::setIndexOnly(bool val) {
+    this->index_only = val;
+}
+bool IndexScanPlanNode::isIndexOnly() const {
+    return (this->index_only);
+}
+
 void IndexScanPlanNode::setLookupType(IndexLookupType lookup_type) {
     this->lookup_type = lookup_type;
 }
@@ -124,6 +131,7 @@ std::string IndexScanPlanNode::debugInfo(const std::string &spacer) const {
     buffer << this->AbstractScanPlanNode::debugInfo(spacer);
     buffer << spacer << "TargetIndexName[" << this->target_index_name << "]\n";
     buffer << spacer << "EnableKeyIteration[" << std::boolalpha << this->key_iterate << "]\n";
+    buffer << spacer << "IndexOnly[" << std::boolalpha << this->index_only << "]\n";
     buffer << spacer << "IndexLookupType[" << this->lookup_type << "]\n";
     buffer << spacer << "SortDirection[" << this->sort_direction << "]\n";
 
@@ -159,6 +167,13 @@ void IndexScanPlanNode::loadFromJSONObject(json_spirit::Object &obj, const catal
     }
     key_iterate = keyIterateValue.get_bool();
 
+    json_spirit::Value indexOnlyValue = json_spirit::find_value( obj, "INDEX_ONLY");
+    if (indexOnlyValue == json_spirit::Value::null) {
+        index_only = false;
+    } else {
+        index_only = indexOnlyValue.get_bool();
+    }
+
     json_spirit::Value lookupTypeValue = json_spirit::find_value( obj, "LOOKUP_TYPE");
     if (lookupTypeValue == json_spirit::Value::null) {
         throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
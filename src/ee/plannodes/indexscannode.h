@@ -61,12 +61,14 @@ class IndexScanPlanNode : public AbstractScanPlanNode {
     public:
         IndexScanPlanNode(CatalogId id) : AbstractScanPlanNode(id) {
             this->key_iterate = false;
+            this->index_only = false;
             this->lookup_type = INDEX_LOOKUP_TYPE_EQ;
             this->sort_direction = SORT_DIRECTION_TYPE_INVALID;
             this->end_expression = NULL;
         }
         IndexScanPlanNode() : AbstractScanPlanNode() {
             this->key_iterate = false;
+            this->index_only = false;
             this->lookup_type = INDEX_LOOKUP_TYPE_EQ;
             this->sort_direction = SORT_DIRECTION_TYPE_INVALID;
             this->end_expression = NULL;
@@ -77,6 +79,9 @@ class IndexScanPlanNode : public AbstractScanPlanNode {
         void setKeyIterate(bool val);
         bool getKeyIterate() const;
 
+        void setIndexOnly(bool val);
+        bool isIndexOnly() const;
+
         void setLookupType(IndexLookupType val);
         IndexLookupType getLookupType() const;
 
@@ -115,6 +120,11 @@ class IndexScanPlanNode : public AbstractScanPlanNode {
         //
         bool key_iterate;
         //
+        // Every column that this scan reads is in the index key, so the
+        // values can come from the key instead of the table's tuple
+        //
+        bool index_only;
+        //
         // Index Lookup Type
         //
         IndexLookupType lookup_type;
@@ -59,14 +59,37 @@ CopyOnWriteContext::CopyOnWriteContext(Table *table, TupleSerializer *serializer
              m_iterator(new CopyOnWriteIterator(table)),
              m_maxTupleLength(serializer->getMaxSerializedTupleSize(table->schema())),
              m_tuple(table->schema()), m_finishedTableScan(false), m_partitionId(partitionId),
-             m_tuplesSerialized(0) {
-    for (int ii = 0; ii < table->m_data.size(); ii++) {
+             m_tuplesSerialized(0), m_tagBlocks(false), m_backedUpPosition(0), m_nextUnserializedBlock(0) {
+    initializeBlocks();
+}
+
+CopyOnWriteContext::CopyOnWriteContext(Table *table, TupleSerializer *serializer, int32_t partitionId,
+                                       const std::vector<bool> *modifiedBlocks) :
+             m_table(table),
+             m_backedUpTuples(TableFactory::getCopiedTempTable(table->databaseId(), "COW of " + table->name(), table, NULL)),
+             m_serializer(serializer), m_pool(2097152, 320), m_blocks(m_table->m_data.size()),
+             m_maxTupleLength(serializer->getMaxSerializedTupleSize(table->schema())),
+             m_tuple(table->schema()), m_finishedTableScan(false), m_partitionId(partitionId),
+             m_tuplesSerialized(0), m_tagBlocks(true), m_includedBlocks(m_table->m_data.size(), true),
+             m_serializedBlocks(m_table->m_data.size(), false), m_backedUpPosition(0), m_nextUnserializedBlock(0) {
+    if (modifiedBlocks != NULL) {
+        // Blocks that were allocated since the modified blocks were last reset are always included
+        for (int ii = 0; ii < m_includedBlocks.size() && ii < modifiedBlocks->size(); ii++) {
+            m_includedBlocks[ii] = (*modifiedBlocks)[ii];
+        }
+    }
+    m_iterator.reset(new CopyOnWriteIterator(table, &m_includedBlocks));
+    initializeBlocks();
+}
+
+void CopyOnWriteContext::initializeBlocks() {
+    for (int ii = 0; ii < m_table->m_data.size(); ii++) {
 #ifdef MEMCHECK
         BlockPair p;
-        p.pair =  std::pair<char*, int>(table->m_data[ii], ii);
-        p.tupleLength = table->tempTuple().tupleLength();
+        p.pair =  std::pair<char*, int>(m_table->m_data[ii], ii);
+        p.tupleLength = m_table->tempTuple().tupleLength();
 #else
-        const BlockPair p(table->m_data[ii], ii);
+        const BlockPair p(m_table->m_data[ii], ii);
 #endif
         m_blocks[ii] = p;
     }
@@ -86,6 +109,9 @@ CopyOnWriteContext::CopyOnWriteContext(Table *table, TupleSerializer *serializer
 }
 
 bool CopyOnWriteContext::serializeMore(ReferenceSerializeOutput *out) {
+    if (m_tagBlocks) {
+        return serializeMoreBlocks(out);
+    }
     boost::crc_32_type crc;
     boost::crc_32_type partitionIdCRC;
     out->writeInt(m_partitionId);
@@ -141,6 +167,94 @@ bool CopyOnWriteContext::serializeMore(ReferenceSerializeOutput *out) {
     return true;
 }
 
+/*
+ * Each chunk is [partition id][partition id CRC][CRC][tuples][block index][row count] and only
+ * holds tuples from one block. A block can be spread across multiple chunks, i.e., the tuples
+ * that were found during the table scan and then the ones that were backed up. A block that is
+ * in the snapshot but doesn't have any tuples left still gets an empty chunk so that a restore
+ * knows that it replaces that block from the snapshots that came before this one.
+ */
+bool CopyOnWriteContext::serializeMoreBlocks(ReferenceSerializeOutput *out) {
+    boost::crc_32_type crc;
+    boost::crc_32_type partitionIdCRC;
+    out->writeInt(m_partitionId);
+    partitionIdCRC.process_bytes(out->data() + out->position() - 4, 4);
+    out->writeInt(partitionIdCRC.checksum());
+    const std::size_t crcPosition = out->reserveBytes(4);//For CRC
+    int rowsSerialized = 0;
+    int32_t blockIndex = -1;
+
+    TableTuple tuple(m_table->schema());
+    if (out->remaining() < (m_maxTupleLength + (2 * sizeof(int32_t)))) {
+        throwFatalException("Serialize more should never be called "
+                "a 2nd time after return indicating there is no more data");
+    }
+
+    while (out->remaining() >= (m_maxTupleLength + (2 * sizeof(int32_t)))) {
+        if (!m_finishedTableScan) {
+            CopyOnWriteIterator *iter = static_cast<CopyOnWriteIterator*>(m_iterator.get());
+            const bool hadMore = (blockIndex == -1) ? iter->next(tuple) : iter->nextInBlock(tuple);
+            if (!hadMore) {
+                if (!iter->isFinished()) {
+                    // The next block goes in the next chunk
+                    break;
+                }
+                /**
+                 * After this finishes scanning the persistent table switch to scanning
+                 * the temp table with the tuples that were backed up
+                 */
+                m_finishedTableScan = true;
+                m_iterator.reset(new TableIterator(m_backedUpTuples.get()));
+                continue;
+            }
+            if (blockIndex == -1) {
+                blockIndex = iter->blockIndex();
+            }
+        } else if (m_backedUpPosition < m_backedUpBlocks.size()) {
+            const int32_t backedUpBlock = m_backedUpBlocks[m_backedUpPosition];
+            if (blockIndex != -1 && backedUpBlock != blockIndex) {
+                break;
+            }
+            const bool hadMore = m_iterator->next(tuple);
+            assert(hadMore);
+            if (!hadMore) {
+                throwFatalException("Ran out of backed up tuples for COW of %s", m_table->name().c_str());
+            }
+            m_backedUpPosition++;
+            blockIndex = backedUpBlock;
+        } else {
+            if (blockIndex == -1 && hasUnserializedBlocks()) {
+                blockIndex = static_cast<int32_t>(m_nextUnserializedBlock);
+            }
+            break;
+        }
+
+        const std::size_t tupleStartPosition = out->position();
+        m_serializer->serializeTo( tuple, out);
+        const std::size_t tupleEndPosition = out->position();
+        crc.process_block(out->data() + tupleStartPosition, out->data() + tupleEndPosition);
+        m_tuplesSerialized++;
+        rowsSerialized++;
+    }
+
+    if (blockIndex != -1) {
+        m_serializedBlocks[blockIndex] = true;
+    }
+    out->writeInt(blockIndex);
+    out->writeInt(rowsSerialized);
+    crc.process_bytes(out->data() + out->position() - 8, 8);
+    out->writeIntAt(crcPosition, crc.checksum());
+    return !m_finishedTableScan || m_backedUpPosition < m_backedUpBlocks.size() || hasUnserializedBlocks();
+}
+
+bool CopyOnWriteContext::hasUnserializedBlocks() {
+    while (m_nextUnserializedBlock < m_includedBlocks.size() &&
+           (!m_includedBlocks[m_nextUnserializedBlock] || m_serializedBlocks[m_nextUnserializedBlock])) {
+        m_nextUnserializedBlock++;
+    }
+    return m_nextUnserializedBlock < m_includedBlocks.size();
+}
+
 void CopyOnWriteContext::markTupleDirty(TableTuple tuple, bool newTuple) {
     /**
      * If this an update or a delete of a tuple that is already dirty then no further action is
@@ -203,8 +317,11 @@ void CopyOnWriteContext::markTupleDirty(TableTuple tuple, bool newTuple) {
         /**
          * Don't back up a newly introduced tuple, just mark it as dirty.
          */
-        if (!newTuple) {
+        if (!newTuple && (!m_tagBlocks || m_includedBlocks[blockIndex])) {
             m_backedUpTuples->insertTupleNonVirtualWithDeepCopy(tuple, &m_pool);
+            if (m_tagBlocks) {
+                m_backedUpBlocks.push_back(blockIndex);
+            }
         }
     } else {
         tuple.setDirtyFalse();
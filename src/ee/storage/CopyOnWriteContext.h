@@ -50,6 +50,13 @@ public:
      */
     CopyOnWriteContext(Table *m_table, TupleSerializer *m_serializer, int32_t partitionId);
 
+    /**
+     * Construct a copy on write context that tags every chunk with the tuple block that it came from.
+     * If modifiedBlocks is not NULL, then only the tuple blocks that are set in it will be serialized.
+     */
+    CopyOnWriteContext(Table *m_table, TupleSerializer *m_serializer, int32_t partitionId,
+                       const std::vector<bool> *modifiedBlocks);
+
     /**
      * Serialize tuples to the provided output until no more tuples can be serialized. Returns true
      * if there are more tuples to serialize and false otherwise.
@@ -68,6 +75,19 @@ public:
     virtual ~CopyOnWriteContext();
 
 private:
+    void initializeBlocks();
+
+    /**
+     * serializeMore() for when chunks are tagged with their tuple block
+     */
+    bool serializeMoreBlocks(ReferenceSerializeOutput *out);
+
+    /**
+     * Returns true if there is a block that needs to be in the snapshot that we have not
+     * serialized a chunk for yet (i.e., all of its tuples were deleted)
+     */
+    bool hasUnserializedBlocks();
+
     /**
      * Table being copied
      */
@@ -112,6 +132,32 @@ private:
     const int32_t m_partitionId;
 
     int32_t m_tuplesSerialized;
+
+    /**
+     * Whether each chunk only holds tuples from a single block and ends with the block's index
+     */
+    const bool m_tagBlocks;
+
+    /**
+     * The blocks that will be in the snapshot. Only used when tagging blocks.
+     */
+    std::vector<bool> m_includedBlocks;
+
+    /**
+     * The blocks that at least one chunk has been serialized for
+     */
+    std::vector<bool> m_serializedBlocks;
+
+    /**
+     * The block that each of the backed up tuples came from, in the order that they were backed up
+     */
+    std::vector<int32_t> m_backedUpBlocks;
+    std::size_t m_backedUpPosition;
+
+    /**
+     * Position of the next block to check for whether it still needs a chunk
+     */
+    std::size_t m_nextUnserializedBlock;
 };
 
 }
@@ -24,7 +24,18 @@ CopyOnWriteIterator::CopyOnWriteIterator(Table *table) :
         m_tupleLength(table->m_tupleLength),
         m_location(m_blocks[0] - m_tupleLength), m_activeTupleCount(table->m_tupleCount),
         m_foundTuples(0),
-        m_blockLength(m_tupleLength * table->m_tuplesPerBlock), m_didFirstIteration(false) {
+        m_blockLength(m_tupleLength * table->m_tuplesPerBlock), m_didFirstIteration(false),
+        m_includedBlocks(NULL) {
+
+}
+
+CopyOnWriteIterator::CopyOnWriteIterator(Table *table, const std::vector<bool> *includedBlocks) :
+        m_table(table), m_blocks(table->m_data), m_blockIndex(0),
+        m_tupleLength(table->m_tupleLength),
+        m_location(m_blocks[0] - m_tupleLength), m_activeTupleCount(table->m_tupleCount),
+        m_foundTuples(0),
+        m_blockLength(m_tupleLength * table->m_tuplesPerBlock), m_didFirstIteration(false),
+        m_includedBlocks(includedBlocks) {
 
 }
 
@@ -33,14 +44,32 @@ CopyOnWriteIterator::CopyOnWriteIterator(Table *table) :
  * and mark them as clean so that they can be copied during the next snapshot.
  */
 bool CopyOnWriteIterator::next(TableTuple &out) {
+    return advance(out, false);
+}
+
+bool CopyOnWriteIterator::nextInBlock(TableTuple &out) {
+    return advance(out, true);
+}
+
+/**
+ * Tuples in blocks that aren't included are counted as found but never returned.
+ */
+bool CopyOnWriteIterator::advance(TableTuple &out, bool stayInBlock) {
     while (m_foundTuples < m_activeTupleCount) {
-        m_location = m_location + m_tupleLength;
-        const long int delta = m_location - m_blocks[m_blockIndex];
+        char *location = m_location + m_tupleLength;
+        const long int delta = location - m_blocks[m_blockIndex];
         if (m_didFirstIteration && delta >= m_blockLength) {
-            m_location = m_blocks[++m_blockIndex];
+            /*
+             * Leave m_location alone so that the next call picks up from here
+             */
+            if (stayInBlock) {
+                return false;
+            }
+            location = m_blocks[++m_blockIndex];
         } else {
             m_didFirstIteration = true;
         }
+        m_location = location;
         assert(m_location < m_blocks[m_blockIndex] + m_blockLength);
         assert (out.sizeInValues() == m_table->columnCount());
         out.move(m_location);
@@ -50,7 +79,9 @@ bool CopyOnWriteIterator::next(TableTuple &out) {
         if (active && !dirty) {
             ++m_foundTuples;
             out.setDirtyFalse();
-            return true;
+            if (isBlockIncluded(m_blockIndex)) {
+                return true;
+            }
         } else {
             out.setDirtyFalse();
         }
@@ -28,6 +28,13 @@ class CopyOnWriteIterator : public TupleIterator {
 public:
     CopyOnWriteIterator(Table *table);
 
+    /**
+     * Only return the tuples that are stored in the blocks that are set in includedBlocks.
+     * The tuples in the other blocks are still scanned so that they are accounted for.
+     * Blocks beyond the end of includedBlocks are included.
+     */
+    CopyOnWriteIterator(Table *table, const std::vector<bool> *includedBlocks);
+
     /**
      * When a tuple is "dirty" it is still active, but will never be a "found" tuple
      * since it is skipped. The tuple may be dirty because it was deleted (this is why it is always skipped). In that
@@ -59,6 +66,36 @@ public:
 
     bool next(TableTuple &out);
 
+    /**
+     * Same as next() except that it returns false instead of moving on to the next
+     * block once there are no more tuples in the current one. Use isFinished() to
+     * tell the two cases apart.
+     */
+    bool nextInBlock(TableTuple &out);
+
+    /**
+     * Returns true once all of the tuples in the table have been found
+     */
+    bool isFinished() const {
+        return m_foundTuples >= m_activeTupleCount;
+    }
+
+    /**
+     * Index of the block that the last tuple returned came from
+     */
+    uint32_t blockIndex() const {
+        return m_blockIndex;
+    }
+
+    /**
+     * Returns true if the tuples in the given block are returned by this iterator
+     */
+    bool isBlockIncluded(int blockIndex) const {
+        return m_includedBlocks == NULL ||
+               blockIndex >= static_cast<int>(m_includedBlocks->size()) ||
+               (*m_includedBlocks)[blockIndex];
+    }
+
     virtual ~CopyOnWriteIterator() {}
 private:
     /**
@@ -103,6 +140,13 @@ private:
 
     bool m_didFirstIteration;
 
+    /**
+     * Blocks whose tuples should be returned or NULL if all of them should be
+     */
+    const std::vector<bool> *m_includedBlocks;
+
+    bool advance(TableTuple &out, bool stayInBlock);
+
     /**
      * Need to mark all tuples allocated in the last block as found
      * because they were inserted as dirty.
@@ -34,7 +34,7 @@ namespace voltdb {
 
 MaterializedViewMetadata::MaterializedViewMetadata(
         PersistentTable *srcTable, PersistentTable *destTable, catalog::MaterializedViewInfo *metadata)
-        : m_target(destTable), m_filterPredicate(NULL) {
+        : m_target(destTable), m_filterPredicate(NULL), m_batching(false) {
 
     // try to load the predicate from the catalog view
     parsePredicate(metadata);
@@ -126,12 +126,38 @@ void MaterializedViewMetadata::processTupleInsert(TableTuple &newTuple) {
         && (m_filterPredicate->eval(&newTuple, NULL).isFalse()))
         return;
 
+    if (m_batching) {
+        PendingGroup *group = findPendingGroup(newTuple);
+        if (group->present) {
+            m_existingTuple = group->row;
+        } else {
+            m_existingTuple.move(m_emptyTupleBackingStore);
+        }
+        buildInsertedTuple(newTuple);
+        storePendingTuple(group, !group->present);
+        group->present = true;
+        return;
+    }
+
     bool exists = findExistingTuple(newTuple);
     if (!exists) {
         // create a blank tuple
         m_existingTuple.move(m_emptyTupleBackingStore);
     }
+    buildInsertedTuple(newTuple);
+
+    // update or insert the row
+    if (exists) {
+        // shouldn't need to update indexes as this shouldn't ever change the
+        // key
+        m_target->updateTuple(m_updatedTuple, m_existingTuple, false);
+    }
+    else {
+        m_target->insertTuple(m_updatedTuple);
+    }
+}
 
+void MaterializedViewMetadata::buildInsertedTuple(TableTuple &newTuple) {
     // clear the tuple that will be built to insert or overwrite
     memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
 
@@ -166,16 +192,6 @@ void MaterializedViewMetadata::processTupleInsert(TableTuple &newTuple) {
                                           message);
         }
     }
-
-    // update or insert the row
-    if (exists) {
-        // shouldn't need to update indexes as this shouldn't ever change the
-        // key
-        m_target->updateTuple(m_updatedTuple, m_existingTuple, false);
-    }
-    else {
-        m_target->insertTuple(m_updatedTuple);
-    }
 }
 
 void MaterializedViewMetadata::processTupleUpdate(TableTuple &oldTuple, TableTuple &newTuple) {
@@ -189,27 +205,54 @@ void MaterializedViewMetadata::processTupleDelete(TableTuple &oldTuple) {
     if (m_filterPredicate && (m_filterPredicate->eval(&oldTuple, NULL).isFalse()))
         return;
 
+    if (m_batching) {
+        PendingGroup *group = findPendingGroup(oldTuple);
+        if (!group->present) {
+            throw SerializableEEException(VOLT_EE_EXCEPTION_TYPE_EEEXCEPTION,
+                                          "MaterializedViewMetadata went"
+                                          " looking for a tuple in the view and"
+                                          " expected to find it but didn't");
+        }
+        m_existingTuple = group->row;
+        if (buildDeletedTuple(oldTuple)) {
+            storePendingTuple(group, false);
+        } else {
+            group->present = false;
+        }
+        return;
+    }
+
     // this will assert if the tuple isn't there as param expected is true
     findExistingTuple(oldTuple, true);
 
-    // clear the tuple that will be built to insert or overwrite
-    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
-
     //printf("  Existing tuple: %s.\n", m_existingTuple.debugNoHeader().c_str());
     //fflush(stdout);
 
+    // check if we should remove the tuple
+    if (!buildDeletedTuple(oldTuple)) {
+        m_target->deleteTuple(m_existingTuple, true);
+        return;
+    }
+    // assume from here that we're just updating the existing row
+
+    // update the row
+    // shouldn't need to update indexes as this shouldn't ever change the key
+    m_target->updateTuple(m_updatedTuple, m_existingTuple, false);
+}
+
+bool MaterializedViewMetadata::buildDeletedTuple(TableTuple &oldTuple) {
+    // clear the tuple that will be built to insert or overwrite
+    memset(m_updatedTupleBackingStore, 0, m_target->schema()->tupleLength() + 1);
+
     // set up the first column, which is a count
     NValue count = m_existingTuple.getNValue(m_groupByColumnCount).op_decrement();
 
     //printf("  Count is: %d.\n", (int)(m_existingTuple.getSlimValue(m_groupByColumnCount).getBigInt()));
     //fflush(stdout);
 
-    // check if we should remove the tuple
     if (count.isZero()) {
-        m_target->deleteTuple(m_existingTuple, true);
-        return;
+        return false;
     }
-    // assume from here that we're just updating the existing row
 
     int colindex = 0;
     // set up the first n columns, based on group-by columns
@@ -237,10 +280,102 @@ void MaterializedViewMetadata::processTupleDelete(TableTuple &oldTuple) {
                                           " update.");
         }
     }
+    return true;
+}
 
-    // update the row
-    // shouldn't need to update indexes as this shouldn't ever change the key
-    m_target->updateTuple(m_updatedTuple, m_existingTuple, false);
+void MaterializedViewMetadata::beginBatch() {
+    assert(!m_batching);
+    assert(m_pendingGroups.empty());
+    m_batching = true;
+}
+
+void MaterializedViewMetadata::flushBatch() {
+    assert(m_batching);
+    m_batching = false;
+    try {
+        for (size_t i = 0; i < m_pendingOrder.size(); i++) {
+            PendingGroup *group = m_pendingOrder[i];
+            if (group->present) {
+                if (group->existing.isNullTuple()) {
+                    m_target->insertTuple(group->row);
+                } else {
+                    // shouldn't need to update indexes as this shouldn't ever change the key
+                    m_target->updateTuple(group->row, group->existing, false);
+                }
+            } else if (!group->existing.isNullTuple()) {
+                m_target->deleteTuple(group->existing, true);
+            }
+        }
+    } catch (...) {
+        clearBatch();
+        throw;
+    }
+    clearBatch();
+}
+
+void MaterializedViewMetadata::discardBatch() {
+    m_batching = false;
+    clearBatch();
+}
+
+void MaterializedViewMetadata::clearBatch() {
+    m_pendingGroups.clear();
+    m_pendingOrder.clear();
+    m_pendingPool.purge();
+}
+
+MaterializedViewMetadata::PendingGroup *MaterializedViewMetadata::findPendingGroup(TableTuple &tuple) {
+    for (int i = 0; i < m_groupByColumnCount; i++)
+        m_searchKey.setNValue(i, tuple.getNValue(m_groupByColumns[i]));
+
+    PendingGroupMap::const_iterator iter = m_pendingGroups.find(m_searchKey);
+    if (iter != m_pendingGroups.end()) {
+        return iter->second;
+    }
+
+    // This is the first time that the batch has seen this group, so start
+    // from whatever the view has for it now. Nothing else changes the view
+    // until the batch is flushed, so the existing row will stay put.
+    PendingGroup *group = new (m_pendingPool.allocate(sizeof(PendingGroup))) PendingGroup();
+    const TupleSchema *keySchema = m_index->getKeySchema();
+    group->key = TableTuple(keySchema);
+    group->key.move(m_pendingPool.allocate(keySchema->tupleLength() + 1));
+    ::memset(group->key.address(), 0, keySchema->tupleLength() + 1);
+    for (int i = 0; i < m_groupByColumnCount; i++)
+        group->key.setNValueAllocateForObjectCopies(i, m_searchKey.getNValue(i), &m_pendingPool);
+
+    group->row = TableTuple(m_target->schema());
+    group->row.move(m_pendingPool.allocate(m_target->schema()->tupleLength() + 1));
+    ::memset(group->row.address(), 0, m_target->schema()->tupleLength() + 1);
+
+    m_index->moveToKey(&m_searchKey);
+    group->existing = m_index->nextValueAtKey();
+    group->present = !group->existing.isNullTuple();
+    if (group->present) {
+        // The existing row's strings stay around until the batch is flushed,
+        // so they don't need to be copied
+        for (int i = 0; i < m_outputColumnCount; i++)
+            group->row.setNValue(i, group->existing.getNValue(i));
+    }
+
+    m_pendingGroups.insert(PendingGroupMap::value_type(group->key, group));
+    m_pendingOrder.push_back(group);
+    return group;
+}
+
+void MaterializedViewMetadata::storePendingTuple(PendingGroup *group, bool copyGroupBy) {
+    // The group by values in m_updatedTuple point at the source tuple, which
+    // may be gone by the time the batch is flushed
+    int colindex = 0;
+    for (colindex = 0; colindex < m_groupByColumnCount; colindex++) {
+        if (copyGroupBy) {
+            group->row.setNValueAllocateForObjectCopies(colindex, m_updatedTuple.getNValue(colindex),
+                                                        &m_pendingPool);
+        }
+    }
+    for (int i = colindex; i < m_outputColumnCount; i++) {
+        group->row.setNValue(i, m_updatedTuple.getNValue(i));
+    }
 }
 
 bool MaterializedViewMetadata::findExistingTuple(TableTuple &oldTuple, bool expected) {
@@ -18,8 +18,11 @@
 #ifndef MATERIALIZEDVIEWMETADATA_H_
 #define MATERIALIZEDVIEWMETADATA_H_
 
+#include <vector>
+#include "boost/unordered_map.hpp"
 #include "common/types.h"
 #include "common/tabletuple.h"
+#include "common/Pool.hpp"
 #include "catalog/materializedviewinfo.h"
 
 namespace voltdb {
@@ -57,8 +60,48 @@ public:
      */
     void processTupleDelete(TableTuple &oldTuple);
 
+    /**
+     * Start collecting the changes to the view instead of writing each
+     * of them to the destination table. Each group that is touched by the
+     * inserts, updates and deletes that follow gets its new row worked out
+     * in memory, and then flushBatch() writes it to the view just once.
+     */
+    void beginBatch();
+
+    /**
+     * Write the rows of all the groups that have changed since beginBatch()
+     * to the destination table
+     */
+    void flushBatch();
+
+    /**
+     * Throw away the changes collected since beginBatch()
+     */
+    void discardBatch();
+
+    inline bool isBatching() const { return m_batching; }
+
 private:
 
+    /**
+     * The row that a group in the view will have at the end of the batch
+     */
+    struct PendingGroup {
+        // the group by values in the view's primary key schema
+        TableTuple key;
+        // the new row for the group (only valid if present is true)
+        TableTuple row;
+        // the group's row in the view before the batch, or a null tuple
+        TableTuple existing;
+        // whether the group still has a row at this point in the batch
+        bool present;
+    };
+
+    typedef boost::unordered_map<TableTuple,
+                                 PendingGroup*,
+                                 TableTupleHasher,
+                                 TableTupleEqualityChecker> PendingGroupMap;
+
     /** load a predicate from the catalog structure if it's there */
     void parsePredicate(catalog::MaterializedViewInfo *metadata);
 
@@ -68,6 +111,31 @@ private:
      */
     bool findExistingTuple(TableTuple &oldTuple, bool expected = false);
 
+    /**
+     * Set up m_updatedTuple with the row that the view should have for
+     * the group of the new tuple after it is added to m_existingTuple
+     */
+    void buildInsertedTuple(TableTuple &newTuple);
+
+    /**
+     * Set up m_updatedTuple with the row that the view should have for
+     * the group of the old tuple after it is removed from m_existingTuple.
+     * Returns false if the group no longer has any tuples.
+     */
+    bool buildDeletedTuple(TableTuple &oldTuple);
+
+    /**
+     * Return the pending row for the group of the given source tuple,
+     * starting it off from the view's current row if this is the first
+     * time that the batch has seen the group
+     */
+    PendingGroup *findPendingGroup(TableTuple &tuple);
+
+    /** Copy m_updatedTuple into the pending row for the group */
+    void storePendingTuple(PendingGroup *group, bool copyGroupBy);
+
+    void clearBatch();
+
     // the materialized view table
     PersistentTable *m_target;
     // space to hold the search key for the view table
@@ -101,6 +169,15 @@ private:
     int32_t *m_outputColumnSrcTableIndexes;
     // what are the aggregates for each column in the view table
     ExpressionType *m_outputColumnAggTypes;
+
+    // whether changes are being collected until flushBatch()
+    bool m_batching;
+    // group by key -> pending row, for the groups that this batch has touched
+    PendingGroupMap m_pendingGroups;
+    // the same groups, in the order that the batch first touched them
+    std::vector<PendingGroup*> m_pendingOrder;
+    // memory for the pending groups and any strings that they had to copy
+    Pool m_pendingPool;
 };
 
 } // namespace voltdb
@@ -45,6 +45,7 @@
 
 #include <sstream>
 #include <cassert>
+#include <algorithm>
 #include <cstdio>
 
 #include "storage/persistenttable.h"
@@ -83,7 +84,7 @@ PersistentTable::PersistentTable(ExecutorContext *ctx, bool exportEnabled) :
     Table(TABLE_BLOCKSIZE), m_executorContext(ctx), m_uniqueIndexes(NULL), m_uniqueIndexCount(0), m_allowNulls(NULL),
     m_indexes(NULL), m_indexCount(0), m_pkeyIndex(NULL), m_wrapper(NULL),
     tsSeqNo(0), m_viewCount(0), m_views(NULL), stats_(this), m_exportEnabled(exportEnabled),
-    m_COWContext(NULL)
+    m_COWContext(NULL), m_trackModifiedBlocks(false), m_sortedBlocksCount(0)
 {
     if (exportEnabled)
     {
@@ -163,6 +164,7 @@ bool PersistentTable::insertTuple(TableTuple &source) {
     //
     nextFreeTuple(&m_tmpTarget1);
     m_tupleCount++;
+    markBlockModified(m_tmpTarget1);
 
     //
     // Then copy the source into the target
@@ -244,6 +246,7 @@ void PersistentTable::insertTupleForUndo(TableTuple &source, size_t wrapperOffse
     // memory
     nextFreeTuple(&m_tmpTarget1);
     m_tupleCount++;
+    markBlockModified(m_tmpTarget1);
 
     // Then copy the source into the target
     m_tmpTarget1.copy(source);
@@ -297,6 +300,7 @@ bool PersistentTable::updateTuple(TableTuple &source, TableTuple &target, bool u
      if (m_COWContext.get() != NULL) {
          m_COWContext->markTupleDirty(target, false);
      }
+     markBlockModified(target);
 
      source.setDeletedFalse();
      //Copy the dirty status that was set by markTupleDirty.
@@ -385,6 +389,7 @@ void PersistentTable::updateTupleForUndo(TableTuple &source, TableTuple &target,
     targetBackup.copy(target);
 
     bool dirty = target.isDirty();
+    markBlockModified(target);
     // this is the actual in-place revert to the old version
     target.copy(source);
     if (dirty) {
@@ -428,6 +433,7 @@ bool PersistentTable::deleteTuple(TableTuple &target, bool deleteAllocatedString
         m_COWContext->markTupleDirty(target, false);
     }
     m_tmpTarget1.isDirty();
+    markBlockModified(target);
 
     /*
      * Create and register an undo action.
@@ -488,6 +494,7 @@ void PersistentTable::deleteTupleForUndo(voltdb::TableTuple &tupleCopy, size_t w
 
         // Delete the strings/objects
         target.freeObjectColumns();
+        markBlockModified(target);
         deleteTupleStorage(target);
     }
 }
@@ -600,6 +607,32 @@ void PersistentTable::setMaterializedViews(const std::vector<MaterializedViewMet
         m_views[i] = views[i];
 }
 
+bool PersistentTable::beginMaterializedViewBatch() {
+    if (m_viewCount == 0 || m_views[0]->isBatching())
+        return false;
+    for (int i = 0; i < m_viewCount; i++)
+        m_views[i]->beginBatch();
+    return true;
+}
+
+void PersistentTable::flushMaterializedViewBatch() {
+    int i = 0;
+    try {
+        for (; i < m_viewCount; i++)
+            m_views[i]->flushBatch();
+    } catch (...) {
+        // the view that threw has already cleaned up after itself
+        for (++i; i < m_viewCount; i++)
+            m_views[i]->discardBatch();
+        throw;
+    }
+}
+
+void PersistentTable::discardMaterializedViewBatch() {
+    for (int i = 0; i < m_viewCount; i++)
+        m_views[i]->discardBatch();
+}
+
 // ------------------------------------------------------------------
 // UTILITY
 // ------------------------------------------------------------------
@@ -671,6 +704,8 @@ void PersistentTable::onSetColumns() {
  * to do additional processing for views and ELT
  */
 void PersistentTable::processLoadedTuple(bool allowELT, TableTuple &tuple) {
+    markBlockModified(m_tmpTarget1);
+
     // handle any materialized views
     if (m_views) {
         for (int i = 0; i < m_viewCount; i++)
@@ -750,17 +785,70 @@ voltdb::TableStats* PersistentTable::getTableStats() {
 /**
  * Switch the table to copy on write mode. Returns true if the table was already in copy on write mode.
  */
-bool PersistentTable::activateCopyOnWrite(TupleSerializer *serializer, int32_t partitionId) {
+bool PersistentTable::activateCopyOnWrite(TupleSerializer *serializer, int32_t partitionId,
+                                          CopyOnWriteMode mode) {
     if (m_COWContext != NULL) {
         return true;
     }
-    if (m_tupleCount == 0) {
+    if (mode == COW_MODE_FULL) {
+        if (m_tupleCount == 0) {
+            return false;
+        }
+        m_COWContext.reset(new CopyOnWriteContext( this, serializer, partitionId));
         return false;
     }
-    m_COWContext.reset(new CopyOnWriteContext( this, serializer, partitionId));
+
+    /*
+     * An empty table still needs a context if it has blocks so that the blocks
+     * that were emptied out replace the ones in the previous snapshots.
+     * If we haven't been tracking the modified blocks then everything goes in.
+     */
+    if (!m_data.empty()) {
+        const bool delta = (mode == COW_MODE_DELTA && m_trackModifiedBlocks);
+        m_COWContext.reset(new CopyOnWriteContext( this, serializer, partitionId,
+                                                   delta ? &m_modifiedBlocks : NULL));
+    }
+    m_trackModifiedBlocks = true;
+    m_modifiedBlocks.assign(m_data.size(), false);
     return false;
 }
 
+namespace {
+struct BlockAddressComparator {
+    bool operator()(const char *address, const std::pair<char*, uint32_t> &block) const {
+        return address < block.first;
+    }
+};
+}
+
+void PersistentTable::markBlockModified(const TableTuple &tuple) {
+    if (!m_trackModifiedBlocks) {
+        return;
+    }
+    if (m_sortedBlocksCount != m_data.size()) {
+        m_sortedBlocks.clear();
+        for (uint32_t ii = 0; ii < m_data.size(); ii++) {
+            if (m_data[ii] != NULL) {
+                m_sortedBlocks.push_back(std::pair<char*, uint32_t>(m_data[ii], ii));
+            }
+        }
+        std::sort(m_sortedBlocks.begin(), m_sortedBlocks.end());
+        m_sortedBlocksCount = m_data.size();
+    }
+
+    // The tuple is in the last block that starts at or before it
+    std::vector<std::pair<char*, uint32_t> >::const_iterator i =
+        std::upper_bound(m_sortedBlocks.begin(), m_sortedBlocks.end(),
+                         tuple.address(), BlockAddressComparator());
+    if (i == m_sortedBlocks.begin()) {
+        return;
+    }
+    --i;
+    if (i->second < m_modifiedBlocks.size()) {
+        m_modifiedBlocks[i->second] = true;
+    }
+}
+
 /**
  * Attempt to serialize more tuples from the table to the provided output stream.
  * Returns true if there are more tuples and false if there are no more tuples waiting to be
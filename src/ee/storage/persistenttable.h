@@ -193,10 +193,27 @@ class PersistentTable : public Table {
     /** At EE setup time, add the list of views driven from this table */
     void setMaterializedViews(const std::vector<MaterializedViewMetadata*> &views);
 
+    /**
+     * Hold back the changes to this table's materialized views until
+     * flushMaterializedViewBatch() so that each view row that is touched is
+     * only written once. Returns false if there is nothing to batch or a batch
+     * is already open.
+     */
+    bool beginMaterializedViewBatch();
+
+    /** Write out everything that was held back since beginMaterializedViewBatch() */
+    void flushMaterializedViewBatch();
+
+    /** Drop everything that was held back since beginMaterializedViewBatch() */
+    void discardMaterializedViewBatch();
+
     /**
      * Switch the table to copy on write mode. Returns true if the table was already in copy on write mode.
+     * Any mode other than COW_MODE_FULL also starts tracking which tuple blocks are modified from
+     * here on so that the next snapshot can be a delta.
      */
-    bool activateCopyOnWrite(TupleSerializer *serializer, int32_t partitionId);
+    bool activateCopyOnWrite(TupleSerializer *serializer, int32_t partitionId,
+                             CopyOnWriteMode mode = COW_MODE_FULL);
 
     /**
      * Attempt to serialize more tuples from the table to the provided output stream.
@@ -218,6 +235,12 @@ protected:
 
     bool checkNulls(TableTuple &tuple) const;
 
+    /**
+     * Remember that the tuple block that holds the given tuple has been modified
+     * since the last snapshot that tracks modified blocks
+     */
+    void markBlockModified(const TableTuple &tuple);
+
     size_t appendToELBuffer(TableTuple &tuple, int64_t seqNo, TupleStreamWrapper::Type type);
 
     PersistentTable(ExecutorContext *ctx, bool exportEnabled);
@@ -272,6 +295,53 @@ protected:
 
     // Snapshot stuff
     boost::scoped_ptr<CopyOnWriteContext> m_COWContext;
+
+    // Tuple blocks that have been modified since the last COW_MODE_FULL_BLOCKS or
+    // COW_MODE_DELTA snapshot. Nothing is tracked until one of those is taken.
+    // Blocks that were allocated after that snapshot are always considered modified.
+    bool m_trackModifiedBlocks;
+    std::vector<bool> m_modifiedBlocks;
+
+    // The start address and index of each tuple block sorted by address, and the
+    // number of blocks that there were when it was built
+    std::vector<std::pair<char*, uint32_t> > m_sortedBlocks;
+    std::size_t m_sortedBlocksCount;
+};
+
+/**
+ * Batches the materialized view changes for a table while it is in scope.
+ * The batch is thrown away if flush() is never called, which is what we want
+ * when a fragment fails part way through since it is going to be rolled back.
+ */
+class MaterializedViewBatch {
+  public:
+    MaterializedViewBatch(Table *table, bool enabled = true) : m_table(NULL) {
+        PersistentTable *persistentTable = dynamic_cast<PersistentTable*>(table);
+        if (enabled && persistentTable != NULL && persistentTable->beginMaterializedViewBatch()) {
+            m_table = persistentTable;
+        }
+    }
+
+    ~MaterializedViewBatch() {
+        if (m_table != NULL) {
+            m_table->discardMaterializedViewBatch();
+        }
+    }
+
+    void flush() {
+        PersistentTable *table = m_table;
+        m_table = NULL;
+        if (table != NULL) {
+            table->flushMaterializedViewBatch();
+        }
+    }
+
+  private:
+    // no copy, no assignment
+    MaterializedViewBatch(MaterializedViewBatch const&);
+    MaterializedViewBatch operator=(MaterializedViewBatch const&);
+
+    PersistentTable *m_table;
 };
 
 inline TableTuple& PersistentTable::getTempTupleInlined(TableTuple &source) {
@@ -39,7 +39,9 @@
 #include <dlfcn.h>
 
 #include <arpa/inet.h>
+#include <fcntl.h>
 #include <unistd.h>
+#include <sys/mman.h>
 #include <sys/types.h>
 #include <sys/socket.h>
 #include <netinet/in.h>
@@ -148,6 +150,7 @@ struct undo_token {
 typedef struct {
     struct ipc_command cmd;
     voltdb::CatalogId tableId;
+    int32_t mode;
 }__attribute__((packed)) activate_copy_on_write;
 
 /*
@@ -170,6 +173,17 @@ typedef struct {
     int32_t tableId;
 }__attribute__((packed)) elt_action;
 
+/*
+ * Header for an AttachSharedMemory request. The path of the
+ * memory-mapped file follows as a UTF-8 string.
+ */
+typedef struct {
+    struct ipc_command cmd;
+    int32_t capacity;
+    int16_t pathLength;
+    char path[0];
+}__attribute__((packed)) attach_shared_memory;
+
 
 using namespace voltdb;
 
@@ -184,6 +198,10 @@ extern void deserializeParameterSetCommon(int, voltdb::ReferenceSerializeInput&,
 VoltDBIPC::VoltDBIPC(int fd) : m_fd(fd) {
     currentVolt = this;
     m_engine = NULL;
+    m_requestRing = NULL;
+    m_responseRing = NULL;
+    m_sharedMemory = NULL;
+    m_sharedMemorySize = 0;
     m_counter = 0;
     m_reusedResultBuffer = NULL;
     m_terminate = false;
@@ -195,6 +213,25 @@ VoltDBIPC::~VoltDBIPC() {
     delete m_engine;
     delete [] m_reusedResultBuffer;
     delete [] m_exceptionBuffer;
+    delete m_requestRing;
+    delete m_responseRing;
+    if (m_sharedMemory != NULL) {
+        munmap(m_sharedMemory, m_sharedMemorySize);
+    }
+}
+
+ssize_t VoltDBIPC::writeBytes(const void *data, size_t length) {
+    if (m_responseRing != NULL) {
+        return m_responseRing->write(data, length);
+    }
+    return write(m_fd, data, length);
+}
+
+ssize_t VoltDBIPC::readBytes(void *data, size_t length) {
+    if (m_requestRing != NULL) {
+        return m_requestRing->read(data, length);
+    }
+    return read(m_fd, data, length);
 }
 
 bool VoltDBIPC::execute(struct ipc_command *cmd) {
@@ -264,6 +301,9 @@ bool VoltDBIPC::execute(struct ipc_command *cmd) {
         eltAction(cmd);
         result = kErrorCode_None;
         break;
+      case 21:
+        result = attachSharedMemory(cmd);
+        break;
       default:
         result = stub(cmd);
     }
@@ -277,9 +317,9 @@ bool VoltDBIPC::execute(struct ipc_command *cmd) {
             char msg[5];
             msg[0] = result;
             *reinterpret_cast<int32_t*>(&msg[1]) = 0;//exception length 0
-            bytes = write(m_fd, msg, sizeof(int8_t) + sizeof(int32_t));
+            bytes = writeBytes(msg, sizeof(int8_t) + sizeof(int32_t));
         } else {
-            bytes = write(m_fd, &result, sizeof(int8_t));
+            bytes = writeBytes(&result, sizeof(int8_t));
         }
     }
     return m_terminate;
@@ -509,7 +549,7 @@ void VoltDBIPC::executeQueryPlanFragmentsAndGetResults(struct ipc_command *cmd)
         const int32_t size = m_engine->getResultsSize();
         char *resultBuffer = m_engine->getReusedResultBuffer();
         resultBuffer[0] = kErrorCode_Success;
-        ssize_t bytes = write(m_fd, resultBuffer, size);
+        ssize_t bytes = writeBytes(resultBuffer, size);
         if (bytes != size) {
             printf("Error - blocking write failed. %ld", bytes);
             assert(false);
@@ -570,7 +610,7 @@ void VoltDBIPC::executePlanFragmentAndGetResults(struct ipc_command *cmd) {
         const int32_t size = m_engine->getResultsSize();
         char *resultBuffer = m_engine->getReusedResultBuffer();
         resultBuffer[0] = kErrorCode_Success;
-        ssize_t bytes = write(m_fd, resultBuffer, size);
+        ssize_t bytes = writeBytes(resultBuffer, size);
         if (bytes != size) {
             printf("Error - blocking write failed. %ld", bytes);
             assert(false);
@@ -582,7 +622,7 @@ void VoltDBIPC::executePlanFragmentAndGetResults(struct ipc_command *cmd) {
 }
 
 void VoltDBIPC::sendException(int8_t errorCode) {
-    ssize_t bytes = write(m_fd, &errorCode, sizeof(int8_t));
+    ssize_t bytes = writeBytes(&errorCode, sizeof(int8_t));
     if (bytes != sizeof(int8_t)) {
         printf("Error - blocking write failed. %ld", (uintmax_t)bytes);
         fflush(stdout);
@@ -596,7 +636,7 @@ void VoltDBIPC::sendException(int8_t errorCode) {
     fflush(stdout);
 
     const std::size_t expectedSize = exceptionLength + sizeof(int32_t);
-    bytes = write(m_fd, exceptionData, expectedSize);
+    bytes = writeBytes(exceptionData, expectedSize);
 
 
     if (bytes != expectedSize) {
@@ -636,11 +676,11 @@ void VoltDBIPC::executeCustomPlanFragmentAndGetResults(struct ipc_command *cmd)
     const int8_t successResult = kErrorCode_Success;
     if (errors == 0) {
         size_t bytes;
-        bytes = write(m_fd, &successResult, sizeof(int8_t));
+        bytes = writeBytes(&successResult, sizeof(int8_t));
         assert(bytes == sizeof(int8_t));
         const int32_t size = m_engine->getResultsSize();
         // write the dependency tables back across the wire
-        bytes = write(m_fd, m_engine->getReusedResultBuffer(), size);
+        bytes = writeBytes(m_engine->getReusedResultBuffer(), size);
         assert(bytes == size);
     } else {
         sendException(kErrorCode_Error);
@@ -710,7 +750,7 @@ char *VoltDBIPC::retrieveDependency(int32_t dependencyId, size_t *dependencySz)
     // tell java to send the dependency over the socket
     message[0] = static_cast<int8_t>(kErrorCode_RetrieveDependency);
     *reinterpret_cast<int32_t*>(&message[1]) = htonl(dependencyId);
-    bytes = write(m_fd, message, sizeof(int8_t) + sizeof(int32_t));
+    bytes = writeBytes(message, sizeof(int8_t) + sizeof(int32_t));
     if (bytes != sizeof(int8_t) + sizeof(int32_t)) {
         printf("Error - blocking write failed. %jd written %jd attempted",
                 (intmax_t)bytes, (intmax_t)sizeof(int8_t) + sizeof(int32_t));
@@ -721,7 +761,7 @@ char *VoltDBIPC::retrieveDependency(int32_t dependencyId, size_t *dependencySz)
 
     // read java's response code
     int8_t responseCode;
-    bytes = read(m_fd, &responseCode, sizeof(int8_t));
+    bytes = readBytes(&responseCode, sizeof(int8_t));
     if (bytes != sizeof(int8_t)) {
         printf("Error - blocking read failed. %jd read %jd attempted",
                 (intmax_t)bytes, (intmax_t)sizeof(int8_t));
@@ -743,7 +783,7 @@ char *VoltDBIPC::retrieveDependency(int32_t dependencyId, size_t *dependencySz)
 
     // start reading the dependency. its length is first
     int32_t dependencyLength;
-    bytes = read(m_fd, &dependencyLength, sizeof(int32_t));
+    bytes = readBytes(&dependencyLength, sizeof(int32_t));
     if (bytes != sizeof(int32_t)) {
         printf("Error - blocking read failed. %jd read %jd attempted",
                 (intmax_t)bytes, (intmax_t)sizeof(int32_t));
@@ -758,7 +798,7 @@ char *VoltDBIPC::retrieveDependency(int32_t dependencyId, size_t *dependencySz)
     char *dependencyData = new char[dependencyLength];
     while (bytes != dependencyLength) {
         ssize_t oldBytes = bytes;
-        bytes += read(m_fd, dependencyData + bytes, dependencyLength - bytes);
+        bytes += readBytes(dependencyData + bytes, dependencyLength - bytes);
         if (oldBytes == bytes) {
             break;
         }
@@ -837,7 +877,7 @@ void VoltDBIPC::crashVoltDB(voltdb::FatalException e) {
     ssize_t toWrite = 5 + messageLength;
     ssize_t written = 0;
     while (written < toWrite) {
-        ssize_t bytes = write(m_fd,  m_reusedResultBuffer + written, toWrite - written);
+        ssize_t bytes = writeBytes(m_reusedResultBuffer + written, toWrite - written);
         if (bytes == -1) {
             printf("Error - blocking write failed. %jd read %jd attempted",
                     (intmax_t)bytes, (intmax_t)(toWrite - written));
@@ -879,13 +919,13 @@ void VoltDBIPC::getStats(struct ipc_command *cmd) {
         // write the results array back across the wire
         const int8_t successResult = kErrorCode_Success;
         if (result == 1) {
-            size_t bytes = write(m_fd, &successResult, sizeof(int8_t));
+            size_t bytes = writeBytes(&successResult, sizeof(int8_t));
             assert(bytes == sizeof(int8_t));
 
             // write the dependency tables back across the wire
             // the result set includes the total serialization size
             const int32_t size = m_engine->getResultsSize();
-            bytes = write(m_fd, m_engine->getReusedResultBuffer(), size);
+            bytes = writeBytes(m_engine->getReusedResultBuffer(), size);
             assert(bytes == size);
         } else {
             sendException(kErrorCode_Error);
@@ -910,14 +950,14 @@ VoltDBIPC::handoffReadyELBuffer(char* bufferPtr, int32_t bytesUsed, int32_t tabl
     *reinterpret_cast<int32_t*>(&message[1]) = htonl(tableId);
     *reinterpret_cast<int32_t*>(&message[5]) = htonl(bytesUsed);
 
-    bytes = write(m_fd, message, 9);
+    bytes = writeBytes(message, 9);
     if (bytes != 9) {
         printf("Error. Blocking write of handoffReadyElBuffer indicator failed");
         fflush(stdout);
         assert(false);
         exit(-1);
     }
-    bytes = write(m_fd, bufferPtr, bytesUsed);
+    bytes = writeBytes(bufferPtr, bytesUsed);
     if (bytes != bytesUsed) {
         printf("Error. Blocking write of handoffReadyElBuffer data failed.");
         fflush(stdout);
@@ -929,8 +969,10 @@ VoltDBIPC::handoffReadyELBuffer(char* bufferPtr, int32_t bytesUsed, int32_t tabl
 int8_t VoltDBIPC::activateCopyOnWrite(struct ipc_command *cmd) {
     activate_copy_on_write *activateCopyOnWriteCommand = (activate_copy_on_write*) cmd;
     const voltdb::CatalogId tableId = ntohl(activateCopyOnWriteCommand->tableId);
+    const voltdb::CopyOnWriteMode mode =
+        static_cast<voltdb::CopyOnWriteMode>(ntohl(activateCopyOnWriteCommand->mode));
     try {
-        if (m_engine->activateCopyOnWrite(tableId)) {
+        if (m_engine->activateCopyOnWrite(tableId, mode)) {
             return kErrorCode_Success;
         } else {
             return kErrorCode_Error;
@@ -951,7 +993,7 @@ void VoltDBIPC::cowSerializeMore(struct ipc_command *cmd) {
         char msg[3];
         msg[0] = kErrorCode_Error;
         *reinterpret_cast<int16_t*>(&msg[1]) = 0;//exception length 0
-        ssize_t bytes = write(m_fd, msg, sizeof(int8_t) + sizeof(int16_t));
+        ssize_t bytes = writeBytes(msg, sizeof(int8_t) + sizeof(int16_t));
 
         if (bytes != sizeof(int8_t)) {
             printf("Error - blocking write failed. %ld", bytes);
@@ -976,7 +1018,7 @@ void VoltDBIPC::cowSerializeMore(struct ipc_command *cmd) {
         }
         const ssize_t toWrite = serialized + 5;
         while (bytesWritten < toWrite) {
-            ssize_t thisTime = write(m_fd, m_reusedResultBuffer + bytesWritten, toWrite - bytesWritten);
+            ssize_t thisTime = writeBytes(m_reusedResultBuffer + bytesWritten, toWrite - bytesWritten);
             if (thisTime == -1) {
                 printf("Error - blocking write failed. %ld", toWrite);
                 assert(false);
@@ -1002,18 +1044,68 @@ void VoltDBIPC::eltAction(struct ipc_command *cmd) {
     // write offset across bigendian.
     result = htonll(result);
     for (bytesWritten = 0; bytesWritten < 8; ) {
-        bytesWritten += write(m_fd, &result, 8 - bytesWritten);
+        bytesWritten += writeBytes(&result, 8 - bytesWritten);
     }
 
     // write the poll data. It is at least 4 bytes of length prefix.
     for (bytesWritten = 0; bytesWritten < buflength; ) {
-        bytesWritten += write(m_fd,
-                              (m_engine->getReusedResultBuffer() + bytesWritten),
-                              (buflength - bytesWritten));
+        bytesWritten += writeBytes((m_engine->getReusedResultBuffer() + bytesWritten),
+                                   (buflength - bytesWritten));
     }
 }
 
 
+/*
+ * Map the file that Java created with the pair of rings. The acknowledgement
+ * still goes back over the socket, after which all requests and responses
+ * go through the rings. The socket is then only used as a doorbell.
+ */
+int8_t VoltDBIPC::attachSharedMemory(struct ipc_command *cmd) {
+    attach_shared_memory *attach = (attach_shared_memory*) cmd;
+    const size_t capacity = static_cast<size_t>(ntohl(attach->capacity));
+    const int16_t pathLength = static_cast<int16_t>(ntohs(attach->pathLength));
+    std::string path(attach->path, pathLength);
+
+    if (m_requestRing != NULL || capacity == 0 || (capacity & (capacity - 1)) != 0) {
+        return kErrorCode_Error;
+    }
+
+    const size_t size = 2 * (SharedMemoryRing::HEADER_SIZE + capacity);
+    int shmfd = open(path.c_str(), O_RDWR);
+    if (shmfd < 0) {
+        printf("Failed to open shared memory file %s\n", path.c_str());
+        fflush(stdout);
+        return kErrorCode_Error;
+    }
+    void *base = mmap(NULL, size, PROT_READ | PROT_WRITE, MAP_SHARED, shmfd, 0);
+    close(shmfd);
+    if (base == MAP_FAILED) {
+        printf("Failed to map shared memory file %s\n", path.c_str());
+        fflush(stdout);
+        return kErrorCode_Error;
+    }
+
+    // This has to be the last thing written to the socket
+    const int8_t successResult = kErrorCode_Success;
+    ssize_t bytes = write(m_fd, &successResult, sizeof(int8_t));
+    if (bytes != sizeof(int8_t)) {
+        printf("Error - blocking write failed. %jd", (intmax_t)bytes);
+        fflush(stdout);
+        assert(false);
+        exit(-1);
+    }
+
+    char *requests = static_cast<char*>(base);
+    char *responses = requests + SharedMemoryRing::HEADER_SIZE + capacity;
+    m_sharedMemory = base;
+    m_sharedMemorySize = size;
+    m_requestRing = new SharedMemoryRing(requests, capacity, m_fd);
+    m_responseRing = new SharedMemoryRing(responses, capacity, m_fd);
+    printf("Attached to shared memory file %s [capacity=%zu]\n", path.c_str(), capacity);
+    fflush(stdout);
+    return kErrorCode_None;
+}
+
 /**
  * The following code is for handling signals. A stack trace will be printed
  * when a SIGSEGV is caught.
@@ -1202,7 +1294,7 @@ int main(int argc, char **argv) {
 
         // read the header
         while (bytesread < 4) {
-            std::size_t b = read(fd, data + bytesread, 4 - bytesread);
+            std::size_t b = voltipc->readBytes(data + bytesread, 4 - bytesread);
             if (b == 0) {
                 printf("client eof\n");
                 goto done;
@@ -1226,7 +1318,7 @@ int main(int argc, char **argv) {
         }
 
         while (bytesread < msg_size) {
-            std::size_t b = read(fd, data + bytesread, msg_size - bytesread);
+            std::size_t b = voltipc->readBytes(data + bytesread, msg_size - bytesread);
             if (b == 0) {
                 printf("client eof\n");
                 goto done;
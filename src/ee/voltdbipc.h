@@ -25,6 +25,7 @@
 #include "logging/LogProxy.h"
 #include "execution/VoltDBEngine.h"
 #include "common/FatalException.hpp"
+#include "common/SharedMemoryRing.h"
 
 class VoltDBIPC {
 public:
@@ -84,6 +85,13 @@ public:
      */
     void terminate();
 
+    /**
+     * Blocking write/read of bytes to/from Java. These go through the shared
+     * memory rings once Java has attached them, otherwise through the socket.
+     */
+    ssize_t writeBytes(const void *data, size_t length);
+    ssize_t readBytes(void *data, size_t length);
+
 private:
     voltdb::VoltDBEngine *m_engine;
     long int m_counter;
@@ -123,12 +131,17 @@ private:
     int8_t activateCopyOnWrite(struct ipc_command *cmd);
     void  cowSerializeMore(struct ipc_command *cmd);
     void  eltAction(struct ipc_command *cmd);
+    int8_t attachSharedMemory(struct ipc_command *cmd);
 
     void signalHandler(int signum, siginfo_t *info, void *context);
     static void signalDispatcher(int signum, siginfo_t *info, void *context);
     void setupSigHandler(void) const;
 
     int m_fd;
+    voltdb::SharedMemoryRing *m_requestRing;
+    voltdb::SharedMemoryRing *m_responseRing;
+    void *m_sharedMemory;
+    size_t m_sharedMemorySize;
     char *m_reusedResultBuffer;
     char *m_exceptionBuffer;
     bool m_terminate;
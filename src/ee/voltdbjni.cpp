@@ -506,6 +506,59 @@ Java_org_voltdb_jni_ExecutionEngine_nativeLoadTable (
 }
 
 
+/**
+ * This method is called to initially load table data from a direct ByteBuffer.
+ * The serialized table is read in place so no copy is made on the Java heap.
+ * @param pointer the VoltDBEngine pointer
+ * @param table_id catalog ID of the table
+ * @param serialized_table the direct buffer with the table data to be loaded
+ * @param length the number of bytes in the serialized table
+*/
+SHAREDLIB_JNIEXPORT jint JNICALL
+Java_org_voltdb_jni_ExecutionEngine_nativeLoadTableDirect (
+    JNIEnv *env, jobject obj, jlong engine_ptr, jint table_id,
+    jobject serialized_table, jint length, jlong txnId, jlong lastCommittedTxnId,
+    jlong undoToken, jboolean allowELT)
+{
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    if (engine == NULL) {
+        return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+    }
+
+    //JNIEnv pointer can change between calls, must be updated
+    updateJNILogProxy(engine);
+    engine->setUndoToken(undoToken);
+    VOLT_DEBUG("loading table %d from direct buffer in C++...", table_id);
+
+    // convert jboolean to bool
+    bool bAllowELT = (allowELT == JNI_FALSE ? false : true);
+
+    const char *bytes = reinterpret_cast<const char*>(env->GetDirectBufferAddress(serialized_table));
+    if (bytes == NULL) {
+        return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+    }
+    VOLT_DEBUG("deserializing %d bytes ...", (int) length);
+    ReferenceSerializeInput serialize_in(bytes, length);
+    try {
+        try {
+            bool success = engine->loadTable(bAllowELT, table_id, serialize_in,
+                                             txnId, lastCommittedTxnId);
+            VOLT_DEBUG("deserialized table");
+
+            if (success)
+                return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
+        } catch (SerializableEEException &e) {
+            engine->resetReusedResultOutputBuffer();
+            e.serialize(engine->getExceptionOutputSerializer());
+        }
+    } catch (FatalException e) {
+        topend->crashVoltDB(e);
+    }
+
+    return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+}
+
 ////////////////////////////////////////////////////////////////////////////
 // PlanNode Execution
 ////////////////////////////////////////////////////////////////////////////
@@ -1078,15 +1131,15 @@ SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeS
 /*
  * Class:     org_voltdb_jni_ExecutionEngine
  * Method:    nativeActivateCopyOnWrite
- * Signature: (JI)Z
+ * Signature: (JII)Z
  */
 SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeActivateCopyOnWrite
-  (JNIEnv *env, jobject obj, jlong engine_ptr, jint tableId) {
+  (JNIEnv *env, jobject obj, jlong engine_ptr, jint tableId, jint mode) {
     VOLT_DEBUG("nativeActivateCopyOnWrite in C++ called");
     VoltDBEngine *engine = castToEngine(engine_ptr);
     Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
     try {
-        return engine->activateCopyOnWrite(tableId);
+        return engine->activateCopyOnWrite(tableId, static_cast<CopyOnWriteMode>(mode));
     } catch (FatalException e) {
         topend->crashVoltDB(e);
     }
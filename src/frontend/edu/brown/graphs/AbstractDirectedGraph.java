@@ -50,6 +50,13 @@ public abstract class AbstractDirectedGraph<V extends AbstractVertex, E extends
     public int getGraphId() {
         return this.inner.getGraphId();
     }
+    /**
+     * Only needed by deserializers that don't go through fromJSON()
+     * @param id
+     */
+    protected void setGraphId(int id) {
+        this.inner.setGraphId(id);
+    }
     public Set<V> getDescendants(V vertex) {
         return (this.inner.getDescendants(vertex));
     }
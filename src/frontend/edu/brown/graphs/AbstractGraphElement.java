@@ -78,6 +78,20 @@ public abstract class AbstractGraphElement implements JSONSerializable, Comparab
         return this.element_id;
     }
     
+    /**
+     * Only needed by deserializers that don't go through fromJSON()
+     * @param id
+     */
+    public void setElementId(long id) {
+        this.element_id = id;
+        
+        // Make sure that new elements don't get the same id
+        long next;
+        do {
+            next = NEXT_ELEMENT_ID.get();
+        } while (next <= id && NEXT_ELEMENT_ID.compareAndSet(next, id + 1) == false);
+    }
+    
 
     public Set<String> getAttributes(IGraph<?, ?> graph) {
         this.lazyAttributeAllocation();
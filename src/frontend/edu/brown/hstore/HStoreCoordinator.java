@@ -251,7 +251,7 @@ public class HStoreCoordinator implements Shutdownable {
         // prefetch queries and we actually have some in the catalog 
         PrefetchQueryPlanner tmpPlanner = null;
         if (hstore_conf.site.exec_prefetch_queries) {
-            boolean has_prefetch = false;
+            boolean has_prefetch = hstore_conf.site.markov_prefetch;
             for (Procedure catalog_proc : hstore_site.getDatabase().getProcedures()) {
                 if (catalog_proc.getPrefetchable()) {
                     has_prefetch = true;
@@ -259,7 +259,9 @@ public class HStoreCoordinator implements Shutdownable {
                 }
             }
             if (has_prefetch) tmpPlanner = new PrefetchQueryPlanner(hstore_site.getDatabase(),
-                                                                    hstore_site.getPartitionEstimator());
+                                                                    hstore_site.getPartitionEstimator(),
+                                                                    hstore_conf.site.markov_prefetch,
+                                                                    hstore_conf.site.markov_prefetch_confidence);
         }
         this.queryPrefetchPlanner = tmpPlanner;
         this.transactionPrefetch_callback = (this.queryPrefetchPlanner != null ? new TransactionPrefetchCallback() : null);
@@ -705,13 +707,15 @@ public class HStoreCoordinator implements Shutdownable {
         // then embed them in the TransactionInitRequest
         // TODO: We probably don't want to bother prefetching for txns that only touch
         //       partitions that are in its same local HStoreSite
-        if (ts.getProcedure().getPrefetchable()) {
+        TransactionInitRequest[] requests = null;
+        if (this.queryPrefetchPlanner != null && this.queryPrefetchPlanner.hasPrefetchQueries(ts.getProcedure())) {
             if (debug.get()) LOG.debug(String.format("%s - Generating TransactionInitRequests with prefetchable queries", ts));
             
-            // Make sure that we initialize our internal PrefetchState for this txn
-            ts.initializePrefetch();
-            
-            TransactionInitRequest[] requests = this.queryPrefetchPlanner.generateWorkFragments(ts);
+            // This will initialize our internal PrefetchState for this txn if
+            // there is something that we want to prefetch
+            requests = this.queryPrefetchPlanner.generateWorkFragments(ts);
+        }
+        if (requests != null) {
             int sent_ctr = 0;
             int prefetch_ctr = 0;
             assert(requests.length == this.num_sites) :
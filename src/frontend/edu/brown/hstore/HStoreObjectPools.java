@@ -117,7 +117,8 @@ public abstract class HStoreObjectPools {
         STATES_PREFETCH = null;
         STATES_TXN_MAPREDUCE = null;
         for (Procedure catalog_proc : hstore_site.getDatabase().getProcedures()) {
-            if (STATES_PREFETCH == null && catalog_proc.getPrefetchable() && hstore_conf.site.exec_prefetch_queries) {
+            if (STATES_PREFETCH == null && hstore_conf.site.exec_prefetch_queries &&
+                (catalog_proc.getPrefetchable() || hstore_conf.site.markov_prefetch)) {
                 STATES_PREFETCH = TypedStackObjectPool.factory(PrefetchState.class,
                         (int)(hstore_conf.site.pool_prefetchstates_idle * hstore_conf.site.pool_scale_factor),
                         hstore_conf.site.pool_profiling, hstore_site);
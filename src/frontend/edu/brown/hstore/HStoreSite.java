@@ -50,6 +50,7 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.PeriodicWorkTimerThread;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.TransactionIdManager;
+import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Host;
@@ -65,6 +66,7 @@ import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.EstTimeUpdater;
+import org.voltdb.utils.HTTPAdminListener;
 import org.voltdb.utils.Pair;
 
 import com.google.protobuf.RpcCallback;
@@ -93,6 +95,8 @@ import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.hstore.util.MapReduceHelperThread;
 import edu.brown.hstore.util.PartitionExecutorPostProcessor;
+import edu.brown.hstore.util.MarkovGraphUpdater;
+import edu.brown.hstore.util.TransactionProfileStats;
 import edu.brown.hstore.util.TxnCounter;
 import edu.brown.hstore.wal.CommandLogWriter;
 import edu.brown.logging.LoggerUtil;
@@ -359,6 +363,23 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private HStoreSiteStatus status_monitor = null;
     
+    /**
+     * Live per-procedure TransactionProfile histograms
+     * Only used if txn_profiling is enabled
+     */
+    private TransactionProfileStats txn_profile_stats = null;
+    
+    /**
+     * Serves the txn_profile_stats over HTTP
+     */
+    private HTTPAdminListener txn_profile_listener = null;
+    
+    /**
+     * Recomputes MarkovGraphs in the background
+     * Only used if markov_online_updates is enabled
+     */
+    private MarkovGraphUpdater markov_updater = null;
+    
     /**
      * The number of incoming transaction requests per partition 
      */
@@ -600,6 +621,13 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     public HStoreThreadManager getThreadManager() {
         return (this.threadManager);
     }
+    /**
+     * Return the MarkovGraphUpdater for this site. Will be null if
+     * markov_online_updates is disabled 
+     */
+    public MarkovGraphUpdater getMarkovGraphUpdater() {
+        return (this.markov_updater);
+    }
     public PartitionEstimator getPartitionEstimator() {
         return (this.p_estimator);
     }
@@ -934,6 +962,32 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             t.start();
         }
         
+        // Start serving live TransactionProfile histograms
+        if (hstore_conf.site.txn_profiling) {
+            this.txn_profile_stats = new TransactionProfileStats(this.site_id);
+            if (hstore_conf.site.txn_profiling_http_port >= 0) {
+                int port = hstore_conf.site.txn_profiling_http_port + this.site_id;
+                try {
+                    this.txn_profile_listener = new HTTPAdminListener(port, this.txn_profile_stats);
+                    LOG.info(String.format("Serving TransactionProfile histograms for %s on port %d", this.getSiteName(), port));
+                } catch (IOException ex) {
+                    LOG.warn(String.format("Failed to start TransactionProfile HTTP listener for %s on port %d",
+                                           this.getSiteName(), port), ex);
+                }
+            }
+        }
+        
+        // Start recomputing MarkovGraphs in the background
+        if (hstore_conf.site.markov_online_updates) {
+            if (d) LOG.debug("Starting MarkovGraphUpdater thread");
+            this.markov_updater = new MarkovGraphUpdater(this, hstore_conf);
+            t = new Thread(this.markov_updater);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(this.exceptionHandler);
+            t.start();
+        }
+        
         // Start the ExecutionSitePostProcessor
         if (hstore_conf.site.exec_postprocessing_thread) {
             for (PartitionExecutorPostProcessor espp : this.processors) {
@@ -1069,6 +1123,8 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
 
         // Stop the monitor thread
         if (this.status_monitor != null) this.status_monitor.shutdown();
+        if (this.txn_profile_listener != null) this.txn_profile_listener.shutdown(false);
+        if (this.markov_updater != null) this.markov_updater.shutdown();
         
         // Stop AdHoc threads
         if (this.adhoc_helper_started) {
@@ -1165,6 +1221,13 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             base_partition = -1;
         }
         
+        // Bulk loading requests are never executed as transactions, so we
+        // need to intercept them before anything else happens
+        if (sysproc && catalog_proc.getName().equalsIgnoreCase("@LoadPartitionTable")) {
+            this.processLoadPartitionTable(request, catalog_proc, serializedRequest, done);
+            return;
+        }
+        
         // DB2-style Transaction Redirection
         if (base_partition != -1 && hstore_conf.site.exec_db2_redirects) {
             if (d) LOG.debug(String.format("Using embedded base partition from %s request [basePartition=%d]",
@@ -1482,6 +1545,44 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         return (false);
     }
 
+    /**
+     * Queue a @LoadPartitionTable request directly at the PartitionExecutor for its
+     * target partition. If that partition is not at this site, then the request
+     * is redirected to the site that has it.
+     * @param request
+     * @param catalog_proc
+     * @param serializedRequest
+     * @param done
+     */
+    private void processLoadPartitionTable(StoredProcedureInvocation request, Procedure catalog_proc, byte serializedRequest[], RpcCallback<byte[]> done) {
+        Object params[] = request.getParams().toArray();
+        int partition = ((Number)params[0]).intValue();
+        String tableName = (String)params[1];
+        VoltTable vt = (VoltTable)params[2];
+        
+        if (this.all_partitions.contains(partition) == false) {
+            ClientResponseImpl cresponse = new ClientResponseImpl(-1, request.getClientHandle(), -1,
+                                                                  Status.ABORT_UNEXPECTED,
+                                                                  HStoreConstants.EMPTY_RESULT,
+                                                                  "Invalid partition " + partition + " for " + catalog_proc.getName());
+            FastSerializer fs = new FastSerializer();
+            try {
+                fs.writeObject(cresponse);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            done.run(fs.getBytes());
+        }
+        else if (this.isLocalPartition(partition) == false) {
+            this.transactionRedirect(catalog_proc, serializedRequest, partition, done);
+        }
+        else {
+            if (d) LOG.debug(String.format("Queuing %d tuples for %s at partition %d [handle=%d]",
+                                           vt.getRowCount(), tableName, partition, request.getClientHandle()));
+            this.executors[partition].queueLoadTable(request.getClientHandle(), tableName, vt, done);
+        }
+    }
+
     /**
      * 
      * @param ts
@@ -2255,10 +2356,10 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         // Update Transaction profiles
         // We have to calculate the profile information *before* we call PartitionExecutor.cleanup!
         // XXX: Should we include totals for mispredicted txns?
-        if (hstore_conf.site.txn_profiling && this.status_monitor != null &&
-            ts.profiler.isDisabled() == false && status != Status.ABORT_MISPREDICT) {
+        if (hstore_conf.site.txn_profiling && ts.profiler.isDisabled() == false && status != Status.ABORT_MISPREDICT) {
             ts.profiler.stopTransaction();
-            this.status_monitor.addTxnProfile(catalog_proc, ts.profiler);
+            if (this.txn_profile_stats != null) this.txn_profile_stats.addTxnProfile(catalog_proc, ts.profiler);
+            if (this.status_monitor != null) this.status_monitor.addTxnProfile(catalog_proc, ts.profiler);
         }
         
         // Clean-up any extra information that we may have for the txn
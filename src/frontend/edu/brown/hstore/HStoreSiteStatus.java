@@ -20,6 +20,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.commons.pool.impl.StackObjectPool;
 import org.apache.log4j.Logger;
+import org.voltdb.SnapshotSiteProcessor.SnapshotTableTask;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 
@@ -421,6 +422,25 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
             // TransactionQueueManager - Requeued Txns
             m.put("Waiting Requeues", queueManagerDebug.getRestartQueueSize());
             
+            // Bulk Loaded Tuples
+            Map<String, Long> bulkload = es.getBulkLoadTupleCounts();
+            if (bulkload.isEmpty() == false) {
+                m.put("Bulk Loaded Tuples", new TreeMap<String, Long>(bulkload));
+            }
+            
+            // Snapshot Progress
+            List<SnapshotTableTask> snapshot = es.getSnapshotProgress();
+            if (snapshot.isEmpty() == false) {
+                Map<String, String> progress = new TreeMap<String, String>();
+                for (SnapshotTableTask task : snapshot) {
+                    progress.put(task.getTableName(),
+                                 String.format("%d bytes / %d chunks / %d ms%s",
+                                               task.getBytesSerialized(), task.getChunkCount(), task.getElapsedTime(),
+                                               (task.isFinished() ? "" : " *ACTIVE*")));
+                } // FOR
+                m.put("Snapshot Progress", progress);
+            }
+            
 //            if (is_throttled && queue_size < queue_release && hstore_site.isShuttingDown() == false) {
 //                LOG.warn(String.format("Partition %d is throttled when it should not be! [inflight=%d, release=%d]",
 //                                        partition, queue_size, queue_release));
@@ -497,8 +517,12 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
         Set<TxnCounter> cnts_to_include = new TreeSet<TxnCounter>();
         Set<String> procs = TxnCounter.getAllProcedures();
         if (procs.isEmpty()) return (null);
+        Map<TxnCounter, Histogram<String>> histograms = new HashMap<TxnCounter, Histogram<String>>();
         for (TxnCounter tc : TxnCounter.values()) {
-            if (TXNINFO_ALWAYS_SHOW.contains(tc) || (tc.get() > 0 && TXNINFO_EXCLUDES.contains(tc) == false)) cnts_to_include.add(tc);
+            if (TXNINFO_ALWAYS_SHOW.contains(tc) || (tc.get() > 0 && TXNINFO_EXCLUDES.contains(tc) == false)) {
+                cnts_to_include.add(tc);
+                histograms.put(tc, tc.getHistogram());
+            }
         } // FOR
         
         boolean first = true;
@@ -516,7 +540,7 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
             if (first) header[0] = "";
             for (TxnCounter tc : cnts_to_include) {
                 if (first) header[j] = tc.toString().replace("partition", "P");
-                Long cnt = tc.getHistogram().get(proc_name);
+                Long cnt = histograms.get(tc).get(proc_name);
                 rows[i][j++] = (cnt != null ? cnt.toString() : "-");
             } // FOR
             first = false;
@@ -41,20 +41,24 @@
  */
 package edu.brown.hstore;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
@@ -71,6 +75,7 @@ import org.voltdb.VoltProcedure;
 import org.voltdb.VoltProcedure.VoltAbortException;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
@@ -96,6 +101,7 @@ import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.FinishTaskMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.InitiateTaskMessage;
+import org.voltdb.messaging.LoadTableMessage;
 import org.voltdb.messaging.PotentialSnapshotWorkMessage;
 import org.voltdb.messaging.TransactionInfoBaseMessage;
 import org.voltdb.messaging.VoltMessage;
@@ -128,6 +134,7 @@ import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.hstore.util.ArrayCache.IntArrayCache;
 import edu.brown.hstore.util.ArrayCache.LongArrayCache;
+import edu.brown.hstore.util.MarkovGraphUpdater;
 import edu.brown.hstore.util.ParameterSetArrayCache;
 import edu.brown.hstore.util.QueryCache;
 import edu.brown.hstore.util.ThrottlingQueue;
@@ -135,7 +142,6 @@ import edu.brown.hstore.util.TransactionWorkRequestBuilder;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.EstimationThresholds;
-import edu.brown.markov.MarkovEstimate;
 import edu.brown.markov.MarkovGraph;
 import edu.brown.markov.TransactionEstimator;
 import edu.brown.utils.CollectionUtil;
@@ -280,6 +286,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private final SnapshotSiteProcessor m_snapshotter;
+    private final PotentialSnapshotWorkMessage snapshot_msg = new PotentialSnapshotWorkMessage();
+    
+    /**
+     * Set to true when snapshot_msg is in our work_queue so that we never add it
+     * more than once. It gets cleared when our thread takes it out of the queue.
+     */
+    private final AtomicBoolean snapshot_msg_queued = new AtomicBoolean(false);
     
     // ----------------------------------------------------------------------------
     // H-Store Transaction Stuff
@@ -371,6 +384,30 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
      */
     private long lastUndoToken = 0l;
     
+    /**
+     * The last undoToken that we released in the EE
+     * Releasing a token releases everything before it too, so we don't need to
+     * tell the EE about any txn whose work was already released by a later one
+     */
+    private long lastReleasedUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+    
+    /**
+     * The last undoToken of the committed single-partition txns that we have
+     * not released in the EE yet. We hold off on releasing these so that we can release
+     * a run of them with a single call.
+     */
+    private long pendingReleaseUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+    private int pendingReleaseCount = 0;
+    
+    /**
+     * The range of undoTokens that the last speculative rollback undid in the EE.
+     * When a dtxn aborts, the speculative txns chained after it get aborted too, so we
+     * must not ask the EE to undo their tokens a second time.
+     * Only used if exec_speculative_writes is enabled
+     */
+    private long firstUndoneUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+    private long lastUndoneUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+    
     /**
      * This is the queue of the list of things that we need to execute.
      * The entries may be either InitiateTaskMessages (i.e., start a stored procedure) or
@@ -394,6 +431,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
      */
     private final QueryCache queryCache = new QueryCache(10, 10); // FIXME
     
+    /**
+     * The number of tuples that have been bulk loaded into each table at this partition.
+     * Only the execution thread updates this, but HStoreSiteStatus reads it.
+     * @see LoadTableMessage
+     */
+    private final Map<String, Long> bulkload_tuples = new ConcurrentHashMap<String, Long>();
+    
     // ----------------------------------------------------------------------------
     // TEMPORARY DATA COLLECTIONS
     // ----------------------------------------------------------------------------
@@ -673,12 +717,11 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 eeTemp.tick( lastTickTime, 0);
                 
                 snapshotter = new SnapshotSiteProcessor(new Runnable() {
-                    final PotentialSnapshotWorkMessage msg = new PotentialSnapshotWorkMessage();
                     @Override
                     public void run() {
-                        PartitionExecutor.this.work_queue.add(msg);
+                        PartitionExecutor.this.queueSnapshotWork();
                     }
-                });
+                }, hstore_conf.site.exec_snapshot_rate_limit);
             }
             else {
                 // set up the EE over IPC
@@ -815,6 +858,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                         work = this.work_queue.poll();
                     } while (work == null && hasdeferredwork == true);
                     if (work==null) {
+                        // Don't hold on to undo buffers while we're sitting around
+                        if (this.ee != null) this.flushPendingUndoTokens();
                         try {
                             if (t) LOG.trace("Partition " + this.partitionId + " queue is empty. Waiting...");
                             if (hstore_conf.site.exec_profiling) this.work_idle_time.start();
@@ -945,7 +990,18 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 // PotentialSnapshotWorkMessage
                 // -------------------------------
                 } else if (work instanceof PotentialSnapshotWorkMessage) {
-                    m_snapshotter.doSnapshotWork(ee);
+                    this.snapshot_msg_queued.set(false);
+                    
+                    // This is charged against the snapshot rate limit since there
+                    // may be txns waiting behind us. Anything that is left over
+                    // will get picked up in utilityWork() when we're idle
+                    m_snapshotter.doSnapshotWork(ee, false);
+                    
+                // -------------------------------
+                // LoadTableMessage
+                // -------------------------------
+                } else if (work instanceof LoadTableMessage) {
+                    this.processLoadTableMessage((LoadTableMessage)work);
                     
                 // -------------------------------
                 // BAD MOJO!
@@ -1000,14 +1056,24 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
      * be interesting to have the system report on this before it shuts down.
      */
     protected boolean utilityWork() {
+        // Serialize the next block of any snapshot that is in progress. We have
+        // nothing else to do, so this doesn't count against the rate limit
+        boolean snapshot_work = false;
+        if (m_snapshotter != null && m_snapshotter.canDoSnapshotWork()) {
+            if (hstore_conf.site.exec_profiling) this.work_utility_time.start();
+            m_snapshotter.doSnapshotWork(ee, true);
+            if (hstore_conf.site.exec_profiling) this.work_utility_time.stop();
+            snapshot_work = m_snapshotter.canDoSnapshotWork();
+        }
+        
         // TODO: Set the txnId in our handle to be what the original txn was that
         //       deferred this query.
         if (hstore_conf.site.exec_deferrable_queries==false){
-            return false; // for now, unless andy wants to free up meomory in utilityWork
+            return (snapshot_work); // for now, unless andy wants to free up meomory in utilityWork
         }
         if (d) LOG.debug("entering utilitywork");
         DeferredWork def_work = deferred_queue.poll();
-        if (def_work == null) return false;
+        if (def_work == null) return (snapshot_work);
         // we have work to do
         if (hstore_conf.site.exec_profiling) this.work_utility_time.start();
         tmp_def_stmt[0] = def_work.getStmt();
@@ -1044,8 +1110,22 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             lastTickTime = time;
         }
         
-        // do other periodic work
-        m_snapshotter.doSnapshotWork(ee);
+        // This is invoked by the PartitionExecutorHelper's thread, so we can't touch
+        // the EE here. Poke our thread if there is a snapshot that is waiting on its
+        // rate limit to be refilled
+        if (m_snapshotter != null && m_snapshotter.canDoSnapshotWork()) {
+            this.queueSnapshotWork();
+        }
+    }
+    
+    /**
+     * Add our PotentialSnapshotWorkMessage to the work queue if it isn't already there
+     * This can be called from any thread
+     */
+    private void queueSnapshotWork() {
+        if (this.snapshot_msg_queued.compareAndSet(false, true)) {
+            this.work_queue.add(snapshot_msg);
+        }
     }
 
     @Override
@@ -1124,6 +1204,37 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         return (++this.lastUndoToken);
     }
     
+    /**
+     * Release the given undo token and everything before it in the EE
+     * @param undoToken
+     */
+    private void releaseUndoToken(long undoToken) {
+        assert(undoToken != HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN);
+        assert(undoToken > this.lastReleasedUndoToken);
+        if (t) LOG.trace(String.format("Releasing undoToken %d at partition %d [pending=%d]",
+                                       undoToken, this.partitionId, this.pendingReleaseCount));
+        this.ee.releaseUndoToken(undoToken);
+        this.lastReleasedUndoToken = undoToken;
+        if (this.pendingReleaseUndoToken <= undoToken) {
+            this.pendingReleaseUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+            this.pendingReleaseCount = 0;
+        }
+    }
+    
+    /**
+     * Release the undo buffers of any committed txns that we have been holding on to
+     */
+    private void flushPendingUndoTokens() {
+        if (this.pendingReleaseUndoToken != HStoreConstants.NULL_UNDO_LOGGING_TOKEN) {
+            if (this.pendingReleaseUndoToken > this.lastReleasedUndoToken) {
+                this.releaseUndoToken(this.pendingReleaseUndoToken);
+            } else {
+                this.pendingReleaseUndoToken = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
+                this.pendingReleaseCount = 0;
+            }
+        }
+    }
+    
     /**
      * Set the current ExecutionMode for this executor
      * @param newMode
@@ -1178,6 +1289,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     public int getWorkQueueSize() {
         return (this.work_queue.size());
     }
+    /**
+     * Returns the number of tuples that have been bulk loaded into each
+     * table at this partition through queueLoadTable()
+     */
+    public Map<String, Long> getBulkLoadTupleCounts() {
+        return (Collections.unmodifiableMap(this.bulkload_tuples));
+    }
     public ProfileMeasurement getWorkIdleTime() {
         return (this.work_idle_time);
     }
@@ -1448,8 +1566,15 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         
         // Check whether the txn that we're waiting for is read-only.
         // If it is, then that means all read-only transactions can commit right away
+        // Otherwise if we are allowed to speculatively execute txns that write, then everybody 
+        // can run but they will have to wait for the dtxn to commit before they can return their results
+        ExecutionMode newMode = null;
         if (ts.isExecReadOnly(this.partitionId)) {
-            ExecutionMode newMode = ExecutionMode.COMMIT_READONLY;
+            newMode = ExecutionMode.COMMIT_READONLY;
+        } else if (hstore_conf.site.exec_speculative_writes) {
+            newMode = ExecutionMode.COMMIT_NONE;
+        }
+        if (newMode != null) {
             if (d) LOG.debug(String.format("%s - Attempting to enable %s speculative execution at partition %d [currentMode=%s]",
                                            ts, newMode, partitionId, this.currentExecMode));
             exec_lock.lock();
@@ -1649,7 +1774,15 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                     // disable executing all transactions until the multi-partition transaction commits
                     // NOTE: We don't need acquire the 'exec_mode' lock here, because we know that we either executed in non-spec mode, or 
                     // that there already was a multi-partition transaction hanging around.
-                    if (status != Status.OK && ts.isExecReadOnlyAllPartitions() == false) {
+                    // If we are allowed to speculatively execute txns that write, then we can just rollback this
+                    // txn right now. Nothing else has executed at this partition since it finished, so its
+                    // undo token is the last one that the EE knows about. 
+                    if (status != Status.OK && ts.isExecReadOnlyAllPartitions() == false && hstore_conf.site.exec_speculative_writes) {
+                        if (d) LOG.debug(String.format("%s - Rolling back speculative txn at partition %d [status=%s, dtxn=%s]",
+                                                       ts, this.partitionId, status, this.currentDtxn));
+                        this.finishWork(ts, false);
+                    }
+                    else if (status != Status.OK && ts.isExecReadOnlyAllPartitions() == false) {
                         this.setExecutionMode(ts, ExecutionMode.DISABLED);
                         int blocked = this.work_queue.drainTo(this.currentBlockedTxns);
                         if (t && blocked > 0)
@@ -1806,19 +1939,17 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             // just wait until they come back to execute the query again before 
             // we tell them that something went wrong. It's ghetto, but it's just easier this way...
             if (status == Status.OK) {
-                if (d) LOG.debug(String.format("%s - Storing %d prefetch query results in partition %d query cache",
+                if (d) LOG.debug(String.format("%s - Storing %d prefetch query results for base partition %d",
                                                ts, result.size(), ts.getBasePartition()));
-                PartitionExecutor other = null; // 
                 for (int i = 0, cnt = result.size(); i < cnt; i++) {
-                    // We're going to store the result in the base partition cache if they're 
-                    // on the same HStoreSite as us
-                    if (hstore_site.isLocalPartition(ts.getBasePartition())) {
-                        if (other == null) other = this.hstore_site.getPartitionExecutor(ts.getBasePartition());
-                        other.queryCache.addTransactionQueryResult(ts.getTransactionId(),
-                                                                   fragment.getFragmentId(i),
-                                                                   fragment.getPartitionId(),
-                                                                   parameters[i],
-                                                                   result.dependencies[i]);
+                    // We're going to store the result directly in the txn's handle if its base 
+                    // partition is on the same HStoreSite as us. We can't put it in the base
+                    // partition's QueryCache because that's only safe to touch from its own thread
+                    if (is_dtxn == false) {
+                        ((LocalTransaction)ts).addPrefetchResult(fragment.getPartitionId(),
+                                                                 fragment.getFragmentId(i),
+                                                                 parameters[i],
+                                                                 result.dependencies[i]);
                     }
                     // We also need to store it in our own cache in case we need to retrieve it
                     // if they come at us with the same query request
@@ -1996,31 +2127,44 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     }
     
     /**
-     * Execute a BatchPlan directly on this PartitionExecutor without having to covert it
-     * to FragmentTaskMessages first. This is big speed improvement over having to queue things up
+     * Returns true if the given BatchPlan needs to be executed with an undo buffer at this partition
+     * This is only package-private so that the test cases can get at it
      * @param ts
      * @param plan
      * @return
      */
-    public VoltTable[] executeLocalPlan(LocalTransaction ts, BatchPlanner.BatchPlan plan, ParameterSet parameterSets[]) {
-        long undoToken = HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN;
-        
+    boolean needsUndoBuffer(LocalTransaction ts, BatchPlanner.BatchPlan plan) {
         // If we originally executed this transaction with undo buffers and we have a MarkovEstimate,
-        // then we can go back and check whether we want to disable undo logging for the rest of the transaction
-        // We can do this regardless of whether the transaction has written anything <-- NOT TRUE!
+        // then we can go back and check whether we want to disable undo logging for this batch
         if (ts.getEstimatorState() != null && ts.isPredictSinglePartition() && ts.isSpeculative() == false && hstore_conf.site.exec_no_undo_logging) {
-            MarkovEstimate est = ts.getEstimatorState().getLastEstimate();
-            assert(est != null) : "Got back null MarkovEstimate for " + ts;
-            if (est.isAbortable(this.thresholds) || est.isReadOnlyPartition(this.thresholds, this.partitionId) == false) {
-                undoToken = this.getNextUndoToken();
-            } else if (d) {
-                LOG.debug(String.format("Bold! Disabling undo buffers for inflight %s [prob=%f]\n%s\n%s",
-                                        ts, est.getAbortProbability(), est, plan.toString()));
+            // We can only skip the undo buffer if this batch doesn't write anything. Even if the 
+            // MarkovEstimate says that the txn will never abort, one of its queries could still fail
+            // and then there would be nothing for us to rollback to. The rounds that skipped it
+            // never have to be undone, so an abort will still rollback every round that wrote 
+            if (plan.isReadOnly() == false) {
+                return (true);
             }
+            if (d) LOG.debug(String.format("Bold! Disabling undo buffers for inflight %s\n%s", ts, plan.toString()));
+            return (false);
         }
         // If the transaction is predicted to be read-only, then we won't bother with an undo buffer
-        else if ((ts.isPredictReadOnly() == false && hstore_conf.site.exec_no_undo_logging_all == false) ||
-                 hstore_conf.site.exec_force_undo_logging_all) {
+        // If speculative txns can write, then they always need an undo buffer in case the dtxn 
+        // that they're waiting on aborts
+        return ((ts.isPredictReadOnly() == false && hstore_conf.site.exec_no_undo_logging_all == false) ||
+                hstore_conf.site.exec_force_undo_logging_all ||
+                (hstore_conf.site.exec_speculative_writes && ts.isSpeculative()));
+    }
+    
+    /**
+     * Execute a BatchPlan directly on this PartitionExecutor without having to covert it
+     * to FragmentTaskMessages first. This is big speed improvement over having to queue things up
+     * @param ts
+     * @param plan
+     * @return
+     */
+    public VoltTable[] executeLocalPlan(LocalTransaction ts, BatchPlanner.BatchPlan plan, ParameterSet parameterSets[]) {
+        long undoToken = HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN;
+        if (this.needsUndoBuffer(ts, plan)) {
             undoToken = this.getNextUndoToken();
         }
         ts.fastInitRound(this.partitionId, undoToken);
@@ -2220,6 +2364,111 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                      getNextUndoToken(),
                      allowELT != 0);
     }
+    
+    /**
+     * Load a chunk of serialized tuples (e.g., from a snapshot save file) straight into
+     * the given table at this partition without deserializing it first.
+     * The caller is responsible for making sure that all of the tuples in the chunk
+     * actually belong at this partition.
+     * @param ts
+     * @param catalog_tbl
+     * @param chunk
+     * @param allowELT
+     */
+    public void loadTableChunk(AbstractTransaction ts, Table catalog_tbl, BBContainer chunk, boolean allowELT) {
+        ts.setSubmittedEE(this.partitionId);
+        ee.loadTableChunk(catalog_tbl.getRelativeIndex(), chunk,
+                          ts.getTransactionId(),
+                          lastCommittedTxnId,
+                          getNextUndoToken(),
+                          allowELT);
+    }
+    
+    /**
+     * Queue a bulk load request for this partition. The tuples will be loaded
+     * directly into the EE outside of a transaction and without undo logging, so they
+     * cannot be rolled back. The caller is responsible for making sure that all of the
+     * tuples in the table actually belong at this partition.
+     * The ClientResponse will be sent back using the given callback.
+     * @param clientHandle
+     * @param tableName
+     * @param data
+     * @param callback
+     */
+    public void queueLoadTable(long clientHandle, String tableName, VoltTable data, RpcCallback<byte[]> callback) {
+        LoadTableMessage msg = new LoadTableMessage(clientHandle, tableName, data, callback);
+        this.work_queue.add(msg);
+        if (d) LOG.debug(String.format("Added %s to partition %d work queue [size=%d]",
+                                       msg, this.partitionId, this.work_queue.size()));
+    }
+    
+    /**
+     * Load the tuples for the given LoadTableMessage into the EE and then
+     * send the response back to the client. The result table contains the
+     * number of tuples that were loaded in this request and the total number
+     * of tuples that have been bulk loaded into the table at this partition.
+     * @param msg
+     */
+    private void processLoadTableMessage(LoadTableMessage msg) {
+        String tableName = msg.getTableName();
+        VoltTable data = msg.getData();
+        Status status = Status.OK;
+        VoltTable results[] = HStoreConstants.EMPTY_RESULT;
+        String error = "";
+        
+        Table catalog_tbl = this.database.getTables().getIgnoreCase(tableName);
+        if (catalog_tbl == null) {
+            status = Status.ABORT_UNEXPECTED;
+            error = "Table '" + tableName + "' does not exist";
+        }
+        // Replicated tables and tables with vertical partitions must be
+        // loaded at more than one partition, so we can't do them here 
+        else if (catalog_tbl.getIsreplicated() || CatalogUtil.getVerticalPartition(catalog_tbl) != null) {
+            status = Status.ABORT_UNEXPECTED;
+            error = "Table '" + tableName + "' cannot be bulk loaded at a single partition";
+        }
+        else {
+            if (d) LOG.debug(String.format("Bulk loading %d tuples into %s at partition %d",
+                                           data.getRowCount(), catalog_tbl.getName(), this.partitionId));
+            try {
+                ee.loadTable(catalog_tbl.getRelativeIndex(), data,
+                             this.lastCommittedTxnId,
+                             this.lastCommittedTxnId,
+                             HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN,
+                             false);
+            } catch (Throwable ex) {
+                LOG.error(String.format("Failed to bulk load %d tuples into %s at partition %d",
+                                        data.getRowCount(), catalog_tbl.getName(), this.partitionId), ex);
+                status = Status.ABORT_UNEXPECTED;
+                error = ex.getMessage();
+            }
+        }
+        
+        if (status == Status.OK) {
+            Long total = this.bulkload_tuples.get(catalog_tbl.getName());
+            total = (total != null ? total.longValue() : 0l) + data.getRowCount();
+            this.bulkload_tuples.put(catalog_tbl.getName(), total);
+            VoltTable vt = new VoltTable(new VoltTable.ColumnInfo[] {
+                new VoltTable.ColumnInfo("PARTITION_ID", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("TUPLES", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("TOTAL_TUPLES", VoltType.BIGINT),
+            });
+            vt.addRow(this.partitionId, catalog_tbl.getName(), data.getRowCount(),
+                      total);
+            results = new VoltTable[]{ vt };
+        }
+        
+        ClientResponseImpl cresponse = new ClientResponseImpl(-1, msg.getClientHandle(), this.partitionId,
+                                                              status, results, error);
+        FastSerializer fs = new FastSerializer();
+        try {
+            fs.writeObject(cresponse);
+        } catch (IOException ex) {
+            throw new ServerFaultException("Failed to serialize bulk load response for " + tableName, ex);
+        }
+        msg.getCallback().run(fs.getBytes());
+    }
 
     /**
      * Execute a SQLStmt batch at this partition.
@@ -2291,7 +2540,9 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             MarkovGraph markov = (t_state != null ? t_state.getMarkovGraph() : null); 
             if (hstore_conf.site.markov_mispredict_recompute && markov != null) {
                 if (d) LOG.debug("Recomputing MarkovGraph probabilities because " + ts + " mispredicted");
-                // FIXME this.executor.helper.queueMarkovToRecompute(markov);
+                MarkovGraphUpdater updater = this.hstore_site.getMarkovGraphUpdater();
+                if (updater != null) updater.queueMarkovToRecompute(markov);
+                // FIXME else this.executor.helper.queueMarkovToRecompute(markov);
             }
             
             // Print Misprediction Debug
@@ -2720,10 +2971,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                                 int fragId = fragment.getFragmentId(i);
                                 int paramIdx = fragment.getParamIndex(i);
                                 
-                                VoltTable vt = this.queryCache.getTransactionCachedResult(ts.getTransactionId(),
-                                                                                          fragId,
-                                                                                          partition,
-                                                                                          parameters[paramIdx]);
+                                VoltTable vt = ts.getPrefetchResult(partition, fragId, parameters[paramIdx]);
                                 if (vt != null) {
                                     ts.addResult(partition, fragment.getOutputDepId(i), vt);
                                 } else {
@@ -2954,7 +3202,10 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         // -------------------------------
         if (is_singlepartitioned) {
             // Commit or abort the transaction
-            this.finishWork(ts, (status == Status.OK));
+            // A speculative txn that aborted will have already been rolled back when it finished
+            if (ts.isSpeculative() == false || ts.isFinishedEE(this.partitionId) == false) {
+                this.finishWork(ts, (status == Status.OK));
+            }
             
             // If the txn was mispredicted, then we will pass the information over to the HStoreSite
             // so that it can re-execute the transaction. We want to do this first so that the txn gets re-executed
@@ -3030,10 +3281,11 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         
     /**
      * Internal call to abort/commit the transaction
+     * This is only package-private so that the test cases can get at it
      * @param ts
      * @param commit
      */
-    private void finishWork(AbstractTransaction ts, boolean commit) {
+    void finishWork(AbstractTransaction ts, boolean commit) {
         assert(ts.isFinishedEE(this.partitionId) == false) :
             String.format("Trying to commit %s twice at partition %d", ts, this.partitionId);
         
@@ -3060,13 +3312,30 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 if (commit) {
                     if (d) LOG.debug(String.format("%s - Committing on partition=%d [lastTxnId=%d, undoToken=%d, submittedEE=%s]",
                                                    ts, this.partitionId, this.lastCommittedTxnId, undoToken, ts.hasSubmittedEE(this.partitionId)));
-                    this.ee.releaseUndoToken(undoToken);
+                    // Speculative txns can execute in between the rounds of a distributed txn, so
+                    // their work may have already been released when the dtxn committed 
+                    if (undoToken != HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN && undoToken > this.lastReleasedUndoToken) {
+                        // Nothing else can be rolled back to before a committed single-partition txn,
+                        // so we can wait and release a run of them all at once
+                        if (ts instanceof LocalTransaction && ts.isPredictSinglePartition() &&
+                            ((LocalTransaction)ts).isSpeculative() == false &&
+                            hstore_conf.site.exec_undo_release_batch > 1) {
+                            this.pendingReleaseUndoToken = undoToken;
+                            if (++this.pendingReleaseCount >= hstore_conf.site.exec_undo_release_batch) {
+                                this.releaseUndoToken(undoToken);
+                            }
+                        } else {
+                            this.releaseUndoToken(undoToken);
+                        }
+                    }
     
                 // Evan says that txns will be aborted LIFO. This means the first txn that
                 // we get in abortWork() will have a the greatest undoToken, which means that 
                 // it will automagically rollback all other outstanding txns.
                 // I'm lazy/tired, so for now I'll just rollback everything I get, but in theory
                 // we should be able to check whether our undoToken has already been rolled back
+                } else if (hstore_conf.site.exec_speculative_writes) {
+                    this.undoSpeculative(ts, undoToken);
                 } else {
                     if (d) LOG.debug(String.format("%s - Aborting on partition=%d [lastTxnId=%d, undoToken=%d, submittedEE=%s]",
                                                    ts, this.partitionId, this.lastCommittedTxnId, undoToken, ts.hasSubmittedEE(this.partitionId)));
@@ -3081,6 +3350,35 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         ts.setFinishedEE(this.partitionId);
     }
     
+    /**
+     * Rollback the given txn when speculative txns are allowed to write.
+     * We rollback to the first token that this txn used at this partition. This will undo
+     * all of its rounds, plus any speculative txns that were chained after it. But we skip
+     * over the tokens that the last rollback already undid, because a dtxn's abort will
+     * have already rolled back the speculative txns that get aborted after it.
+     * @param ts
+     * @param undoToken The last undoToken used by the txn at this partition
+     */
+    private void undoSpeculative(AbstractTransaction ts, long undoToken) {
+        long firstUndoToken = ts.getFirstUndoToken(this.partitionId);
+        if (firstUndoToken == HStoreConstants.NULL_UNDO_LOGGING_TOKEN) firstUndoToken = undoToken;
+        if (firstUndoToken >= this.firstUndoneUndoToken && firstUndoToken <= this.lastUndoneUndoToken) {
+            firstUndoToken = this.lastUndoneUndoToken + 1;
+        }
+        if (firstUndoToken > undoToken) {
+            if (d) LOG.debug(String.format("%s - Skipping abort on partition=%d because it was already rolled back [undoToken=%d, undone=%d-%d]",
+                                           ts, this.partitionId, undoToken, this.firstUndoneUndoToken, this.lastUndoneUndoToken));
+            return;
+        }
+        if (d) LOG.debug(String.format("%s - Aborting on partition=%d [lastTxnId=%d, undoToken=%d-%d, submittedEE=%s]",
+                                       ts, this.partitionId, this.lastCommittedTxnId, firstUndoToken, undoToken, ts.hasSubmittedEE(this.partitionId)));
+        this.ee.undoUndoToken(firstUndoToken);
+        if (undoToken != HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN) {
+            this.firstUndoneUndoToken = firstUndoToken;
+            this.lastUndoneUndoToken = this.lastUndoToken;
+        }
+    }
+    
     /**
      * Somebody told us that our partition needs to abort/commit the given transaction id.
      * This method should only be used for distributed transactions, because
@@ -3206,9 +3504,15 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             // If the multi-p txn aborted, then we need to abort everything in our queue
             // Change the status to be a MISPREDICT so that they get executed again
             if (commit == false) {
+                // Speculative txns that aborted on their own were already rolled back,
+                // so they don't get restarted and just send back their original response
+                if (hstore_conf.site.exec_speculative_writes && cr.getStatus() != Status.OK) {
+                    if (d) LOG.debug(String.format("%s - Not restarting speculative txn because it already aborted [status=%s]",
+                                                   ts, cr.getStatus()));
+                }
                 // We're going to assume that any transaction that didn't mispredict
                 // was single-partitioned. We'll use their TouchedPartitions histogram
-                if (cr.getStatus() != Status.ABORT_MISPREDICT) {
+                else if (cr.getStatus() != Status.ABORT_MISPREDICT) {
                     ts.setPendingError(new MispredictionException(ts.getTransactionId(), ts.getTouchedPartitions()), false);
                     cr.setStatus(Status.ABORT_MISPREDICT);
                 }
@@ -3263,6 +3567,16 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         return m_snapshotter.completeSnapshotWork(ee);
     }
     
+    /**
+     * Returns the progress of each table in the snapshot that is in progress
+     * at this partition (or the last one that finished)
+     * This is used by HStoreSiteStatus
+     */
+    public List<SnapshotTableTask> getSnapshotProgress() {
+        if (m_snapshotter == null) return (Collections.<SnapshotTableTask>emptyList());
+        return (m_snapshotter.getTableTasks());
+    }
+    
     // ---------------------------------------------------------------
     // SHUTDOWN METHODS
     // ---------------------------------------------------------------
@@ -51,6 +51,8 @@ public class PartitionExecutorQueue extends PriorityBlockingQueue<VoltMessage> {
             boolean isTxn0 = (msg0 instanceof TransactionInfoBaseMessage);
             boolean isTxn1 = (msg1 instanceof TransactionInfoBaseMessage);
             if (!isTxn0 && isTxn1) return (-1);
+            else if (isTxn0 && !isTxn1) return (1);
+            else if (!isTxn0 && !isTxn1) return (0);
             else if (isTxn0 && isTxn1) return (1);
 
             Class<? extends VoltMessage> class0 = msg0.getClass();
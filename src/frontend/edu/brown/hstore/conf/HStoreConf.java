@@ -146,6 +146,24 @@ public final class HStoreConf {
         )
         public int exec_ee_log_level;
         
+        @ConfigProperty(
+            description="If the ExecutionEngine is running in a separate process (i.e., the IPC backend), then " +
+                        "pass requests and responses through a pair of shared memory rings instead of the socket. " +
+                        "The socket is still used to wake up the other process when it is blocked. " +
+                        "This will fall back to the socket if the shared memory file cannot be created.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_ee_ipc_shared_memory;
+        
+        @ConfigProperty(
+            description="The size (in MB) of each shared memory ring used by the IPC ExecutionEngine. " +
+                        "This will be rounded down to the nearest power of two, and it can be at most 512MB.",
+            defaultInt=8,
+            experimental=true
+        )
+        public int exec_ee_ipc_shared_memory_size;
+        
         @ConfigProperty(
             description="Enable execution site profiling. This will keep track of how busy each PartitionExecutor thread" +
                         "is during execution (i.e., the percentage of time that it spends executing a transaction versus " +
@@ -165,8 +183,41 @@ public final class HStoreConf {
         public boolean exec_speculative_execution;
         
         @ConfigProperty(
-            description="If this feature is enabled, then those non-speculative single partition transactions that are " +
-                        "deemed to never abort will be executed without undo logging. Requires Markov model estimations.",
+            description="If this feature is enabled with speculative execution, then a speculatively executed " +
+                        "single-partition transaction that aborts is rolled back right away instead of disabling " +
+                        "speculative execution until the outstanding distributed transaction finishes. All " +
+                        "speculative transactions are chained after the distributed transaction's first undo token, " +
+                        "so if the distributed transaction aborts then they are rolled back with it and re-executed.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_speculative_writes;
+        
+        @ConfigProperty(
+            description="If this feature is enabled, then the base partition of a distributed transaction will combine " +
+                        "the partial aggregates that it gets back from the other partitions for a pushed down " +
+                        "aggregate query as each of them arrives, instead of waiting for all of them and then passing " +
+                        "every partition's rows to the final aggregate in the ExecutionEngine.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_combine_partial_aggregates;
+        
+        @ConfigProperty(
+            description="If this feature is enabled, then the base partition of a distributed transaction will not " +
+                        "execute the last PlanFragment of a read-only query if all it does is union together the " +
+                        "results from the partitions. The partitions' tables are instead combined in Java, or handed " +
+                        "to the procedure one at a time if it uses VoltProcedure.voltExecuteSQLStream().",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_stream_union_results;
+        
+        @ConfigProperty(
+            description="If this feature is enabled, then non-speculative single partition transactions will not use " +
+                        "undo logging for batches that do not modify any data. Batches with writes will always use undo " +
+                        "logging so that the transaction can still be rolled back if it aborts. " +
+                        "Requires Markov model estimations.",
             defaultBoolean=false,
             experimental=true
         )
@@ -186,6 +237,48 @@ public final class HStoreConf {
         )
         public boolean exec_force_undo_logging_all;
         
+        @ConfigProperty(
+            description="The number of committed single-partition transactions whose undo buffers can be released " +
+                        "in the ExecutionEngine with a single call. Releasing an undo token also releases all earlier " +
+                        "tokens, so the PartitionExecutor only needs to release the last one. Any outstanding tokens " +
+                        "are also released when the PartitionExecutor's work queue is empty. " +
+                        "Setting this to one releases every transaction's undo buffer as soon as it commits.",
+            defaultInt=10,
+            experimental=true
+        )
+        public int exec_undo_release_batch;
+        
+        @ConfigProperty(
+            description="The maximum number of bytes per second that each PartitionExecutor will serialize for a " +
+                        "copy-on-write snapshot while it has transactions waiting to execute. Snapshot blocks that are " +
+                        "serialized while the PartitionExecutor is idle are not counted against this limit. " +
+                        "Setting this to zero or less disables the limit.",
+            defaultInt=16777216,
+            experimental=true
+        )
+        public int exec_snapshot_rate_limit;
+        
+        @ConfigProperty(
+            description="If this parameter is set to true, then each snapshot block will be compressed and " +
+                        "checksummed separately, and an index of the blocks will be written at the end of each " +
+                        "snapshot file. This allows the blocks to be verified and decompressed in parallel when " +
+                        "the snapshot is restored.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_snapshot_compression;
+        
+        @ConfigProperty(
+            description="The number of delta snapshots to take in a row after each full snapshot. A delta snapshot " +
+                        "only writes out the tuple blocks that were modified since the previous snapshot, and it " +
+                        "is merged with the snapshots that came before it when it is restored. If the previous " +
+                        "snapshot failed or was written to a different path, then a full snapshot is taken instead. " +
+                        "Set this parameter to zero to always take full snapshots.",
+            defaultInt=0,
+            experimental=true
+        )
+        public int exec_snapshot_delta_max;
+        
         @ConfigProperty(
             description="If this parameter is set to true, then each HStoreSite will not send every transaction request " +
                         "through the Dtxn.Coordinator. Only multi-partition transactions will be sent to the " +
@@ -341,6 +434,23 @@ public final class HStoreConf {
         )
         public boolean exec_adhoc_sql;
         
+        @ConfigProperty(
+            description="The maximum number of parameterized ad hoc query plans that each HStoreSite " +
+                        "will cache. Ad hoc queries that only differ by their literal values will " +
+                        "reuse the same cached plan. Set this to zero to disable the cache.",
+            defaultInt=1000,
+            experimental=true
+        )
+        public int exec_adhoc_plancache_size;
+        
+        @ConfigProperty(
+            description="The maximum number of planner processes that each HStoreSite will use " +
+                        "to plan ad hoc queries that are not in the plan cache.",
+            defaultInt=2,
+            experimental=true
+        )
+        public int exec_adhoc_planner_pool_size;
+        
         @ConfigProperty(
             description="If this parameter is enabled, then the DBMS will attempt to prefetch commutative " +
             		    "queries on remote partitions for distributed transactions.",
@@ -387,6 +497,17 @@ public final class HStoreConf {
         )
         public boolean txn_profiling;
         
+        @ConfigProperty(
+            description="If this is set to a non-negative value and txn_profiling is enabled, then each HStoreSite " +
+                        "will serve live per-procedure latency histograms for every transaction phase over HTTP. " +
+                        "The actual port is this value plus the site id. The histograms are available at " +
+                        "/metrics (Prometheus text format) and /metrics.json. Add reset=true to the " +
+                        "query string to start a new interval.",
+            defaultInt=-1,
+            experimental=false
+        )
+        public int txn_profiling_http_port;
+        
         @ConfigProperty(
             description="The amount of time the TransactionQueueManager will wait before letting a " +
                         "distributed transaction id from aquiring a lock on a partition.",
@@ -586,6 +707,60 @@ public final class HStoreConf {
         )
         public int markov_batch_caching_min;
         
+        @ConfigProperty(
+            description="Use the initial Markov path estimate of a distributed transaction to decide which " +
+                        "queries to prefetch on remote partitions when the transaction is initialized. " +
+                        "Any read-only query on the predicted path can be prefetched, as long as all of its input " +
+                        "parameters are mapped to the procedure's input parameters. " +
+                        "Requires ${site.exec_prefetch_queries}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean markov_prefetch;
+        
+        @ConfigProperty(
+            description="The minimum confidence of a transaction's initial Markov path estimate " +
+                        "needed to prefetch the queries on that path. See ${site.markov_prefetch}.",
+            defaultDouble=0.80,
+            experimental=true
+        )
+        public double markov_prefetch_confidence;
+        
+        @ConfigProperty(
+            description="If this is set to true, then the TransactionEstimator and MarkovPathEstimator will use " +
+                        "the compiled, array-based form of each MarkovGraph instead of walking the graph objects " +
+                        "directly. The compiled form is rebuilt every time that a graph's probabilities are recomputed.",
+            defaultBoolean=true,
+            experimental=false
+        )
+        public boolean markov_compiled;
+        
+        @ConfigProperty(
+            description="If this is set to true, then the HStoreSite will start a MarkovGraphUpdater thread that " +
+                        "periodically recomputes the probabilities of the MarkovGraphs used at its partitions from " +
+                        "the counters collected at runtime. The TransactionEstimators will no longer recompute " +
+                        "graphs themselves.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean markov_online_updates;
+        
+        @ConfigProperty(
+            description="How often (in milliseconds) the MarkovGraphUpdater thread will check whether " +
+                        "there are MarkovGraphs that need to be recomputed.",
+            defaultInt=5000,
+            experimental=true
+        )
+        public int markov_online_update_interval;
+        
+        @ConfigProperty(
+            description="The minimum number of transactions that must have finished using a MarkovGraph since " +
+                        "the last time that it was recomputed before the MarkovGraphUpdater will recompute it again.",
+            defaultInt=1000,
+            experimental=true
+        )
+        public int markov_online_update_min_txns;
+        
         @ConfigProperty(
             description="Enable a hack for TPC-C where we inspect the arguments of the TPC-C neworder transaction and figure " +
                         "out what partitions it needs without having to use the TransactionEstimator. This will crash the " +
@@ -1043,6 +1218,17 @@ public final class HStoreConf {
             experimental=true
         )
         public boolean blocking_loader;
+        
+        @ConfigProperty(
+            description="When this parameter is enabled, the benchmark's loaders will split up the tuples " +
+                        "for each non-replicated table by partition on the client side and then send each " +
+                        "piece directly to its partition in parallel using the @LoadPartitionTable system " +
+                        "procedure. These tuples are loaded outside of a transaction without undo logging, " +
+                        "so this should only be used when loading the database before a benchmark run.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean bulkload;
 
         @ConfigProperty(
             description="The scaling factor determines how large to make the target benchmark's data set. " +
@@ -150,6 +150,7 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
     // TODO(pavlo): Document what these arrays are and how the offsets are calculated
     
     private final boolean finished[];
+    private final long first_undo_token[];
     private final long last_undo_token[];
     protected final RoundState round_state[];
     protected final int round_ctr[];
@@ -176,6 +177,7 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
         
         int cnt = hstore_site.getLocalPartitionIdArray().length;
         this.finished = new boolean[cnt];
+        this.first_undo_token = new long[cnt];
         this.last_undo_token = new long[cnt];
         this.round_state = new RoundState[cnt];
         this.round_ctr = new int[cnt];
@@ -186,6 +188,7 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
         this.finish_task = new FinishTaskMessage(this, Status.OK);
         this.work_task = new FragmentTaskMessage[cnt];
         
+        Arrays.fill(this.first_undo_token, HStoreConstants.NULL_UNDO_LOGGING_TOKEN);
         Arrays.fill(this.last_undo_token, HStoreConstants.NULL_UNDO_LOGGING_TOKEN);
         Arrays.fill(this.exec_readOnly, true);
     }
@@ -253,6 +256,7 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
             this.finished[i] = false;
             this.round_state[i] = null;
             this.round_ctr[i] = 0;
+            this.first_undo_token[i] = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
             this.last_undo_token[i] = HStoreConstants.NULL_UNDO_LOGGING_TOKEN;
             this.exec_readOnly[i] = true;
             this.exec_eeWork[i] = false;
@@ -300,6 +304,10 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
             undoToken != HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN) {
             this.last_undo_token[offset] = undoToken;
         }
+        if (this.first_undo_token[offset] == HStoreConstants.NULL_UNDO_LOGGING_TOKEN &&
+            undoToken != HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN) {
+            this.first_undo_token[offset] = undoToken;
+        }
         if (undoToken == HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN) {
             this.exec_noUndoBuffer[offset] = true;
         }
@@ -612,6 +620,14 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
     public long getLastUndoToken(int partition) {
         return this.last_undo_token[hstore_site.getLocalPartitionOffset(partition)];
     }
+    /**
+     * Get the first undo token used for this transaction
+     * Rolling back to this token will undo every round that this txn executed at the
+     * given partition, along with anything that was executed after it
+     */
+    public long getFirstUndoToken(int partition) {
+        return this.first_undo_token[hstore_site.getLocalPartitionOffset(partition)];
+    }
     
     // ----------------------------------------------------------------------------
     // ATTACHED DATA FOR NORMAL WORK FRAGMENTS
@@ -728,6 +744,7 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
         m.put("SysProc", this.sysproc);
         m.put("Current Round State", Arrays.toString(this.round_state));
         m.put("Read-Only", Arrays.toString(this.exec_readOnly));
+        m.put("First UndoToken", Arrays.toString(this.first_undo_token));
         m.put("Last UndoToken", Arrays.toString(this.last_undo_token));
         m.put("# of Rounds", Arrays.toString(this.round_ctr));
         if (this.pending_error != null)
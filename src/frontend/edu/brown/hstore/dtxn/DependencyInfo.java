@@ -3,6 +3,7 @@ package edu.brown.hstore.dtxn;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +12,7 @@ import java.util.Set;
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
 import org.voltdb.VoltTable;
+import org.voltdb.utils.VoltTableUtil;
 
 import edu.brown.hstore.Hstoreservice.WorkFragment;
 import edu.brown.logging.LoggerUtil;
@@ -58,6 +60,13 @@ public class DependencyInfo implements Poolable {
      */
     private int results_lastPartition = -1;
     
+    /**
+     * If this is set, then the results are partial aggregates that get folded
+     * into this as they arrive instead of being stored in the results list 
+     */
+    private PartialAggregateCombiner combiner = null;
+    private final BitSet combinedPartitions = new BitSet();
+    
     /**
      * We assume a 1-to-n mapping from DependencyInfos to blocked FragmentTaskMessages
      */
@@ -76,6 +85,14 @@ public class DependencyInfo implements Poolable {
      */
     private boolean internal = false;
     
+    /**
+     * If set to true, then this dependency is the output of a query even though it
+     * gets results from more than one partition, because the PlanFragment that would
+     * have unioned them together was skipped
+     * @see ResultStream
+     */
+    private boolean union = false;
+    
     // ----------------------------------------------------------------------------
     // INITIALIZATION
     // ----------------------------------------------------------------------------
@@ -121,11 +138,14 @@ public class DependencyInfo implements Poolable {
         this.blockedTasks.clear();
         this.blockedTasksReleased = false;
         this.internal = false;
+        this.union = false;
         
         for (int i = 0, cnt = this.results.size(); i < cnt; i++)
             this.results.set(i, null);
         this.results_ctr = 0;
         this.results_lastPartition = -1;
+        this.combiner = null;
+        this.combinedPartitions.clear();
     }
     
     public int getStatementIndex() {
@@ -144,6 +164,32 @@ public class DependencyInfo implements Poolable {
         return this.internal;
     }
     
+    public void markUnion() {
+        if (d) LOG.debug(String.format("#%s - Marking DependencyInfo for %s as a union of the partitions' results",
+                                       txn_id, LocalTransaction.debugStmtDep(stmt_index, dependency_id)));
+        this.union = true;
+    }
+    public boolean isUnion() {
+        return this.union;
+    }
+    
+    /**
+     * Combine the results from the partitions as they arrive with the given Spec.
+     * This must be called before any results are added.
+     * @param spec
+     */
+    public void setPartialAggregateCombiner(PartialAggregateCombiner.Spec spec) {
+        assert(this.results_ctr == 0) :
+            String.format("#%s - Trying to combine results for DependencyId #%d after %d have arrived",
+                          this.txn_id, this.dependency_id, this.results_ctr);
+        if (d) LOG.debug(String.format("#%s - Combining results for %s with %s",
+                                       txn_id, LocalTransaction.debugStmtDep(stmt_index, dependency_id), spec));
+        this.combiner = new PartialAggregateCombiner(spec);
+    }
+    public boolean hasPartialAggregateCombiner() {
+        return (this.combiner != null);
+    }
+    
     /**
      * Add a FragmentTaskMessage this blocked until all of the partitions return results/responses
      * for this DependencyInfo
@@ -212,6 +258,16 @@ public class DependencyInfo implements Poolable {
     public synchronized boolean addResult(int partition, VoltTable result) {
         if (d) LOG.debug(String.format("#%s - Storing RESULT for DependencyId #%d from Partition #%d with %d tuples",
                                        this.txn_id, this.dependency_id, partition, result.getRowCount()));
+        if (this.combiner != null) {
+            assert(this.combinedPartitions.get(partition) == false) :
+                String.format("Trying to add result for {Partition:%d, Dependency:%d} twice for %s!",
+                              partition, this.dependency_id, this.txn_id);
+            this.combiner.add(result);
+            this.combinedPartitions.set(partition);
+            this.results_ctr++;
+            this.results_lastPartition = partition;
+            return (true);
+        }
         if (partition >= this.results.size()) {
             if (d) LOG.debug(String.format("#%s - Resizing internal result list for DependencyId #%d [OLD:%d -> NEW:%d]",
                                            this.txn_id, this.dependency_id, this.results.size(), partition+1));
@@ -230,7 +286,11 @@ public class DependencyInfo implements Poolable {
     protected int getResultsCount() {
         return (this.results_ctr);
     }
-    protected List<VoltTable> getResults() {
+    protected synchronized List<VoltTable> getResults() {
+        if (this.combiner != null) {
+            if (this.results_ctr == 0) return (Collections.<VoltTable>emptyList());
+            return (Collections.singletonList(this.combiner.getResult()));
+        }
         return (this.results);
     }
     
@@ -241,12 +301,28 @@ public class DependencyInfo implements Poolable {
      */
     public VoltTable getResult() {
         assert(this.results_ctr > 0) : "There are no result available for " + this;
+        if (this.union && this.results_ctr > 1) {
+            return (VoltTableUtil.combine(this.results));
+        }
         assert(this.results_ctr == 1) : 
             "There are " + this.results_ctr + " results for " + this + "\n-------\n" + this.results;
         assert(this.results_lastPartition != -1);
         return (this.results.get(this.results_lastPartition));
     }
     
+    /**
+     * Return all of the results for this DependencyInfo as a ResultStream
+     * This should only be called to get back the results for the final VoltTable of a query
+     * @return
+     */
+    public ResultStream getResultStream() {
+        assert(this.results_ctr > 0) : "There are no result available for " + this;
+        if (this.union) {
+            return (new ResultStream(this.results));
+        }
+        return (new ResultStream(this.getResult()));
+    }
+    
     /**
      * Returns true if the task blocked by this Dependency is now ready to run 
      * @return
@@ -299,6 +375,8 @@ public class DependencyInfo implements Poolable {
         Map<String, Object> m = new ListOrderedMap<String, Object>();
         m.put("  Hash Code", this.hashCode());
         m.put("  Internal", this.internal);
+        m.put("  Combined", this.combiner != null);
+        m.put("  Union", this.union);
         m.put("  Partitions", this.partitions);
         
         Map<String, Object> inner = new ListOrderedMap<String, Object>();
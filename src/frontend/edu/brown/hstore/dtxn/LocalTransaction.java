@@ -52,9 +52,12 @@ import org.voltdb.catalog.CatalogType;
 import org.voltdb.catalog.PlanFragment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.exceptions.SerializableException;
+import org.voltdb.exceptions.ServerFaultException;
+import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.InitiateTaskMessage;
 import org.voltdb.utils.EstTime;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.RpcCallback;
 
 import edu.brown.catalog.CatalogUtil;
@@ -204,6 +207,25 @@ public class LocalTransaction extends AbstractTransaction {
      */
     private RpcCallback<byte[]> client_callback;
     
+    /**
+     * Whether to combine the partial aggregates from the partitions as they arrive
+     * @see PartialAggregateCombiner
+     */
+    private final boolean combine_aggregates;
+    
+    /**
+     * Whether to skip the PlanFragments that just union together the results from the partitions
+     * @see ResultStream
+     */
+    private final boolean stream_results;
+    
+    /**
+     * If set to true, then getResults() will put the results of the current batch
+     * into result_streams instead of combining each of them into a single VoltTable
+     */
+    private boolean result_streams_requested = false;
+    private ResultStream result_streams[];
+    
     // ----------------------------------------------------------------------------
     // INITIALIZATION
     // ----------------------------------------------------------------------------
@@ -218,6 +240,8 @@ public class LocalTransaction extends AbstractTransaction {
         
         HStoreConf hstore_conf = hstore_site.getHStoreConf(); 
         this.profiler = (hstore_conf.site.txn_profiling ? new TransactionProfile() : null);
+        this.combine_aggregates = hstore_conf.site.exec_combine_partial_aggregates;
+        this.stream_results = hstore_conf.site.exec_stream_union_results;
       
         this.itask = new InitiateTaskMessage();
         
@@ -359,6 +383,8 @@ public class LocalTransaction extends AbstractTransaction {
         this.initiateTime = 0;
         
         this.executed = false;
+        this.result_streams_requested = false;
+        this.result_streams = null;
         this.exec_speculative = false;
         this.exec_touchedPartitions.clear();
         this.predict_touchedPartitions = null;
@@ -970,9 +996,88 @@ public class LocalTransaction extends AbstractTransaction {
         this.prefetch.fragmentIds.add(fragmentId);
     }
     
+    /**
+     * Keep track of the prefetch WorkFragments that we sent out for this txn from
+     * its base partition so that we can match up their results when they come back
+     * @param fragments
+     * @param params
+     */
+    public void attachSentPrefetchQueries(List<WorkFragment> fragments, ParameterSet params[]) {
+        assert(this.prefetch != null);
+        assert(this.prefetch.sentFragments == null) :
+            "Trying to attach sent prefetch WorkFragments more than once for " + this;
+        this.prefetch.sentParams = params;
+        this.prefetch.sentFragments = fragments;
+    }
+    
+    /**
+     * Store the WorkResult for a prefetch WorkFragment that was executed at a remote partition.
+     * Each of the VoltTables in the result is added to this txn's prefetch cache so that
+     * the txn will not need to send the query when it finally gets around to executing it. 
+     * @param result
+     */
     public void addPrefetchResults(WorkResult result) {
         assert(this.prefetch != null);
         this.prefetch.results.add(result);
+        
+        // If the query failed, then we'll just let the txn execute it again
+        // when it actually needs it so that it will get the error then
+        List<WorkFragment> fragments = this.prefetch.sentFragments;
+        if (result.getStatus() != Hstoreservice.Status.OK || fragments == null) return;
+        
+        int partition = result.getPartitionId();
+        for (WorkFragment fragment : fragments) {
+            if (fragment.getPartitionId() != partition) continue;
+            for (int i = 0, cnt = result.getDepIdCount(); i < cnt; i++) {
+                int offset = fragment.getOutputDepIdList().indexOf(result.getDepId(i));
+                if (offset == -1) continue;
+                ByteString bs = result.getDepData(i);
+                if (bs.isEmpty()) continue;
+                
+                VoltTable vt = null;
+                FastDeserializer fd = new FastDeserializer(bs.asReadOnlyByteBuffer());
+                try {
+                    vt = fd.readObject(VoltTable.class);
+                } catch (Exception ex) {
+                    String msg = "Failed to deserialize prefetch VoltTable from partition " + partition + " for " + this; 
+                    throw new ServerFaultException(msg, ex, this.txn_id);
+                }
+                this.addPrefetchResult(partition,
+                                       fragment.getFragmentId(offset),
+                                       this.prefetch.sentParams[fragment.getParamIndex(offset)],
+                                       vt);
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * Store the result of a prefetched query for this txn
+     * @param partition The partition that executed the query
+     * @param fragmentId
+     * @param params
+     * @param result
+     */
+    public void addPrefetchResult(int partition, int fragmentId, ParameterSet params, VoltTable result) {
+        assert(this.prefetch != null);
+        if (d) LOG.debug(String.format("%s - Storing prefetch result for fragment #%d from partition %d [rows=%d]",
+                                       this, fragmentId, partition, result.getRowCount()));
+        this.prefetch.cachedResults.add(new PrefetchState.CachedResult(partition, fragmentId, params, result));
+    }
+    
+    /**
+     * Return the prefetched result for the given query, if it has arrived already.
+     * Returns null if the result is not available.
+     * @param partition
+     * @param fragmentId
+     * @param params
+     * @return
+     */
+    public VoltTable getPrefetchResult(int partition, int fragmentId, ParameterSet params) {
+        assert(this.prefetch != null);
+        for (PrefetchState.CachedResult cr : this.prefetch.cachedResults) {
+            if (cr.matches(partition, fragmentId, params)) return (cr.result);
+        } // FOR
+        return (null);
     }
     
     // ----------------------------------------------------------------------------
@@ -1045,6 +1150,9 @@ public class LocalTransaction extends AbstractTransaction {
         final VoltTable results[] = new VoltTable[this.state.output_order.size()];
         if (d) LOG.debug(String.format("%s - Generating output results with %d tables",
                                        this, results.length));
+        if (this.result_streams_requested) {
+            this.result_streams = new ResultStream[results.length];
+        }
         for (int stmt_index = 0; stmt_index < results.length; stmt_index++) {
             Integer dependency_id = this.state.output_order.get(stmt_index);
             assert(dependency_id != null) :
@@ -1054,17 +1162,47 @@ public class LocalTransaction extends AbstractTransaction {
             assert(this.state.dependencies.containsKey(dependency_id)) :
                 String.format("Missing info for %s in %s", debugStmtDep(stmt_index, dependency_id), this); 
             
-            results[stmt_index] = this.state.dependencies.get(dependency_id).getResult();
+            DependencyInfo dinfo = this.state.dependencies.get(dependency_id);
+            if (this.result_streams != null) {
+                this.result_streams[stmt_index] = dinfo.getResultStream();
+                continue;
+            }
+            results[stmt_index] = dinfo.getResult();
             assert(results[stmt_index] != null) :
                 "Null output result for Statement index " + stmt_index + " in txn #" + this.txn_id;
         } // FOR
         return (results);
     }
     
+    /**
+     * Ask for the results of the next batch to be kept as ResultStreams. In that
+     * case getResults() only returns nulls and they have to be retrieved
+     * with removeResultStreams() instead.
+     */
+    public void requestResultStreams() {
+        this.result_streams_requested = true;
+        this.result_streams = null;
+    }
+    
+    /**
+     * Return the ResultStreams for the last batch and stop generating them.
+     * This will be null if the batch did not go through getResults()
+     * (e.g., because it only executed at the base partition)
+     * @return
+     */
+    public ResultStream[] removeResultStreams() {
+        ResultStream streams[] = this.result_streams;
+        this.result_streams_requested = false;
+        this.result_streams = null;
+        return (streams);
+    }
+    
     /**
      * Queues up a WorkFragment for this txn
      * If the return value is true, then the FragmentTaskMessage is blocked waiting for dependencies
      * If the return value is false, then the FragmentTaskMessage can be executed immediately (either locally or on at a remote partition)
+     * A WorkFragment that just unions together the results from the partitions is not executed at all,
+     * so it is returned as blocked but it never gets released.
      * @param fragment
      */
     public boolean addWorkFragment(WorkFragment fragment) {
@@ -1079,6 +1217,20 @@ public class LocalTransaction extends AbstractTransaction {
         if (d) LOG.debug(String.format("%s - Adding %s for partition %d with %d fragments",
                                        this, fragment.getClass().getSimpleName(), partition, num_fragments));
         
+        // If this is the PlanFragment that would union together the results from the partitions,
+        // then we'll let those results be the output of the query instead
+        if (this.stream_results && num_fragments == 1 &&
+            fragment.getInputDepId(0).getIdsCount() == 1 &&
+            ResultStream.isUnionFragment(this.catalog_proc, fragment.getFragmentId(0))) {
+            int stmt_index = fragment.getStmtIndex(0);
+            int dependency_id = fragment.getInputDepId(0).getIds(0);
+            DependencyInfo dinfo = this.getOrCreateDependencyInfo(stmt_index, dependency_id);
+            dinfo.markUnion();
+            if (d) LOG.debug(String.format("%s - Skipping union PlanFragment %d and using %s as the output",
+                                           this, fragment.getFragmentId(0), debugStmtDep(stmt_index, dependency_id)));
+            return (true);
+        }
+        
         // PAVLO: 2011-12-10
         // We moved updating the exec_touchedPartitions histogram into the
         // BatchPlanner so that we won't increase the counter for a partition
@@ -1121,11 +1273,20 @@ public class LocalTransaction extends AbstractTransaction {
             // the executor before it is allowed to start executing
             WorkFragment.InputDependency input_dep_ids = fragment.getInputDepId(i);
             if (input_dep_ids.getIdsCount() > 0) {
+                // If the PlanFragment is going to aggregate the partial aggregates from 
+                // the other partitions, then we can combine them as they come in
+                PartialAggregateCombiner.Spec combiner_spec = null;
+                if (this.combine_aggregates && input_dep_ids.getIdsCount() == 1) {
+                    combiner_spec = PartialAggregateCombiner.getSpec(this.catalog_proc, fragment.getFragmentId(i));
+                }
                 for (int dependency_id : input_dep_ids.getIdsList()) {
                     if (dependency_id != HStoreConstants.NULL_DEPENDENCY_ID) {
                         DependencyInfo dinfo = this.getOrCreateDependencyInfo(stmt_index, dependency_id);
                         dinfo.addBlockedWorkFragment(fragment);
                         dinfo.markInternal();
+                        if (combiner_spec != null && dinfo.hasPartialAggregateCombiner() == false) {
+                            dinfo.setPartialAggregateCombiner(combiner_spec);
+                        }
                         if (blocked == false) {
                             this.state.blocked_tasks.add(fragment);
                             blocked = true;   
@@ -0,0 +1,338 @@
+/***************************************************************************
+ *   Copyright (C) 2012 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.hstore.dtxn;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashAggregatePlanNode;
+import org.voltdb.plannodes.ReceivePlanNode;
+import org.voltdb.types.ExpressionType;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.plannodes.PlanNodeUtil;
+import edu.brown.utils.CollectionUtil;
+
+/**
+ * Combines the partial aggregates that each partition sends back for a
+ * distributed aggregate query as they arrive at the transaction's base partition.
+ * The AggregatePushdownOptimization puts a HashAggregatePlanNode below the
+ * SEND so that each partition only sends one row per group, and then the
+ * HashAggregatePlanNode above the RECEIVE combines those rows. Every aggregate
+ * up there (SUM, MIN, MAX, and the SUM/COUNT pairs for AVG) can be applied
+ * to its own output again, so we can fold each partition's rows into a
+ * single table while we are still waiting for the other partitions. The EE
+ * then only has to aggregate one row per group instead of one per group for
+ * every partition.
+ */
+public class PartialAggregateCombiner {
+    private static final Logger LOG = Logger.getLogger(PartialAggregateCombiner.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * How a column of the partial aggregate rows is combined
+     */
+    public enum Combine {
+        /** Not aggregated. We keep the first value that we see for the group */
+        FIRST,
+        /** Part of the GROUP BY key */
+        GROUP_BY,
+        SUM,
+        MIN,
+        MAX;
+    }
+
+    /**
+     * How to combine each of the columns of the partial aggregate rows
+     * that are sent to a PlanFragment
+     */
+    public static class Spec {
+        private final Combine ops[];
+        private final int groupByColumns[];
+
+        public Spec(Combine...ops) {
+            this.ops = ops;
+            int num_groupBy = 0;
+            for (Combine op : ops) {
+                if (op == Combine.GROUP_BY) num_groupBy++;
+            } // FOR
+            this.groupByColumns = new int[num_groupBy];
+            for (int i = 0, j = 0; i < ops.length; i++) {
+                if (ops[i] == Combine.GROUP_BY) this.groupByColumns[j++] = i;
+            } // FOR
+        }
+
+        public Combine[] getCombineOps() {
+            return (this.ops);
+        }
+
+        @Override
+        public String toString() {
+            return ("PartialAggregateCombiner.Spec" + Arrays.toString(this.ops));
+        }
+    }
+
+    /**
+     * Procedure -> PlanFragmentId -> Spec
+     * The PlanFragments that can't take combined input map to NOT_COMBINABLE
+     */
+    private static final Map<Procedure, Map<Integer, Spec>> CACHE_SPECS = new ConcurrentHashMap<Procedure, Map<Integer, Spec>>();
+    private static final Spec NOT_COMBINABLE = new Spec();
+
+    /**
+     * Returns the Spec for combining the input of the given PlanFragment,
+     * or null if its input should be left alone.
+     * @param catalog_proc
+     * @param frag_id
+     * @return
+     */
+    public static Spec getSpec(Procedure catalog_proc, int frag_id) {
+        Map<Integer, Spec> specs = CACHE_SPECS.get(catalog_proc);
+        if (specs == null) {
+            specs = new ConcurrentHashMap<Integer, Spec>();
+            CACHE_SPECS.put(catalog_proc, specs);
+        }
+        Spec spec = specs.get(frag_id);
+        if (spec == null) {
+            spec = NOT_COMBINABLE;
+            if (catalog_proc.getSystemproc() == false) {
+                for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                    PlanFragment catalog_frag = catalog_stmt.getMs_fragments().get(Integer.toString(frag_id));
+                    if (catalog_frag == null) continue;
+                    Spec s = getSpec(catalog_frag);
+                    if (s != null) spec = s;
+                    break;
+                } // FOR
+            }
+            specs.put(frag_id, spec);
+        }
+        return (spec == NOT_COMBINABLE ? null : spec);
+    }
+
+    /**
+     * Figure out how to combine the partial aggregates that are sent to the
+     * given PlanFragment. Returns null if the PlanFragment doesn't combine
+     * partial aggregates from a RECEIVE.
+     * @param catalog_frag
+     * @return
+     */
+    public static Spec getSpec(PlanFragment catalog_frag) {
+        AbstractPlanNode root = PlanNodeUtil.getPlanNodeTreeForPlanFragment(catalog_frag);
+        Collection<ReceivePlanNode> recv_nodes = PlanNodeUtil.getPlanNodes(root, ReceivePlanNode.class);
+        if (recv_nodes.size() != 1) return (null);
+        ReceivePlanNode recv_node = CollectionUtil.first(recv_nodes);
+        if (recv_node.getParentPlanNodeCount() != 1 ||
+            recv_node.getParent(0).getClass().equals(HashAggregatePlanNode.class) == false) {
+            return (null);
+        }
+        HashAggregatePlanNode agg_node = (HashAggregatePlanNode)recv_node.getParent(0);
+        List<Integer> recv_guids = recv_node.getOutputColumnGUIDs();
+
+        Combine ops[] = new Combine[recv_guids.size()];
+        Arrays.fill(ops, Combine.FIRST);
+        for (Integer guid : agg_node.getGroupByColumnGuids()) {
+            int offset = recv_guids.indexOf(guid);
+            if (offset == -1) return (null);
+            ops[offset] = Combine.GROUP_BY;
+        } // FOR
+
+        // Each AGGREGATE_WEIGHTED_AVG takes one of the COUNTs at the end
+        // of the input columns. See AggregatePushdownOptimization
+        int num_weighted = 0;
+        for (ExpressionType et : agg_node.getAggregateTypes()) {
+            if (et == ExpressionType.AGGREGATE_WEIGHTED_AVG) num_weighted++;
+        } // FOR
+        for (int i = ops.length - num_weighted; i < ops.length; i++) {
+            if (i < 0 || ops[i] != Combine.FIRST) return (null);
+            ops[i] = Combine.SUM;
+        } // FOR
+
+        for (int i = 0, cnt = agg_node.getAggregateTypes().size(); i < cnt; i++) {
+            int offset = recv_guids.indexOf(agg_node.getAggregateColumnGuids().get(i));
+            if (offset == -1 || ops[offset] != Combine.FIRST) return (null);
+            switch (agg_node.getAggregateTypes().get(i)) {
+                case AGGREGATE_SUM:
+                case AGGREGATE_WEIGHTED_AVG:
+                    ops[offset] = Combine.SUM;
+                    break;
+                case AGGREGATE_MIN:
+                    ops[offset] = Combine.MIN;
+                    break;
+                case AGGREGATE_MAX:
+                    ops[offset] = Combine.MAX;
+                    break;
+                default:
+                    // Anything else (e.g., COUNT) needs to see the original rows
+                    if (debug.get()) LOG.debug(String.format("Not combining input for %s because of %s",
+                                                             catalog_frag.fullName(), agg_node.getAggregateTypes().get(i)));
+                    return (null);
+            } // SWITCH
+        } // FOR
+
+        Spec spec = new Spec(ops);
+        if (debug.get()) LOG.debug(String.format("Combining input for %s with %s", catalog_frag.fullName(), spec));
+        return (spec);
+    }
+
+    // ----------------------------------------------------------------------------
+    // INSTANCE MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final Spec spec;
+
+    /**
+     * GROUP BY values -> Combined row
+     */
+    private final Map<List<Object>, Object[]> groups = new LinkedHashMap<List<Object>, Object[]>();
+
+    /**
+     * An empty table with the same columns as the input
+     */
+    private VoltTable template = null;
+
+    /**
+     * The combined table that we handed out last, if nothing has been added since
+     */
+    private VoltTable result = null;
+
+    private int input_ctr = 0;
+
+    public PartialAggregateCombiner(Spec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Fold the rows of one partition's partial aggregate into our groups
+     * @param vt
+     */
+    public void add(VoltTable vt) {
+        assert(vt.getColumnCount() == this.spec.ops.length) :
+            String.format("Expected %d columns but got %d\n%s", this.spec.ops.length, vt.getColumnCount(), vt);
+        if (this.template == null) {
+            this.template = vt.clone(0);
+        }
+        this.result = null;
+        this.input_ctr++;
+
+        final int num_cols = this.spec.ops.length;
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            Object row[] = new Object[num_cols];
+            for (int i = 0; i < num_cols; i++) {
+                Object val = vt.get(i, vt.getColumnType(i));
+                row[i] = (vt.wasNull() ? null : val);
+            } // FOR
+
+            List<Object> key = new ArrayList<Object>(this.spec.groupByColumns.length);
+            for (int offset : this.spec.groupByColumns) {
+                key.add(row[offset]);
+            } // FOR
+            Object current[] = this.groups.get(key);
+            if (current == null) {
+                this.groups.put(key, row);
+                continue;
+            }
+            for (int i = 0; i < num_cols; i++) {
+                current[i] = this.combine(this.spec.ops[i], vt.getColumnType(i), current[i], row[i]);
+            } // FOR
+        } // WHILE
+        if (trace.get()) LOG.trace(String.format("Combined %d rows into %d groups from %d inputs",
+                                                 vt.getRowCount(), this.groups.size(), this.input_ctr));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object combine(Combine op, VoltType type, Object current, Object next) {
+        if (current == null) {
+            return (op == Combine.FIRST || op == Combine.GROUP_BY ? current : next);
+        }
+        if (next == null) return (current);
+        switch (op) {
+            case FIRST:
+            case GROUP_BY:
+                return (current);
+            case SUM:
+                switch (type) {
+                    case TINYINT:
+                    case SMALLINT:
+                    case INTEGER:
+                    case BIGINT:
+                        return (((Number)current).longValue() + ((Number)next).longValue());
+                    case FLOAT:
+                        return (((Number)current).doubleValue() + ((Number)next).doubleValue());
+                    case DECIMAL:
+                        return (((BigDecimal)current).add((BigDecimal)next));
+                    default:
+                        throw new RuntimeException("Unexpected type " + type + " for " + op);
+                } // SWITCH
+            case MIN:
+                return (((Comparable<Object>)current).compareTo(next) <= 0 ? current : next);
+            case MAX:
+                return (((Comparable<Object>)current).compareTo(next) >= 0 ? current : next);
+            default:
+                throw new RuntimeException("Unexpected " + op);
+        } // SWITCH
+    }
+
+    /**
+     * The number of tables that have been added so far
+     */
+    public int getInputCount() {
+        return (this.input_ctr);
+    }
+
+    /**
+     * Returns a table with one row for each group that we have seen
+     * @return
+     */
+    public VoltTable getResult() {
+        assert(this.template != null) : "No input tables have been added";
+        if (this.result == null) {
+            this.result = this.template.clone(0);
+            for (Object row[] : this.groups.values()) {
+                this.result.addRow(row);
+            } // FOR
+        }
+        return (this.result);
+    }
+}
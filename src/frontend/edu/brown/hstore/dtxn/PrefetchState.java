@@ -3,8 +3,11 @@ package edu.brown.hstore.dtxn;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.voltdb.ParameterSet;
+import org.voltdb.VoltTable;
 
 import com.google.protobuf.ByteString;
 
@@ -47,6 +50,41 @@ public class PrefetchState implements Poolable {
      */
     protected final List<WorkResult> results = new ArrayList<WorkResult>();
     
+    /**
+     * The prefetch WorkFragments that the txn's base partition sent out to all of
+     * the partitions, and the ParameterSets that they use. We need these at the base
+     * partition in order to figure out what query each of the incoming results belongs to.
+     */
+    protected List<WorkFragment> sentFragments = null;
+    protected ParameterSet[] sentParams = null;
+    
+    /**
+     * The results of the prefetched queries that have come back to the base partition.
+     * These can be added by the network threads or by the other PartitionExecutors
+     * at the base partition's HStoreSite while the txn is running.
+     */
+    protected final Queue<CachedResult> cachedResults = new ConcurrentLinkedQueue<CachedResult>();
+    
+    protected static class CachedResult {
+        final int partitionId;
+        final int fragmentId;
+        final int paramsHash;
+        final VoltTable result;
+        
+        CachedResult(int partitionId, int fragmentId, ParameterSet params, VoltTable result) {
+            this.partitionId = partitionId;
+            this.fragmentId = fragmentId;
+            this.paramsHash = params.hashCode();
+            this.result = result;
+        }
+        
+        boolean matches(int partitionId, int fragmentId, ParameterSet params) {
+            return (this.partitionId == partitionId &&
+                    this.fragmentId == fragmentId &&
+                    this.paramsHash == params.hashCode());
+        }
+    } // CLASS
+    
     public PrefetchState(HStoreSite hstore_site) {
         int num_partitions = hstore_site.getLocalPartitionIds().size();
         this.partitions = new BitSet(num_partitions);
@@ -66,6 +104,9 @@ public class PrefetchState implements Poolable {
         this.paramsRaw = null;
         this.params = null;
         this.results.clear();
+        this.sentFragments = null;
+        this.sentParams = null;
+        this.cachedResults.clear();
     }
 
     
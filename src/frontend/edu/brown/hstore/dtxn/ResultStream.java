@@ -0,0 +1,236 @@
+/***************************************************************************
+ *   Copyright (C) 2012 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.hstore.dtxn;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.planner.PlanColumn;
+import org.voltdb.planner.PlannerContext;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.ProjectionPlanNode;
+import org.voltdb.plannodes.ReceivePlanNode;
+import org.voltdb.plannodes.SendPlanNode;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.plannodes.PlanNodeUtil;
+
+/**
+ * The result of a query as a sequence of VoltTables. For a multi-partition
+ * query whose last PlanFragment does nothing but union together the tables
+ * that the partitions send back, the base partition can skip that PlanFragment
+ * and hand each partition's table to the transaction's control code as-is.
+ * That saves copying every row into the ExecutionEngine and then back out
+ * again into one big table. The stream drops its reference to each table once
+ * it has been returned by next(), so the control code can let go of the rows
+ * that it has already looked at.
+ * @see org.voltdb.VoltProcedure#voltExecuteSQLStream()
+ */
+public class ResultStream implements Iterator<VoltTable> {
+    private static final Logger LOG = Logger.getLogger(ResultStream.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * Procedure -> PlanFragmentId -> Whether it is just a union
+     */
+    private static final Map<Procedure, Map<Integer, Boolean>> CACHE_UNIONS = new ConcurrentHashMap<Procedure, Map<Integer, Boolean>>();
+
+    /**
+     * Returns true if the given PlanFragment only unions together the
+     * results from the other partitions for a read-only query
+     * @param catalog_proc
+     * @param frag_id
+     * @return
+     */
+    public static boolean isUnionFragment(Procedure catalog_proc, int frag_id) {
+        Map<Integer, Boolean> unions = CACHE_UNIONS.get(catalog_proc);
+        if (unions == null) {
+            unions = new ConcurrentHashMap<Integer, Boolean>();
+            CACHE_UNIONS.put(catalog_proc, unions);
+        }
+        Boolean is_union = unions.get(frag_id);
+        if (is_union == null) {
+            is_union = Boolean.FALSE;
+            if (catalog_proc.getSystemproc() == false) {
+                for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                    PlanFragment catalog_frag = catalog_stmt.getMs_fragments().get(Integer.toString(frag_id));
+                    if (catalog_frag == null) continue;
+                    is_union = (catalog_stmt.getReadonly() && isUnionFragment(catalog_frag));
+                    break;
+                } // FOR
+            }
+            unions.put(frag_id, is_union);
+        }
+        return (is_union.booleanValue());
+    }
+
+    /**
+     * Returns true if the given PlanFragment is just a SEND on top of a RECEIVE,
+     * with at most a PROJECTION in between that passes every column through as-is
+     * @param catalog_frag
+     * @return
+     */
+    public static boolean isUnionFragment(PlanFragment catalog_frag) {
+        AbstractPlanNode root = PlanNodeUtil.getPlanNodeTreeForPlanFragment(catalog_frag);
+        if ((root instanceof SendPlanNode) == false ||
+            root.getChildPlanNodeCount() != 1 ||
+            root.getInlinePlanNodeCount() > 0) {
+            return (false);
+        }
+        AbstractPlanNode child = root.getChild(0);
+        if (child instanceof ProjectionPlanNode) {
+            if (child.getChildPlanNodeCount() != 1 ||
+                child.getInlinePlanNodeCount() > 0 ||
+                isIdentity(child, child.getChild(0)) == false) {
+                return (false);
+            }
+            child = child.getChild(0);
+        }
+        boolean is_union = (child instanceof ReceivePlanNode) &&
+                           child.getChildPlanNodeCount() == 0 &&
+                           child.getInlinePlanNodeCount() == 0;
+        if (is_union && debug.get())
+            LOG.debug(String.format("%s only unions together the results from the partitions", catalog_frag.fullName()));
+        return (is_union);
+    }
+
+    /**
+     * Returns true if every output column of the given PlanNode is the same
+     * column at the same offset in its child's output
+     * @param node
+     * @param child
+     * @return
+     */
+    private static boolean isIdentity(AbstractPlanNode node, AbstractPlanNode child) {
+        List<Integer> output_guids = node.getOutputColumnGUIDs();
+        List<Integer> input_guids = child.getOutputColumnGUIDs();
+        if (output_guids.size() != input_guids.size()) return (false);
+        for (int i = 0, cnt = output_guids.size(); i < cnt; i++) {
+            PlanColumn output_col = PlannerContext.singleton().get(output_guids.get(i));
+            PlanColumn input_col = PlannerContext.singleton().get(input_guids.get(i));
+            if (output_col == null || input_col == null) return (false);
+            
+            AbstractExpression exp = output_col.getExpression();
+            if ((exp instanceof TupleValueExpression) == false ||
+                ((TupleValueExpression)exp).getColumnIndex() != i ||
+                output_col.type() != input_col.type() ||
+                output_col.getDisplayName().equals(input_col.getDisplayName()) == false) {
+                return (false);
+            }
+        } // FOR
+        return (true);
+    }
+
+    // ----------------------------------------------------------------------------
+    // INSTANCE MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final VoltTable tables[];
+    private final int rowCount;
+    private int next = 0;
+
+    /**
+     * A stream with just one table
+     * @param vt
+     */
+    public ResultStream(VoltTable vt) {
+        this.tables = new VoltTable[]{ vt };
+        this.rowCount = vt.getRowCount();
+    }
+
+    /**
+     * A stream over the given tables. Any null entries are skipped.
+     * @param tables
+     */
+    public ResultStream(List<VoltTable> tables) {
+        List<VoltTable> nonNull = new ArrayList<VoltTable>(tables.size());
+        int rows = 0;
+        for (VoltTable vt : tables) {
+            if (vt == null) continue;
+            nonNull.add(vt);
+            rows += vt.getRowCount();
+        } // FOR
+        this.tables = nonNull.toArray(new VoltTable[nonNull.size()]);
+        this.rowCount = rows;
+    }
+
+    /**
+     * The total number of tables in this stream, including the ones
+     * that have already been returned
+     */
+    public int getTableCount() {
+        return (this.tables.length);
+    }
+
+    /**
+     * The total number of rows in all of the tables in this stream
+     */
+    public int getRowCount() {
+        return (this.rowCount);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (this.next < this.tables.length);
+    }
+
+    @Override
+    public VoltTable next() {
+        if (this.next >= this.tables.length) {
+            throw new NoSuchElementException();
+        }
+        VoltTable vt = this.tables[this.next];
+        this.tables[this.next++] = null;
+        return (vt);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResultStream[tables=%d, rows=%d, next=%d]",
+                             this.tables.length, this.rowCount, this.next);
+    }
+}
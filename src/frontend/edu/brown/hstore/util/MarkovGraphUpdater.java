@@ -0,0 +1,180 @@
+package edu.brown.hstore.util;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.HStoreThreadManager;
+import edu.brown.hstore.PartitionExecutor;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.interfaces.Shutdownable;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.CompiledMarkovGraph;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.TransactionEstimator;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+
+/**
+ * Background thread that folds the on-line counters of the MarkovGraphs used at this
+ * HStoreSite into their probabilities. The TransactionEstimators only ever bump atomic
+ * counters when a txn finishes, so the PartitionExecutors never have to wait for a graph
+ * to be recomputed. Every time that a graph is recomputed here a new CompiledMarkovGraph is
+ * swapped in, which the estimators will pick up for the next txn.
+ */
+public class MarkovGraphUpdater implements Runnable, Shutdownable {
+    private static final Logger LOG = Logger.getLogger(MarkovGraphUpdater.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    private final HStoreSite hstore_site;
+    private final HStoreConf hstore_conf;
+
+    /**
+     * How often (in milliseconds) we will check whether a graph needs to be recomputed
+     */
+    private final int interval;
+
+    /**
+     * The minimum number of txns that must have finished with a graph before we will recompute it
+     */
+    private final int min_txns;
+
+    /**
+     * The MarkovGraphsContainers used by the TransactionEstimators at our local partitions
+     */
+    private final Set<MarkovGraphsContainer> containers = new HashSet<MarkovGraphsContainer>();
+
+    /**
+     * MarkovGraphs that need to be recomputed right away (e.g., because a txn mispredicted)
+     */
+    private final LinkedBlockingDeque<MarkovGraph> markovs_to_recompute = new LinkedBlockingDeque<MarkovGraph>();
+
+    private final AtomicInteger recompute_ctr = new AtomicInteger(0);
+    private volatile boolean stop = false;
+    private Thread self;
+
+    /**
+     * Constructor
+     * @param hstore_site
+     * @param hstore_conf
+     */
+    public MarkovGraphUpdater(HStoreSite hstore_site, HStoreConf hstore_conf) {
+        this.hstore_site = hstore_site;
+        this.hstore_conf = hstore_conf;
+        this.interval = hstore_conf.site.markov_online_update_interval;
+        this.min_txns = hstore_conf.site.markov_online_update_min_txns;
+
+        for (int partition : hstore_site.getLocalPartitionIds()) {
+            PartitionExecutor executor = hstore_site.getPartitionExecutor(partition);
+            TransactionEstimator t_estimator = executor.getTransactionEstimator();
+            if (t_estimator != null && t_estimator.getMarkovs() != null) {
+                this.containers.add(t_estimator.getMarkovs());
+            }
+        } // FOR
+    }
+
+    /**
+     * Queue the given MarkovGraph to be recomputed the next time that this thread wakes up,
+     * regardless of how many txns have used it since the last time
+     * @param markov
+     */
+    public void queueMarkovToRecompute(MarkovGraph markov) {
+        this.markovs_to_recompute.offer(markov);
+    }
+
+    /**
+     * Return the number of times that we have recomputed a MarkovGraph
+     * @return
+     */
+    public int getRecomputeCount() {
+        return (this.recompute_ctr.get());
+    }
+
+    @Override
+    public void run() {
+        self = Thread.currentThread();
+        self.setName(HStoreThreadManager.getThreadName(hstore_site, "markov"));
+        if (hstore_conf.site.cpu_affinity)
+            hstore_site.getThreadManager().registerProcessingThread();
+
+        if (debug.get()) LOG.debug(String.format("Starting MarkovGraphUpdater thread [interval=%d, min_txns=%d, containers=%d]",
+                                                 this.interval, this.min_txns, this.containers.size()));
+        long next_check = System.currentTimeMillis() + this.interval;
+        while (this.stop == false && this.hstore_site.isShuttingDown() == false) {
+            long wait = Math.max(0, next_check - System.currentTimeMillis());
+            MarkovGraph markov = null;
+            try {
+                markov = this.markovs_to_recompute.poll(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (this.stop || this.hstore_site.isShuttingDown()) break;
+
+            // Somebody wants this graph recomputed right away
+            if (markov != null) {
+                this.recompute(markov);
+                continue;
+            }
+
+            // Otherwise check whether enough txns have gone through each graph
+            for (MarkovGraphsContainer markovs : this.containers) {
+                this.update(markovs.getLoaded());
+            } // FOR
+            next_check = System.currentTimeMillis() + this.interval;
+        } // WHILE
+    }
+
+    /**
+     * Recompute every graph in the given collection that has been used by at
+     * least min_txns since the last time that it was recomputed.
+     * @param markovs
+     * @return the number of graphs that were recomputed
+     */
+    protected int update(Collection<MarkovGraph> markovs) {
+        int ctr = 0;
+        for (MarkovGraph markov : markovs) {
+            if (markov.getInstanceTransactionCount() >= this.min_txns) {
+                this.recompute(markov);
+                ctr++;
+            }
+        } // FOR
+        return (ctr);
+    }
+
+    private void recompute(MarkovGraph markov) {
+        if (trace.get()) LOG.trace(String.format("Recomputing %s [txns=%d]", markov, markov.getInstanceTransactionCount()));
+        markov.calculateProbabilities();
+
+        // Make sure the estimators have something to read from without locking the graph
+        CompiledMarkovGraph compiled = markov.getCompiled();
+        if (compiled == null && hstore_conf.site.markov_compiled) compiled = markov.compile();
+        this.recompute_ctr.incrementAndGet();
+        if (debug.get()) LOG.debug(String.format("Recomputed %s [compiled=%s, total=%d]", markov, compiled, this.recompute_ctr.get()));
+    }
+
+    @Override
+    public void prepareShutdown(boolean error) {
+        this.stop = true;
+    }
+
+    @Override
+    public void shutdown() {
+        this.stop = true;
+        if (this.self != null) this.self.interrupt();
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return (this.stop || this.hstore_site.isShuttingDown());
+    }
+}
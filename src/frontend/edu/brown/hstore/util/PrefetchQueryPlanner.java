@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.voltdb.ParameterSet;
@@ -28,6 +29,8 @@ import edu.brown.hstore.dtxn.LocalTransaction;
 import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.markov.TransactionEstimator;
 import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.StringUtil;
 
@@ -43,11 +46,39 @@ public class PrefetchQueryPlanner implements Loggable {
         LoggerUtil.attachObserver(LOG, debug, trace);
     }
 
+    /**
+     * The prefetchable Statements for a single Procedure
+     */
+    private static class ProcedurePrefetch {
+        /** The Statements that we can prefetch for this Procedure */
+        final SQLStmt stmts[];
+        /** Statement -> Offset in stmts */
+        final Map<Statement, Integer> offsets = new HashMap<Statement, Integer>();
+        /** The Statements that were marked as prefetchable in the catalog. We always prefetch these. */
+        final BitSet always;
+        /** Selected Statements -> BatchPlanner */
+        final Map<BitSet, BatchPlanner> planners = new HashMap<BitSet, BatchPlanner>();
+        
+        ProcedurePrefetch(List<SQLStmt> stmts) {
+            this.stmts = stmts.toArray(new SQLStmt[stmts.size()]);
+            this.always = new BitSet(this.stmts.length);
+            for (int i = 0; i < this.stmts.length; i++) {
+                Statement catalog_stmt = this.stmts[i].getStatement();
+                this.offsets.put(catalog_stmt, i);
+                if (catalog_stmt.getPrefetchable()) this.always.set(i);
+            } // FOR
+        }
+    } // CLASS
+
     // private final Database catalog_db;
-    private final Map<Procedure, BatchPlanner> planners = new HashMap<Procedure, BatchPlanner>();
+    private final Map<Procedure, ProcedurePrefetch> procedures = new HashMap<Procedure, ProcedurePrefetch>();
+    private final PartitionEstimator p_estimator;
+    private final boolean markov;
+    private final double markov_confidence;
     private final int[] partitionSiteXref;
     private final int num_sites;
     private final BitSet touched_sites;
+    private final BitSet selected = new BitSet();
     private final FastSerializer fs = new FastSerializer(); // TODO: Use pooled memory
 
     /**
@@ -56,42 +87,67 @@ public class PrefetchQueryPlanner implements Loggable {
      * @param p_estimator
      */
     public PrefetchQueryPlanner(Database catalog_db, PartitionEstimator p_estimator) {
+        this(catalog_db, p_estimator, false, 1.0);
+    }
+    
+    /**
+     * Constructor
+     * @param catalog_db
+     * @param p_estimator
+     * @param markov If true, then we will also prefetch any read-only Statement that appears
+     *               in a txn's initial Markov path estimate
+     * @param markov_confidence The minimum confidence of a txn's initial path estimate needed to prefetch
+     *                          the queries on that path
+     */
+    public PrefetchQueryPlanner(Database catalog_db, PartitionEstimator p_estimator, boolean markov, double markov_confidence) {
         // this.catalog_db = catalog_db;
+        this.p_estimator = p_estimator;
+        this.markov = markov;
+        this.markov_confidence = markov_confidence;
         this.num_sites = CatalogUtil.getNumberOfSites(catalog_db);
         this.touched_sites = new BitSet(this.num_sites);
 
         // Initialize a BatchPlanner for each Procedure if it has the
         // prefetch flag set to true. We generate an array of the SQLStmt
         // handles that we will want to prefetch for each Procedure
+        // If we're using the Markov models, then any read-only Statement
+        // can be prefetched as long as we can get all of its input parameters
+        // from the Procedure's input parameters
         List<SQLStmt> prefetchStmts = new ArrayList<SQLStmt>();
         for (Procedure catalog_proc : catalog_db.getProcedures().values()) {
-            if (catalog_proc.getPrefetchable() == false) continue;
+            if (catalog_proc.getPrefetchable() == false) {
+                if (this.markov == false || catalog_proc.getSystemproc() || catalog_proc.getMapreduce()) continue;
+            }
             
             prefetchStmts.clear();
             for (Statement catalog_stmt : catalog_proc.getStatements().values()) {
-                if (catalog_stmt.getPrefetchable() == false) continue;
+                if (catalog_stmt.getPrefetchable() == false) {
+                    if (this.markov == false || catalog_stmt.getReadonly() == false) continue;
+                }
                 // Make sure that all of this Statement's input parameters
                 // are mapped to one of the Procedure's ProcParameter
                 boolean valid = true;
                 for (StmtParameter catalog_param : catalog_stmt.getParameters().values()) {
-                    if (catalog_param.getProcparameter() == null) {
-                        LOG.warn(String.format("Unable to mark %s as prefetchable because %s is not mapped to a ProcParameter",
-                                               catalog_stmt.fullName(), catalog_param.fullName()));
+                    ProcParameter catalog_proc_param = catalog_param.getProcparameter();
+                    if (catalog_proc_param == null) {
+                        if (catalog_stmt.getPrefetchable()) {
+                            LOG.warn(String.format("Unable to mark %s as prefetchable because %s is not mapped to a ProcParameter",
+                                                   catalog_stmt.fullName(), catalog_param.fullName()));
+                        }
+                        valid = false;
+                    }
+                    // We don't know which element of an array to use
+                    else if (catalog_stmt.getPrefetchable() == false && catalog_proc_param.getIsarray()) {
                         valid = false;
                     }
                 } // FOR
                 if (valid) prefetchStmts.add(new SQLStmt(catalog_stmt));
             } // FOR
             if (prefetchStmts.isEmpty() == false) {
-                BatchPlanner planner = new BatchPlanner(prefetchStmts.toArray(new SQLStmt[0]),
-                                                        prefetchStmts.size(),
-                                                        catalog_proc,
-                                                        p_estimator);
-                planner.setPrefetchFlag(true);
-                this.planners.put(catalog_proc, planner);
+                this.procedures.put(catalog_proc, new ProcedurePrefetch(prefetchStmts));
                 if (debug.get()) LOG.debug(String.format("%s Prefetch Statements: %s",
                                                          catalog_proc.getName(), prefetchStmts));
-            } else {
+            } else if (catalog_proc.getPrefetchable()) {
                 LOG.warn("There are no prefetchable Statements available for " + catalog_proc);
                 catalog_proc.setPrefetchable(false);
             }
@@ -99,11 +155,69 @@ public class PrefetchQueryPlanner implements Loggable {
 
         this.partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(catalog_db);
         if (debug.get()) LOG.debug(String.format("Initialized QueryPrefetchPlanner for %d " +
-        		                                 "Procedures with prefetchable Statements",
-        		                                 this.planners.size()));
+        		                                 "Procedures with prefetchable Statements [markov=%s]",
+        		                                 this.procedures.size(), this.markov));
+    }
+    
+    /**
+     * Returns true if we may be able to prefetch queries for txns of the given Procedure
+     * @param catalog_proc
+     * @return
+     */
+    public boolean hasPrefetchQueries(Procedure catalog_proc) {
+        return (this.procedures.containsKey(catalog_proc));
+    }
+    
+    /**
+     * Figure out which of the Procedure's prefetchable Statements that we want to 
+     * prefetch for the given txn. We will always include the Statements that were marked
+     * as prefetchable in the catalog. We then add any Statement that the txn's initial
+     * Markov path estimate says is going to be executed on a partition other than the
+     * txn's base partition.  
+     * @param ts
+     * @param pp
+     * @return
+     */
+    private BatchPlanner getBatchPlanner(LocalTransaction ts, ProcedurePrefetch pp) {
+        this.selected.clear();
+        this.selected.or(pp.always);
+        
+        TransactionEstimator.State t_state = ts.getEstimatorState();
+        if (this.markov && t_state != null && t_state.getInitialPathConfidence() >= this.markov_confidence) {
+            int base_partition = ts.getBasePartition();
+            for (MarkovVertex v : t_state.getInitialPath()) {
+                if (v.isQueryVertex() == false) continue;
+                Integer offset = pp.offsets.get(v.getCatalogItem());
+                if (offset == null) continue;
+                
+                // There is no round-trip to hide if the query is just going to our base partition
+                Set<Integer> partitions = v.getPartitions();
+                if (partitions.size() == 1 && partitions.contains(base_partition)) continue;
+                this.selected.set(offset.intValue());
+            } // FOR
+        }
+        if (this.selected.isEmpty()) return (null);
+        
+        BatchPlanner planner = pp.planners.get(this.selected);
+        if (planner == null) {
+            SQLStmt stmts[] = new SQLStmt[this.selected.cardinality()];
+            int idx = 0;
+            for (int i = this.selected.nextSetBit(0); i >= 0; i = this.selected.nextSetBit(i+1)) {
+                stmts[idx++] = pp.stmts[i];
+            } // FOR
+            planner = new BatchPlanner(stmts, stmts.length, ts.getProcedure(), this.p_estimator);
+            planner.setPrefetchFlag(true);
+            pp.planners.put((BitSet)this.selected.clone(), planner);
+            if (debug.get()) LOG.debug(String.format("Created new prefetch BatchPlanner for %s with %d Statements",
+                                                     ts.getProcedure().getName(), stmts.length));
+        }
+        return (planner);
     }
 
     /**
+     * Generate the TransactionInitRequests for each HStoreSite for the given txn.
+     * Returns null if there is nothing that we want to prefetch for this txn.
+     * Otherwise the txn's PrefetchState will be initialized. 
      * @param ts
      * @return
      */
@@ -118,8 +232,13 @@ public class PrefetchQueryPlanner implements Loggable {
         // Use the StmtParameter mappings for the queries we
         // want to prefetch and extract the ProcParameters
         // to populate an array of ParameterSets to use as the batchArgs
-        BatchPlanner planner = this.planners.get(catalog_proc);
-        assert (planner != null) : "Missing BatchPlanner for " + catalog_proc;
+        ProcedurePrefetch pp = this.procedures.get(catalog_proc);
+        assert (pp != null) : "Missing prefetch information for " + catalog_proc;
+        BatchPlanner planner = this.getBatchPlanner(ts, pp);
+        if (planner == null) {
+            if (debug.get()) LOG.debug(ts + " - No queries selected for prefetching");
+            return (null);
+        }
         ParameterSet prefetchParams[] = new ParameterSet[planner.getBatchSize()];
         ByteString prefetchParamsSerialized[] = new ByteString[prefetchParams.length];
 
@@ -167,6 +286,10 @@ public class PrefetchQueryPlanner implements Loggable {
                                       prefetchParams);
         List<WorkFragment> fragments = new ArrayList<WorkFragment>();
         plan.getWorkFragments(ts.getTransactionId(), fragments);
+        
+        // Remember what we sent out so that we can use the results when they come back
+        ts.initializePrefetch();
+        ts.attachSentPrefetchQueries(fragments, prefetchParams);
 
         // Loop through the fragments and check whether at least one of
         // them needs to be executed at the base (local) partition. If so, we need a
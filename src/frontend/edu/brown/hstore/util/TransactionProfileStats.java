@@ -0,0 +1,182 @@
+package edu.brown.hstore.util;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.hstore.dtxn.TransactionProfile;
+import edu.brown.statistics.LatencyHistogram;
+
+/**
+ * Live per-procedure latency histograms for each of the phases in TransactionProfile.
+ * Every completed txn's profile is recorded into a fixed-size LatencyHistogram for
+ * each phase without taking any locks. The histograms can be dumped at any time
+ * as JSON or in the Prometheus text format, optionally starting a new interval.
+ * @see TransactionProfile
+ */
+public class TransactionProfileStats {
+
+    /** The percentiles that we include in the output */
+    private static final double PERCENTILES[] = { 50d, 90d, 99d, 99.9d };
+
+    /** The name of each phase in TransactionProfile.PROFILE_FIELDS */
+    private static final String PHASES[];
+    static {
+        PHASES = new String[TransactionProfile.PROFILE_FIELDS.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            Field f = TransactionProfile.PROFILE_FIELDS[i];
+            PHASES[i] = f.getName().replaceFirst("^pm_", "").toUpperCase();
+        } // FOR
+    } // STATIC
+
+    private final int site_id;
+    private final Map<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<String, LatencyHistogram[]>();
+    private volatile long interval_start = System.currentTimeMillis();
+
+    public TransactionProfileStats(int site_id) {
+        this.site_id = site_id;
+    }
+
+    public static String[] getPhases() {
+        return (PHASES);
+    }
+
+    private LatencyHistogram[] getHistograms(String proc_name) {
+        LatencyHistogram h[] = this.histograms.get(proc_name);
+        if (h == null) {
+            synchronized (this.histograms) {
+                h = this.histograms.get(proc_name);
+                if (h == null) {
+                    h = new LatencyHistogram[PHASES.length];
+                    for (int i = 0; i < h.length; i++) {
+                        h[i] = new LatencyHistogram();
+                    } // FOR
+                    this.histograms.put(proc_name, h);
+                }
+            } // SYNCH
+        }
+        return (h);
+    }
+
+    /**
+     * Record the phase times of a completed transaction.
+     * Phases that the txn never entered are not recorded.
+     * @param catalog_proc
+     * @param tp
+     */
+    public void addTxnProfile(Procedure catalog_proc, TransactionProfile tp) {
+        assert(catalog_proc != null);
+        assert(tp.isStopped());
+        long tuple[] = tp.getTuple();
+        LatencyHistogram h[] = this.getHistograms(catalog_proc.getName());
+        for (int i = 0; i < tuple.length; i++) {
+            if (tuple[i] > 0) h[i].record(tuple[i]);
+        } // FOR
+    }
+
+    /**
+     * Take a snapshot of all of the histograms, sorted by procedure name
+     * @param reset If true, then all of the histograms will start a new interval
+     */
+    public Map<String, LatencyHistogram.Snapshot[]> snapshot(boolean reset) {
+        Map<String, LatencyHistogram.Snapshot[]> ret = new TreeMap<String, LatencyHistogram.Snapshot[]>();
+        for (Map.Entry<String, LatencyHistogram[]> e : this.histograms.entrySet()) {
+            LatencyHistogram h[] = e.getValue();
+            LatencyHistogram.Snapshot s[] = new LatencyHistogram.Snapshot[h.length];
+            for (int i = 0; i < h.length; i++) {
+                s[i] = (reset ? h[i].snapshotAndReset() : h[i].snapshot());
+            } // FOR
+            ret.put(e.getKey(), s);
+        } // FOR
+        return (ret);
+    }
+
+    // ----------------------------------------------------------------------------
+    // OUTPUT FORMATS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns the histograms as a JSON document. All latencies are in nanoseconds.
+     * @param reset If true, then all of the histograms will start a new interval
+     */
+    public String toJSONString(boolean reset) {
+        long now = System.currentTimeMillis();
+        long start = this.interval_start;
+        Map<String, LatencyHistogram.Snapshot[]> snapshots = this.snapshot(reset);
+        if (reset) this.interval_start = now;
+
+        JSONStringer stringer = new JSONStringer();
+        try {
+            stringer.object();
+            stringer.key("site").value(this.site_id);
+            stringer.key("intervalStart").value(start);
+            stringer.key("intervalEnd").value(now);
+            stringer.key("procedures").object();
+            for (Map.Entry<String, LatencyHistogram.Snapshot[]> e : snapshots.entrySet()) {
+                stringer.key(e.getKey()).object();
+                LatencyHistogram.Snapshot s[] = e.getValue();
+                for (int i = 0; i < s.length; i++) {
+                    stringer.key(PHASES[i]).object();
+                    stringer.key("count").value(s[i].getCount());
+                    stringer.key("mean").value(s[i].getMean());
+                    for (double p : PERCENTILES) {
+                        stringer.key("p" + formatPercentile(p)).value(s[i].getValueAtPercentile(p));
+                    } // FOR
+                    stringer.key("max").value(s[i].getMax());
+                    stringer.endObject();
+                } // FOR
+                stringer.endObject();
+            } // FOR
+            stringer.endObject();
+            stringer.endObject();
+        } catch (JSONException ex) {
+            throw new RuntimeException(ex);
+        }
+        return (stringer.toString());
+    }
+
+    /**
+     * Returns the histograms in the Prometheus text exposition format as a summary
+     * metric. All latencies are in seconds.
+     * @param reset If true, then all of the histograms will start a new interval
+     */
+    public String toPrometheusString(boolean reset) {
+        Map<String, LatencyHistogram.Snapshot[]> snapshots = this.snapshot(reset);
+        if (reset) this.interval_start = System.currentTimeMillis();
+
+        final String metric = "hstore_txn_phase_latency_seconds";
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP ").append(metric).append(" Time spent by each procedure in each transaction phase\n");
+        sb.append("# TYPE ").append(metric).append(" summary\n");
+        for (Map.Entry<String, LatencyHistogram.Snapshot[]> e : snapshots.entrySet()) {
+            LatencyHistogram.Snapshot s[] = e.getValue();
+            for (int i = 0; i < s.length; i++) {
+                String labels = String.format("site=\"%d\",procedure=\"%s\",phase=\"%s\"",
+                                              this.site_id, e.getKey(), PHASES[i]);
+                for (double p : PERCENTILES) {
+                    sb.append(metric).append("{").append(labels)
+                      .append(",quantile=\"").append(p / 100d).append("\"} ")
+                      .append(toSeconds(s[i].getValueAtPercentile(p))).append("\n");
+                } // FOR
+                sb.append(metric).append("_sum{").append(labels).append("} ")
+                  .append(toSeconds(s[i].getSum())).append("\n");
+                sb.append(metric).append("_count{").append(labels).append("} ")
+                  .append(s[i].getCount()).append("\n");
+            } // FOR
+        } // FOR
+        return (sb.toString());
+    }
+
+    private static String formatPercentile(double p) {
+        return (p == Math.floor(p) ? Integer.toString((int)p) : Double.toString(p).replace(".", ""));
+    }
+
+    private static double toSeconds(long nanos) {
+        return (nanos / 1000000000d);
+    }
+}
@@ -3,14 +3,22 @@
  */
 package edu.brown.hstore.util;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.voltdb.catalog.Procedure;
 
 import edu.brown.statistics.Histogram;
 import edu.brown.utils.StringUtil;
+import edu.brown.utils.StripedCounter;
 
+/**
+ * Site-wide transaction counters. These are updated from every PartitionExecutor
+ * thread, so each procedure's count is kept in a StripedCounter and the
+ * per-procedure Histogram is only built when somebody asks for it.
+ */
 public enum TxnCounter {
     /** The number of transaction requests that have arrived at this site */
     RECEIVED,
@@ -46,7 +54,7 @@ public enum TxnCounter {
     BLOCKED_REMOTE,
     ;
     
-    private final Histogram<String> h = new Histogram<String>();
+    private final Map<String, StripedCounter> counters = new ConcurrentHashMap<String, StripedCounter>();
     private final String name;
     private TxnCounter() {
         this.name = StringUtil.title(this.name().replace("_", "-"));
@@ -55,29 +63,53 @@ public enum TxnCounter {
     public String toString() {
         return (this.name);
     }
+    private StripedCounter getCounter(String procName) {
+        StripedCounter c = this.counters.get(procName);
+        if (c == null) {
+            synchronized (this) {
+                c = this.counters.get(procName);
+                if (c == null) {
+                    c = new StripedCounter();
+                    this.counters.put(procName, c);
+                }
+            } // SYNCH
+        }
+        return (c);
+    }
+    /**
+     * Merge the current per-procedure counts into a new Histogram
+     */
     public Histogram<String> getHistogram() {
-        return (this.h);
+        Histogram<String> h = new Histogram<String>();
+        for (Map.Entry<String, StripedCounter> e : this.counters.entrySet()) {
+            long cnt = e.getValue().get();
+            if (cnt > 0) h.put(e.getKey(), cnt);
+        } // FOR
+        return (h);
     }
     public int get() {
-        return ((int)this.h.getSampleCount());
+        long total = 0;
+        for (StripedCounter c : this.counters.values()) {
+            total += c.get();
+        } // FOR
+        return ((int)total);
     }
-    public int inc(String procName) {
-        this.h.put(procName);
-        return (this.get());
+    public void inc(String procName) {
+        this.getCounter(procName).inc();
     }
-    public int inc(Procedure catalog_proc) {
-        this.h.put(catalog_proc.getName());
-        return (this.get());
+    public void inc(Procedure catalog_proc) {
+        this.inc(catalog_proc.getName());
     }
-    public int dec(Procedure catalog_proc) {
-        this.h.remove(catalog_proc.getName());
-        return (this.get());
+    public void dec(Procedure catalog_proc) {
+        this.getCounter(catalog_proc.getName()).dec();
     }
     public static Set<String> getAllProcedures() {
         Set<String> ret = new TreeSet<String>();
         for (TxnCounter tc : TxnCounter.values()) {
-            ret.addAll(tc.h.values());
-        }
+            for (Map.Entry<String, StripedCounter> e : tc.counters.entrySet()) {
+                if (e.getValue().get() > 0) ret.add(e.getKey());
+            } // FOR
+        } // FOR
         return (ret);
     }
     public Double ratio() {
@@ -1,9 +1,15 @@
 package edu.brown.mappings;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -14,15 +20,20 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import org.voltdb.catalog.CatalogType;
 import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.ProcParameter;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.StmtParameter;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.Pair;
 
+import edu.brown.catalog.CatalogKey;
 import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
 import edu.brown.utils.JSONSerializable;
 import edu.brown.utils.JSONUtil;
 
@@ -30,6 +41,16 @@ public class ParameterMappingsSet extends TreeSet<ParameterMapping> implements J
     private static final long serialVersionUID = 1L;
 //    private static final Logger LOG = Logger.getLogger(ParameterCorrelations.class.getName());
 
+    /**
+     * The first four bytes of every binary ParameterMappingsSet file
+     */
+    public static final int BINARY_MAGIC = 0x504D4150; // "PMAP"
+    
+    /**
+     * The version of the binary file format that we write out in saveBinary()
+     */
+    public static final int BINARY_VERSION = 1;
+
     /**
      * Dear son,
      * This right here is nasty old boy! Don't do what Daddy did...
@@ -258,9 +279,123 @@ public class ParameterMappingsSet extends TreeSet<ParameterMapping> implements J
     // SERIALIZATION METHODS
     // ----------------------------------------------------------------------------
 
+    /**
+     * Load the mappings from the given file. This will automatically figure out
+     * whether the file is in the JSON or the binary format
+     */
     @Override
     public void load(String input_path, Database catalog_db) throws IOException {
-        JSONUtil.load(this, catalog_db, input_path);
+        File file = new File(input_path);
+        if (isBinary(file)) {
+            this.fromBinary(new FastDeserializer(FileUtil.readBytesFromFile(input_path)), catalog_db);
+        } else {
+            JSONUtil.load(this, catalog_db, input_path);
+        }
+    }
+    
+    /**
+     * Write the mappings out in the compact binary format. Every catalog object is written
+     * once into a key table and each ParameterMapping just references its offsets in there. 
+     * @param output_path
+     * @throws IOException
+     */
+    public void saveBinary(String output_path) throws IOException {
+        FastSerializer out = new FastSerializer();
+        this.toBinary(out);
+        FileOutputStream fout = new FileOutputStream(new File(output_path));
+        try {
+            ByteBuffer b = out.getBuffer();
+            while (b.hasRemaining()) fout.getChannel().write(b);
+        } finally {
+            fout.close();
+        }
+    }
+    
+    /**
+     * Returns true if the given file was written out by saveBinary()
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static boolean isBinary(File file) throws IOException {
+        if (file.length() < 4) return (false);
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return (in.readInt() == BINARY_MAGIC);
+        } finally {
+            in.close();
+        }
+    }
+    
+    protected void toBinary(FastSerializer out) throws IOException {
+        List<String> keys = new ArrayList<String>();
+        Map<CatalogType, Integer> key_idxs = new HashMap<CatalogType, Integer>();
+        for (ParameterMapping c : this) {
+            for (CatalogType catalog_item : new CatalogType[]{ c.statement, c.statement_parameter,
+                                                               c.statement_column, c.procedure_parameter }) {
+                if (catalog_item != null && key_idxs.containsKey(catalog_item) == false) {
+                    key_idxs.put(catalog_item, keys.size());
+                    keys.add(CatalogKey.createKey(catalog_item));
+                }
+            } // FOR
+        } // FOR
+        
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            out.writeString(key);
+        } // FOR
+        out.writeInt(this.size());
+        for (ParameterMapping c : this) {
+            out.writeInt(key_idxs.get(c.statement));
+            out.writeInt(c.statement_index);
+            out.writeInt(key_idxs.get(c.statement_parameter));
+            out.writeInt(c.statement_column != null ? key_idxs.get(c.statement_column) : -1);
+            out.writeInt(key_idxs.get(c.procedure_parameter));
+            out.writeInt(c.procedure_parameter_index);
+            out.writeDouble(c.coefficient);
+        } // FOR
+    }
+    
+    protected void fromBinary(FastDeserializer in, Database catalog_db) throws IOException {
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a binary " + this.getClass().getSimpleName() + " file");
+        }
+        int version = in.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException(String.format("Unsupported %s file version %d [expected=%d]",
+                                                this.getClass().getSimpleName(), version, BINARY_VERSION));
+        }
+        String keys[] = new String[in.readInt()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readString();
+        } // FOR
+        
+        // We don't know what type of catalog object each key is until we see which
+        // field it is used for, so we'll resolve them lazily
+        Map<Integer, CatalogType> cache = new HashMap<Integer, CatalogType>();
+        for (int i = 0, cnt = in.readInt(); i < cnt; i++) {
+            ParameterMapping c = new ParameterMapping();
+            c.statement = getFromKey(catalog_db, keys, cache, in.readInt(), Statement.class);
+            c.statement_index = in.readInt();
+            c.statement_parameter = getFromKey(catalog_db, keys, cache, in.readInt(), StmtParameter.class);
+            c.statement_column = getFromKey(catalog_db, keys, cache, in.readInt(), Column.class);
+            c.procedure_parameter = getFromKey(catalog_db, keys, cache, in.readInt(), ProcParameter.class);
+            c.procedure_parameter_index = in.readInt();
+            c.coefficient = in.readDouble();
+            this.add(c);
+        } // FOR
+    }
+    
+    private static <T extends CatalogType> T getFromKey(Database catalog_db, String keys[], Map<Integer, CatalogType> cache, int idx, Class<T> catalog_class) {
+        if (idx < 0) return (null);
+        CatalogType catalog_item = cache.get(idx);
+        if (catalog_item == null) {
+            catalog_item = CatalogKey.getFromKey(catalog_db, keys[idx], catalog_class);
+            cache.put(idx, catalog_item);
+        }
+        return (catalog_class.cast(catalog_item));
     }
     
     @Override
@@ -0,0 +1,370 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.voltdb.catalog.Statement;
+import org.voltdb.types.QueryType;
+
+/**
+ * An immutable, array-backed snapshot of a MarkovGraph that is used by the TransactionEstimator
+ * and the MarkovPathEstimator at runtime. Every vertex is given an int id and all of its
+ * information (Statement, counter, partitions, probability tables) is copied into flat arrays.
+ * The outgoing edges are stored in CSR form (offsets + destinations) and are sorted in the
+ * same order that MarkovEdge.compareTo() uses, so the first matching edge for a vertex is
+ * always the most likely one.
+ * <p>
+ * The snapshot reflects the graph as of the last time that its probabilities were computed.
+ * Vertices and edges that are added to the MarkovGraph afterwards are not included until
+ * the graph is compiled again, so callers must fall back to the MarkovGraph whenever a
+ * lookup fails.
+ */
+public final class CompiledMarkovGraph {
+
+    public static final int NULL_ID = -1;
+
+    private final MarkovGraph markov;
+    private final int num_partitions;
+    private final int bitmap_length;
+    private final int num_vertices;
+    private final int num_edges;
+
+    // ----------------------------------------------------------------------------
+    // VERTEX INFORMATION
+    // ----------------------------------------------------------------------------
+
+    private final MarkovVertex vertices[];
+    private final MarkovVertex.Type types[];
+    private final Statement statements[];
+    private final int counters[];
+    private final boolean readonly[];
+    private final int partitions[][];
+    private final long partition_bitmaps[];
+    private final long past_bitmaps[];
+    private final long execution_times[];
+
+    /** Probability tables. The partition-specific tables are indexed by (vertex * num_partitions + partition) */
+    private final float single_sited[];
+    private final float abort[];
+    private final float read_only[];
+    private final float write[];
+    private final float done[];
+
+    // ----------------------------------------------------------------------------
+    // EDGE INFORMATION
+    // ----------------------------------------------------------------------------
+
+    /** The outgoing edges of vertex v are in the range [edge_offsets[v], edge_offsets[v+1]) */
+    private final int edge_offsets[];
+    private final int edge_destinations[];
+    private final float edge_probabilities[];
+    private final MarkovEdge edges[];
+
+    private final int start_id;
+    private final int commit_id;
+    private final int abort_id;
+
+    /**
+     * Compile the given MarkovGraph. The caller should make sure that nobody is modifying
+     * the graph while this is running.
+     * @param markov
+     */
+    public CompiledMarkovGraph(MarkovGraph markov) {
+        this.markov = markov;
+        this.num_partitions = markov.getAllPartitions().size();
+        this.bitmap_length = getBitmapLength(this.num_partitions);
+
+        List<MarkovVertex> all_vertices = new ArrayList<MarkovVertex>(markov.getVertices());
+        this.num_vertices = all_vertices.size();
+        this.vertices = all_vertices.toArray(new MarkovVertex[this.num_vertices]);
+        for (int v_id = 0; v_id < this.num_vertices; v_id++) {
+            this.vertices[v_id].compiled_id = v_id;
+        } // FOR
+
+        this.types = new MarkovVertex.Type[this.num_vertices];
+        this.statements = new Statement[this.num_vertices];
+        this.counters = new int[this.num_vertices];
+        this.readonly = new boolean[this.num_vertices];
+        this.partitions = new int[this.num_vertices][];
+        this.partition_bitmaps = new long[this.num_vertices * this.bitmap_length];
+        this.past_bitmaps = new long[this.num_vertices * this.bitmap_length];
+        this.execution_times = new long[this.num_vertices];
+        this.single_sited = new float[this.num_vertices];
+        this.abort = new float[this.num_vertices];
+        this.read_only = new float[this.num_vertices * this.num_partitions];
+        this.write = new float[this.num_vertices * this.num_partitions];
+        this.done = new float[this.num_vertices * this.num_partitions];
+
+        int start = NULL_ID, commit = NULL_ID, abort = NULL_ID;
+        int total_edges = 0;
+        List<List<MarkovEdge>> out_edges = new ArrayList<List<MarkovEdge>>(this.num_vertices);
+        for (int v_id = 0; v_id < this.num_vertices; v_id++) {
+            MarkovVertex v = this.vertices[v_id];
+            this.types[v_id] = v.getType();
+            this.statements[v_id] = v.getCatalogItem();
+            this.counters[v_id] = v.getQueryInstanceIndex();
+            this.readonly[v_id] = (this.statements[v_id].getQuerytype() == QueryType.SELECT.getValue());
+            this.execution_times[v_id] = v.getExecutionTime();
+
+            Collection<Integer> v_partitions = v.getPartitions();
+            this.partitions[v_id] = new int[v_partitions.size()];
+            int i = 0;
+            for (Integer p : v_partitions) {
+                this.partitions[v_id][i++] = p.intValue();
+                setBit(this.partition_bitmaps, v_id * this.bitmap_length, p.intValue());
+            } // FOR
+            for (Integer p : v.getPastPartitions()) {
+                setBit(this.past_bitmaps, v_id * this.bitmap_length, p.intValue());
+            } // FOR
+
+            switch (this.types[v_id]) {
+                case START:
+                    start = v_id;
+                    break;
+                case COMMIT:
+                    commit = v_id;
+                    break;
+                case ABORT:
+                    abort = v_id;
+                    break;
+                default:
+                    // Nothing
+            } // SWITCH
+
+            // The START vertex does not have valid probabilities
+            if (v.isStartVertex() == false) {
+                this.single_sited[v_id] = v.getSingleSitedProbability();
+                this.abort[v_id] = v.getAbortProbability();
+            }
+            for (int p = 0; p < this.num_partitions; p++) {
+                int offset = v_id * this.num_partitions + p;
+                this.read_only[offset] = v.getReadOnlyProbability(p);
+                this.write[offset] = v.getWriteProbability(p);
+                this.done[offset] = v.getDoneProbability(p);
+            } // FOR
+
+            Collection<MarkovEdge> v_edges = markov.getOutEdges(v);
+            List<MarkovEdge> sorted = (v_edges != null ? new ArrayList<MarkovEdge>(v_edges) : new ArrayList<MarkovEdge>());
+            Collections.sort(sorted);
+            out_edges.add(sorted);
+            total_edges += sorted.size();
+        } // FOR
+        this.start_id = start;
+        this.commit_id = commit;
+        this.abort_id = abort;
+
+        this.num_edges = total_edges;
+        this.edge_offsets = new int[this.num_vertices + 1];
+        this.edge_destinations = new int[this.num_edges];
+        this.edge_probabilities = new float[this.num_edges];
+        this.edges = new MarkovEdge[this.num_edges];
+        int e_id = 0;
+        for (int v_id = 0; v_id < this.num_vertices; v_id++) {
+            this.edge_offsets[v_id] = e_id;
+            for (MarkovEdge e : out_edges.get(v_id)) {
+                MarkovVertex dest = markov.getDest(e);
+                assert(dest.compiled_id >= 0 && this.vertices[dest.compiled_id] == dest);
+                this.edge_destinations[e_id] = dest.compiled_id;
+                this.edge_probabilities[e_id] = e.getProbability();
+                this.edges[e_id] = e;
+                e_id++;
+            } // FOR
+        } // FOR
+        this.edge_offsets[this.num_vertices] = e_id;
+    }
+
+    // ----------------------------------------------------------------------------
+    // BITMAP UTILITY METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the number of longs needed for a partition bitmap
+     * @param num_partitions
+     */
+    public static int getBitmapLength(int num_partitions) {
+        return ((num_partitions + 63) >>> 6);
+    }
+
+    private static void setBit(long bitmap[], int offset, int partition) {
+        bitmap[offset + (partition >>> 6)] |= (1l << (partition & 63));
+    }
+
+    /**
+     * Convert the given set of partition ids into a bitmap
+     * @param partitions
+     * @param bitmap
+     */
+    public static void toBitmap(Collection<Integer> partitions, long bitmap[]) {
+        for (int i = 0; i < bitmap.length; i++) {
+            bitmap[i] = 0;
+        } // FOR
+        for (Integer p : partitions) {
+            setBit(bitmap, 0, p.intValue());
+        } // FOR
+    }
+
+    private boolean bitmapEquals(long vertex_bitmaps[], int v_id, long bitmap[]) {
+        int offset = v_id * this.bitmap_length;
+        for (int i = 0; i < this.bitmap_length; i++) {
+            if (vertex_bitmaps[offset + i] != bitmap[i]) return (false);
+        } // FOR
+        return (true);
+    }
+
+    // ----------------------------------------------------------------------------
+    // LOOKUP METHODS
+    // ----------------------------------------------------------------------------
+
+    public MarkovGraph getMarkovGraph() {
+        return (this.markov);
+    }
+    public int getVertexCount() {
+        return (this.num_vertices);
+    }
+    public int getEdgeCount() {
+        return (this.num_edges);
+    }
+    public int getBitmapLength() {
+        return (this.bitmap_length);
+    }
+
+    /**
+     * Return the id of the given vertex in this compiled graph, or NULL_ID if the vertex
+     * was not part of the graph when it was compiled
+     * @param v
+     */
+    public int getVertexId(MarkovVertex v) {
+        int v_id = v.compiled_id;
+        if (v_id < 0 || v_id >= this.num_vertices || this.vertices[v_id] != v) return (NULL_ID);
+        return (v_id);
+    }
+    public MarkovVertex getVertex(int v_id) {
+        return (this.vertices[v_id]);
+    }
+    public int getStartId() {
+        return (this.start_id);
+    }
+    public int getCommitId() {
+        return (this.commit_id);
+    }
+    public int getAbortId() {
+        return (this.abort_id);
+    }
+
+    public Statement getStatement(int v_id) {
+        return (this.statements[v_id]);
+    }
+    public int getQueryInstanceIndex(int v_id) {
+        return (this.counters[v_id]);
+    }
+    public boolean isQueryVertex(int v_id) {
+        return (this.types[v_id] == MarkovVertex.Type.QUERY);
+    }
+    public boolean isCommitVertex(int v_id) {
+        return (this.types[v_id] == MarkovVertex.Type.COMMIT);
+    }
+    public boolean isAbortVertex(int v_id) {
+        return (this.types[v_id] == MarkovVertex.Type.ABORT);
+    }
+    /**
+     * Returns true if the Statement for this vertex is a SELECT
+     * @param v_id
+     */
+    public boolean isReadOnly(int v_id) {
+        return (this.readonly[v_id]);
+    }
+    /**
+     * Return the partitions touched by the query at this vertex. Do not modify the array!
+     * @param v_id
+     */
+    public int[] getPartitions(int v_id) {
+        return (this.partitions[v_id]);
+    }
+    public long getExecutionTime(int v_id) {
+        return (this.execution_times[v_id]);
+    }
+
+    public float getSingleSitedProbability(int v_id) {
+        return (this.single_sited[v_id]);
+    }
+    public float getAbortProbability(int v_id) {
+        return (this.abort[v_id]);
+    }
+    public float getReadOnlyProbability(int v_id, int partition) {
+        return (this.read_only[v_id * this.num_partitions + partition]);
+    }
+    public float getWriteProbability(int v_id, int partition) {
+        return (this.write[v_id * this.num_partitions + partition]);
+    }
+    public float getDoneProbability(int v_id, int partition) {
+        return (this.done[v_id * this.num_partitions + partition]);
+    }
+
+    /**
+     * The first outgoing edge id of the given vertex
+     */
+    public int getEdgeStart(int v_id) {
+        return (this.edge_offsets[v_id]);
+    }
+    /**
+     * One past the last outgoing edge id of the given vertex
+     */
+    public int getEdgeEnd(int v_id) {
+        return (this.edge_offsets[v_id + 1]);
+    }
+    public int getEdgeDestination(int e_id) {
+        return (this.edge_destinations[e_id]);
+    }
+    public float getEdgeProbability(int e_id) {
+        return (this.edge_probabilities[e_id]);
+    }
+    public MarkovEdge getEdge(int e_id) {
+        return (this.edges[e_id]);
+    }
+
+    /**
+     * Return the id of the edge from the given vertex to the vertex with the given
+     * Statement, query instance index, partitions, and past partitions.
+     * Returns NULL_ID if there is no such edge.
+     * This is the same thing as MarkovVertex.isEqual()
+     * @param v_id
+     * @param catalog_stmt
+     * @param counter
+     * @param partitions
+     * @param past_partitions
+     */
+    public int findSuccessor(int v_id, Statement catalog_stmt, int counter, long partitions[], long past_partitions[]) {
+        for (int e_id = this.edge_offsets[v_id], end = this.edge_offsets[v_id + 1]; e_id < end; e_id++) {
+            int dest = this.edge_destinations[e_id];
+            if (this.counters[dest] == counter &&
+                this.statements[dest] == catalog_stmt &&
+                this.bitmapEquals(this.partition_bitmaps, dest, partitions) &&
+                (MarkovGraph.USE_PAST_PARTITIONS == false || this.bitmapEquals(this.past_bitmaps, dest, past_partitions))) {
+                return (e_id);
+            }
+        } // FOR
+        return (NULL_ID);
+    }
+
+    /**
+     * Return the id of the edge between the two given vertices.
+     * Returns NULL_ID if there is no such edge.
+     * @param v_id
+     * @param dest_id
+     */
+    public int findEdge(int v_id, int dest_id) {
+        for (int e_id = this.edge_offsets[v_id], end = this.edge_offsets[v_id + 1]; e_id < end; e_id++) {
+            if (this.edge_destinations[e_id] == dest_id) return (e_id);
+        } // FOR
+        return (NULL_ID);
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("%s<%s, vertices=%d, edges=%d>",
+                              this.getClass().getSimpleName(), this.markov.getProcedure().getName(),
+                              this.num_vertices, this.num_edges));
+    }
+}
@@ -86,6 +86,35 @@ public class MarkovEstimate implements Poolable, Estimation {
         return (this);
     }
     
+    /**
+     * Fill in this estimate from the probability tables of a CompiledMarkovGraph
+     * instead of the vertex itself. The compiled tables are never modified once they
+     * are published, so this never sees a vertex while its probabilities are being
+     * recomputed.
+     * @param compiled
+     * @param v_id the id of the vertex we are currently at in the compiled graph
+     * @param batch
+     */
+    public MarkovEstimate init(CompiledMarkovGraph compiled, int v_id, int batch) {
+        assert(compiled != null);
+        assert(this.initializing == false);
+        assert(this.vertex == null) : "Trying to initialize the same object twice!";
+        this.batch = batch;
+        this.vertex = compiled.getVertex(v_id);
+        
+        if (this.vertex.isStartVertex() == false) {
+            this.setSingleSitedProbability(compiled.getSingleSitedProbability(v_id));
+            this.setAbortProbability(compiled.getAbortProbability(v_id));
+            for (int i = 0; i < this.touched.length; i++) {
+                this.setDoneProbability(i, compiled.getDoneProbability(v_id, i));
+                this.setReadOnlyProbability(i, compiled.getReadOnlyProbability(v_id, i));
+                this.setWriteProbability(i, compiled.getWriteProbability(v_id, i));
+            } // FOR
+            this.time = compiled.getExecutionTime(v_id);
+        }
+        return (this);
+    }
+    
     @Override
     public boolean isInitialized() {
         return (this.vertex != null);
@@ -1,6 +1,7 @@
 package edu.brown.markov;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -18,6 +19,8 @@ import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.Pair;
 
 import edu.brown.catalog.CatalogKey;
@@ -85,6 +88,8 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     private transient double xact_accuracy = 1.0;
     /** How many times have we recomputed the probabilities for this graph */
     private transient int recompute_count = 0;
+    /** How many txns have finished using this graph since we last recomputed its probabilities */
+    private transient final AtomicInteger instance_xact_count = new AtomicInteger(0);
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -188,6 +193,32 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         } // FOR
     }
     
+    /**
+     * The compiled form of this graph that is used at runtime
+     * @see CompiledMarkovGraph
+     */
+    private transient volatile CompiledMarkovGraph compiled = null;
+    
+    /**
+     * Build a new CompiledMarkovGraph for this graph. Once this has been called, the graph
+     * will automatically be compiled again every time its probabilities are recomputed.
+     * @return
+     */
+    public synchronized CompiledMarkovGraph compile() {
+        this.compiled = new CompiledMarkovGraph(this);
+        if (debug.get()) LOG.debug("Compiled " + this.compiled);
+        return (this.compiled);
+    }
+    
+    /**
+     * Return the last CompiledMarkovGraph built for this graph. Will be null if
+     * compile() has never been called.
+     * @return
+     */
+    public CompiledMarkovGraph getCompiled() {
+        return (this.compiled);
+    }
+    
     /**
      * For a given vertex, maintain a map to possible future vertices
      */
@@ -249,7 +280,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         assert(dest != null);
         
         MarkovEdge e = null;
-        synchronized (source) {
+        synchronized (this) {
             e = this.findEdge(source, dest);
             if (e == null) {
                 e = new MarkovEdge(this);
@@ -260,12 +291,13 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     }
     
     /**
-     * 
+     * All structural changes to the graph are synchronized on the graph itself so that
+     * they don't interleave with calculateProbabilities() and compile()
      */
     @Override
     public boolean addVertex(MarkovVertex v) {
         boolean ret;
-        synchronized (v) {
+        synchronized (this) {
             ret = super.addVertex(v);
             if (ret) {
                 if (v.isQueryVertex()) {
@@ -393,18 +425,23 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
      * the totalhits for each graph element
      */
     public synchronized void calculateProbabilities() {
+        this.instance_xact_count.set(0);
+        
         // Reset all probabilities
         for (MarkovVertex v : this.getVertices()) {
             v.resetAllProbabilities();
         } // FOR
         
+        // The TransactionEstimator updates the vertex counters before the edge counters
+        // without holding our lock, so we have to apply the edges first. Otherwise an edge
+        // could end up with more hits than its source vertex
         this.normalizeTimes();
-        for (MarkovVertex v : this.getVertices()) {
-            v.applyInstanceHitsToTotalHits();
-        }
         for (MarkovEdge e : this.getEdges()) {
             e.applyInstanceHitsToTotalHits();
         }
+        for (MarkovVertex v : this.getVertices()) {
+            v.applyInstanceHitsToTotalHits();
+        }
         
         // We first need to calculate the edge probabilities because the probabilities
         // at each vertex are going to be derived from these
@@ -413,6 +450,9 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         // Then traverse the graph and calculate the vertex probability tables
         this.calculateVertexProbabilities();
         
+        // Swap in a new compiled form so that the estimators see the new probabilities
+        if (this.compiled != null) this.compile();
+        
         this.recompute_count++;
     }
 
@@ -442,15 +482,11 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     }
 
     /**
-     * Normalizes the times kept during online tallying of execution times.
-     * TODO (svelagap): What about aborted transactions? Should they be counted in the normalization?
+     * Folds the times kept during online tallying of execution times into each vertex
      */
     protected void normalizeTimes() {
-        Map<Long, Long> stoptimes = this.getCommitVertex().getInstanceTimes();
-        List<Long> to_remove = new ArrayList<Long>();
         for (MarkovVertex v : this.getVertices()) {
-            v.normalizeInstanceTimes(stoptimes, to_remove);
-            to_remove.clear();
+            v.applyInstanceTimes();
         } // FOR
     }
     
@@ -630,7 +666,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
 
             int queryInstanceIndex = query_instance_counters.get(catalog_stmnt).getAndIncrement(); 
             MarkovVertex v = null;
-            synchronized (previous) {
+            synchronized (this) {
                 v = this.getVertex(catalog_stmnt, partitions, past_partitions, queryInstanceIndex);
                 if (v == null) {
                     // If no such vertex exists we simply create one
@@ -652,7 +688,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
             past_partitions.addAll(partitions);
         } // FOR
         
-        synchronized (previous) {
+        synchronized (this) {
             MarkovVertex v = (txn_trace.isAborted() ? this.getAbortVertex() : this.getCommitVertex());
             assert(v != null);
             MarkovEdge e = this.addToEdge(previous, v);
@@ -694,6 +730,24 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     public void setTransactionCount(int xact_count){
         this.xact_count = xact_count;
     }
+    /**
+     * Mark that another txn has finished using this graph at runtime. The counters
+     * for its path have already been updated. 
+     * @return
+     */
+    public int incrementInstanceTransactionCount() {
+        return (this.instance_xact_count.incrementAndGet());
+    }
+    
+    /**
+     * The number of txns that have finished using this graph since the last time
+     * that its probabilities were recomputed
+     * @return
+     */
+    public int getInstanceTransactionCount() {
+        return (this.instance_xact_count.get());
+    }
+    
     /**
      * Increase the transaction count for this MarkovGraph by one
      */
@@ -727,6 +781,155 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         }
         GraphUtil.serialize(this, ignore, null, stringer);
     }
+
+    /**
+     * Write this graph out in the compact binary format used by MarkovGraphContainersUtil.saveBinary()
+     * Just like toJSON(), any query vertex that has never been hit is skipped. Statements are written
+     * once into a name table and then referenced by their offset in that table.
+     * @param out
+     * @throws IOException
+     */
+    public synchronized void writeBinary(FastSerializer out) throws IOException {
+        List<MarkovVertex> vertices = new ArrayList<MarkovVertex>();
+        Map<MarkovVertex, Integer> vertex_idxs = new HashMap<MarkovVertex, Integer>();
+        List<Statement> stmts = new ArrayList<Statement>();
+        Map<Statement, Integer> stmt_idxs = new HashMap<Statement, Integer>();
+        for (MarkovVertex v : this.getVertices()) {
+            if (v.isQueryVertex()) {
+                if (v.instancehits == 0 && v.totalhits == 0) continue;
+                Statement catalog_stmt = (Statement)v.getCatalogItem();
+                if (stmt_idxs.containsKey(catalog_stmt) == false) {
+                    stmt_idxs.put(catalog_stmt, stmts.size());
+                    stmts.add(catalog_stmt);
+                }
+            }
+            vertex_idxs.put(v, vertices.size());
+            vertices.add(v);
+        } // FOR
+        
+        out.writeInt(this.getGraphId());
+        out.writeShort(stmts.size());
+        for (Statement catalog_stmt : stmts) {
+            out.writeString(catalog_stmt.getName());
+        } // FOR
+        
+        // VERTICES
+        out.writeInt(vertices.size());
+        for (MarkovVertex v : vertices) {
+            out.writeLong(v.getElementId());
+            out.writeByte(v.type.ordinal());
+            out.writeShort(v.isQueryVertex() ? stmt_idxs.get(v.getCatalogItem()) : -1);
+            out.writeInt(v.counter);
+            out.writeInt(v.totalhits);
+            out.writeInt(v.instancehits);
+            out.writeLong(v.execution_time);
+            writePartitions(out, v.partitions);
+            writePartitions(out, v.past_partitions);
+            for (float probabilities[] : v.probabilities) {
+                out.writeInt(probabilities.length);
+                for (float f : probabilities) {
+                    out.writeFloat(f);
+                } // FOR
+            } // FOR
+        } // FOR
+        
+        // EDGES
+        List<MarkovEdge> edges = new ArrayList<MarkovEdge>();
+        for (MarkovEdge e : this.getEdges()) {
+            if (vertex_idxs.containsKey(this.getSource(e)) && vertex_idxs.containsKey(this.getDest(e))) edges.add(e);
+        } // FOR
+        out.writeInt(edges.size());
+        for (MarkovEdge e : edges) {
+            out.writeLong(e.getElementId());
+            out.writeInt(vertex_idxs.get(this.getSource(e)));
+            out.writeInt(vertex_idxs.get(this.getDest(e)));
+            out.writeInt(e.totalhits);
+            out.writeInt(e.instancehits);
+            out.writeFloat(e.probability);
+        } // FOR
+    }
+    
+    /**
+     * Populate this (empty) graph from the binary format written by writeBinary()
+     * The caller still needs to invoke buildCache() and compile() afterwards.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public synchronized MarkovGraph readBinary(FastDeserializer in) throws IOException {
+        assert(this.getVertexCount() == 0) : "Trying to deserialize into non-empty " + this;
+        Database catalog_db = this.getDatabase();
+        MarkovVertex.Type vtypes[] = MarkovVertex.Type.values();
+        
+        this.setGraphId(in.readInt());
+        Statement stmts[] = new Statement[in.readShort()];
+        for (int i = 0; i < stmts.length; i++) {
+            String name = in.readString();
+            stmts[i] = this.catalog_proc.getStatements().get(name);
+            if (stmts[i] == null) {
+                throw new IOException(String.format("Invalid Statement '%s' for %s MarkovGraph", name, this.catalog_proc.getName()));
+            }
+        } // FOR
+        
+        // VERTICES
+        MarkovVertex vertices[] = new MarkovVertex[in.readInt()];
+        for (int i = 0; i < vertices.length; i++) {
+            long element_id = in.readLong();
+            MarkovVertex.Type vtype = vtypes[in.readByte()];
+            short stmt_idx = in.readShort();
+            Statement catalog_stmt = (vtype == MarkovVertex.Type.QUERY ? stmts[stmt_idx] : MarkovUtil.getSpecialStatement(catalog_db, vtype));
+            int counter = in.readInt();
+            int totalhits = in.readInt();
+            int instancehits = in.readInt();
+            long execution_time = in.readLong();
+            Set<Integer> partitions = readPartitions(in);
+            Set<Integer> past_partitions = readPartitions(in);
+            
+            MarkovVertex v = new MarkovVertex(catalog_stmt, vtype, counter, partitions, past_partitions);
+            v.setElementId(element_id);
+            v.totalhits = totalhits;
+            v.setInstanceHits(instancehits);
+            v.execution_time = execution_time;
+            for (int j = 0; j < v.probabilities.length; j++) {
+                v.probabilities[j] = new float[in.readInt()];
+                for (int k = 0; k < v.probabilities[j].length; k++) {
+                    v.probabilities[j][k] = in.readFloat();
+                } // FOR
+            } // FOR
+            this.addVertex(v);
+            vertices[i] = v;
+        } // FOR
+        
+        // EDGES
+        for (int i = 0, cnt = in.readInt(); i < cnt; i++) {
+            long element_id = in.readLong();
+            MarkovVertex source = vertices[in.readInt()];
+            MarkovVertex dest = vertices[in.readInt()];
+            MarkovEdge e = new MarkovEdge(this);
+            e.setElementId(element_id);
+            e.totalhits = in.readInt();
+            e.setInstanceHits(in.readInt());
+            e.probability = in.readFloat();
+            this.addEdge(e, source, dest);
+        } // FOR
+        return (this);
+    }
+    
+    private static void writePartitions(FastSerializer out, Set<Integer> partitions) throws IOException {
+        out.writeInt(partitions.size());
+        for (Integer p : partitions) {
+            out.writeInt(p.intValue());
+        } // FOR
+    }
+    
+    private static Set<Integer> readPartitions(FastDeserializer in) throws IOException {
+        int cnt = in.readInt();
+        Set<Integer> partitions = new HashSet<Integer>(cnt);
+        for (int i = 0; i < cnt; i++) {
+            partitions.add(in.readInt());
+        } // FOR
+        return (partitions);
+    }
     
     // ----------------------------------------------------------------------------
     // YE OLDE MAIN METHOD
@@ -135,6 +135,20 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     
     private final transient Map<Statement, Object[]> stmt_param_arrays = new HashMap<Statement, Object[]>();
     
+    // ----------------------------------------------------------------------------
+    // COMPILED TRAVERSAL MEMBERS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * The compiled form of the MarkovGraph that we are traversing. 
+     * If this is null, then we will walk the MarkovGraph directly.
+     */
+    private transient CompiledMarkovGraph compiled;
+    
+    private final transient long past_bitmap[];
+    
+    private final transient long stmt_bitmap[];
+    
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
     // ----------------------------------------------------------------------------
@@ -146,6 +160,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         super();
         this.num_partitions = num_partitions;
         this.estimate = new MarkovEstimate(this.num_partitions);
+        this.past_bitmap = new long[CompiledMarkovGraph.getBitmapLength(this.num_partitions)];
+        this.stmt_bitmap = new long[this.past_bitmap.length];
         
         this.all_partitions = new ArrayList<Integer>();
         for (int p = 0; p < this.num_partitions; p++) {
@@ -164,6 +180,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         super(markov);
         this.num_partitions = CatalogUtil.getNumberOfPartitions(markov.getDatabase());
         this.estimate = new MarkovEstimate(this.num_partitions);
+        this.past_bitmap = new long[CompiledMarkovGraph.getBitmapLength(this.num_partitions)];
+        this.stmt_bitmap = new long[this.past_bitmap.length];
         this.all_partitions = CatalogUtil.getAllPartitionIds(markov.getDatabase());
 
         this.init(markov, t_estimator, base_partition, args);
@@ -184,6 +202,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.t_estimator = t_estimator;
         this.p_estimator = this.t_estimator.getPartitionEstimator();
         this.correlations = this.t_estimator.getCorrelations();
+        this.compiled = this.t_estimator.getCompiled(markov);
         this.base_partition = base_partition;
         this.args = args;
         
@@ -215,6 +234,10 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.t_estimator = null;
         this.p_estimator = null;
         this.correlations = null;
+        this.compiled = null;
+        for (int i = 0; i < this.past_bitmap.length; i++) {
+            this.past_bitmap[i] = 0;
+        } // FOR
         
         this.estimate.finish();
         this.touched_partitions.clear();
@@ -224,6 +247,14 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.forced_vertices.clear();
     }
     
+    /**
+     * Returns true if this estimator is traversing a CompiledMarkovGraph
+     * @return
+     */
+    public boolean isCompiled() {
+        return (this.compiled != null);
+    }
+    
     public void setCached(boolean val) {
         this.cached = val;
     }
@@ -299,6 +330,112 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 //        return (arr);
 //    }
     
+    /**
+     * Figure out which partitions the given Statement will touch by mapping the txn's
+     * ProcParameters to the Statement's StmtParameters. If this returns true, then
+     * the estimated partitions are stored in stmt_partitions. If the PartitionEstimator
+     * fails, then the traversal will be stopped.
+     * @param catalog_stmt
+     * @param catalog_stmt_index
+     * @return
+     */
+    private boolean estimateStatementPartitions(Statement catalog_stmt, int catalog_stmt_index) {
+        // Get the correlation objects (if any) for next
+        // This is the only way we can predict what partitions we will touch
+        SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
+        if (param_correlations == null) {
+            if (t) {
+                LOG.warn("No parameter correlations for " + catalog_stmt.fullName() + " #" + catalog_stmt_index);
+                LOG.trace(this.correlations.debug(catalog_stmt));
+            }
+            return (false);
+        }
+        
+        // Go through the StmtParameters and map values from ProcParameters
+        StmtParameter stmt_params[] = this.getStatementParams(catalog_stmt);
+        Object stmt_args[] = new Object[stmt_params.length]; // this.getStatementParamsArray(catalog_stmt);
+        boolean stmt_args_set = false;
+        for (int i = 0; i < stmt_args.length; i++) {
+            StmtParameter catalog_stmt_param = stmt_params[i];
+            assert(catalog_stmt_param != null);
+            if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+            
+            SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
+            if (correlations == null || correlations.isEmpty()) {
+                if (t) LOG.trace("No parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true) + " from " + catalog_stmt.fullName());
+                continue;
+            }
+            if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+    
+            // Special Case:
+            // If the number of possible Statements we could execute next is greater than one,
+            // then we need to prune our list by removing those Statements who have a StmtParameter
+            // that are correlated to a ProcParameter that doesn't exist (such as referencing an
+            // array element that is greater than the size of that current array)
+            // TODO: For now we are just going always pick the first Correlation 
+            // that comes back. Is there any choice that we would need to make in order
+            // to have a better prediction about what the transaction might do?
+            if (correlations.size() > 1) {
+                if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+                if (t) {
+                    int ctr = 0;
+                    for (ParameterMapping c : correlations) {
+                        LOG.trace("[" + (ctr++) + "] Correlation: " + c);
+                    } // FOR
+                }
+            }
+            for (ParameterMapping c : correlations) {
+                if (t) LOG.trace("Correlation: " + c);
+                ProcParameter catalog_proc_param = c.getProcParameter();
+                if (catalog_proc_param.getIsarray()) {
+                    Object proc_inner_args[] = (Object[])args[c.getProcParameter().getIndex()];
+                    if (t) LOG.trace(CatalogUtil.getDisplayName(c.getProcParameter(), true) + " is an array: " + Arrays.toString(proc_inner_args));
+                    
+                    // TODO: If this Correlation references an array element that is not available for this
+                    // current transaction, should we just skip this correlation or skip the entire query?
+                    if (proc_inner_args.length <= c.getProcParameterIndex()) {
+                        if (t) LOG.trace("Unable to map parameters: " +
+                                             "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
+                                             "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
+                        continue;
+                    }
+                    stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
+                    stmt_args_set = true;
+                    if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + "[" + c.getProcParameterIndex() + "] to " +
+                                         CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
+                } else {
+                    stmt_args[i] = args[c.getProcParameter().getIndex()];
+                    stmt_args_set = true;
+                    if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + " to " +
+                                         CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]"); 
+                }
+                break;
+            } // FOR (Correlation)
+        } // FOR (StmtParameter)
+            
+        // If we set any of the stmt_args in the previous step, then we can throw it
+        // to our good old friend the PartitionEstimator and see whether we can figure
+        // things out for this Statement
+        if (stmt_args_set) {
+            if (t) LOG.trace("Mapped StmtParameters: " + Arrays.toString(stmt_args));
+            this.stmt_partitions.clear();
+            try {
+                this.p_estimator.getAllPartitions(this.stmt_partitions, catalog_stmt, stmt_args, this.base_partition);
+            } catch (Exception ex) {
+                String msg = "Failed to calculate partitions for " + catalog_stmt + " using parameters " + Arrays.toString(stmt_args);
+                LOG.error(msg, ex);
+                this.stop();
+                return (false);
+            }
+            if (t) LOG.trace("Estimated Partitions for " + catalog_stmt + ": " + this.stmt_partitions);
+            return (this.stmt_partitions.isEmpty() == false);
+        }
+        
+        // Without any stmt_args, there's nothing we can do here...
+        if (t) LOG.trace("No stmt_args for " + catalog_stmt.fullName() + " #" + catalog_stmt_index + ". Skipping...");
+        return (false);
+    }
+    
     /**
      * This is the main part of where we figure out the path that this transaction will take
      */
@@ -307,6 +444,15 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 //            return;
 //        }
         
+        // Use the compiled graph if we have one and it knows about this vertex
+        if (this.compiled != null) {
+            int v_id = this.compiled.getVertexId(element);
+            if (v_id != CompiledMarkovGraph.NULL_ID) {
+                this.populate_children_compiled(children, element, v_id);
+                return;
+            }
+        }
+        
         // Initialize temporary data
         this.candidates.clear();
         this.next_statements.clear();
@@ -364,121 +510,31 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             Integer catalog_stmt_index = pair.getSecond();
             if (t) LOG.trace("Examining " + pair);
             
-            // Get the correlation objects (if any) for next
-            // This is the only way we can predict what partitions we will touch
-            SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
-            if (param_correlations == null) {
-                if (t) {
-                    LOG.warn("No parameter correlations for " + pair);
-                    LOG.trace(this.correlations.debug(catalog_stmt));
-                }
+            if (this.estimateStatementPartitions(catalog_stmt, catalog_stmt_index) == false) {
+                if (this.isStopped()) return;
                 continue;
             }
-            
-            // Go through the StmtParameters and map values from ProcParameters
-            StmtParameter stmt_params[] = this.getStatementParams(catalog_stmt);
-            Object stmt_args[] = new Object[stmt_params.length]; // this.getStatementParamsArray(catalog_stmt);
-            boolean stmt_args_set = false;
-            for (int i = 0; i < stmt_args.length; i++) {
-                StmtParameter catalog_stmt_param = stmt_params[i];
-                assert(catalog_stmt_param != null);
-                if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
                 
-                SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
-                if (correlations == null || correlations.isEmpty()) {
-                    if (t) LOG.trace("No parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true) + " from " + pair);
-                    continue;
-                }
-                if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-        
-                // Special Case:
-                // If the number of possible Statements we could execute next is greater than one,
-                // then we need to prune our list by removing those Statements who have a StmtParameter
-                // that are correlated to a ProcParameter that doesn't exist (such as referencing an
-                // array element that is greater than the size of that current array)
-                // TODO: For now we are just going always pick the first Correlation 
-                // that comes back. Is there any choice that we would need to make in order
-                // to have a better prediction about what the transaction might do?
-                if (correlations.size() > 1) {
-                    if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-                    if (t) {
-                        int ctr = 0;
-                        for (ParameterMapping c : correlations) {
-                            LOG.trace("[" + (ctr++) + "] Correlation: " + c);
-                        } // FOR
+            // Now for this given list of partitions, find a Vertex in our next set
+            // that has the same partitions
+            this.candidate_edge = null;
+            for (MarkovVertex next : next_vertices) {
+                if (next.isEqual(catalog_stmt, this.stmt_partitions, this.past_partitions, catalog_stmt_index)) {
+                    // BINGO!!!
+                    assert(this.candidate_edge == null);
+                    try {
+                        this.candidate_edge = markov.findEdge(element, next);
+                    } catch (NullPointerException ex) {
+                        continue;
                     }
-                }
-                for (ParameterMapping c : correlations) {
-                    if (t) LOG.trace("Correlation: " + c);
-                    ProcParameter catalog_proc_param = c.getProcParameter();
-                    if (catalog_proc_param.getIsarray()) {
-                        Object proc_inner_args[] = (Object[])args[c.getProcParameter().getIndex()];
-                        if (t) LOG.trace(CatalogUtil.getDisplayName(c.getProcParameter(), true) + " is an array: " + Arrays.toString(proc_inner_args));
-                        
-                        // TODO: If this Correlation references an array element that is not available for this
-                        // current transaction, should we just skip this correlation or skip the entire query?
-                        if (proc_inner_args.length <= c.getProcParameterIndex()) {
-                            if (t) LOG.trace("Unable to map parameters: " +
-                                                 "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
-                                                 "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
-                            continue;
-                        }
-                        stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + "[" + c.getProcParameterIndex() + "] to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
-                    } else {
-                        stmt_args[i] = args[c.getProcParameter().getIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + " to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]"); 
-                    }
-                    break;
-                } // FOR (Correlation)
-            } // FOR (StmtParameter)
-                
-            // If we set any of the stmt_args in the previous step, then we can throw it
-            // to our good old friend the PartitionEstimator and see whether we can figure
-            // things out for this Statement
-            if (stmt_args_set) {
-                if (t) LOG.trace("Mapped StmtParameters: " + Arrays.toString(stmt_args));
-                this.stmt_partitions.clear();
-                try {
-                    this.p_estimator.getAllPartitions(this.stmt_partitions, catalog_stmt, stmt_args, this.base_partition);
-                } catch (Exception ex) {
-                    String msg = "Failed to calculate partitions for " + catalog_stmt + " using parameters " + Arrays.toString(stmt_args);
-                    LOG.error(msg, ex);
-                    this.stop();
-                    return;
-                }
-                if (t) LOG.trace("Estimated Partitions for " + catalog_stmt + ": " + this.stmt_partitions);
-                
-                // Now for this given list of partitions, find a Vertex in our next set
-                // that has the same partitions
-                if (this.stmt_partitions != null && !this.stmt_partitions.isEmpty()) {
-                    this.candidate_edge = null;
-                    for (MarkovVertex next : next_vertices) {
-                        if (next.isEqual(catalog_stmt, this.stmt_partitions, this.past_partitions, catalog_stmt_index)) {
-                            // BINGO!!!
-                            assert(this.candidate_edge == null);
-                            try {
-                                this.candidate_edge = markov.findEdge(element, next);
-                            } catch (NullPointerException ex) {
-                                continue;
-                            }
-                            assert(this.candidate_edge != null);
+                    assert(this.candidate_edge != null);
 
-                            this.candidates.add(this.candidate_edge);
-                            if (t) LOG.trace("Found candidate edge to " + next + " [" + this.candidate_edge + "]");
-                            break; // ???
-                        }
-                    } // FOR (Vertex
-                    if (candidate_edge == null && t) LOG.trace("Failed to find candidate edge from " + element + " to " + pair);
+                    this.candidates.add(this.candidate_edge);
+                    if (t) LOG.trace("Found candidate edge to " + next + " [" + this.candidate_edge + "]");
+                    break; // ???
                 }
-            // Without any stmt_args, there's nothing we can do here...
-            } else {
-                if (t) LOG.trace("No stmt_args for " + pair + ". Skipping...");
-            } // IF
+            } // FOR (Vertex
+            if (candidate_edge == null && t) LOG.trace("Failed to find candidate edge from " + element + " to " + pair);
         } // FOR
         
         // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set, then we'll just
@@ -528,71 +584,163 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             } // FOR
             this.confidence *= next_edge.getProbability() / total_probability;
             
-            // Update our list of partitions touched by this transaction
-            Set<Integer> next_partitions = next_vertex.getPartitions();
-            String orig = next_partitions.toString();
-            float inverse_prob = 1.0f - this.confidence;
             Statement catalog_stmt = next_vertex.getCatalogItem();
+            this.updateEstimate(next_vertex,
+                                catalog_stmt.getQuerytype() == QueryType.SELECT.getValue(),
+                                next_vertex.getAbortProbability());
+            if (d) LOG.debug("TOTAL:    " + total_probability);
+        } else {
+            if (t) LOG.trace("No matching children found. We have to stop...");
+        }
+    }
+    
+    /**
+     * The same thing as populate_children() but everything comes out of the CompiledMarkovGraph.
+     * The outgoing edges in the compiled graph are already sorted the same way as the candidates
+     * set, so we only need to remember the first (i.e., most likely) candidate edge that we find.
+     * @param children
+     * @param element
+     * @param v_id
+     */
+    private void populate_children_compiled(Children<MarkovVertex> children, MarkovVertex element, int v_id) {
+        final CompiledMarkovGraph compiled = this.compiled;
+        final int e_start = compiled.getEdgeStart(v_id);
+        final int e_end = compiled.getEdgeEnd(v_id);
+        if (t) LOG.trace(String.format("Current Vertex: %s [id=%d, successors=%d]", element, v_id, e_end - e_start));
+        
+        for (int p : compiled.getPartitions(v_id)) {
+            this.past_partitions.add(p);
+            this.past_bitmap[p >>> 6] |= (1l << (p & 63));
+        } // FOR
+        
+        int best_edge = CompiledMarkovGraph.NULL_ID;
+        double total_probability = 0.0;
+        for (int e_id = e_start; e_id < e_end; e_id++) {
+            int next_id = compiled.getEdgeDestination(e_id);
             
-            // READ
-            if (catalog_stmt.getQuerytype() == QueryType.SELECT.getValue()) {
-                for (Integer p : next_partitions) {
-                    if (this.read_partitions.contains(p) == false) {
-                        if (t) LOG.trace(String.format("First time partition %d is read from! Setting read-only probability to %.03f", p, this.confidence));
-                        try {
-                            this.estimate.setReadOnlyProbability(p.intValue(), this.confidence);
-                        } catch (AssertionError ex) {
-                            System.err.println("BUSTED: " + next_vertex);
-                            System.err.println("NEXT PARTITIONS: " + next_partitions);
-                            System.err.println("ORIG PARTITIONS: " + orig);
-                            throw ex;
-                        }
-                        if (this.touched_partitions.contains(p) == false) {
-                            this.estimate.setDoneProbability(p.intValue(), inverse_prob);
-                        }
-                        this.read_partitions.add(p);
-                    }
-                    this.estimate.incrementTouchedCounter(p.intValue());
-                } // FOR
-            // WRITE
-            } else {
-                for (Integer p : next_partitions) {
-                    if (this.write_partitions.contains(p) == false) {
-                        if (t) LOG.trace(String.format("First time partition %d is written to! Setting write probability to %.03f", p, this.confidence));
-                        this.estimate.setReadOnlyProbability(p.intValue(), inverse_prob);
-                        this.estimate.setWriteProbability(p.intValue(), this.confidence);
-                        if (this.touched_partitions.contains(p) == false) {
-                            this.estimate.setDoneProbability(p.intValue(), inverse_prob);
-                        }
-                        this.write_partitions.add(p);
-                    }
-                    this.estimate.incrementTouchedCounter(p.intValue());
-                } // FOR
+            // COMMIT/ABORT are always candidates
+            if (compiled.isQueryVertex(next_id) == false) {
+                if (best_edge == CompiledMarkovGraph.NULL_ID) best_edge = e_id;
+                total_probability += compiled.getEdgeProbability(e_id);
+                continue;
             }
-            this.touched_partitions.addAll(next_partitions);
             
-            // If this is the first time that the path touched more than one partition, then we need to set the single-partition
-            // probability to be the confidence coefficient thus far
-            if (this.touched_partitions.size() > 1 && this.estimate.isSingleSitedProbabilitySet() == false) {
-                if (t) LOG.trace("Setting the single-partition probability to current confidence [" + this.confidence + "]");
-                this.estimate.setSingleSitedProbability(inverse_prob);
-            }
+            // Skip this vertex if we've already examined its Statement+StatementIndex pair
+            Statement catalog_stmt = compiled.getStatement(next_id);
+            int catalog_stmt_index = compiled.getQueryInstanceIndex(next_id);
+            boolean seen = false;
+            for (int prev_id = e_start; prev_id < e_id; prev_id++) {
+                int prev_next_id = compiled.getEdgeDestination(prev_id);
+                if (compiled.getStatement(prev_next_id) == catalog_stmt &&
+                    compiled.getQueryInstanceIndex(prev_next_id) == catalog_stmt_index) {
+                    seen = true;
+                    break;
+                }
+            } // FOR
+            if (seen) continue;
             
-            // Keep track of the highest abort probability that we've seen thus far
-            if (next_vertex.isQueryVertex() && next_vertex.getAbortProbability() > this.greatest_abort) {
-                this.greatest_abort = next_vertex.getAbortProbability();
+            if (this.estimateStatementPartitions(catalog_stmt, catalog_stmt_index) == false) {
+                if (this.isStopped()) return;
+                continue;
             }
-            
-            if (d) {
-                LOG.debug("TOTAL:    " + total_probability);
-                LOG.debug("SELECTED: " + next_vertex + " [confidence=" + this.confidence + "]");
-                LOG.debug(StringUtil.repeat("-", 100));
+            CompiledMarkovGraph.toBitmap(this.stmt_partitions, this.stmt_bitmap);
+            int candidate = compiled.findSuccessor(v_id, catalog_stmt, catalog_stmt_index, this.stmt_bitmap, this.past_bitmap);
+            if (candidate == CompiledMarkovGraph.NULL_ID) {
+                if (t) LOG.trace(String.format("Failed to find candidate edge from %s to %s #%d",
+                                               element, catalog_stmt.fullName(), catalog_stmt_index));
+                continue;
             }
+            if (best_edge == CompiledMarkovGraph.NULL_ID || candidate < best_edge) best_edge = candidate;
+            total_probability += compiled.getEdgeProbability(candidate);
+        } // FOR
+        
+        // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set, then we'll just
+        // grab all of the edges from our currect vertex
+        boolean was_forced = false;
+        if (best_edge == CompiledMarkovGraph.NULL_ID && this.force_traversal && e_start < e_end) {
+            if (t) LOG.trace("No candidate edges were found. Force travesal flag is set, so taking all");
+            best_edge = e_start;
+            total_probability = 0.0;
+            for (int e_id = e_start; e_id < e_end; e_id++) {
+                total_probability += compiled.getEdgeProbability(e_id);
+            } // FOR
+            was_forced = true;
+        }
+        
+        if (best_edge != CompiledMarkovGraph.NULL_ID) {
+            int next_id = compiled.getEdgeDestination(best_edge);
+            MarkovVertex next_vertex = compiled.getVertex(next_id);
+            children.addAfter(next_vertex);
+            if (was_forced) this.forced_vertices.add(next_vertex);
+            
+            this.confidence *= compiled.getEdgeProbability(best_edge) / total_probability;
+            this.updateEstimate(next_vertex, compiled.isReadOnly(next_id), compiled.getAbortProbability(next_id));
+            if (d) LOG.debug("TOTAL:    " + total_probability);
         } else {
             if (t) LOG.trace("No matching children found. We have to stop...");
         }
     }
     
+    /**
+     * Update our MarkovEstimate and the partitions touched by the path now that we
+     * have selected the next vertex. The confidence must already be updated.
+     * @param next_vertex
+     * @param readonly
+     * @param abort_probability
+     */
+    private void updateEstimate(MarkovVertex next_vertex, boolean readonly, float abort_probability) {
+        // Update our list of partitions touched by this transaction
+        Set<Integer> next_partitions = next_vertex.getPartitions();
+        float inverse_prob = 1.0f - this.confidence;
+        
+        // READ
+        if (readonly) {
+            for (Integer p : next_partitions) {
+                if (this.read_partitions.contains(p) == false) {
+                    if (t) LOG.trace(String.format("First time partition %d is read from! Setting read-only probability to %.03f", p, this.confidence));
+                    this.estimate.setReadOnlyProbability(p.intValue(), this.confidence);
+                    if (this.touched_partitions.contains(p) == false) {
+                        this.estimate.setDoneProbability(p.intValue(), inverse_prob);
+                    }
+                    this.read_partitions.add(p);
+                }
+                this.estimate.incrementTouchedCounter(p.intValue());
+            } // FOR
+        // WRITE
+        } else {
+            for (Integer p : next_partitions) {
+                if (this.write_partitions.contains(p) == false) {
+                    if (t) LOG.trace(String.format("First time partition %d is written to! Setting write probability to %.03f", p, this.confidence));
+                    this.estimate.setReadOnlyProbability(p.intValue(), inverse_prob);
+                    this.estimate.setWriteProbability(p.intValue(), this.confidence);
+                    if (this.touched_partitions.contains(p) == false) {
+                        this.estimate.setDoneProbability(p.intValue(), inverse_prob);
+                    }
+                    this.write_partitions.add(p);
+                }
+                this.estimate.incrementTouchedCounter(p.intValue());
+            } // FOR
+        }
+        this.touched_partitions.addAll(next_partitions);
+        
+        // If this is the first time that the path touched more than one partition, then we need to set the single-partition
+        // probability to be the confidence coefficient thus far
+        if (this.touched_partitions.size() > 1 && this.estimate.isSingleSitedProbabilitySet() == false) {
+            if (t) LOG.trace("Setting the single-partition probability to current confidence [" + this.confidence + "]");
+            this.estimate.setSingleSitedProbability(inverse_prob);
+        }
+        
+        // Keep track of the highest abort probability that we've seen thus far
+        if (next_vertex.isQueryVertex() && abort_probability > this.greatest_abort) {
+            this.greatest_abort = abort_probability;
+        }
+        
+        if (d) {
+            LOG.debug("SELECTED: " + next_vertex + " [confidence=" + this.confidence + "]");
+            LOG.debug(StringUtil.repeat("-", 100));
+        }
+    }
+    
     @Override
     protected void callback(MarkovVertex element) {
         if (element.isQueryVertex() == false) {
@@ -622,10 +770,19 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         float untouched_finish = 1.0f;
         for (int p : this.all_partitions) {
             if (this.touched_partitions.contains(p) == false) {
-                this.estimate.setReadOnlyProbability(p, first_v.getReadOnlyProbability(p));
-                this.estimate.setWriteProbability(p, first_v.getWriteProbability(p));
-                
-                float finished_prob = first_v.getDoneProbability(p);
+                // Use the compiled tables if we have them so that we never read
+                // the start vertex while its probabilities are being recomputed
+                float finished_prob;
+                if (this.compiled != null) {
+                    int first_id = this.compiled.getStartId();
+                    this.estimate.setReadOnlyProbability(p, this.compiled.getReadOnlyProbability(first_id, p));
+                    this.estimate.setWriteProbability(p, this.compiled.getWriteProbability(first_id, p));
+                    finished_prob = this.compiled.getDoneProbability(first_id, p);
+                } else {
+                    this.estimate.setReadOnlyProbability(p, first_v.getReadOnlyProbability(p));
+                    this.estimate.setWriteProbability(p, first_v.getWriteProbability(p));
+                    finished_prob = first_v.getDoneProbability(p);
+                }
                 this.estimate.setDoneProbability(p, finished_prob);
                 if (is_singlepartition) untouched_finish = Math.min(untouched_finish, finished_prob);
             } else if (this.estimate.isWriteProbabilitySet(p) == false) {
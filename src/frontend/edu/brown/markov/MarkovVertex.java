@@ -12,8 +12,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
@@ -163,14 +164,31 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
 
     /**
      * The number of times this vertex has been touched in the current on-line run
+     * This is updated without holding any locks through INSTANCEHITS_UPDATER 
      */
-    public transient int instancehits = 0;
+    public transient volatile int instancehits = 0;
+    private static final AtomicIntegerFieldUpdater<MarkovVertex> INSTANCEHITS_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(MarkovVertex.class, "instancehits");
     
     /**
-     * The execution times of the transactions in the on-line run
-     * A map of the xact_id to the time it took to get to this vertex
+     * The sum of the remaining execution times of the transactions that passed through
+     * this vertex in the on-line run and how many of them there were. These get folded
+     * into execution_time when the graph's probabilities are recomputed.
+     * The total and the count are always swapped together through INSTANCETIMES_UPDATER
      */
-    private transient final Map<Long, Long> instancetimes = new ConcurrentHashMap<Long, Long>();
+    private transient volatile InstanceTimes instancetimes = InstanceTimes.EMPTY;
+    private static final AtomicReferenceFieldUpdater<MarkovVertex, InstanceTimes> INSTANCETIMES_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(MarkovVertex.class, InstanceTimes.class, "instancetimes");
+    
+    private static final class InstanceTimes {
+        private static final InstanceTimes EMPTY = new InstanceTimes(0l, 0);
+        private final long total;
+        private final int count;
+        private InstanceTimes(long total, int count) {
+            this.total = total;
+            this.count = count;
+        }
+    }
     
     /**
      * The count, used to figure out the average execution time above
@@ -180,6 +198,11 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
     
     private transient String to_string = null;
     
+    /**
+     * The id of this vertex in the last CompiledMarkovGraph built for its MarkovGraph
+     */
+    transient int compiled_id = CompiledMarkovGraph.NULL_ID;
+    
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -712,41 +735,32 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
     }
 
     /**
-     * @return a map of xact_ids to times
-     */
-    public Map<Long,Long> getInstanceTimes() {
-        return instancetimes;
-    }
-    
-    /**
-     * Add another instance time to the map. We use these times to figure out how long each
-     * transaction takes to execute in the on-line model.
+     * Record how much time was left in a transaction's execution after it reached this vertex.
+     * We use these times to figure out how long each transaction takes to execute in the
+     * on-line model. This is safe to call from multiple threads at the same time.
+     * @param remaining
      */
-    public MarkovVertex addInstanceTime(long xact_id, long time){
-        this.instancetimes.put(xact_id, time);
+    public MarkovVertex addInstanceTime(long remaining) {
+        InstanceTimes prev, next;
+        do {
+            prev = this.instancetimes;
+            next = new InstanceTimes(prev.total + remaining, prev.count + 1);
+        } while (INSTANCETIMES_UPDATER.compareAndSet(this, prev, next) == false);
         return (this);
     }
     
     /**
-     * Since we cannot know when a transaction ends in the on-line updates world, we wait until we find out
-     * that we need to recompute, then we normalize all the vertices in every graph with the end times, to
-     * get how long the xact actually lasted
-     * @param end_times
+     * Fold the instance times that were recorded since the last time that this was invoked
+     * into this vertex's average execution time. A concurrent addInstanceTime() is either
+     * picked up entirely in this round or entirely in the next one.
      */
-    protected void normalizeInstanceTimes(Map<Long, Long> end_times, List<Long> to_remove) {
-        for (Long txn_id : this.instancetimes.keySet()) {
-            Long start = this.instancetimes.get(txn_id);
-            Long stop = end_times.get(txn_id);
-            if (start != null && stop != null) {
-                long time = end_times.get(txn_id) - this.instancetimes.get(txn_id);
-                this.addExecutionTime(time);
-                to_remove.add(txn_id);
-                if (t) LOG.trace(String.format("Updating %s with %d time units from txn #%d", this, time, txn_id)); 
-            }
-        } // FOR
-        for (Long txn_id : to_remove) {
-            end_times.remove(txn_id);
-        } // FOR
+    protected void applyInstanceTimes() {
+        InstanceTimes times = INSTANCETIMES_UPDATER.getAndSet(this, InstanceTimes.EMPTY);
+        if (times.count > 0) {
+            this.execution_time = (this.execution_time * this.execution_time_count + times.total) / (this.execution_time_count + times.count);
+            this.execution_time_count += times.count;
+            if (t) LOG.trace(String.format("Updating %s with %d time units from %d txns", this, times.total, times.count));
+        }
     }
 
     
@@ -756,8 +770,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
    
     @Override
     public void applyInstanceHitsToTotalHits() {
-        this.totalhits += this.instancehits;
-        this.instancehits = 0;
+        this.totalhits += INSTANCEHITS_UPDATER.getAndSet(this, 0);
     }
     @Override
     public void incrementTotalHits() {
@@ -777,7 +790,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
     }
     @Override
     public int incrementInstanceHits() {
-        return (++this.instancehits);
+        return (INSTANCEHITS_UPDATER.incrementAndGet(this));
     }
     
     // ----------------------------------------------------------------------------
@@ -98,6 +98,8 @@ public class TransactionEstimator implements Loggable {
     public static final class State implements Poolable {
         private final List<MarkovVertex> actual_path = new ArrayList<MarkovVertex>();
         private final List<MarkovEdge> actual_path_edges = new ArrayList<MarkovEdge>();
+        /** The execution time offset of when the txn reached each vertex in actual_path */
+        private long actual_path_times[] = new long[16];
         private final Set<Integer> touched_partitions = new HashSet<Integer>();
         private final Map<Statement, Integer> query_instance_cnts = new HashMap<Statement, Integer>();
         private final List<MarkovEstimate> estimates = new ArrayList<MarkovEstimate>();
@@ -114,6 +116,8 @@ public class TransactionEstimator implements Loggable {
         private transient MarkovVertex current;
         private transient final Set<Integer> cache_past_partitions = new TreeSet<Integer>();
         private transient final Set<Integer> cache_last_partitions = new TreeSet<Integer>();
+        private transient final long cache_partitions_bitmap[];
+        private transient final long cache_touched_bitmap[];
         
         /**
          * State Factory
@@ -139,6 +143,8 @@ public class TransactionEstimator implements Loggable {
          */
         private State(int num_partitions) {
             this.num_partitions = num_partitions;
+            this.cache_partitions_bitmap = new long[CompiledMarkovGraph.getBitmapLength(num_partitions)];
+            this.cache_touched_bitmap = new long[this.cache_partitions_bitmap.length];
         }
         
         public void init(long txn_id, int base_partition, MarkovGraph markov, MarkovPathEstimator initial_estimator, long start_time) {
@@ -197,7 +203,7 @@ public class TransactionEstimator implements Loggable {
          * Get the next Estimate object for this State
          * @return
          */
-        protected synchronized MarkovEstimate createNextEstimate(MarkovVertex v) {
+        protected synchronized MarkovEstimate createNextEstimate(MarkovVertex v, CompiledMarkovGraph compiled) {
             MarkovEstimate next = null;
             if (this.num_estimates < this.estimates.size()) {
                 next = this.estimates.get(this.num_estimates);
@@ -205,7 +211,12 @@ public class TransactionEstimator implements Loggable {
                 next = new MarkovEstimate(this.num_partitions);
                 this.estimates.add(next);
             }
-            next.init(v, this.num_estimates++);
+            int v_id = (compiled != null ? compiled.getVertexId(v) : CompiledMarkovGraph.NULL_ID);
+            if (v_id != CompiledMarkovGraph.NULL_ID) {
+                next.init(compiled, v_id, this.num_estimates++);
+            } else {
+                next.init(v, this.num_estimates++);
+            }
             return (next);
         }
 
@@ -247,6 +258,11 @@ public class TransactionEstimator implements Loggable {
          */
         public void setCurrent(MarkovVertex current, MarkovEdge e) {
             if (this.current != null) assert(this.current.equals(current) == false);
+            int idx = this.actual_path.size();
+            if (idx == this.actual_path_times.length) {
+                this.actual_path_times = Arrays.copyOf(this.actual_path_times, idx * 2);
+            }
+            this.actual_path_times[idx] = this.getExecutionTimeOffset();
             this.actual_path.add(current);
             if (e != null) this.actual_path_edges.add(e);
             this.current = current;
@@ -264,6 +280,16 @@ public class TransactionEstimator implements Loggable {
             return (stop - this.start_time);
         }
         
+        /**
+         * Return the number of times that this txn has executed the given Statement
+         * without incrementing the counter
+         * @param catalog_stmt
+         */
+        public int getQueryInstanceCount(Statement catalog_stmt) {
+            Integer cnt = this.query_instance_cnts.get(catalog_stmt);
+            return (cnt == null ? 0 : cnt.intValue());
+        }
+        
         public int updateQueryInstanceCount(Statement catalog_stmt) {
             Integer cnt = this.query_instance_cnts.get(catalog_stmt);
             if (cnt == null) cnt = 0;
@@ -500,21 +526,15 @@ public class TransactionEstimator implements Loggable {
             
             // Calculate initial path estimate
             if (t) LOG.trace("Estimating initial execution path for " + AbstractTransaction.formatTxnName(catalog_proc, txn_id));
-            start.addInstanceTime(txn_id, start_time);
-            synchronized (markov) {
-                try {
-                    estimator.traverse(start);
-                    // if (catalog_proc.getName().equalsIgnoreCase("NewBid")) throw new Exception ("Fake!");
-                } catch (Throwable e) {
-                    try {
-                        GraphvizExport<MarkovVertex, MarkovEdge> gv = MarkovUtil.exportGraphviz(markov, true, markov.getPath(estimator.getVisitPath()));
-                        LOG.error("GRAPH #" + markov.getGraphId() + " DUMP: " + gv.writeToTempFile(catalog_proc));
-                    } catch (Exception ex) {
-                        throw new RuntimeException(ex);
-                    }
-                    throw new RuntimeException("Failed to estimate path for " + AbstractTransaction.formatTxnName(catalog_proc, txn_id), e);
-                }
-            } // SYNCH
+            // The compiled graph is immutable, so we don't need to lock the MarkovGraph
+            // if that's what the MarkovPathEstimator is going to walk
+            if (estimator.isCompiled()) {
+                this.estimatePath(txn_id, catalog_proc, markov, estimator, start);
+            } else {
+                synchronized (markov) {
+                    this.estimatePath(txn_id, catalog_proc, markov, estimator, start);
+                } // SYNCH
+            }
         } else {
             if (d) LOG.info(String.format("Using cached MarkovPathEstimator for %s [hashCode=%d, ratio=%.02f]",
                                           AbstractTransaction.formatTxnName(catalog_proc, txn_id), estimator.getEstimate().hashCode(), markov.getAccuracyRatio()));
@@ -551,6 +571,31 @@ public class TransactionEstimator implements Loggable {
         return (state);
     }
 
+    private void estimatePath(long txn_id, Procedure catalog_proc, MarkovGraph markov, MarkovPathEstimator estimator, MarkovVertex start) {
+        try {
+            estimator.traverse(start);
+            // if (catalog_proc.getName().equalsIgnoreCase("NewBid")) throw new Exception ("Fake!");
+        } catch (Throwable e) {
+            try {
+                GraphvizExport<MarkovVertex, MarkovEdge> gv = MarkovUtil.exportGraphviz(markov, true, markov.getPath(estimator.getVisitPath()));
+                LOG.error("GRAPH #" + markov.getGraphId() + " DUMP: " + gv.writeToTempFile(catalog_proc));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            throw new RuntimeException("Failed to estimate path for " + AbstractTransaction.formatTxnName(catalog_proc, txn_id), e);
+        }
+    }
+    
+    /**
+     * Return the CompiledMarkovGraph that should be used for the given MarkovGraph.
+     * Returns null if compiled graphs are disabled or the graph has not been compiled
+     * @param markov
+     * @return
+     */
+    protected CompiledMarkovGraph getCompiled(MarkovGraph markov) {
+        return (hstore_conf.site.markov_compiled ? markov.getCompiled() : null);
+    }
+
 //    public final AtomicInteger batch_cache_attempts = new AtomicInteger(0);
 //    public final AtomicInteger batch_cache_success = new AtomicInteger(0);
 //    public final ProfileMeasurement CACHE = new ProfileMeasurement("CACHE");
@@ -576,8 +621,18 @@ public class TransactionEstimator implements Loggable {
         Statement last_stmt = null;
         int stmt_idxs[] = null;
         boolean attempt_cache_lookup = false;
+        
+        // If we have a compiled graph, then we'll walk along that as far as we can.
+        // We only have to fall back to the MarkovGraph if the txn does something that we haven't
+        // seen before, so we don't need the batch cache either
+        CompiledMarkovGraph compiled = this.getCompiled(markov);
+        int offset = 0;
+        if (compiled != null) {
+            offset = this.consumeCompiled(state, compiled, catalog_stmts, partitions);
+            if (offset == batch_size) next_v = state.current;
+        }
 
-        if (allow_cache_lookup && batch_size >= hstore_conf.site.markov_batch_caching_min) {
+        if (compiled == null && allow_cache_lookup && batch_size >= hstore_conf.site.markov_batch_caching_min) {
 //            CACHE.start();
             assert(current != null);
             if (d) LOG.debug("Attempting cache look-up for last statement in batch: " + Arrays.toString(catalog_stmts));
@@ -605,9 +660,6 @@ public class TransactionEstimator implements Loggable {
                 assert(next_v != null);
                 if (d) LOG.debug(String.format("Got cached batch end for %s: %s -> %s", markov, current, next_v));
                 
-                // Update the counters and other info for the next vertex and edge
-                next_v.addInstanceTime(state.txn_id, state.getExecutionTimeOffset());
-                
                 // Update the state information
                 state.setCurrent(next_v, next_e);
                 state.touched_partitions.addAll(state.cache_last_partitions);
@@ -620,7 +672,7 @@ public class TransactionEstimator implements Loggable {
         // Roll through the Statements in this batch and move the current vertex
         // for the txn's State handle along the path in the MarkovGraph
         if (next_v == null) {
-            for (int i = 0; i < batch_size; i++) {
+            for (int i = offset; i < batch_size; i++) {
                 int idx = (attempt_cache_lookup ? stmt_idxs[i] : -1);
                 this.consume(state, markov, catalog_stmts[i], partitions[i], idx);
                 if (attempt_cache_lookup == false) state.touched_partitions.addAll(partitions[i]);
@@ -633,14 +685,17 @@ public class TransactionEstimator implements Loggable {
             }
         }
         
-        MarkovEstimate estimate = state.createNextEstimate(state.current);
+        MarkovEstimate estimate = state.createNextEstimate(state.current, compiled);
         assert(estimate != null);
         if (d) LOG.debug(String.format("Next MarkovEstimate for txn #%d\n%s", state.txn_id, estimate));
         assert(estimate.isValid()) : String.format("Invalid MarkovEstimate for txn #%d\n%s", state.txn_id, estimate);
         
         // Once the workload shifts we detect it and trigger this method. Recomputes
         // the graph with the data we collected with the current workload method.
-        if (this.enable_recomputes && markov.shouldRecompute(this.txn_count.get(), RECOMPUTE_TOLERANCE)) {
+        // If the MarkovGraphUpdater is running, then it will take care of this for us
+        // so that we don't stall this txn while the whole graph is recomputed.
+        if (this.enable_recomputes && hstore_conf.site.markov_online_updates == false &&
+            markov.shouldRecompute(this.txn_count.get(), RECOMPUTE_TOLERANCE)) {
             markov.calculateProbabilities();
         }
         return (estimate);
@@ -699,19 +754,38 @@ public class TransactionEstimator implements Loggable {
         MarkovVertex next_v = g.getSpecialVertex(vtype);
         assert(next_v != null) : "Missing " + vtype;
         
+        // Check whether the compiled graph already knows about the edge to the next vertex
+        MarkovEdge next_e = null;
+        CompiledMarkovGraph compiled = this.getCompiled(g);
+        if (compiled != null) {
+            int v_id = compiled.getVertexId(current);
+            int dest_id = compiled.getVertexId(next_v);
+            if (v_id != CompiledMarkovGraph.NULL_ID && dest_id != CompiledMarkovGraph.NULL_ID) {
+                int e_id = compiled.findEdge(v_id, dest_id);
+                if (e_id != CompiledMarkovGraph.NULL_ID) next_e = compiled.getEdge(e_id);
+            }
+        }
         // If no edge exists to the next vertex, then we need to create one
-        synchronized (g) {
-            MarkovEdge next_e = g.findEdge(current, next_v);
-            if (next_e == null) next_e = g.addToEdge(current, next_v);
-            s.setCurrent(next_v, next_e); // For post-txn processing...
-
-            // Update counters
-            // We want to update the counters for the entire path right here so that
-            // nobody gets incomplete numbers if they recompute probabilities
-            for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
-            for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
-            next_v.addInstanceTime(txn_id, s.getExecutionTimeOffset(timestamp));
-        } // SYNCH
+        if (next_e == null) next_e = g.addToEdge(current, next_v);
+        s.setCurrent(next_v, next_e); // For post-txn processing...
+
+        // Update counters
+        // These are all atomic, so we don't need to lock the graph. If somebody recomputes
+        // the probabilities while we are in here, then they will pick up part of this txn's
+        // path now and the rest of it the next time around. The vertices have to be updated
+        // before the edges (see MarkovGraph.calculateProbabilities())
+        for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
+        for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
+        
+        // Record how much time was left in the txn after it reached each vertex in its path
+        // TODO (svelagap): What about aborted transactions? 
+        if (vtype == MarkovVertex.Type.COMMIT) {
+            long stop = s.getExecutionTimeOffset(timestamp);
+            for (int i = 0, cnt = s.actual_path.size(); i < cnt; i++) {
+                s.actual_path.get(i).addInstanceTime(stop - s.actual_path_times[i]);
+            } // FOR
+        }
+        g.incrementInstanceTransactionCount();
         
         // Store this as the last accurate MarkovPathEstimator for this graph
         if (hstore_conf.site.markov_path_caching && this.cached_estimators.containsKey(s.markov) == false && s.initial_estimate.isValid()) {
@@ -733,6 +807,45 @@ public class TransactionEstimator implements Loggable {
 
     
     
+    /**
+     * Move the txn's State along the CompiledMarkovGraph for the given batch of queries.
+     * Returns the offset of the first query in the batch that does not have a vertex in the
+     * compiled graph. The caller will have to use consume() for the rest of the batch.  
+     * @param state
+     * @param compiled
+     * @param catalog_stmts
+     * @param partitions
+     * @return
+     */
+    private int consumeCompiled(State state, CompiledMarkovGraph compiled, Statement catalog_stmts[], Set<Integer> partitions[]) {
+        int v_id = compiled.getVertexId(state.getCurrent());
+        if (v_id == CompiledMarkovGraph.NULL_ID) return (0);
+        
+        CompiledMarkovGraph.toBitmap(state.touched_partitions, state.cache_touched_bitmap);
+        int offset = 0;
+        for ( ; offset < catalog_stmts.length; offset++) {
+            Statement catalog_stmt = catalog_stmts[offset];
+            CompiledMarkovGraph.toBitmap(partitions[offset], state.cache_partitions_bitmap);
+            int e_id = compiled.findSuccessor(v_id, catalog_stmt,
+                                              state.getQueryInstanceCount(catalog_stmt),
+                                              state.cache_partitions_bitmap,
+                                              state.cache_touched_bitmap);
+            if (e_id == CompiledMarkovGraph.NULL_ID) break;
+            
+            state.updateQueryInstanceCount(catalog_stmt);
+            v_id = compiled.getEdgeDestination(e_id);
+            state.setCurrent(compiled.getVertex(v_id), compiled.getEdge(e_id));
+            
+            state.touched_partitions.addAll(partitions[offset]);
+            for (int i = 0; i < state.cache_touched_bitmap.length; i++) {
+                state.cache_touched_bitmap[i] |= state.cache_partitions_bitmap[i];
+            } // FOR
+        } // FOR
+        if (t) LOG.trace(String.format("Consumed %d/%d queries for txn #%d using %s",
+                                       offset, catalog_stmts.length, state.txn_id, compiled));
+        return (offset);
+    }
+    
     /**
      * Figure out the next vertex that the txn will transition to for the give Statement catalog object
      * and the partitions that it will touch when it is executed. If no vertex exists, we will create
@@ -755,8 +868,10 @@ public class TransactionEstimator implements Loggable {
         MarkovVertex next_v = null;
         MarkovEdge next_e = null;
 
-        // Synchronize on the single vertex so that it's more fine-grained than the entire graph
-        synchronized (current) {
+        // We only get here if the compiled graph doesn't know where the txn is going, so
+        // we have to lock the entire graph because we may need to add new vertices and edges
+        // to it. This also keeps the MarkovGraphUpdater from recomputing it underneath us. 
+        synchronized (markov) {
             Collection<MarkovEdge> edges = markov.getOutEdges(current); 
             if (t) LOG.trace("Examining " + edges.size() + " edges from " + current + " for Txn #" + state.txn_id);
             for (MarkovEdge e : edges) {
@@ -784,9 +899,6 @@ public class TransactionEstimator implements Loggable {
             }
         } // SYNCH
 
-        // Update the counters and other info for the next vertex and edge
-        next_v.addInstanceTime(state.txn_id, state.getExecutionTimeOffset());
-        
         // Update the state information
         state.setCurrent(next_v, next_e);
         if (t) LOG.trace("Updated State Information for Txn #" + state.txn_id + ":\n" + state);
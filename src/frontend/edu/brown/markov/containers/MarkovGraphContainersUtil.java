@@ -1,10 +1,15 @@
 package edu.brown.markov.containers;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,8 +31,11 @@ import org.json.JSONObject;
 import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.Pair;
 
+import edu.brown.catalog.CatalogKey;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hashing.AbstractHasher;
 import edu.brown.logging.LoggerUtil;
@@ -35,6 +43,7 @@ import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.MarkovGraph;
 import edu.brown.markov.MarkovUtil;
 import edu.brown.statistics.Histogram;
+import edu.brown.utils.ArgumentsParser;
 import edu.brown.utils.ClassUtil;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.FileUtil;
@@ -51,6 +60,17 @@ public abstract class MarkovGraphContainersUtil {
         LoggerUtil.attachObserver(LOG, debug, trace);
     }
 
+    /**
+     * The first four bytes of every binary MarkovGraphsContainer file
+     */
+    public static final int BINARY_MAGIC = 0x4D4B5647; // "MKVG"
+    
+    /**
+     * The version of the binary file format that we write out. Bump this whenever
+     * MarkovGraph.writeBinary() changes so that we don't try to read old files. 
+     */
+    public static final int BINARY_VERSION = 1;
+    
     // ----------------------------------------------------------------------------
     // INSTANTATION METHODS
     // ----------------------------------------------------------------------------
@@ -341,10 +361,93 @@ public abstract class MarkovGraphContainersUtil {
         if (debug.get()) LOG.debug(className + " objects were written out to '" + output_path + "'");
     }
     
+    /**
+     * Serialize the given MarkovGraphsContainers out to a file in the compact binary format.
+     * <B>File Format:</B>
+     * <PRE>
+     * MAGIC | VERSION | HEADER LENGTH | HEADER | GRAPH DATA
+     * </PRE>
+     * The header contains the id and class name for each MarkovGraphsContainer and then the
+     * offset and length of each of its MarkovGraphs in the data section. This allows us to
+     * find a single graph without having to read in any of the others. 
+     * @param markovs
+     * @param output_path
+     */
+    public static void saveBinary(Map<Integer, ? extends MarkovGraphsContainer> markovs, String output_path) {
+        final String className = MarkovGraphsContainer.class.getSimpleName();
+        LOG.info("Writing out binary graphs of " + className + " to '" + output_path + "'");
+        
+        // Sort the list of partitions so we always iterate over them in the same order
+        SortedSet<Integer> sorted = new TreeSet<Integer>(markovs.keySet());
+        
+        File file = new File(output_path);
+        try {
+            FastSerializer header = new FastSerializer();
+            FastSerializer data = new FastSerializer();
+            header.writeInt(sorted.size());
+            for (Integer id : sorted) {
+                MarkovGraphsContainer container = markovs.get(id);
+                assert(container != null) : "Null MarkovGraphsContainer for partition #" + id;
+                
+                // Each container can store graphs under more than one id, so we need
+                // to flatten them all out under the container's id 
+                List<Pair<Integer, MarkovGraph>> graphs = new ArrayList<Pair<Integer, MarkovGraph>>();
+                for (Integer inner_id : new TreeSet<Integer>(container.keySet())) {
+                    for (MarkovGraph markov : container.getAll(inner_id).values()) {
+                        graphs.add(Pair.of(inner_id, markov));
+                    } // FOR
+                } // FOR
+                header.writeInt(id);
+                header.writeString(container.getClass().getCanonicalName());
+                header.writeInt(graphs.size());
+                for (Pair<Integer, MarkovGraph> p : graphs) {
+                    int offset = data.size();
+                    p.getSecond().writeBinary(data);
+                    header.writeInt(p.getFirst());
+                    header.writeString(CatalogKey.createKey(p.getSecond().getProcedure()));
+                    header.writeInt(offset);
+                    header.writeInt(data.size() - offset);
+                } // FOR
+            } // FOR
+            
+            FastSerializer prefix = new FastSerializer();
+            prefix.writeInt(BINARY_MAGIC);
+            prefix.writeInt(BINARY_VERSION);
+            prefix.writeInt(header.size());
+            
+            FileOutputStream out = new FileOutputStream(file);
+            FileChannel channel = out.getChannel();
+            for (FastSerializer fs : new FastSerializer[]{ prefix, header, data }) {
+                ByteBuffer b = fs.getBuffer();
+                while (b.hasRemaining()) channel.write(b);
+            } // FOR
+            out.close();
+        } catch (Exception ex) {
+            LOG.error("Failed to serialize the " + className + " file '" + output_path + "'", ex);
+            throw new RuntimeException(ex);
+        }
+        if (debug.get()) LOG.debug(className + " objects were written out to '" + output_path + "'");
+    }
+    
     // ----------------------------------------------------------------------------
     // LOAD METHODS
     // ----------------------------------------------------------------------------
     
+    /**
+     * Returns true if the given file was written out by saveBinary()
+     * @param file
+     * @return
+     */
+    public static boolean isBinary(File file) throws IOException {
+        if (file.length() < 4) return (false);
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return (in.readInt() == BINARY_MAGIC);
+        } finally {
+            in.close();
+        }
+    }
+    
     public static Map<Integer, MarkovGraphsContainer> loadIds(Database catalog_db, String input_path, Collection<Integer> ids) throws Exception {
         return (MarkovGraphContainersUtil.load(catalog_db, input_path, null, ids));
     }
@@ -362,8 +465,10 @@ public abstract class MarkovGraphContainersUtil {
      * @throws Exception
      */
     public static Map<Integer, MarkovGraphsContainer> load(final Database catalog_db, String input_path, Collection<Procedure> procedures, Collection<Integer> ids) throws Exception {
-        final Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
         final File file = new File(input_path);
+        if (isBinary(file)) return (loadBinary(catalog_db, file, procedures, ids));
+        
+        final Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
         LOG.info(String.format("Loading in MarkovGraphContainers from '%s' [procedures=%s, ids=%s]",
                                file.getName(), (procedures == null ? "*ALL*" : CatalogUtil.debug(procedures)), (ids == null ? "*ALL*" : ids)));
         
@@ -418,6 +523,79 @@ public abstract class MarkovGraphContainersUtil {
         if (debug.get()) LOG.debug("The loading of the MarkovGraphsContainer is complete");
         return (ret);
     }
+    
+    /**
+     * Load the MarkovGraphsContainers from a file written out by saveBinary()
+     * We only read the header here. The file is memory-mapped and each MarkovGraph is
+     * only deserialized the first time that its container is asked for it.
+     * @param catalog_db
+     * @param file
+     * @param procedures
+     * @param ids
+     * @return
+     * @throws Exception
+     */
+    protected static Map<Integer, MarkovGraphsContainer> loadBinary(final Database catalog_db, File file, Collection<Procedure> procedures, Collection<Integer> ids) throws Exception {
+        final Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
+        LOG.info(String.format("Loading in binary MarkovGraphContainers from '%s' [procedures=%s, ids=%s]",
+                               file.getName(), (procedures == null ? "*ALL*" : CatalogUtil.debug(procedures)), (ids == null ? "*ALL*" : ids)));
+        
+        FileInputStream fin = new FileInputStream(file);
+        MappedByteBuffer buffer = null;
+        try {
+            FileChannel channel = fin.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            fin.close();
+        }
+        
+        int num_graphs = 0;
+        FastDeserializer in = new FastDeserializer(buffer);
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("The file '" + file + "' is not a binary MarkovGraphsContainer file");
+        }
+        int version = in.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException(String.format("Unsupported MarkovGraphsContainer file version %d in '%s' [expected=%d]",
+                                                version, file, BINARY_VERSION));
+        }
+        int data_start = in.readInt() + in.getPosition();
+        
+        for (int i = 0, cnt = in.readInt(); i < cnt; i++) {
+            Integer id = in.readInt();
+            String className = in.readString();
+            int num_markovs = in.readInt();
+            
+            // See load() for why we always want GLOBAL_MARKOV_CONTAINER_ID
+            boolean include = (id.equals(MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID) || ids == null || ids.contains(id));
+            MarkovGraphsContainer markovs = null;
+            if (include) {
+                markovs = ClassUtil.newInstance(className, new Object[]{procedures},
+                                                           new Class<?>[]{Collection.class});
+                assert(markovs != null);
+                ret.put(id, markovs);
+            }
+            for (int j = 0; j < num_markovs; j++) {
+                Integer inner_id = in.readInt();
+                String proc_key = in.readString();
+                int offset = in.readInt();
+                int length = in.readInt();
+                if (include == false) continue;
+                
+                Procedure catalog_proc = CatalogKey.getFromKey(catalog_db, proc_key, Procedure.class);
+                assert(catalog_proc != null) : "Invalid Procedure key '" + proc_key + "'";
+                if (procedures != null && procedures.contains(catalog_proc) == false) continue;
+                
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(data_start + offset);
+                slice.limit(data_start + offset + length);
+                markovs.addPending(inner_id, catalog_proc, slice.slice());
+                num_graphs++;
+            } // FOR
+        } // FOR
+        if (debug.get()) LOG.debug(String.format("Registered %d MarkovGraphs from %d MarkovGraphsContainers", num_graphs, ret.size()));
+        return (ret);
+    }
 
     // ----------------------------------------------------------------------------
     // UTILITY METHODS
@@ -448,4 +626,28 @@ public abstract class MarkovGraphContainersUtil {
         return;
     }
 
+    // ----------------------------------------------------------------------------
+    // YE OLDE MAIN METHOD
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Convert a JSON MarkovGraphsContainer file (and optionally a ParameterMappingsSet file)
+     * into the binary format. Either type of input file can be converted back to JSON by
+     * just loading it in and calling save() 
+     * @param vargs
+     * @throws Exception
+     */
+    public static void main(String vargs[]) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG,
+                     ArgumentsParser.PARAM_MARKOV,
+                     ArgumentsParser.PARAM_MARKOV_OUTPUT);
+        
+        Map<Integer, MarkovGraphsContainer> markovs = MarkovGraphContainersUtil.load(args.catalog_db, args.getParam(ArgumentsParser.PARAM_MARKOV), null, null);
+        MarkovGraphContainersUtil.saveBinary(markovs, args.getParam(ArgumentsParser.PARAM_MARKOV_OUTPUT));
+        
+        if (args.hasParam(ArgumentsParser.PARAM_MAPPINGS) && args.hasParam(ArgumentsParser.PARAM_MAPPINGS_OUTPUT)) {
+            args.param_mappings.saveBinary(args.getParam(ArgumentsParser.PARAM_MAPPINGS_OUTPUT));
+        }
+    }
 }
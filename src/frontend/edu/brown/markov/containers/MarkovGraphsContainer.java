@@ -1,6 +1,7 @@
 package edu.brown.markov.containers;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -21,6 +22,7 @@ import org.json.JSONObject;
 import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
+import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.Encoder;
 
@@ -62,6 +64,13 @@ public class MarkovGraphsContainer implements JSONSerializable {
      */
     private final Map<Integer, Map<Procedure, MarkovGraph>> markovs = Collections.synchronizedMap(new TreeMap<Integer, Map<Procedure, MarkovGraph>>());
     
+    /**
+     * Serialized MarkovGraphs from a binary file that we haven't needed yet
+     * We only deserialize a graph the first time that somebody asks for it
+     * @see MarkovGraphContainersUtil.saveBinary()
+     */
+    private final Map<Integer, Map<Procedure, ByteBuffer>> pending = new ConcurrentHashMap<Integer, Map<Procedure, ByteBuffer>>();
+    
     /**
      * The procedures that we actually want to load. If this is null, then we will load everything
      */
@@ -115,9 +124,16 @@ public class MarkovGraphsContainer implements JSONSerializable {
     
     public void clear() {
         this.markovs.clear();
+        this.pending.clear();
     }
     
     public MarkovGraph get(Integer id, Procedure catalog_proc) {
+        MarkovGraph markov = this.getLoaded(id, catalog_proc);
+        if (markov == null) markov = this.loadPending(id, catalog_proc);
+        return (markov);
+    }
+    
+    private MarkovGraph getLoaded(Integer id, Procedure catalog_proc) {
         Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
         return (inner != null ? inner.get(catalog_proc) : null);
     }
@@ -192,10 +208,88 @@ public class MarkovGraphsContainer implements JSONSerializable {
         return (m);
     }
 
+    // -----------------------------------------------------------------
+    // LAZY LOADING
+    // -----------------------------------------------------------------
+    
+    /**
+     * Register a serialized MarkovGraph that will only be deserialized the
+     * first time that it is needed
+     * @param id
+     * @param catalog_proc
+     * @param buffer
+     */
+    void addPending(Integer id, Procedure catalog_proc, ByteBuffer buffer) {
+        Map<Procedure, ByteBuffer> inner = this.pending.get(id);
+        if (inner == null) {
+            inner = new ConcurrentHashMap<Procedure, ByteBuffer>();
+            this.pending.put(id, inner);
+        }
+        inner.put(catalog_proc, buffer);
+    }
+    
+    /**
+     * Return the number of MarkovGraphs that have not been deserialized yet
+     * @return
+     */
+    public int getPendingCount() {
+        int ctr = 0;
+        for (Map<Procedure, ByteBuffer> inner : this.pending.values()) {
+            ctr += inner.size();
+        } // FOR
+        return (ctr);
+    }
+    
+    /**
+     * Deserialize the pending MarkovGraph for the given id+catalog_proc
+     * The graph is added to our loaded graphs before it is removed from the pending
+     * set, so if we don't find anything here it must already be in there.
+     * @param id
+     * @param catalog_proc
+     * @return
+     */
+    private MarkovGraph loadPending(Integer id, Procedure catalog_proc) {
+        Map<Procedure, ByteBuffer> inner = this.pending.get(id);
+        if (inner == null || inner.containsKey(catalog_proc) == false) {
+            return (this.getLoaded(id, catalog_proc));
+        }
+        synchronized (this) {
+            ByteBuffer buffer = inner.get(catalog_proc);
+            if (buffer == null) return (this.getLoaded(id, catalog_proc));
+            
+            if (debug) LOG.debug(String.format("Loading MarkovGraph [id=%d, proc=%s]", id, catalog_proc.getName()));
+            MarkovGraph markov = new MarkovGraph(catalog_proc);
+            try {
+                markov.readBinary(new FastDeserializer(buffer.duplicate()));
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to load MarkovGraph " + id + " for " + catalog_proc.getName(), ex);
+            }
+            markov.buildCache();
+            markov.compile();
+            this.put(id, markov);
+            inner.remove(catalog_proc);
+            return (markov);
+        } // SYNCH
+    }
+    
+    /**
+     * Deserialize all of the pending MarkovGraphs. This is needed by anything
+     * that wants to look at every graph in this container.
+     */
+    protected void loadAllPending() {
+        if (this.pending.isEmpty()) return;
+        for (Entry<Integer, Map<Procedure, ByteBuffer>> e : this.pending.entrySet()) {
+            for (Procedure catalog_proc : e.getValue().keySet()) {
+                this.loadPending(e.getKey(), catalog_proc);
+            } // FOR
+        } // FOR
+    }
+    
     /**
      * Invoke MarkovGraph.calculateProbabilities() for all of the graphs stored within this container 
      */
     public void calculateProbabilities() {
+        this.loadAllPending();
         for (Map<Procedure, MarkovGraph> inner : this.markovs.values()) {
             for (Entry<Procedure, MarkovGraph> e : inner.entrySet()) {
                 MarkovGraph m = e.getValue();
@@ -217,10 +311,12 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     protected Map<Procedure, MarkovGraph> getAll(Integer id) {
+        this.loadAllPending();
         return (this.markovs.get(id));
     }
     
     public Map<Integer, MarkovGraph> getAll(Procedure catalog_proc) {
+        this.loadAllPending();
         Map<Integer, MarkovGraph> ret = new HashMap<Integer, MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             MarkovGraph m = this.markovs.get(id).get(catalog_proc);
@@ -234,6 +330,15 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * @return
      */
     public Set<MarkovGraph> getAll() {
+        this.loadAllPending();
+        return (this.getLoaded());
+    }
+    
+    /**
+     * Get all the MarkovGraphs in this object that have already been deserialized
+     * @return
+     */
+    public Set<MarkovGraph> getLoaded() {
         Set<MarkovGraph> ret = new HashSet<MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             Map<Procedure, MarkovGraph> m = this.markovs.get(id);
@@ -243,19 +348,25 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     public void copy(MarkovGraphsContainer other) {
+        other.loadAllPending();
         this.markovs.putAll(other.markovs);
     }
     
     public Set<Integer> keySet() {
+        this.loadAllPending();
         return this.markovs.keySet();
     }
     
     public Set<Entry<Integer, Map<Procedure, MarkovGraph>>> entrySet() {
+        this.loadAllPending();
         return this.markovs.entrySet();
     }
     
     public int size() {
-        return (this.markovs.size());
+        if (this.pending.isEmpty()) return (this.markovs.size());
+        Set<Integer> ids = new HashSet<Integer>(this.markovs.keySet());
+        ids.addAll(this.pending.keySet());
+        return (ids.size());
     }
     
     @Override
@@ -306,6 +417,8 @@ public class MarkovGraphsContainer implements JSONSerializable {
 
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
+        this.loadAllPending();
+        
         // CLASSNAME
         stringer.key(Members.CLASSNAME.name()).value(this.getClass().getCanonicalName());
         
@@ -363,6 +476,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
                             markov.fromJSON(json_graph, catalog_db);
                             MarkovGraphsContainer.this.put(id, markov);
                             markov.buildCache();
+                            markov.compile();
                         } catch (Throwable ex) {
                             throw new RuntimeException("Failed to load MarkovGraph " + id + " for " + catalog_proc.getName(), ex);
                         }
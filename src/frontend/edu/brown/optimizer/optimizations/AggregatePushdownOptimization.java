@@ -1,5 +1,6 @@
 package edu.brown.optimizer.optimizations;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -130,11 +131,14 @@ public class AggregatePushdownOptimization extends AbstractOptimization {
         // 2011-12-08: We now need to correct the aggregate columns for the
         // original plan node
         if ((clone_node instanceof DistinctPlanNode) == false) {
-            // If we have a AGGREGATE_WEIGHTED_AVG in our node, then we know that
-            // we can skip the last column because that's the COUNT from the remote partition
-            boolean has_weightedAvg = node.getAggregateTypes().contains(ExpressionType.AGGREGATE_WEIGHTED_AVG);
+            // Each AGGREGATE_WEIGHTED_AVG in our node has a COUNT from the remote partitions
+            // at the end of the columns. We skip those because the EE knows where to find them
+            int num_weightedAvgs = 0;
+            for (ExpressionType et : node.getAggregateTypes()) {
+                if (et == ExpressionType.AGGREGATE_WEIGHTED_AVG) num_weightedAvgs++;
+            } // FOR
             node.getAggregateColumnGuids().clear();
-            int num_cols = clone_node.getOutputColumnGUIDCount() - (has_weightedAvg ? 1 : 0);
+            int num_cols = clone_node.getOutputColumnGUIDCount() - num_weightedAvgs;
             for (int i = 0; i < num_cols; i++) {
                 Integer aggOutput = clone_node.getOutputColumnGUID(i);
                 PlanColumn planCol = state.plannerContext.get(aggOutput);
@@ -158,6 +162,26 @@ public class AggregatePushdownOptimization extends AbstractOptimization {
         return Pair.of(true, rootNode);
     }
     
+    /**
+     * Returns the type to use for the partial SUM that a partition sends back
+     * for an AVG of a column with the given type
+     * @param inputType
+     * @return
+     */
+    protected static VoltType getPartialSumType(VoltType inputType) {
+        switch (inputType) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return (VoltType.BIGINT);
+            case DECIMAL:
+                return (VoltType.DECIMAL);
+            default:
+                return (VoltType.FLOAT);
+        } // SWITCH
+    }
+    
     /**
 *
 * @param node
@@ -174,46 +198,68 @@ public class AggregatePushdownOptimization extends AbstractOptimization {
 
         // Update the cloned AggregateNode to handle distributed averages
         List<ExpressionType> clone_types = clone_agg.getAggregateTypes();
+        int orig_cnt = clone_types.size();
         
-        // For now we'll always put a COUNT at the end of the AggregatePlanNode
-        // This makes it easier for us to find it in the EE
-        boolean has_count = false;
-// boolean has_count = (clone_types.contains(ExpressionType.AGGREGATE_COUNT) ||
-// clone_types.contains(ExpressionType.AGGREGATE_COUNT_STAR));
+        // IMPORTANT: If we have GROUP BY columns, then we need to make sure
+        // that those columns are always passed up the query tree at the pushed
+        // down node, even if the final answer doesn't need it
+        // This has to happen before we add the COUNTs for the averages below
+        // because the EE expects those to be the last columns
+        if (node.getGroupByColumnGuids().isEmpty() == false) {
+            for (Integer guid : clone_agg.getGroupByColumnGuids()) {
+                if (clone_agg.getOutputColumnGUIDs().contains(guid) == false) {
+                    clone_agg.getOutputColumnGUIDs().add(guid);
+                }
+            } // FOR
+        }
 
-        int orig_cnt = clone_types.size();
         for (int i = 0; i < orig_cnt; i++) {
             ExpressionType cloneType = clone_types.get(i);
             // Ok, strap on your helmets boys, here's what we got going on here...
-            // In order to do a distributed average, we need to send the average
-            // AND the count (in order to compute the weight average at the base partition).
-            // We need check whether we already have a count already in our list
-            // If not, then we'll want to insert it here.
+            // In order to do a distributed average, each partition sends back its partial
+            // state for the average, which is the SUM and the COUNT of the values that it saw.
+            // The base partition can then add up the sums and the counts and only divide
+            // at the very end, so we don't lose anything by averaging averages.
+            // Each average gets its own COUNT because the NULLs that they skip can be different.
             if (cloneType == ExpressionType.AGGREGATE_AVG) {
-                if (has_count == false) {
-                    // But now because we add a new output column that we're going to use internally,
-                    // we need to make sure that our output columns reflect this.
-                    clone_types.add(ExpressionType.AGGREGATE_COUNT_STAR);
-                    has_count = true;
-                    
-                    // Aggregate Input Column
-                    // We just need to do it against the first column in the child's output
-                    // Picking the column that we want to use doesn't matter even if there is a GROUP BY
-                    clone_agg.getAggregateColumnGuids().add(node.getChild(0).getOutputColumnGUID(0));
+                clone_types.set(i, ExpressionType.AGGREGATE_SUM);
+                clone_types.add(ExpressionType.AGGREGATE_COUNT);
+                
+                // The partial SUM can't use the AVG's output column, because a SUM 
+                // can overflow the AVG's type where the average never would. So we
+                // give it its own column that is wide enough for the input type
+                int sumOffset = clone_agg.getAggregateOutputColumns().get(i);
+                PlanColumn avg_pc = state.plannerContext.get(clone_agg.getOutputColumnGUID(sumOffset));
+                PlanColumn input_pc = state.plannerContext.get(clone_agg.getAggregateColumnGuids().get(i));
+                VoltType sumType = getPartialSumType(input_pc.getExpression().getValueType());
+                TupleValueExpression sum_exp = new TupleValueExpression();
+                sum_exp.setValueType(sumType);
+                sum_exp.setValueSize(sumType.getLengthInBytesForFixedTypes());
+                sum_exp.setTableName(PlanAssembler.AGGREGATE_TEMP_TABLE);
+                sum_exp.setColumnName("");
+                sum_exp.setColumnAlias("_DTXN_SUM" + i);
+                sum_exp.setColumnIndex(sumOffset);
+                PlanColumn sum_pc = state.plannerContext.getPlanColumn(sum_exp, avg_pc.getDisplayName());
+                clone_agg.getOutputColumnGUIDs().set(sumOffset, sum_pc.guid());
+                
+                // Aggregate Input Column
+                // We count the same column that we are averaging
+                clone_agg.getAggregateColumnGuids().add(clone_agg.getAggregateColumnGuids().get(i));
 
-                    // Aggregate Output Column
-                    TupleValueExpression exp = new TupleValueExpression();
-                    exp.setValueType(VoltType.BIGINT);
-                    exp.setValueSize(VoltType.BIGINT.getLengthInBytesForFixedTypes());
-                    exp.setTableName(PlanAssembler.AGGREGATE_TEMP_TABLE);
-                    exp.setColumnName("");
-                    exp.setColumnAlias("_DTXN_COUNT");
-                    exp.setColumnIndex(clone_agg.getOutputColumnGUIDCount());
-                    PlanColumn new_pc = state.plannerContext.getPlanColumn(exp, exp.getColumnAlias());
-                    clone_agg.getAggregateOutputColumns().add(clone_agg.getOutputColumnGUIDCount());
-                    clone_agg.getAggregateColumnNames().add(new_pc.getDisplayName());
-                    clone_agg.getOutputColumnGUIDs().add(new_pc.guid());
-                }
+                // Aggregate Output Column
+                // But now because we add a new output column that we're going to use internally,
+                // we need to make sure that our output columns reflect this.
+                TupleValueExpression exp = new TupleValueExpression();
+                exp.setValueType(VoltType.BIGINT);
+                exp.setValueSize(VoltType.BIGINT.getLengthInBytesForFixedTypes());
+                exp.setTableName(PlanAssembler.AGGREGATE_TEMP_TABLE);
+                exp.setColumnName("");
+                exp.setColumnAlias("_DTXN_COUNT" + i);
+                exp.setColumnIndex(clone_agg.getOutputColumnGUIDCount());
+                PlanColumn new_pc = state.plannerContext.getPlanColumn(exp, exp.getColumnAlias());
+                clone_agg.getAggregateOutputColumns().add(clone_agg.getOutputColumnGUIDCount());
+                clone_agg.getAggregateColumnNames().add(new_pc.getDisplayName());
+                clone_agg.getOutputColumnGUIDs().add(new_pc.guid());
             }
         } // FOR
         
@@ -221,10 +267,10 @@ public class AggregatePushdownOptimization extends AbstractOptimization {
         // and change the ExpressiontTypes for the aggregates to handle ahat we're
         // doing down below in the distributed query
         List<ExpressionType> exp_types = node.getAggregateTypes();
+        List<ExpressionType> orig_types = new ArrayList<ExpressionType>(exp_types);
         exp_types.clear();
-        for (int i = 0; i < orig_cnt; i++) {
-            ExpressionType cloneType = clone_types.get(i);
-            switch (cloneType) {
+        for (ExpressionType origType : orig_types) {
+            switch (origType) {
                 case AGGREGATE_COUNT:
                 case AGGREGATE_COUNT_STAR:
                 case AGGREGATE_SUM:
@@ -232,28 +278,17 @@ public class AggregatePushdownOptimization extends AbstractOptimization {
                     break;
                 case AGGREGATE_MAX:
                 case AGGREGATE_MIN:
-                    exp_types.add(cloneType);
+                    exp_types.add(origType);
                     break;
                 case AGGREGATE_AVG:
                     // This is a special internal marker that allows us to compute
-                    // a weighted average from the count
+                    // the average from the partial sums and counts
                     exp_types.add(ExpressionType.AGGREGATE_WEIGHTED_AVG);
                     break;
                 default:
-                    throw new RuntimeException("Unexpected ExpressionType " + cloneType);
+                    throw new RuntimeException("Unexpected ExpressionType " + origType);
             } // SWITCH
         } // FOR
-        
-        // IMPORTANT: If we have GROUP BY columns, then we need to make sure
-        // that those columns are always passed up the query tree at the pushed
-        // down node, even if the final answer doesn't need it
-        if (node.getGroupByColumnGuids().isEmpty() == false) {
-            for (Integer guid : clone_agg.getGroupByColumnGuids()) {
-                if (clone_agg.getOutputColumnGUIDs().contains(guid) == false) {
-                    clone_agg.getOutputColumnGUIDs().add(guid);
-                }
-            } // FOR
-        }
 
         assert(clone_agg.getGroupByColumnOffsets().size() == node.getGroupByColumnOffsets().size());
         assert(clone_agg.getGroupByColumnNames().size() == node.getGroupByColumnNames().size());
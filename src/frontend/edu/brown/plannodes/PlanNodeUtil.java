@@ -33,6 +33,7 @@ import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.DeletePlanNode;
 import org.voltdb.plannodes.DistinctPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.InsertPlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
@@ -215,10 +216,15 @@ public abstract class PlanNodeUtil {
             // JOINS
             // ---------------------------------------------------
             case NESTLOOP:
-            case NESTLOOPINDEX: {
+            case NESTLOOPINDEX:
+            case HASHJOIN: {
                 AbstractJoinPlanNode cast_node = (AbstractJoinPlanNode) node;
                 if (cast_node.getPredicate() != null)
                     exps.add(cast_node.getPredicate());
+                if (cast_node instanceof HashJoinPlanNode) {
+                    exps.addAll(((HashJoinPlanNode) cast_node).getOuterKeys());
+                    exps.addAll(((HashJoinPlanNode) cast_node).getInnerKeys());
+                }
 
                 // We always need to look at the inline scan nodes for joins
                 for (AbstractPlanNode inline_node : cast_node.getInlinePlanNodes().values()) {
@@ -308,7 +314,8 @@ public abstract class PlanNodeUtil {
                     }
                     // JOINS
                     case NESTLOOP:
-                    case NESTLOOPINDEX: {
+                    case NESTLOOPINDEX:
+                    case HASHJOIN: {
                         AbstractJoinPlanNode cast_node = (AbstractJoinPlanNode) node;
                         exps.add(cast_node.getPredicate());
                         break;
@@ -0,0 +1,193 @@
+package edu.brown.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, log-linear histogram for recording latencies (in the style of HdrHistogram).
+ * Values smaller than 2^(precision+1) get their own bucket. Every power of two after that
+ * is split into 2^precision linear buckets, so the relative error of any percentile
+ * is at most 1/2^precision. Recording a value never allocates or takes a lock, so it is safe
+ * to call from every PartitionExecutor thread at the same time.
+ */
+public class LatencyHistogram {
+
+    /** Default number of bits of precision for each power of two (~3% error) */
+    public static final int DEFAULT_PRECISION = 5;
+    /** Default largest value that we can track: one minute in nanoseconds */
+    public static final long DEFAULT_MAX_VALUE = 60000000000l;
+
+    private final int precision;
+    private final int sub_bucket_count;
+    private final long max_value;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public LatencyHistogram() {
+        this(DEFAULT_MAX_VALUE, DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param max_value Values larger than this are recorded in the last bucket
+     * @param precision Number of bits of precision for each power of two
+     */
+    public LatencyHistogram(long max_value, int precision) {
+        assert(max_value > 0);
+        assert(precision > 0 && precision < 16) : "Invalid precision " + precision;
+        this.precision = precision;
+        this.sub_bucket_count = 1 << precision;
+        this.max_value = max_value;
+        this.counts = new AtomicLongArray(this.getBucketIndex(max_value) + 1);
+    }
+
+    // ----------------------------------------------------------------------------
+    // BUCKETS
+    // ----------------------------------------------------------------------------
+
+    protected int getBucketIndex(long value) {
+        if (value < (this.sub_bucket_count << 1)) {
+            return ((int)value);
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - this.precision;
+        return ((shift * this.sub_bucket_count) + (int)(value >>> shift));
+    }
+
+    /**
+     * Returns the smallest value that falls into the given bucket
+     */
+    protected long getBucketLowerBound(int idx) {
+        if (idx < (this.sub_bucket_count << 1)) {
+            return (idx);
+        }
+        int shift = (idx / this.sub_bucket_count) - 1;
+        long top = idx - (shift * this.sub_bucket_count);
+        return (top << shift);
+    }
+
+    /**
+     * Returns the largest value that falls into the given bucket
+     */
+    protected long getBucketUpperBound(int idx) {
+        if (idx < (this.sub_bucket_count << 1)) {
+            return (idx);
+        }
+        int shift = (idx / this.sub_bucket_count) - 1;
+        long top = idx - (shift * this.sub_bucket_count);
+        return (((top + 1) << shift) - 1);
+    }
+
+    public int getBucketCount() {
+        return (this.counts.length());
+    }
+
+    // ----------------------------------------------------------------------------
+    // RECORDING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Record a single value. Negative values are ignored.
+     * @param value
+     */
+    public void record(long value) {
+        if (value < 0) return;
+        int idx = (value > this.max_value ? this.counts.length() - 1 : this.getBucketIndex(value));
+        this.counts.incrementAndGet(idx);
+        this.sum.addAndGet(value);
+
+        long current = this.max.get();
+        while (value > current) {
+            if (this.max.compareAndSet(current, value)) break;
+            current = this.max.get();
+        } // WHILE
+    }
+
+    /**
+     * Returns a copy of the current state of the histogram.
+     */
+    public Snapshot snapshot() {
+        return (this.snapshot(false));
+    }
+
+    /**
+     * Returns a copy of the current state of the histogram and then starts a new
+     * interval. Values that are recorded while this is running are never lost; they
+     * either end up in the returned snapshot or in the next interval.
+     */
+    public Snapshot snapshotAndReset() {
+        return (this.snapshot(true));
+    }
+
+    private Snapshot snapshot(boolean reset) {
+        long copy[] = new long[this.counts.length()];
+        long total = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = (reset ? this.counts.getAndSet(i, 0) : this.counts.get(i));
+            total += copy[i];
+        } // FOR
+        long snapshot_sum = (reset ? this.sum.getAndSet(0) : this.sum.get());
+        long snapshot_max = (reset ? this.max.getAndSet(0) : this.max.get());
+        return (new Snapshot(copy, total, snapshot_sum, snapshot_max));
+    }
+
+    /**
+     * An immutable copy of a LatencyHistogram that percentiles can be computed from
+     */
+    public class Snapshot {
+        private final long counts[];
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long counts[], long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return (this.count);
+        }
+        public long getSum() {
+            return (this.sum);
+        }
+        public long getMax() {
+            return (this.max);
+        }
+        public double getMean() {
+            return (this.count > 0 ? this.sum / (double)this.count : 0d);
+        }
+
+        /**
+         * Returns the upper bound of the bucket that contains the given percentile
+         * @param percentile A value between 0 and 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (this.count == 0) return (0);
+            long target = (long)Math.ceil((Math.min(percentile, 100d) / 100d) * this.count);
+            if (target < 1) target = 1;
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= target) {
+                    return (Math.min(getBucketUpperBound(i), this.max));
+                }
+            } // FOR
+            return (this.max);
+        }
+
+        /**
+         * Returns the number of values that are less than or equal to the given value.
+         * This is rounded to the nearest bucket boundary.
+         */
+        public long getCountAtOrBelow(long value) {
+            long total = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                if (getBucketLowerBound(i) > value) break;
+                total += this.counts[i];
+            } // FOR
+            return (total);
+        }
+    }
+}
@@ -28,6 +28,8 @@
 package edu.brown.utils;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import org.apache.log4j.Logger;
 import org.json.JSONException;
@@ -39,6 +41,11 @@ import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 
 /**
+ * A ProfileMeasurement must only be started and stopped by one thread at a time,
+ * but it can be read and reset from any other thread without taking a lock.
+ * The owner thread publishes its totals with ordered (lazySet) writes, while reset()
+ * only records a baseline that is subtracted from the totals when they are read.
+ * That way the owner never loses an update to a concurrent reset.
  * @author pavlo
  */
 public class ProfileMeasurement implements JSONSerializable {
@@ -49,21 +56,37 @@ public class ProfileMeasurement implements JSONSerializable {
         LoggerUtil.attachObserver(LOG, debug, trace);
     }
 
+    /** The value of think_marker when we are outside of the profiled area */
+    private static final long NULL_MARKER = Long.MIN_VALUE;
+
+    private static final AtomicLongFieldUpdater<ProfileMeasurement> TOTAL_TIME_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(ProfileMeasurement.class, "total_time");
+    private static final AtomicIntegerFieldUpdater<ProfileMeasurement> INVOCATIONS_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(ProfileMeasurement.class, "invocations");
+
     /** The profile type */
     private String type;
-    /** Total amount of time spent processing the profiled section (in ms) */
-    private long total_time;
+    /** Total amount of time spent processing the profiled section (in ns) */
+    private volatile long total_time;
     /** The number of times that this ProfileMeasurement has been started */
-    private int invocations = 0;
+    private volatile int invocations = 0;
+
+    /** The value of total_time the last time that we were reset */
+    private transient volatile long reset_total_time = 0;
+    /** The value of invocations the last time that we were reset */
+    private transient volatile int reset_invocations = 0;
+    /**
+     * When we were last reset. If we were started before this, then
+     * only the time after the reset is counted when we are stopped.
+     */
+    private transient volatile long reset_timestamp = NULL_MARKER;
 
     /**
      * This marker is used to set when the boundary area of the code we are
-     * trying to profile starts and stops. When it is zero, the system is
+     * trying to profile starts and stops. When it is NULL_MARKER, the system is
      * outside of the profiled area.
      */
-    private transient Long think_marker;
-
-    private transient boolean reset = false;
+    private transient long think_marker = NULL_MARKER;
 
     private transient EventObservable<ProfileMeasurement> start_observable;
     private transient EventObservable<ProfileMeasurement> stop_observable;
@@ -83,7 +106,6 @@ public class ProfileMeasurement implements JSONSerializable {
      */
     public ProfileMeasurement(String pmtype) {
         this.type = pmtype;
-        this.reset();
     }
 
     /**
@@ -100,18 +122,26 @@ public class ProfileMeasurement implements JSONSerializable {
     // UTILITY METHODS
     // ----------------------------------------------------------------------------
 
-    public synchronized void reset() {
-        if (this.think_marker != null) {
-            this.reset = true;
-        }
-        this.total_time = 0;
-        this.invocations = 0;
+    /**
+     * Start a new measurement interval. This is safe to call from any thread.
+     */
+    public void reset() {
+        this.reset_timestamp = getTime();
+        this.reset_total_time = this.total_time;
+        this.reset_invocations = this.invocations;
     }
 
+    /**
+     * Clear out all of the internal state. This must only be called
+     * by the thread that starts and stops this ProfileMeasurement.
+     */
     public void clear() {
-        this.think_marker = null;
-        this.invocations = 0;
-        this.total_time = 0;
+        this.think_marker = NULL_MARKER;
+        this.reset_timestamp = NULL_MARKER;
+        this.reset_total_time = 0;
+        this.reset_invocations = 0;
+        TOTAL_TIME_UPDATER.lazySet(this, 0);
+        INVOCATIONS_UPDATER.lazySet(this, 0);
     }
 
     public <T> void resetOnEvent(EventObservable<T> e) {
@@ -138,7 +168,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return
      */
     public long getTotalThinkTime() {
-        return (this.total_time);
+        return (this.total_time - this.reset_total_time);
     }
 
     /**
@@ -147,7 +177,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return
      */
     public double getTotalThinkTimeMS() {
-        return (this.total_time / 1000000d);
+        return (this.getTotalThinkTime() / 1000000d);
     }
 
     /**
@@ -156,7 +186,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return
      */
     public double getTotalThinkTimeSeconds() {
-        return (this.total_time / 1000000d / 1000d);
+        return (this.getTotalThinkTime() / 1000000d / 1000d);
     }
 
     /**
@@ -165,7 +195,8 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return
      */
     public double getAverageThinkTime() {
-        return (this.invocations > 0 ? this.total_time / (double) this.invocations : 0d);
+        int cnt = this.getInvocations();
+        return (cnt > 0 ? this.getTotalThinkTime() / (double) cnt : 0d);
     }
 
     /**
@@ -183,7 +214,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return
      */
     public int getInvocations() {
-        return (this.invocations);
+        return (this.invocations - this.reset_invocations);
     }
 
     // ----------------------------------------------------------------------------
@@ -196,12 +227,12 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return this
      */
 
-    public synchronized ProfileMeasurement start(long timestamp) {
-        assert (this.think_marker == null) : String.format("Trying to start %s before it was stopped!", this.type);
+    public ProfileMeasurement start(long timestamp) {
+        assert (this.think_marker == NULL_MARKER) : String.format("Trying to start %s before it was stopped!", this.type);
         if (debug.get())
             LOG.debug(String.format("START %s", this));
         this.think_marker = timestamp;
-        this.invocations++;
+        INVOCATIONS_UPDATER.lazySet(this, this.invocations + 1);
         if (this.start_observable != null)
             this.start_observable.notifyObservers(this);
         return (this);
@@ -212,7 +243,7 @@ public class ProfileMeasurement implements JSONSerializable {
     }
 
     public boolean isStarted() {
-        return (this.think_marker != null);
+        return (this.think_marker != NULL_MARKER);
     }
 
     public synchronized void addStartObserver(EventObserver<ProfileMeasurement> observer) {
@@ -232,22 +263,21 @@ public class ProfileMeasurement implements JSONSerializable {
      * 
      * @return this
      */
-    public synchronized ProfileMeasurement stop(long timestamp) {
-        if (this.reset) {
-            this.reset = false;
-            this.think_marker = null;
-            return (this);
-        }
+    public ProfileMeasurement stop(long timestamp) {
         if (debug.get())
             LOG.debug(String.format("STOP %s", this));
-        assert (this.think_marker != null) : String.format("Trying to stop %s before it was started!", this.type);
-        long added = (timestamp - this.think_marker);
-        if (added < 0) {
+        assert (this.think_marker != NULL_MARKER) : String.format("Trying to stop %s before it was started!", this.type);
+        // If somebody reset us while we were running, then we only count the time since the reset
+        long begin = this.think_marker;
+        long reset_ts = this.reset_timestamp;
+        if (reset_ts != NULL_MARKER && reset_ts > begin) begin = reset_ts;
+        long added = (timestamp - begin);
+        if (added >= 0) {
+            TOTAL_TIME_UPDATER.lazySet(this, this.total_time + added);
+        } else if (begin == this.think_marker) {
             LOG.warn(String.format("Invalid stop timestamp for %s [timestamp=%d, marker=%d, added=%d]", this.type, timestamp, this.think_marker, added));
-        } else {
-            this.total_time += added;
         }
-        this.think_marker = null;
+        this.think_marker = NULL_MARKER;
         if (this.stop_observable != null)
             this.stop_observable.notifyObservers(this);
         // if (type == Type.JAVA)
@@ -261,7 +291,7 @@ public class ProfileMeasurement implements JSONSerializable {
     }
 
     public boolean isStopped() {
-        return (this.think_marker == null);
+        return (this.think_marker == NULL_MARKER);
     }
 
     public synchronized void addStopObserver(EventObserver<ProfileMeasurement> observer) {
@@ -279,9 +309,9 @@ public class ProfileMeasurement implements JSONSerializable {
         assert (other != null);
         if (checkType)
             assert (this.type == other.type);
-        this.total_time += other.total_time;
+        TOTAL_TIME_UPDATER.lazySet(this, this.total_time + other.getTotalThinkTime());
         this.think_marker = other.think_marker;
-        this.invocations += other.invocations;
+        INVOCATIONS_UPDATER.lazySet(this, this.invocations + other.getInvocations());
         return (this);
     }
 
@@ -290,9 +320,9 @@ public class ProfileMeasurement implements JSONSerializable {
     }
 
     public void addThinkTime(long start, long stop, int invocations) {
-        assert (this.think_marker == null) : this.type;
-        this.total_time += (stop - start);
-        this.invocations += invocations;
+        assert (this.think_marker == NULL_MARKER) : this.type;
+        TOTAL_TIME_UPDATER.lazySet(this, this.total_time + (stop - start));
+        INVOCATIONS_UPDATER.lazySet(this, this.invocations + invocations);
     }
 
     public void addThinkTime(long start, long stop) {
@@ -321,10 +351,8 @@ public class ProfileMeasurement implements JSONSerializable {
     public static void start(boolean ignore_started, ProfileMeasurement... to_start) {
         long time = ProfileMeasurement.getTime();
         for (ProfileMeasurement pm : to_start) {
-            synchronized (pm) {
-                if (ignore_started == false || (ignore_started && pm.isStarted() == false))
-                    pm.start(time);
-            } // SYNCH
+            if (ignore_started == false || (ignore_started && pm.isStarted() == false))
+                pm.start(time);
         } // FOR
     }
 
@@ -348,10 +376,8 @@ public class ProfileMeasurement implements JSONSerializable {
     public static void stop(boolean ignore_stopped, ProfileMeasurement... to_stop) {
         long time = ProfileMeasurement.getTime();
         for (ProfileMeasurement pm : to_stop) {
-            synchronized (pm) {
-                if (ignore_stopped == false || (ignore_stopped && pm.isStopped() == false))
-                    pm.stop(time);
-            } // SYNCH
+            if (ignore_stopped == false || (ignore_stopped && pm.isStopped() == false))
+                pm.stop(time);
         } // FOR
     }
 
@@ -385,7 +411,9 @@ public class ProfileMeasurement implements JSONSerializable {
 
     public String debug(boolean verbose) {
         if (verbose) {
-            return (String.format("%s[total=%d, marker=%s, invocations=%d, avg=%.2f ms]", this.type, this.total_time, this.think_marker, this.invocations, this.getAverageThinkTimeMS()));
+            return (String.format("%s[total=%d, marker=%s, invocations=%d, avg=%.2f ms]", this.type, this.getTotalThinkTime(),
+                                  (this.think_marker == NULL_MARKER ? null : this.think_marker),
+                                  this.getInvocations(), this.getAverageThinkTimeMS()));
         } else {
             return (this.type);
         }
@@ -413,13 +441,14 @@ public class ProfileMeasurement implements JSONSerializable {
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
         stringer.key("TYPE").value(this.type);
-        stringer.key("TIME").value(this.total_time);
-        stringer.key("INVOCATIONS").value(this.invocations);
+        stringer.key("TIME").value(this.getTotalThinkTime());
+        stringer.key("INVOCATIONS").value(this.getInvocations());
     }
 
     @Override
     public void fromJSON(JSONObject json_object, Database catalog_db) throws JSONException {
         this.type = json_object.getString("TYPE");
+        this.clear();
         this.total_time = json_object.getLong("TIME");
         this.invocations = json_object.getInt("INVOCATIONS");
     }
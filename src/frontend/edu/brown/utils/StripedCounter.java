@@ -0,0 +1,83 @@
+package edu.brown.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be updated from many threads at the same time without any of them
+ * fighting over the same cache line. Each thread picks its cell based on its thread id
+ * (so long-lived threads like the PartitionExecutors always hit the same cell), and the
+ * cells are only summed up when somebody asks for the current value. Updates are
+ * therefore cheap and reads are relatively expensive, which is the right trade-off
+ * for profiling counters that are only read by the HStoreSiteStatus thread.
+ */
+public class StripedCounter {
+
+    /** Number of longs between two cells so that they are on different cache lines */
+    private static final int PADDING = 8;
+
+    /** Number of cells. This is always a power of two */
+    private static final int NUM_CELLS;
+    static {
+        int cells = 1;
+        while (cells < Runtime.getRuntime().availableProcessors() * 2) {
+            cells <<= 1;
+        }
+        NUM_CELLS = cells;
+    } // STATIC
+
+    /**
+     * Returns the offset of the current thread's cell. Thread ids are handed out
+     * sequentially, so consecutive threads end up in different cells.
+     */
+    private static int getCell() {
+        return (((int)Thread.currentThread().getId() & (NUM_CELLS - 1)) * PADDING);
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(NUM_CELLS * PADDING);
+
+    /**
+     * Add the given delta to the current thread's cell
+     * @param delta
+     */
+    public void add(long delta) {
+        this.cells.addAndGet(getCell(), delta);
+    }
+
+    public void inc() {
+        this.add(1);
+    }
+
+    public void dec() {
+        this.add(-1);
+    }
+
+    /**
+     * Returns the sum of all of the cells. This is not an atomic snapshot if
+     * there are concurrent updates.
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0, cnt = this.cells.length(); i < cnt; i += PADDING) {
+            sum += this.cells.get(i);
+        } // FOR
+        return (sum);
+    }
+
+    /**
+     * Returns the sum of all of the cells and sets them back to zero. Any updates that
+     * happen while this is running are either included in the return value or are
+     * kept for the next call. They are never lost.
+     */
+    public long getAndReset() {
+        long sum = 0;
+        for (int i = 0, cnt = this.cells.length(); i < cnt; i += PADDING) {
+            sum += this.cells.getAndSet(i, 0);
+        } // FOR
+        return (sum);
+    }
+
+    @Override
+    public String toString() {
+        return (Long.toString(this.get()));
+    }
+}
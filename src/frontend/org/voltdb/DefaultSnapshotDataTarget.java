@@ -22,6 +22,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,11 +41,34 @@ import org.apache.log4j.Logger;
 import org.voltdb.client.ConnectionUtil;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.DBBPool.BBContainer;
 
 public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private static final Logger LOG = Logger.getLogger(DefaultSnapshotDataTarget.class);
 
+    /**
+     * Flag in the last element of the save file version for files where every tuple block
+     * is compressed on its own. Each block is written as
+     *   [compressed length][partition id][uncompressed length][CRC32 of compressed bytes][compressed bytes]
+     * where the uncompressed bytes are the same as a raw block without its length prefix.
+     * The file ends with an index of all of the blocks
+     *   [block count]([block offset][partition id])*[CRC32 of the index][offset of the index]
+     * so that a reader can find, skip, and decompress blocks independently.
+     */
+    public static final int FORMAT_COMPRESSED = 1;
+
+    /**
+     * Flag in the last element of the save file version for files that are part of a chain
+     * of delta snapshots. Every block only holds tuples from one of the EE's tuple blocks and
+     * has the index of that tuple block right before its row count. The header has the nonce
+     * of the snapshot that this one is a delta of (an empty string if this is the base).
+     */
+    public static final int FORMAT_TUPLE_BLOCKS = 2;
+
+    /** Size of the header in front of each compressed block */
+    public static final int COMPRESSED_BLOCK_HEADER_SIZE = 16;
+
     public static volatile boolean m_simulateFullDiskWritingHeader = false;
     public static volatile boolean m_simulateFullDiskWritingChunk = false;
 
@@ -79,6 +104,36 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
 
+    /**
+     * Whether each tuple block is compressed before it is written out
+     */
+    private final boolean m_compress;
+
+    /**
+     * The offsets and partition ids of the compressed blocks that we've written so far.
+     * These are only modified by the write service thread.
+     */
+    private final List<Long> m_blockOffsets = new ArrayList<Long>();
+    private final List<Integer> m_blockPartitionIds = new ArrayList<Integer>();
+
+    /**
+     * Blocks are compressed in parallel before being handed to the single write service thread
+     */
+    private static final ExecutorService m_compressionService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private int threadIndex = 0;
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(
+                    Thread.currentThread().getThreadGroup(),
+                    r,
+                    "Snapshot compression service - " + threadIndex++,
+                    131072);
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private static final ExecutorService m_es = Executors.newSingleThreadExecutor(new ThreadFactory() {
         @Override
         public Thread newThread(Runnable r) {
@@ -125,7 +180,69 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 partitionIds,
                 schemaTable,
                 createTime,
-                new int[] { 0, 0, 0, 0 });
+                false,
+                null);
+    }
+
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final int partitionIds[],
+            final VoltTable schemaTable,
+            final long createTime,
+            final boolean compress) throws IOException {
+            this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                createTime,
+                compress,
+                null);
+    }
+
+    /**
+     * @param parentNonce if this is not null, then the file is part of a chain of delta snapshots
+     *        and this is the nonce of the snapshot that it is a delta of. An empty string means
+     *        that this is the base of the chain.
+     */
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final int partitionIds[],
+            final VoltTable schemaTable,
+            final long createTime,
+            final boolean compress,
+            final String parentNonce) throws IOException {
+            this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                createTime,
+                new int[] { 0, 0, 0, (compress ? FORMAT_COMPRESSED : 0) |
+                                     (parentNonce != null ? FORMAT_TUPLE_BLOCKS : 0) },
+                parentNonce);
     }
 
     public DefaultSnapshotDataTarget(
@@ -139,11 +256,13 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final int partitionIds[],
             final VoltTable schemaTable,
             final long createTime,
-            int version[]
+            int version[],
+            final String parentNonce
             ) throws IOException {
         String hostname = ConnectionUtil.getHostnameOrAddress();
         m_file = file;
         m_tableName = tableName;
+        m_compress = (version[3] & FORMAT_COMPRESSED) != 0;
         m_fos = new FileOutputStream(file);
         m_channel = m_fos.getChannel();
         final FastSerializer fs = new FastSerializer();
@@ -164,6 +283,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             fs.writeArray(partitionIds);
             fs.writeInt(numPartitions);
         }
+        if ((version[3] & FORMAT_TUPLE_BLOCKS) != 0) {
+            fs.writeString(parentNonce);
+        }
         final BBContainer container = fs.getBBContainer();
         container.b.position(4);
         container.b.putInt(container.b.remaining() - 4);
@@ -240,6 +362,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 }
             }
             m_syncTask.cancel(false);
+            if (m_compress && !m_writeFailed) {
+                writeBlockIndex();
+            }
             m_channel.force(false);
         } finally {
             m_bytesAllowedBeforeSync.release(m_bytesWrittenSinceLastSync.getAndSet(0));
@@ -259,12 +384,99 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         }
     }
 
+    /**
+     * Append the index of all of the compressed blocks to the end of the file
+     */
+    private void writeBlockIndex() throws IOException {
+        final long indexOffset = m_channel.position();
+        final int numBlocks = m_blockOffsets.size();
+        ByteBuffer index = ByteBuffer.allocate(4 + (numBlocks * 12) + 4 + 8);
+        index.putInt(numBlocks);
+        for (int ii = 0; ii < numBlocks; ii++) {
+            index.putLong(m_blockOffsets.get(ii));
+            index.putInt(m_blockPartitionIds.get(ii));
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(index.array(), 0, index.position());
+        index.putInt((int)crc.getValue());
+        index.putLong(indexOffset);
+        index.flip();
+        while (index.hasRemaining()) {
+            m_channel.write(index);
+        }
+    }
+
     @Override
     public int getHeaderSize() {
         return 4;
     }
 
+    /**
+     * Compress the block in one of the compression service's threads and then
+     * hand it off to the write service. The uncompressed buffer is given back
+     * as soon as it has been compressed.
+     */
+    private Future<?> compressAndWrite(final BBContainer tupleData) {
+        if (m_writeFailed) {
+            tupleData.discard();
+            return null;
+        }
+
+        m_outstandingWriteTasks.incrementAndGet();
+        return m_compressionService.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    final byte compressed[];
+                    final int partitionId;
+                    final int uncompressedLength;
+                    try {
+                        tupleData.b.position(getHeaderSize());
+                        partitionId = tupleData.b.getInt(tupleData.b.position());
+                        uncompressedLength = tupleData.b.remaining();
+                        compressed = CompressionService.compressBuffer(tupleData.b);
+                    } finally {
+                        tupleData.discard();
+                    }
+
+                    final CRC32 crc = new CRC32();
+                    crc.update(compressed);
+                    ByteBuffer block = ByteBuffer.allocate(COMPRESSED_BLOCK_HEADER_SIZE + compressed.length);
+                    block.putInt(compressed.length);
+                    block.putInt(partitionId);
+                    block.putInt(uncompressedLength);
+                    block.putInt((int)crc.getValue());
+                    block.put(compressed);
+                    block.flip();
+                    write(DBBPool.wrapBB(block), false, partitionId);
+                } catch (IOException e) {
+                    m_writeException = e;
+                    LOG.error("Error while attempting to compress snapshot data for file " + m_file, e);
+                    m_writeFailed = true;
+                    throw e;
+                } finally {
+                    synchronized (m_outstandingWriteTasks) {
+                        if (m_outstandingWriteTasks.decrementAndGet() == 0) {
+                            m_outstandingWriteTasks.notify();
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
     private Future<?> write(final BBContainer tupleData, final boolean prependLength) {
+        return write(tupleData, prependLength, -1);
+    }
+
+    /**
+     * @param tupleData
+     * @param prependLength
+     * @param blockPartitionId if this is a compressed block, then the partition that
+     *        it belongs to. Its offset will be added to the index at the end of the file.
+     */
+    private Future<?> write(final BBContainer tupleData, final boolean prependLength, final int blockPartitionId) {
         if (m_writeFailed) {
             tupleData.discard();
             return null;
@@ -290,6 +502,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
                     m_bytesAllowedBeforeSync.acquire(tupleData.b.remaining());
 
+                    if (blockPartitionId != -1) {
+                        m_blockOffsets.add(m_channel.position());
+                        m_blockPartitionIds.add(blockPartitionId);
+                    }
                     int totalWritten = 0;
                     while (tupleData.b.hasRemaining()) {
                         totalWritten += m_channel.write(tupleData.b);
@@ -317,6 +533,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     @Override
     public Future<?> write(final BBContainer tupleData) {
+        if (m_compress) {
+            return compressAndWrite(tupleData);
+        }
         return write(tupleData, true);
     }
 
@@ -25,12 +25,14 @@ import org.apache.log4j.Logger;
 import org.voltdb.SnapshotSiteProcessor.SnapshotTableTask;
 import org.voltdb.catalog.Host;
 import org.voltdb.catalog.Table;
+import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.sysprocs.SnapshotRegistry;
 import org.voltdb.sysprocs.SnapshotSave;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
+import edu.brown.hstore.conf.HStoreConf;
 
 /**
  * SnapshotSaveAPI extracts reusuable snapshot production code
@@ -42,6 +44,16 @@ public class SnapshotSaveAPI
 {
     private static final Logger LOG = Logger.getLogger(SnapshotSaveAPI.class);
 
+    /**
+     * The last snapshot on this host that completed successfully and that
+     * the EEs were tracking modified tuple blocks for. The next snapshot will
+     * be a delta of it if it goes to the same path and we haven't hit
+     * the maximum number of deltas in a row yet.
+     */
+    private static String m_lastTrackedSnapshotPath = null;
+    private static String m_lastTrackedSnapshotNonce = null;
+    private static int m_deltasSinceFullSnapshot = 0;
+
     /**
      * The only public method: do all the work to start a snapshot.
      * Assumes that a snapshot is feasible, that the caller has validated it can
@@ -152,6 +164,38 @@ public class SnapshotSaveAPI
                         file_nonce,
                         tables);
                 final AtomicInteger numTables = new AtomicInteger(tables.size());
+
+                /*
+                 * Figure out whether we can get away with only writing out the tuple
+                 * blocks that were modified since the last snapshot
+                 */
+                final int deltaMax = HStoreConf.singleton().site.exec_snapshot_delta_max;
+                final String parentNonce;
+                final int cowMode;
+                final int deltaCount;
+                synchronized (SnapshotSaveAPI.class) {
+                    if (deltaMax <= 0) {
+                        parentNonce = null;
+                        cowMode = ExecutionEngine.COW_MODE_FULL;
+                        deltaCount = 0;
+                    } else if (m_lastTrackedSnapshotNonce != null &&
+                               m_lastTrackedSnapshotPath.equals(file_path) &&
+                               m_deltasSinceFullSnapshot < deltaMax) {
+                        parentNonce = m_lastTrackedSnapshotNonce;
+                        cowMode = ExecutionEngine.COW_MODE_DELTA;
+                        deltaCount = m_deltasSinceFullSnapshot + 1;
+                    } else {
+                        parentNonce = "";
+                        cowMode = ExecutionEngine.COW_MODE_FULL_BLOCKS;
+                        deltaCount = 0;
+                    }
+                    // Nothing can be a delta of this snapshot until it finishes
+                    m_lastTrackedSnapshotPath = null;
+                    m_lastTrackedSnapshotNonce = null;
+                }
+                if (LOG.isDebugEnabled() && parentNonce != null && !parentNonce.isEmpty())
+                    LOG.debug("Snapshot " + file_nonce + " is a delta of " + parentNonce);
+
                 final SnapshotRegistry.Snapshot snapshotRecord =
                     SnapshotRegistry.startSnapshot(
                             startTime,
@@ -175,7 +219,8 @@ public class SnapshotSaveAPI
                                     table,
                                     context.getSite().getHost(),
                                     CatalogUtil.getNumberOfPartitions(context.getCluster()),
-                                    startTime);
+                                    startTime,
+                                    parentNonce);
                         targets.add(sdt);
                         final SnapshotDataTarget sdtFinal = sdt;
                         final Runnable onClose = new Runnable() {
@@ -202,6 +247,13 @@ public class SnapshotSaveAPI
                                             "Snapshot " + snapshotRecord.nonce + " finished at " +
                                              completed.timeFinished + " and took " + duration
                                              + " seconds ");
+                                    if (parentNonce != null && completed.result) {
+                                        synchronized (SnapshotSaveAPI.class) {
+                                            m_lastTrackedSnapshotPath = completed.path;
+                                            m_lastTrackedSnapshotNonce = completed.nonce;
+                                            m_deltasSinceFullSnapshot = deltaCount;
+                                        }
+                                    }
                                 }
                             }
                         };
@@ -213,7 +265,8 @@ public class SnapshotSaveAPI
                                     table.getRelativeIndex(),
                                     sdt,
                                     table.getIsreplicated(),
-                                    table.getTypeName());
+                                    table.getTypeName(),
+                                    cowMode);
 
                         if (table.getIsreplicated()) {
                             replicatedSnapshotTasks.add(task);
@@ -339,7 +392,8 @@ public class SnapshotSaveAPI
             Table table,
             Host h,
             int numPartitions,
-            long createTime)
+            long createTime,
+            String parentNonce)
     throws IOException
     {
         return new DefaultSnapshotDataTarget(f,
@@ -351,7 +405,9 @@ public class SnapshotSaveAPI
                                              table.getIsreplicated(),
                                              SnapshotUtil.getPartitionsOnHost(context, h),
                                              CatalogUtil.getVoltTable(table),
-                                             createTime);
+                                             createTime,
+                                             HStoreConf.singleton().site.exec_snapshot_compression,
+                                             parentNonce);
     }
 
 }
@@ -88,8 +88,10 @@ public class SnapshotSiteProcessor {
     /**
      * Queue of tasks for tables that still need to be snapshotted.
      * This is polled from until there are no more tasks.
+     * Only the execution thread modifies this, but canDoSnapshotWork() can
+     * be called from other threads to check whether it is null.
      */
-    private ArrayDeque<SnapshotTableTask> m_snapshotTableTasks;
+    private volatile ArrayDeque<SnapshotTableTask> m_snapshotTableTasks;
 
 
     /**
@@ -104,6 +106,27 @@ public class SnapshotSiteProcessor {
      */
     private final Runnable m_onPotentialSnapshotWork;
 
+    /**
+     * The maximum number of bytes per second that we will serialize when the
+     * snapshot work is interleaved with transactions. Work done while the site is
+     * idle is not charged against this budget. A value less than or equal to zero
+     * means that there is no limit.
+     */
+    private final long m_bytesPerSecond;
+
+    /**
+     * The number of bytes that we are currently allowed to serialize and the last
+     * time (in ms) that the budget was refilled.
+     */
+    private long m_budget = 0;
+    private long m_lastRefill = 0;
+
+    /**
+     * All of the tasks for the snapshot that is in progress (or the last one that
+     * finished) so that we can report how far along each table is.
+     */
+    private volatile List<SnapshotTableTask> m_allTableTasks = Collections.emptyList();
+
     /**
      * A class identifying a table that should be snapshotted as well as the destination
      * for the resulting tuple blocks
@@ -113,26 +136,81 @@ public class SnapshotSiteProcessor {
         private final SnapshotDataTarget m_target;
         private final boolean m_isReplicated;
         private final String m_name;
+        private final int m_cowMode;
+
+        // These are only updated by the execution thread but can be read by others
+        private volatile long m_bytesSerialized = 0;
+        private volatile int m_chunks = 0;
+        private volatile long m_startTime = 0;
+        private volatile long m_stopTime = 0;
 
         public SnapshotTableTask(
                 final int tableId,
                 final SnapshotDataTarget target,
                 boolean isReplicated,
                 final String tableName) {
+            this(tableId, target, isReplicated, tableName, ExecutionEngine.COW_MODE_FULL);
+        }
+
+        /**
+         * @param cowMode which tuples to serialize (one of ExecutionEngine.COW_MODE_*)
+         */
+        public SnapshotTableTask(
+                final int tableId,
+                final SnapshotDataTarget target,
+                boolean isReplicated,
+                final String tableName,
+                final int cowMode) {
             m_tableId = tableId;
             m_target = target;
             m_isReplicated = isReplicated;
             m_name = tableName;
+            m_cowMode = cowMode;
+        }
+
+        public String getTableName() {
+            return m_name;
+        }
+
+        /** Number of tuple bytes serialized so far for this table */
+        public long getBytesSerialized() {
+            return m_bytesSerialized;
+        }
+
+        /** Number of blocks handed to the SnapshotDataTarget so far */
+        public int getChunkCount() {
+            return m_chunks;
+        }
+
+        public boolean isFinished() {
+            return (m_stopTime != 0);
+        }
+
+        /** How long (in ms) it took to serialize this table, or how long it has been going */
+        public long getElapsedTime() {
+            if (m_startTime == 0) return (0);
+            return ((m_stopTime != 0 ? m_stopTime : System.currentTimeMillis()) - m_startTime);
         }
 
         @Override
         public String toString() {
-            return ("SnapshotTableTask for " + m_name + " replicated " + m_isReplicated);
+            return ("SnapshotTableTask for " + m_name + " replicated " + m_isReplicated +
+                    " bytes " + m_bytesSerialized + " chunks " + m_chunks);
         }
     }
 
     public SnapshotSiteProcessor(Runnable onPotentialSnapshotWork) {
+        this(onPotentialSnapshotWork, 0);
+    }
+
+    /**
+     * @param onPotentialSnapshotWork
+     * @param bytesPerSecond the rate limit for snapshot work that is interleaved
+     *        with transactions (<= 0 means unlimited)
+     */
+    public SnapshotSiteProcessor(Runnable onPotentialSnapshotWork, long bytesPerSecond) {
         m_onPotentialSnapshotWork = onPotentialSnapshotWork;
+        m_bytesPerSecond = bytesPerSecond;
         initializeBufferPool();
     }
 
@@ -164,6 +242,7 @@ public class SnapshotSiteProcessor {
 
     public void initiateSnapshots(ExecutionEngine ee, Deque<SnapshotTableTask> tasks) {
         m_snapshotTableTasks = new ArrayDeque<SnapshotTableTask>(tasks);
+        m_allTableTasks = Collections.unmodifiableList(new ArrayList<SnapshotTableTask>(tasks));
         m_snapshotTargets = new ArrayList<SnapshotDataTarget>();
         for (final SnapshotTableTask task : tasks) {
             if (!task.m_isReplicated) {
@@ -171,17 +250,73 @@ public class SnapshotSiteProcessor {
                 assert(m_snapshotTargets != null);
                 m_snapshotTargets.add(task.m_target);
             }
-            // FIXME meng
-//            if (!ee.activateTableStream(task.m_tableId, TableStreamType.SNAPSHOT )) {
-//                LOG.error("Attempted to activate copy on write mode for table "
-//                        + task.m_name + " and failed");
-//                LOG.error(task);
-//                VoltDB.crashVoltDB();
-//            }
+            if (!ee.activateCopyOnWrite(task.m_tableId, task.m_cowMode)) {
+                LOG.error("Attempted to activate copy on write mode for table "
+                        + task.m_name + " and failed");
+                LOG.error(task);
+                VoltDB.crashVoltDB();
+            }
         }
+        m_budget = 0;
+        m_lastRefill = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns true if there is a snapshot in progress at this site that still
+     * has tables that need to be serialized.
+     */
+    public boolean hasSnapshotWork() {
+        return (m_snapshotTableTasks != null);
+    }
+
+    /**
+     * Returns true if there is snapshot work that we could do right now,
+     * i.e., one of our buffers is not waiting on I/O.
+     * This is safe to call from any thread.
+     */
+    public boolean canDoSnapshotWork() {
+        return (m_snapshotTableTasks != null && !m_availableSnapshotBuffers.isEmpty());
+    }
+
+    /**
+     * Per-table progress of the snapshot in progress (or the last one that finished)
+     */
+    public List<SnapshotTableTask> getTableTasks() {
+        return m_allTableTasks;
     }
 
+    /**
+     * Refill the rate limiter's budget based on how much time has passed since the
+     * last time that we checked. We never accumulate more than one second's worth
+     * so that a long idle stretch doesn't turn into a burst later on.
+     */
+    private boolean hasBudget() {
+        if (m_bytesPerSecond <= 0) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final long elapsed = now - m_lastRefill;
+        if (elapsed > 0) {
+            m_budget = Math.min(m_bytesPerSecond, m_budget + ((elapsed * m_bytesPerSecond) / 1000));
+            m_lastRefill = now;
+        }
+        return (m_budget > 0);
+    }
+
+    /**
+     * Serialize the next block of the snapshot, subject to the rate limit.
+     */
     public Future<?> doSnapshotWork(ExecutionEngine ee) {
+        return doSnapshotWork(ee, false);
+    }
+
+    /**
+     * Serialize the next block of the snapshot.
+     * @param ee
+     * @param idle if true, then the site has nothing else to do and so the block
+     *        is not charged against the rate limit
+     */
+    public Future<?> doSnapshotWork(ExecutionEngine ee, boolean idle) {
         Future<?> retval = null;
 
         /*
@@ -192,6 +327,9 @@ public class SnapshotSiteProcessor {
         if (m_snapshotTableTasks == null || m_availableSnapshotBuffers.isEmpty()) {
             return retval;
         }
+        if (!idle && !hasBudget()) {
+            return retval;
+        }
 
         /*
          * There definitely is snapshot work to do. There should be a task
@@ -206,11 +344,13 @@ public class SnapshotSiteProcessor {
             assert(snapshotBuffer != null);
             snapshotBuffer.b.clear();
             snapshotBuffer.b.position(headerSize);
-            final int serialized = 0; // FIXME (meng)
-//                ee.tableStreamSerializeMore(
-//                    snapshotBuffer,
-//                    currentTask.m_tableId,
-//                    TableStreamType.SNAPSHOT);
+            if (currentTask.m_startTime == 0) {
+                currentTask.m_startTime = System.currentTimeMillis();
+            }
+            final int serialized =
+                ee.cowSerializeMore(
+                    snapshotBuffer,
+                    currentTask.m_tableId);
 
             if (serialized < 0) {
                 LOG.error("Failure while serialize data from a table for COW snapshot");
@@ -223,6 +363,11 @@ public class SnapshotSiteProcessor {
              */
             if (serialized == 0) {
                 final SnapshotTableTask t = m_snapshotTableTasks.poll();
+                t.m_stopTime = System.currentTimeMillis();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Finished snapshot of table " + t.m_name + " [bytes=" + t.m_bytesSerialized +
+                              ", chunks=" + t.m_chunks + ", time=" + t.getElapsedTime() + "ms]");
+                }
                 /**
                  * Replicated tables are assigned to a single ES on each site and that ES
                  * is responsible for closing the data target. Done in a separate
@@ -257,6 +402,11 @@ public class SnapshotSiteProcessor {
              */
             snapshotBuffer.b.limit(headerSize + serialized);
             snapshotBuffer.b.position(0);
+            currentTask.m_bytesSerialized += serialized;
+            currentTask.m_chunks++;
+            if (!idle && m_bytesPerSecond > 0) {
+                m_budget -= serialized;
+            }
             retval = currentTask.m_target.write(snapshotBuffer);
             break;
         }
@@ -321,7 +471,7 @@ public class SnapshotSiteProcessor {
         HashSet<Exception> retval = new HashSet<Exception>();
         m_snapshotTargetTerminators = new ArrayList<Thread>();
         while (m_snapshotTableTasks != null) {
-            Future<?> result = doSnapshotWork(ee);
+            Future<?> result = doSnapshotWork(ee, true);
             if (result != null) {
                 try {
                     result.get();
@@ -58,6 +58,7 @@ import edu.brown.hstore.PartitionExecutor;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.dtxn.AbstractTransaction;
 import edu.brown.hstore.dtxn.LocalTransaction;
+import edu.brown.hstore.dtxn.ResultStream;
 import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.util.ParameterSetArrayCache;
 import edu.brown.logging.LoggerUtil;
@@ -998,6 +999,36 @@ public abstract class VoltProcedure implements Poolable, Loggable {
         return voltExecuteSQL(isFinalSQL, false);
     }
     
+    /**
+     * Execute the currently queued SQL {@link org.voltdb.SQLStmt statements} and return
+     * a {@link edu.brown.hstore.dtxn.ResultStream} for each of them. If a multi-partition
+     * query just unions together the rows from the partitions, then its stream returns
+     * each partition's table separately instead of one table with all of the rows.
+     *
+     * @return Result streams generated by executing the queued
+     * query {@link org.voltdb.SQLStmt statements}
+     */
+    public ResultStream[] voltExecuteSQLStream() {
+        VoltTable results[] = null;
+        ResultStream streams[] = null;
+        if (isNative) m_localTxnState.requestResultStreams();
+        try {
+            results = voltExecuteSQL(false, false);
+        } finally {
+            if (isNative) streams = m_localTxnState.removeResultStreams();
+        }
+        
+        // The batch never went through the LocalTransaction if it
+        // only executed at this partition
+        if (streams == null) {
+            streams = new ResultStream[results.length];
+            for (int i = 0; i < streams.length; i++) {
+                streams[i] = new ResultStream(results[i]);
+            } // FOR
+        }
+        return (streams);
+    }
+    
     private VoltTable[] voltExecuteSQL(boolean isFinalSQL, boolean forceSinglePartition) {
         if (isNative == false) {
             VoltTable[] batch_results = queryResults.toArray(new VoltTable[queryResults.size()]);
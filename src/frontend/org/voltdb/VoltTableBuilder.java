@@ -0,0 +1,518 @@
+/***************************************************************************
+ *  Copyright (C) 2012 by H-Store Project                                  *
+ *  Brown University                                                       *
+ *  Massachusetts Institute of Technology                                  *
+ *  Yale University                                                        *
+ *                                                                         *
+ *  Permission is hereby granted, free of charge, to any person obtaining  *
+ *  a copy of this software and associated documentation files (the        *
+ *  "Software"), to deal in the Software without restriction, including    *
+ *  without limitation the rights to use, copy, modify, merge, publish,    *
+ *  distribute, sublicense, and/or sell copies of the Software, and to     *
+ *  permit persons to whom the Software is furnished to do so, subject to  *
+ *  the following conditions:                                              *
+ *                                                                         *
+ *  The above copyright notice and this permission notice shall be         *
+ *  included in all copies or substantial portions of the Software.        *
+ *                                                                         *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,        *
+ *  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF     *
+ *  MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. *
+ *  IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR      *
+ *  OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,  *
+ *  ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR  *
+ *  OTHER DEALINGS IN THE SOFTWARE.                                        *
+ ***************************************************************************/
+package org.voltdb;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
+
+/**
+ * Row-at-a-time writer for {@link VoltTable}s that avoids the boxing and
+ * per-value type dispatch of {@link VoltTable#addRow(Object...)}.
+ * Values are written column by column with the typed put methods and each
+ * row is closed with {@link #endRow()}. The serialized table is written directly
+ * into a buffer acquired from a {@link DBBPool} (or a heap buffer if no pool is given)
+ * that is pre-sized from the expected number of rows.
+ * <p>
+ * Example:
+ * <code>
+ * VoltTableBuilder b = new VoltTableBuilder(columns, 1000, pool);<br/>
+ * b.putLong(1).putString("abc").putTimestamp(now).endRow();<br/>
+ * VoltTable vt = b.build();<br/>
+ * ...<br/>
+ * b.discard();
+ * </code>
+ * <p>
+ * The VoltTable returned by {@link #build()} is a read-only view on the builder's
+ * buffer. It is only valid until the next call to {@link #reset()} or {@link #discard()}.
+ */
+public final class VoltTableBuilder {
+
+    /**
+     * How many bytes we will guess each variable-length column will need
+     * when sizing the initial buffer.
+     */
+    public static final int DEFAULT_STRING_ESTIMATE = 32;
+
+    /**
+     * The largest buffer that we will ever allocate for a single table.
+     * This keeps the power-of-two rounding and doubling from overflowing an int.
+     */
+    public static final int MAX_BUFFER_SIZE = 1 << 30;
+
+    private static final int ROW_HEADER_SIZE = 4;
+    private static final int ROW_COUNT_SIZE = 4;
+
+    private final DBBPool pool;
+    private final VoltType types[];
+    private final int headerSize;
+
+    private BBContainer container;
+    private ByteBuffer buffer;
+
+    /** Position of the row length prefix for the row currently being written */
+    private int rowPosition = -1;
+    /** The next column to be written in the current row */
+    private int column = 0;
+    private int rowCount = 0;
+
+    // ----------------------------------------------------------------------------
+    // CONSTRUCTORS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param columns The schema of the table to build
+     * @param expectedRows The number of rows that we expect to add to the table. Used to size the buffer.
+     * @param pool Where to acquire the backing buffer from. If null, then a heap buffer is used.
+     */
+    public VoltTableBuilder(VoltTable.ColumnInfo columns[], int expectedRows, DBBPool pool) {
+        this(columns, expectedRows, estimateRowSize(columns), pool);
+    }
+
+    /**
+     * Constructor
+     * @param columns The schema of the table to build
+     * @param expectedRows The number of rows that we expect to add to the table. Used to size the buffer.
+     * @param rowSizeHint The expected serialized size of a single row (without its length prefix)
+     * @param pool Where to acquire the backing buffer from. If null, then a heap buffer is used.
+     */
+    public VoltTableBuilder(VoltTable.ColumnInfo columns[], int expectedRows, int rowSizeHint, DBBPool pool) {
+        this.pool = pool;
+        this.types = new VoltType[columns.length];
+        for (int i = 0; i < this.types.length; i++) {
+            this.types[i] = columns[i].type;
+        } // FOR
+
+        // Let VoltTable figure out the header for us so that we don't have
+        // to duplicate the logic for the schema layout
+        ByteBuffer header = new VoltTable(columns).getTableDataReference();
+        this.headerSize = header.getInt(0) + 4;
+        header.limit(this.headerSize);
+
+        long capacity = this.headerSize + ROW_COUNT_SIZE +
+                        (long)Math.max(1, expectedRows) * (rowSizeHint + ROW_HEADER_SIZE);
+        this.container = this.allocate((int)Math.min(capacity, VoltTable.MAX_SERIALIZED_TABLE_LENGTH));
+        this.buffer = this.container.b;
+        this.buffer.clear();
+        this.buffer.put(header);
+        this.buffer.putInt(0);
+    }
+
+    /**
+     * Create a builder with the same schema as the given table
+     * @param schema
+     * @param expectedRows
+     * @param pool
+     */
+    public VoltTableBuilder(VoltTable schema, int expectedRows, DBBPool pool) {
+        this(getColumns(schema), expectedRows, pool);
+    }
+
+    private static VoltTable.ColumnInfo[] getColumns(VoltTable vt) {
+        VoltTable.ColumnInfo cols[] = new VoltTable.ColumnInfo[vt.getColumnCount()];
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = new VoltTable.ColumnInfo(vt.getColumnName(i), vt.getColumnType(i));
+        } // FOR
+        return (cols);
+    }
+
+    /**
+     * Guess the serialized size of a row with the given schema
+     * @param columns
+     * @return
+     */
+    public static int estimateRowSize(VoltTable.ColumnInfo columns[]) {
+        int size = 0;
+        for (VoltTable.ColumnInfo col : columns) {
+            if (col.type == VoltType.STRING) {
+                size += 4 + DEFAULT_STRING_ESTIMATE;
+            } else {
+                size += col.type.getLengthInBytesForFixedTypes();
+            }
+        } // FOR
+        return (size);
+    }
+
+    // ----------------------------------------------------------------------------
+    // BUFFER MANAGEMENT
+    // ----------------------------------------------------------------------------
+
+    private BBContainer allocate(int size) {
+        if (this.pool == null) {
+            return (DBBPool.wrapBB(ByteBuffer.allocate(size)));
+        } else if (size > DBBPool.MAX_ALLOCATION_SIZE) {
+            // Round up to a power of two so that DBBPool.allocateDirect
+            // has a chance of handing us back a recycled buffer
+            return (DBBPool.allocateDirect(Integer.highestOneBit(size - 1) << 1));
+        }
+        return (this.pool.acquire(size));
+    }
+
+    /**
+     * Compute the size of the next buffer when growing from the given capacity.
+     * We double the buffer each time, but never go past MAX_BUFFER_SIZE.
+     * @param capacity The capacity of the current buffer
+     * @param needed The number of bytes that the next buffer must hold
+     * @return
+     */
+    static int growSize(int capacity, long needed) {
+        if (needed > MAX_BUFFER_SIZE) {
+            throw new VoltOverflowException("VoltTableBuilder needs " + needed + " bytes, which is larger " +
+                                            "than the max table size of " + MAX_BUFFER_SIZE + " bytes");
+        }
+        return ((int)Math.min(Math.max(needed, capacity * 2l), MAX_BUFFER_SIZE));
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (this.buffer.remaining() >= bytes) return;
+
+        int size = growSize(this.buffer.capacity(), (long)this.buffer.position() + bytes);
+        BBContainer next = this.allocate(size);
+        ByteBuffer src = this.buffer.duplicate();
+        src.flip();
+        next.b.clear();
+        next.b.put(src);
+        this.container.discard();
+        this.container = next;
+        this.buffer = next.b;
+    }
+
+    // ----------------------------------------------------------------------------
+    // COLUMN WRITERS
+    // ----------------------------------------------------------------------------
+
+    private VoltType nextColumn() {
+        if (this.column >= this.types.length) {
+            throw new IllegalStateException("Row already has all " + this.types.length + " columns");
+        }
+        if (this.column == 0) {
+            this.ensureCapacity(ROW_HEADER_SIZE);
+            this.rowPosition = this.buffer.position();
+            this.buffer.position(this.rowPosition + ROW_HEADER_SIZE);
+        }
+        return (this.types[this.column++]);
+    }
+
+    private VoltTypeException typeMismatch(VoltType columnType, String inputType) {
+        this.abortRow();
+        return new VoltTypeException(String.format("Value for column %d is type %s when type %s was expected",
+                                                   this.column - 1, inputType, columnType));
+    }
+
+    /**
+     * Write a null value for the next column in the current row
+     */
+    public VoltTableBuilder putNull() {
+        VoltType type = this.nextColumn();
+        switch (type) {
+            case BOOLEAN:
+            case TINYINT:
+                this.ensureCapacity(1);
+                this.buffer.put(VoltType.NULL_TINYINT);
+                break;
+            case SMALLINT:
+                this.ensureCapacity(2);
+                this.buffer.putShort(VoltType.NULL_SMALLINT);
+                break;
+            case INTEGER:
+                this.ensureCapacity(4);
+                this.buffer.putInt(VoltType.NULL_INTEGER);
+                break;
+            case TIMESTAMP:
+            case BIGINT:
+                this.ensureCapacity(8);
+                this.buffer.putLong(VoltType.NULL_BIGINT);
+                break;
+            case FLOAT:
+                this.ensureCapacity(8);
+                this.buffer.putDouble(VoltType.NULL_FLOAT);
+                break;
+            case STRING:
+                this.ensureCapacity(4);
+                this.buffer.putInt(VoltTable.NULL_STRING_INDICATOR);
+                break;
+            case DECIMAL:
+                this.ensureCapacity(16);
+                VoltDecimalHelper.serializeNull(this.buffer);
+                break;
+            default:
+                this.abortRow();
+                throw new VoltTypeException("Unsupported type: " + type);
+        } // SWITCH
+        return (this);
+    }
+
+    /**
+     * Write an integer value for the next column in the current row.
+     * The column may be any of the integer types or a TIMESTAMP.
+     */
+    public VoltTableBuilder putLong(long value) {
+        VoltType type = this.nextColumn();
+        switch (type) {
+            case TINYINT:
+                if (value <= Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+                    throw this.overflow(value, type);
+                this.ensureCapacity(1);
+                this.buffer.put((byte)value);
+                break;
+            case SMALLINT:
+                if (value <= Short.MIN_VALUE || value > Short.MAX_VALUE)
+                    throw this.overflow(value, type);
+                this.ensureCapacity(2);
+                this.buffer.putShort((short)value);
+                break;
+            case INTEGER:
+                if (value <= Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                    throw this.overflow(value, type);
+                this.ensureCapacity(4);
+                this.buffer.putInt((int)value);
+                break;
+            case BIGINT:
+                if (value == VoltType.NULL_BIGINT)
+                    throw this.overflow(value, type);
+                // FALL THROUGH
+            case TIMESTAMP:
+                this.ensureCapacity(8);
+                this.buffer.putLong(value);
+                break;
+            default:
+                throw this.typeMismatch(type, "long");
+        } // SWITCH
+        return (this);
+    }
+
+    private VoltTypeException overflow(long value, VoltType type) {
+        this.abortRow();
+        return new VoltTypeException("Cast of " + value + " to " + type + " would overflow");
+    }
+
+    /**
+     * Write a FLOAT value for the next column in the current row
+     */
+    public VoltTableBuilder putDouble(double value) {
+        VoltType type = this.nextColumn();
+        if (type != VoltType.FLOAT) throw this.typeMismatch(type, "double");
+        this.ensureCapacity(8);
+        this.buffer.putDouble(value);
+        return (this);
+    }
+
+    /**
+     * Write a STRING value for the next column in the current row.
+     * A null value will be written as a NULL string.
+     */
+    public VoltTableBuilder putString(String value) {
+        if (value == null) return (this.putNull());
+        byte bytes[] = null;
+        try {
+            bytes = value.getBytes(VoltTable.ROWDATA_ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+        return (this.putString(bytes));
+    }
+
+    /**
+     * Write an already UTF-8 encoded STRING value for the next column in the current row
+     */
+    public VoltTableBuilder putString(byte value[]) {
+        if (value == null) return (this.putNull());
+        VoltType type = this.nextColumn();
+        if (type != VoltType.STRING) throw this.typeMismatch(type, "String");
+        if (value.length > VoltType.MAX_VALUE_LENGTH) {
+            this.abortRow();
+            throw new VoltOverflowException("Value in VoltTableBuilder.putString(...) larger than allowed max " +
+                                            VoltType.MAX_VALUE_LENGTH_STR);
+        }
+        this.ensureCapacity(4 + value.length);
+        this.buffer.putInt(value.length);
+        this.buffer.put(value);
+        return (this);
+    }
+
+    /**
+     * Write a TIMESTAMP value for the next column in the current row.
+     * A null value will be written as a NULL timestamp.
+     */
+    public VoltTableBuilder putTimestamp(TimestampType value) {
+        if (value == null) return (this.putNull());
+        return (this.putTimestamp(value.getTime()));
+    }
+
+    /**
+     * Write a TIMESTAMP value (in microseconds since the epoch) for the next
+     * column in the current row
+     */
+    public VoltTableBuilder putTimestamp(long value) {
+        VoltType type = this.nextColumn();
+        if (type != VoltType.TIMESTAMP) throw this.typeMismatch(type, "TimestampType");
+        this.ensureCapacity(8);
+        this.buffer.putLong(value);
+        return (this);
+    }
+
+    /**
+     * Write a DECIMAL value for the next column in the current row.
+     * A null value will be written as a NULL decimal.
+     */
+    public VoltTableBuilder putDecimal(BigDecimal value) {
+        if (value == null) return (this.putNull());
+        VoltType type = this.nextColumn();
+        if (type != VoltType.DECIMAL) throw this.typeMismatch(type, "BigDecimal");
+        this.ensureCapacity(16);
+        try {
+            VoltDecimalHelper.serializeBigDecimal(value, this.buffer);
+        } catch (RuntimeException ex) {
+            this.abortRow();
+            throw ex;
+        }
+        return (this);
+    }
+
+    // ----------------------------------------------------------------------------
+    // ROW MANAGEMENT
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Finish the current row. All of the columns must have been written.
+     */
+    public VoltTableBuilder endRow() {
+        if (this.column != this.types.length) {
+            int written = this.column;
+            this.abortRow();
+            throw new IllegalStateException(String.format("Only %d out of %d columns were written for row #%d",
+                                                          written, this.types.length, this.rowCount));
+        }
+        int rowSize = this.buffer.position() - this.rowPosition - ROW_HEADER_SIZE;
+        if (rowSize > VoltTableRow.MAX_TUPLE_LENGTH) {
+            this.abortRow();
+            throw new VoltOverflowException("Table row total length larger than allowed max " +
+                                            VoltTableRow.MAX_TUPLE_LENGTH_STR);
+        }
+        this.buffer.putInt(this.rowPosition, rowSize);
+        this.buffer.putInt(this.headerSize, ++this.rowCount);
+        this.column = 0;
+        this.rowPosition = -1;
+        return (this);
+    }
+
+    /**
+     * Throw away any columns that have been written for the current row
+     */
+    public void abortRow() {
+        if (this.rowPosition >= 0) {
+            this.buffer.position(this.rowPosition);
+        }
+        this.column = 0;
+        this.rowPosition = -1;
+    }
+
+    /**
+     * Copy the current row of the given VoltTable into this table without
+     * deserializing any of its values. The row must have the same schema
+     * as this builder.
+     * @param row
+     */
+    public VoltTableBuilder addRow(VoltTableRow row) {
+        if (this.column != 0) {
+            throw new IllegalStateException("Cannot copy a row while another row is being written");
+        }
+        assert(row.getColumnCount() == this.types.length);
+        final int start = row.m_position - ROW_HEADER_SIZE;
+        final int length = row.m_buffer.getInt(start) + ROW_HEADER_SIZE;
+        this.ensureCapacity(length);
+
+        ByteBuffer src = row.m_buffer.duplicate();
+        src.limit(start + length);
+        src.position(start);
+        this.buffer.put(src);
+        this.buffer.putInt(this.headerSize, ++this.rowCount);
+        return (this);
+    }
+
+    // ----------------------------------------------------------------------------
+    // OUTPUT
+    // ----------------------------------------------------------------------------
+
+    public int getRowCount() {
+        return (this.rowCount);
+    }
+
+    public int getColumnCount() {
+        return (this.types.length);
+    }
+
+    /**
+     * Return the number of bytes that have been written into the table so far.
+     */
+    public int getSerializedSize() {
+        return (this.rowPosition >= 0 ? this.rowPosition : this.buffer.position());
+    }
+
+    /**
+     * Return a read-only VoltTable for the rows that have been added so far.
+     * The table shares the builder's buffer, so it should not be used after
+     * the builder is reset or discarded. Any partially written row is not included.
+     */
+    public VoltTable build() {
+        if (this.column != 0) {
+            throw new IllegalStateException("Cannot build table while row #" + this.rowCount + " is incomplete");
+        }
+        ByteBuffer dup = this.buffer.duplicate();
+        dup.limit(this.buffer.position());
+        dup.position(0);
+        return new VoltTable(dup, true);
+    }
+
+    /**
+     * Remove all of the rows from this builder but keep the same buffer
+     * so that it can be filled again.
+     */
+    public void reset() {
+        this.abortRow();
+        this.buffer.position(this.headerSize);
+        this.buffer.putInt(0);
+        this.rowCount = 0;
+    }
+
+    /**
+     * Return the builder's buffer back to its pool. The builder and any
+     * tables that it has built cannot be used after this is called.
+     */
+    public void discard() {
+        if (this.container != null) {
+            this.container.discard();
+            this.container = null;
+            this.buffer = null;
+        }
+    }
+}
@@ -171,18 +171,7 @@ final class ClientImpl implements Client {
         final StoredProcedureInvocation invocation =
               new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (m_catalog != null && procName.startsWith("@") == false) {
-            try {
-                Integer partition = m_pEstimator.getBasePartition(invocation);
-                if (partition != null) {
-                    site_id = m_partitionSiteXref[partition.intValue()];
-                    invocation.setBasePartition(partition.intValue());
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-            }
-        }
+        Integer site_id = this.getSiteId(invocation, procName, parameters);
         
         long start = ProfileMeasurement.getTime();
         m_distributer.queue(
@@ -205,6 +194,36 @@ final class ClientImpl implements Client {
         return cb.getResponse();
     }
 
+    /**
+     * Figure out what site the given invocation should be sent to. Returns null if
+     * we don't know, in which case the Distributer will pick one for us.
+     * @param invocation
+     * @param procName
+     * @param parameters
+     * @return
+     */
+    private Integer getSiteId(StoredProcedureInvocation invocation, String procName, Object parameters[]) {
+        Integer site_id = null;
+        if (m_catalog != null && procName.startsWith("@") == false) {
+            try {
+                Integer partition = m_pEstimator.getBasePartition(invocation);
+                if (partition != null) {
+                    site_id = m_partitionSiteXref[partition.intValue()];
+                    invocation.setBasePartition(partition.intValue());
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
+            }
+        }
+        // Bulk loading requests always tell us what partition they need to go to
+        else if (m_catalog != null && procName.equalsIgnoreCase("@LoadPartitionTable")) {
+            int partition = ((Number)parameters[0]).intValue();
+            site_id = m_partitionSiteXref[partition];
+            invocation.setBasePartition(partition);
+        }
+        return (site_id);
+    }
+
     /**
      * Asynchronously invoke a procedure call.
      * @param callback TransactionCallback that will be invoked with procedure results.
@@ -255,18 +274,7 @@ final class ClientImpl implements Client {
         StoredProcedureInvocation invocation =
             new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (m_catalog != null && procName.startsWith("@") == false) {
-            try {
-                Integer partition = m_pEstimator.getBasePartition(invocation);
-                if (partition != null) {
-                    site_id = m_partitionSiteXref[partition.intValue()];
-                    invocation.setBasePartition(partition.intValue());
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-            }
-        }
+        Integer site_id = this.getSiteId(invocation, procName, parameters);
         
         if (m_blockingQueue) {
             long start = ProfileMeasurement.getTime();
@@ -0,0 +1,144 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of ad hoc plans keyed by their parameterized SQL
+ * All of the cached plans were planned against the same catalog version
+ * @see ParameterizedSQL
+ */
+public class AdHocPlanCache {
+
+    private final int m_capacity;
+    private final LinkedHashMap<String, PlannerTool.Result> m_plans;
+    /** Parameterized SQL that could not be planned, so it is not worth planning again */
+    private final LinkedHashMap<String, Boolean> m_unbindable;
+    private long m_hits = 0;
+    private long m_misses = 0;
+
+    /** The version of the catalog that the cached plans were planned against */
+    private int m_catalogVersion = 0;
+
+    public AdHocPlanCache(final int capacity) {
+        m_capacity = capacity;
+        m_plans = new LinkedHashMap<String, PlannerTool.Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PlannerTool.Result> eldest) {
+                return (this.size() > m_capacity);
+            }
+        };
+        m_unbindable = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return (this.size() > m_capacity);
+            }
+        };
+    }
+
+    /**
+     * Return the cached plan for the given SQL or null if we don't have one
+     * @param sql
+     * @return
+     */
+    public synchronized PlannerTool.Result get(String sql) {
+        PlannerTool.Result result = m_plans.get(sql);
+        if (result != null) m_hits++;
+        else m_misses++;
+        return (result);
+    }
+
+    /**
+     * Store the plan for the given SQL. Plans with errors are never cached.
+     * The plan is ignored if it was planned against a different catalog version
+     * than the one that the cache is at, since the catalog could have changed
+     * while it was being planned.
+     * @param sql
+     * @param result
+     * @param catalogVersion the catalog version that the plan was planned against
+     */
+    public synchronized void put(String sql, PlannerTool.Result result, int catalogVersion) {
+        if (m_capacity <= 0 || result.errors != null) return;
+        if (catalogVersion != m_catalogVersion) return;
+        m_plans.put(sql, result);
+    }
+
+    /**
+     * Return true if we have a plan for the given SQL. Unlike get(), this
+     * does not count as a hit or a miss.
+     * @param sql
+     * @return
+     */
+    public synchronized boolean contains(String sql) {
+        return (m_plans.containsKey(sql));
+    }
+
+    /**
+     * Remember that the given parameterized SQL could not be planned so that
+     * we fall back to planning the original SQL right away the next time.
+     * Like put(), this is ignored if it was planned against a different
+     * catalog version.
+     * @param sql
+     * @param catalogVersion the catalog version that the SQL was planned against
+     */
+    public synchronized void putUnbindable(String sql, int catalogVersion) {
+        if (m_capacity <= 0 || catalogVersion != m_catalogVersion) return;
+        m_unbindable.put(sql, Boolean.TRUE);
+    }
+
+    /**
+     * Returns true if putUnbindable() was called for the given parameterized SQL
+     * since the last time that the catalog changed.
+     * @param sql
+     * @return
+     */
+    public synchronized boolean isUnbindable(String sql) {
+        return (m_unbindable.get(sql) != null);
+    }
+
+    /**
+     * Remove all of the cached plans. This must be called whenever the catalog changes.
+     * @param catalogVersion the new catalog version. Only plans for this version
+     *        will be cached from now on.
+     */
+    public synchronized void clear(int catalogVersion) {
+        m_catalogVersion = catalogVersion;
+        m_plans.clear();
+        m_unbindable.clear();
+    }
+
+    public synchronized int getCatalogVersion() {
+        return (m_catalogVersion);
+    }
+
+    public synchronized int size() {
+        return (m_plans.size());
+    }
+
+    public synchronized long getHitCount() {
+        return (m_hits);
+    }
+
+    public synchronized long getMissCount() {
+        return (m_misses);
+    }
+}
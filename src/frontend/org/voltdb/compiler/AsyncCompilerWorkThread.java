@@ -19,6 +19,8 @@ package org.voltdb.compiler;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -33,6 +35,7 @@ import org.voltdb.utils.DumpManager;
 import org.voltdb.utils.Encoder;
 
 import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.dtxn.LocalTransaction;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.logging.LoggerUtil;
@@ -49,7 +52,10 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     LinkedBlockingQueue<AsyncCompilerWork> m_work = new LinkedBlockingQueue<AsyncCompilerWork>();
     final ArrayDeque<AsyncCompilerResult> m_finished = new ArrayDeque<AsyncCompilerResult>();
     //HSQLInterface m_hsql;
-    PlannerTool m_ptool;
+    PlannerToolPool m_ptools;
+    final AdHocPlanCache m_planCache;
+    final int m_plannerPoolSize;
+    ExecutorService m_plannerThreads;
     int counter = 0;
     final int m_siteId;
     boolean m_isLoaded = false;
@@ -64,11 +70,15 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     long m_currentDumpTimestamp = 0;
 
     public AsyncCompilerWorkThread(CatalogContext context, int siteId) {
-        m_ptool = null;
+        m_ptools = null;
         //m_hsql = null;
         m_siteId = siteId;
         m_context = context;
 
+        HStoreConf hstore_conf = HStoreConf.singleton(true);
+        m_planCache = new AdHocPlanCache(hstore_conf.site.exec_adhoc_plancache_size);
+        m_plannerPoolSize = Math.max(1, hstore_conf.site.exec_adhoc_planner_pool_size);
+
         setName("Ad Hoc Planner");
 
         m_dumpId = "AdHocPlannerThread." + String.valueOf(m_siteId);
@@ -76,12 +86,16 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     }
     
     public AsyncCompilerWorkThread(HStoreSite hStoreSite, int siteId) {
-        m_ptool = null;
+        m_ptools = null;
         //m_hsql = null;
         m_siteId = siteId;
         //m_context = context;
         m_hStoreSite = hStoreSite;
 
+        HStoreConf hstore_conf = hStoreSite.getHStoreConf();
+        m_planCache = new AdHocPlanCache(hstore_conf.site.exec_adhoc_plancache_size);
+        m_plannerPoolSize = Math.max(1, hstore_conf.site.exec_adhoc_planner_pool_size);
+
         setName("Ad Hoc Planner");
 
         m_dumpId = "AdHocPlannerThread." + String.valueOf(m_siteId);
@@ -89,27 +103,25 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
     }
 
     public synchronized void ensureLoadedPlanner() {
-        // if the process was created but is dead, clear the placeholder
-        if ((m_ptool != null) && (m_ptool.expensiveIsRunningCheck() == false)) {
-            LOG.error("Planner process died on its own. It will be restarted if needed.");
-            m_ptool = null;
-        }
-        // if no placeholder, create a new plannertool
-        if (m_ptool == null) {
-            m_ptool = PlannerTool.createPlannerToolProcess(m_hStoreSite.getCatalog().serialize());
+        // if no pool, create a new one. The planner processes themselves
+        // are started (and restarted if they die) by the pool as needed
+        if (m_ptools == null) {
+            m_ptools = new PlannerToolPool(m_hStoreSite.getCatalog().serialize(), m_plannerPoolSize);
+            m_plannerThreads = Executors.newFixedThreadPool(m_plannerPoolSize);
         }
     }
 
     public void verifyEverthingIsKosher() {
-        if (m_ptool != null) {
-            // check if the planner process has been blocked for 2 seconds
-            if (m_ptool.perhapsIsHung(5000)) {
-                LOG.error("Was forced to kill the planner process due to a timeout. It will be restarted if needed.");
-                m_ptool.kill();
-            }
+        if (m_ptools != null) {
+            // check if any planner process has been blocked for 5 seconds
+            m_ptools.killHungPlanners(5000);
         }
     }
 
+    public AdHocPlanCache getPlanCache() {
+        return (m_planCache);
+    }
+
 
     @Override
     public void prepareShutdown(boolean error) {
@@ -203,23 +215,29 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
                 if (m_shouldUpdateCatalog.compareAndSet(true, false)) {
                 	//TODO: @AdHoc for hstoresite, how to switch catalogcontext for hstoresite?
                     m_context = VoltDB.instance().getCatalogContext();
-                    // kill the planner process which has an outdated catalog
-                    // it will get created again for the next stmt
-                    if (m_ptool != null) {
-                        m_ptool.kill();
-                        m_ptool = null;
+                    // none of the cached plans are valid anymore and all of
+                    // the planner processes have an outdated catalog. The planner
+                    // threads may still be finishing plans for the old catalog, so the
+                    // cache will only take plans from the new generation of planners
+                    if (m_ptools != null) {
+                        m_ptools.updateCatalog(m_hStoreSite.getCatalog().serialize());
+                        m_planCache.clear(m_ptools.getGeneration());
+                    } else {
+                        m_planCache.clear(m_planCache.getCatalogVersion());
                     }
                 }
 
+                // ad hoc plans that aren't in the cache are finished by the planner threads
                 AsyncCompilerResult result = null;
                 if (work instanceof AdHocPlannerWork)
                     result = compileAdHocPlan((AdHocPlannerWork) work);
                 if (work instanceof CatalogChangeWork)
                     result = prepareApplicationCatalogDiff((CatalogChangeWork) work);
-                assert(result != null);
 
-                synchronized (m_finished) {
-                    m_finished.add(result);
+                if (result != null) {
+                    synchronized (m_finished) {
+                        m_finished.add(result);
+                    }
                 }
             }
 
@@ -229,8 +247,10 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
                 e.printStackTrace();
             }
         }
-        if (m_ptool != null)
-            m_ptool.kill();
+        if (m_plannerThreads != null)
+            m_plannerThreads.shutdownNow();
+        if (m_ptools != null)
+            m_ptools.shutdown();
     }
 
     public void notifyShouldUpdateCatalog() {
@@ -277,32 +297,111 @@ public class AsyncCompilerWorkThread extends Thread implements DumpManager.Dumpa
         return context;
     }
 
-    private AsyncCompilerResult compileAdHocPlan(AdHocPlannerWork work) {
+    /**
+     * Plan an ad hoc statement. If we have already planned a statement that only
+     * differs by its literals, then we bind the cached plan to this statement's
+     * literals and return it right away. Otherwise the statement is handed off
+     * to one of the planner threads and this returns null.
+     */
+    private AsyncCompilerResult compileAdHocPlan(final AdHocPlannerWork work) {
+        final ParameterizedSQL psql = ParameterizedSQL.parse(work.sql);
+        if (psql != null) {
+            PlannerTool.Result cached = m_planCache.get(psql.getSQL());
+            if (cached != null) {
+                PlannerTool.Result result = psql.bind(cached);
+                if (result != null) {
+                    if (trace.get()) LOG.trace("Using cached plan for " + psql.getSQL());
+                    return (this.makePlannedStmt(work, result));
+                }
+            }
+        }
+
+        try {
+            ensureLoadedPlanner();
+        } catch (Exception e) {
+            return (this.makePlannedStmt(work, e));
+        }
+        m_plannerThreads.execute(new Runnable() {
+            @Override
+            public void run() {
+                AsyncCompilerResult result = null;
+                try {
+                    result = makePlannedStmt(work, planAdHocSQL(work.sql, psql));
+                } catch (Exception e) {
+                    result = makePlannedStmt(work, e);
+                }
+                synchronized (m_finished) {
+                    m_finished.add(result);
+                }
+            }
+        });
+        return (null);
+    }
+
+    /**
+     * Plan the parameterized version of the SQL so that it can be cached and
+     * then bind it to the literals. If that doesn't work, then we fall back
+     * to planning the original SQL. We never plan the parameterized SQL more
+     * than once per catalog: if it is already cached then it could not be bound
+     * to this statement's literals, and if it failed to plan before then it is
+     * marked as unbindable in the cache.
+     */
+    private PlannerTool.Result planAdHocSQL(String sql, ParameterizedSQL psql) throws InterruptedException {
+        PlannerTool ptool = m_ptools.checkout();
+        // The catalog that this planner was started with
+        int catalogVersion = m_ptools.getGeneration(ptool);
+        try {
+            if (psql != null && psql.getLiterals().isEmpty() == false &&
+                m_planCache.isUnbindable(psql.getSQL()) == false &&
+                m_planCache.contains(psql.getSQL()) == false) {
+                PlannerTool.Result result = ptool.planSql(psql.getSQL());
+                if (result.errors == null) {
+                    // The plan is still good for other literals even if it can't
+                    // be bound to these ones, and having it in the cache means
+                    // that we won't plan the parameterized SQL again
+                    m_planCache.put(psql.getSQL(), result, catalogVersion);
+                    PlannerTool.Result bound = psql.bind(result);
+                    if (bound != null) return (bound);
+                } else {
+                    m_planCache.putUnbindable(psql.getSQL(), catalogVersion);
+                }
+                if (debug.get()) LOG.debug("Unable to use parameterized plan for " + sql);
+            }
+            PlannerTool.Result result = ptool.planSql(sql);
+            if (psql != null && psql.getLiterals().isEmpty()) {
+                m_planCache.put(psql.getSQL(), result, catalogVersion);
+            }
+            return (result);
+        } finally {
+            m_ptools.checkin(ptool);
+        }
+    }
+
+    private AdHocPlannedStmt makePlannedStmt(AdHocPlannerWork work, PlannerTool.Result result) {
         AdHocPlannedStmt plannedStmt = new AdHocPlannedStmt(work.ts);
         plannedStmt.clientHandle = work.clientHandle;
 //        plannedStmt.connectionId = work.connectionId;
 //        plannedStmt.hostname = work.hostname;
 //        plannedStmt.clientData = work.clientData;
 
-        try {
-            ensureLoadedPlanner();
-
-            PlannerTool.Result result = m_ptool.planSql(work.sql);
+        plannedStmt.aggregatorFragment = result.onePlan;
+        plannedStmt.collectorFragment = result.allPlan;
+        plannedStmt.isReplicatedTableDML = result.replicatedDML;
+        plannedStmt.sql = work.sql;
+        plannedStmt.errorMsg = result.errors;
+        if (plannedStmt.errorMsg != null)
+            LOG.error("PlannerTool Error: " + result.errors);
+        return plannedStmt;
+    }
 
-            plannedStmt.aggregatorFragment = result.onePlan;
-            plannedStmt.collectorFragment = result.allPlan;
-            plannedStmt.isReplicatedTableDML = result.replicatedDML;
-            plannedStmt.sql = work.sql;
-            plannedStmt.errorMsg = result.errors;
-            if (plannedStmt.errorMsg != null)
-                LOG.error("PlannerTool Error: " + result.errors);
-        }
-        catch (Exception e) {
-            String msg = "Unexpected Ad Hoc Planning Error";
-            LOG.warn(msg, e);
-            plannedStmt.errorMsg = msg + ": " + e.getMessage();
-        }
+    private AdHocPlannedStmt makePlannedStmt(AdHocPlannerWork work, Exception e) {
+        AdHocPlannedStmt plannedStmt = new AdHocPlannedStmt(work.ts);
+        plannedStmt.clientHandle = work.clientHandle;
+        plannedStmt.sql = work.sql;
 
+        String msg = "Unexpected Ad Hoc Planning Error";
+        LOG.warn(msg, e);
+        plannedStmt.errorMsg = msg + ": " + e.getMessage();
         return plannedStmt;
     }
 
@@ -20,12 +20,22 @@ package org.voltdb.compiler;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+
+import edu.brown.statistics.ColumnStatistics;
+import edu.brown.statistics.TableStatistics;
+import edu.brown.statistics.WorkloadStatistics;
+
 public class DatabaseEstimates {
 
     public static class TableEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+        /** ColumnName -> Number of distinct values in that column (if known) */
+        public HashMap<String, Long> distinctValues = new HashMap<String, Long>();
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
@@ -36,4 +46,29 @@ public class DatabaseEstimates {
 
         return tables.get(tableName);
     }
+
+    /**
+     * Replace the default estimates for each table with the cardinalities and
+     * the number of distinct column values that were collected from a workload.
+     * Tables without any tuples in the statistics keep their default estimates.
+     * @param db
+     * @param stats
+     */
+    public void addStatistics(Database db, WorkloadStatistics stats) {
+        for (Table catalog_tbl : db.getTables()) {
+            TableStatistics table_stats = stats.getTableStatistics(catalog_tbl);
+            if (table_stats == null || table_stats.tuple_count_total == null || table_stats.tuple_count_total <= 0)
+                continue;
+
+            TableEstimates tableEst = this.getEstimatesForTable(catalog_tbl.getTypeName());
+            tableEst.maxTuples = table_stats.tuple_count_total;
+            tableEst.minTuples = table_stats.tuple_count_total;
+            for (Column catalog_col : catalog_tbl.getColumns()) {
+                ColumnStatistics col_stats = table_stats.getColumnStatistics(catalog_col);
+                if (col_stats == null || col_stats.histogram.isEmpty())
+                    continue;
+                tableEst.distinctValues.put(catalog_col.getTypeName(), (long)col_stats.histogram.getValueCount());
+            } // FOR
+        } // FOR
+    }
 }
@@ -0,0 +1,332 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.voltdb.VoltType;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ConstantValueExpression;
+import org.voltdb.expressions.ParameterValueExpression;
+import org.voltdb.types.ExpressionType;
+
+/**
+ * An ad hoc SQL statement with its literals pulled out and replaced with '?'.
+ * Statements that only differ by their literals share the same parameterized
+ * SQL, so it can be used as the key for caching plans. The plans for the
+ * parameterized SQL can then be bound to the literals of each statement.
+ */
+public class ParameterizedSQL {
+
+    /** Keywords after which we never replace numeric literals */
+    private static final String ORDINAL_KEYWORDS[] = { "BY", "LIMIT", "OFFSET", "TOP" };
+
+    private final String m_sql;
+    private final List<String> m_literals;
+    private final List<Boolean> m_isString;
+
+    private ParameterizedSQL(String sql, List<String> literals, List<Boolean> isString) {
+        m_sql = sql;
+        m_literals = Collections.unmodifiableList(literals);
+        m_isString = Collections.unmodifiableList(isString);
+    }
+
+    /**
+     * @return the SQL with all of the extracted literals replaced with '?'
+     */
+    public String getSQL() {
+        return (m_sql);
+    }
+
+    /**
+     * @return the extracted literals in the order that they appeared in the SQL.
+     * String literals are unquoted.
+     */
+    public List<String> getLiterals() {
+        return (m_literals);
+    }
+
+    /**
+     * Pull the string and numeric literals out of the given SQL. Numbers that
+     * follow ORDER BY, GROUP BY, LIMIT, OFFSET, and TOP are left alone because
+     * they are column ordinals or row counts rather than values.
+     * Returns null if the SQL already has parameters or is not well formed.
+     * @param sql
+     * @return
+     */
+    public static ParameterizedSQL parse(String sql) {
+        if (sql == null) return (null);
+        sql = sql.trim();
+
+        StringBuilder sb = new StringBuilder();
+        List<String> literals = new ArrayList<String>();
+        List<Boolean> isString = new ArrayList<Boolean>();
+        String lastWord = null;
+        boolean inOrdinalList = false;
+
+        final int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+
+            // String literal
+            if (c == '\'') {
+                StringBuilder literal = new StringBuilder();
+                int j = i + 1;
+                boolean closed = false;
+                while (j < len) {
+                    char d = sql.charAt(j);
+                    if (d == '\'') {
+                        if (j + 1 < len && sql.charAt(j + 1) == '\'') {
+                            literal.append('\'');
+                            j += 2;
+                            continue;
+                        }
+                        closed = true;
+                        break;
+                    }
+                    literal.append(d);
+                    j++;
+                } // WHILE
+                if (closed == false) return (null);
+                literals.add(literal.toString());
+                isString.add(true);
+                sb.append('?');
+                i = j + 1;
+                lastWord = null;
+                continue;
+            }
+            // Quoted identifier
+            else if (c == '"') {
+                int j = sql.indexOf('"', i + 1);
+                if (j < 0) return (null);
+                sb.append(sql, i, j + 1);
+                i = j + 1;
+                lastWord = null;
+                continue;
+            }
+            // Existing parameter
+            else if (c == '?') {
+                return (null);
+            }
+            // Keyword or identifier
+            else if (Character.isLetter(c) || c == '_') {
+                int j = i;
+                while (j < len && (Character.isLetterOrDigit(sql.charAt(j)) || sql.charAt(j) == '_' || sql.charAt(j) == '$')) j++;
+                lastWord = sql.substring(i, j).toUpperCase();
+                boolean ordinal = false;
+                for (String keyword : ORDINAL_KEYWORDS) {
+                    if (keyword.equals(lastWord)) ordinal = true;
+                } // FOR
+                inOrdinalList = ordinal;
+                sb.append(sql, i, j);
+                i = j;
+                continue;
+            }
+            // Numeric literal
+            else if (Character.isDigit(c) || (c == '.' && i + 1 < len && Character.isDigit(sql.charAt(i + 1)))) {
+                int j = i;
+                while (j < len && (Character.isDigit(sql.charAt(j)) || sql.charAt(j) == '.')) j++;
+                if (j < len && (sql.charAt(j) == 'e' || sql.charAt(j) == 'E')) {
+                    int k = j + 1;
+                    if (k < len && (sql.charAt(k) == '+' || sql.charAt(k) == '-')) k++;
+                    if (k < len && Character.isDigit(sql.charAt(k))) {
+                        j = k;
+                        while (j < len && Character.isDigit(sql.charAt(j))) j++;
+                    }
+                }
+                if (inOrdinalList) {
+                    sb.append(sql, i, j);
+                } else {
+                    literals.add(sql.substring(i, j));
+                    isString.add(false);
+                    sb.append('?');
+                }
+                i = j;
+                lastWord = null;
+                continue;
+            }
+
+            // Everything else is copied as is. A list of ordinals only
+            // continues past commas and whitespace.
+            if (c != ',' && Character.isWhitespace(c) == false) {
+                inOrdinalList = false;
+            }
+            sb.append(c);
+            i++;
+        } // WHILE
+
+        return (new ParameterizedSQL(sb.toString(), literals, isString));
+    }
+
+    /**
+     * Return a copy of the given planner result where every parameter in its
+     * plan fragments has been replaced with the matching literal from this SQL.
+     * Returns null if a literal cannot be converted to the type of its parameter,
+     * in which case the original SQL has to be planned by itself.
+     * @param result
+     * @return
+     */
+    public PlannerTool.Result bind(PlannerTool.Result result) {
+        PlannerTool.Result bound = new PlannerTool.Result();
+        bound.replicatedDML = result.replicatedDML;
+        bound.errors = result.errors;
+        try {
+            if (result.onePlan != null) {
+                bound.onePlan = this.bindFragment(result.onePlan);
+                if (bound.onePlan == null) return (null);
+            }
+            if (result.allPlan != null) {
+                bound.allPlan = this.bindFragment(result.allPlan);
+                if (bound.allPlan == null) return (null);
+            }
+        } catch (JSONException ex) {
+            return (null);
+        }
+        return (bound);
+    }
+
+    private String bindFragment(String plan) throws JSONException {
+        if (m_literals.isEmpty()) return (plan);
+        JSONObject json = new JSONObject(plan);
+        if (this.bindObject(json) == false) return (null);
+        return (json.toString());
+    }
+
+    /**
+     * Recursively replace all of the ParameterValueExpressions under the given object
+     */
+    private boolean bindObject(JSONObject json) throws JSONException {
+        String keys[] = JSONObject.getNames(json);
+        if (keys == null) return (true);
+        for (String key : keys) {
+            Object value = json.get(key);
+            if (value instanceof JSONObject) {
+                JSONObject child = (JSONObject)value;
+                if (isParameter(child)) {
+                    JSONObject constant = this.toConstant(child);
+                    if (constant == null) return (false);
+                    json.put(key, constant);
+                } else if (this.bindObject(child) == false) {
+                    return (false);
+                }
+            } else if (value instanceof JSONArray) {
+                if (this.bindArray((JSONArray)value) == false) return (false);
+            }
+        } // FOR
+        return (true);
+    }
+
+    private boolean bindArray(JSONArray array) throws JSONException {
+        for (int i = 0; i < array.length(); i++) {
+            Object value = array.get(i);
+            if (value instanceof JSONObject) {
+                JSONObject child = (JSONObject)value;
+                if (isParameter(child)) {
+                    JSONObject constant = this.toConstant(child);
+                    if (constant == null) return (false);
+                    array.put(i, constant);
+                } else if (this.bindObject(child) == false) {
+                    return (false);
+                }
+            } else if (value instanceof JSONArray) {
+                if (this.bindArray((JSONArray)value) == false) return (false);
+            }
+        } // FOR
+        return (true);
+    }
+
+    private static boolean isParameter(JSONObject json) {
+        return (ExpressionType.VALUE_PARAMETER.toString().equals(json.optString(AbstractExpression.Members.TYPE.name(), null)));
+    }
+
+    /**
+     * Convert a serialized ParameterValueExpression into a ConstantValueExpression
+     * with the literal for its parameter index. Returns null if the literal
+     * does not fit in the parameter's type.
+     */
+    private JSONObject toConstant(JSONObject json) throws JSONException {
+        ParameterValueExpression param = (ParameterValueExpression)AbstractExpression.fromJSONObject(json, null);
+        Integer idx = param.getParameterId();
+        if (idx == null || idx < 0 || idx >= m_literals.size()) return (null);
+
+        String literal = m_literals.get(idx);
+        boolean isString = m_isString.get(idx);
+        VoltType type = param.getValueType();
+        if (type == null) return (null);
+        String value = null;
+        try {
+            switch (type) {
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                case BIGINT:
+                    if (isString) return (null);
+                    long num = Long.parseLong(literal);
+                    if (fitsInType(type, num) == false) return (null);
+                    value = Long.toString(num);
+                    break;
+                case FLOAT:
+                    if (isString) return (null);
+                    value = Double.valueOf(literal).toString();
+                    break;
+                case DECIMAL:
+                    if (isString) return (null);
+                    value = new BigDecimal(literal).toPlainString();
+                    break;
+                case STRING:
+                    if (isString == false) return (null);
+                    value = literal;
+                    break;
+                default:
+                    return (null);
+            } // SWITCH
+        } catch (NumberFormatException ex) {
+            return (null);
+        }
+
+        ConstantValueExpression constant = new ConstantValueExpression();
+        constant.setValueType(type);
+        constant.setValueSize(param.getValueSize());
+        constant.setValue(value);
+        return (new JSONObject(constant.toJSONString()));
+    }
+
+    /**
+     * Returns true if the given value can be stored in the given integer type.
+     * The smallest value of each type is its NULL value, so it never fits.
+     */
+    private static boolean fitsInType(VoltType type, long value) {
+        switch (type) {
+            case TINYINT:
+                return (value > Byte.MIN_VALUE && value <= Byte.MAX_VALUE);
+            case SMALLINT:
+                return (value > Short.MIN_VALUE && value <= Short.MAX_VALUE);
+            case INTEGER:
+                return (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE);
+            default:
+                return (value > Long.MIN_VALUE);
+        } // SWITCH
+    }
+}
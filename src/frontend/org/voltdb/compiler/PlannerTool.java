@@ -35,7 +35,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.planner.CompiledPlan.Fragment;
 import org.voltdb.planner.QueryPlanner;
-import org.voltdb.planner.TrivialCostModel;
+import org.voltdb.planner.StatisticsCostModel;
 import org.voltdb.plannodes.PlanNodeList;
 import org.voltdb.utils.Encoder;
 
@@ -149,8 +149,13 @@ public class PlannerTool {
                 retval.errors = e.getMessage();
                 return retval;
             }
-            if (line == null)
-                continue;
+            // the planner process went away (most likely because it was killed
+            // for being hung), so there is nothing more to read
+            if (line == null) {
+                m_timeOfLastPlannerCall.set(0);
+                retval.errors = "The planner process terminated while planning the statement";
+                return retval;
+            }
             line = line.trim();
             if (line.length() == 0)
                 break;
@@ -344,7 +349,7 @@ public class PlannerTool {
             // PLAN THE STMT
             //////////////////////
 
-            TrivialCostModel costModel = new TrivialCostModel();
+            StatisticsCostModel costModel = new StatisticsCostModel();
             QueryPlanner planner = new QueryPlanner(
                     cluster, db, hsql, new DatabaseEstimates(), false, true);
             CompiledPlan plan = null;
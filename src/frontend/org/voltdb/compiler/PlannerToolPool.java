@@ -0,0 +1,161 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded set of planner processes that can plan ad hoc SQL at the same time.
+ * The planner keeps global state in static members (e.g., PlannerContext.singleton()
+ * and the PlanNode id counters), so each PlannerTool has to run in its own process.
+ * Planners are started lazily the first time that there is no idle one.
+ */
+public class PlannerToolPool {
+    private static final Logger LOG = Logger.getLogger(PlannerToolPool.class);
+
+    private final int m_maxSize;
+    private final LinkedBlockingDeque<PlannerTool> m_idle = new LinkedBlockingDeque<PlannerTool>();
+
+    /** PlannerTool -> Catalog generation that it was started with */
+    private final Map<PlannerTool, Integer> m_planners = new HashMap<PlannerTool, Integer>();
+    private String m_serializedCatalog;
+    private int m_generation = 0;
+
+    public PlannerToolPool(String serializedCatalog, int maxSize) {
+        assert(serializedCatalog != null);
+        assert(maxSize > 0);
+        m_serializedCatalog = serializedCatalog;
+        m_maxSize = maxSize;
+    }
+
+    /**
+     * Get a PlannerTool that nobody else is using. This will block if all of the
+     * planners are busy and we're not allowed to start a new one.
+     * @return
+     * @throws InterruptedException
+     */
+    public PlannerTool checkout() throws InterruptedException {
+        while (true) {
+            PlannerTool ptool = m_idle.poll();
+            if (ptool == null) {
+                synchronized (this) {
+                    if (m_planners.size() < m_maxSize) {
+                        ptool = PlannerTool.createPlannerToolProcess(m_serializedCatalog);
+                        m_planners.put(ptool, m_generation);
+                        return (ptool);
+                    }
+                }
+                ptool = m_idle.take();
+            }
+
+            // if the process was created but is dead, then throw it away
+            if (ptool.expensiveIsRunningCheck()) {
+                return (ptool);
+            }
+            LOG.error("Planner process died on its own. It will be restarted if needed.");
+            synchronized (this) {
+                m_planners.remove(ptool);
+            }
+        } // WHILE
+    }
+
+    /**
+     * Give back a PlannerTool that was retrieved with checkout(). If the catalog
+     * has changed since it was started, then it is killed instead.
+     * @param ptool
+     */
+    public synchronized void checkin(PlannerTool ptool) {
+        Integer generation = m_planners.get(ptool);
+        if (generation == null || generation.intValue() != m_generation) {
+            m_planners.remove(ptool);
+            ptool.kill();
+        } else {
+            m_idle.add(ptool);
+        }
+    }
+
+    /**
+     * Kill all of the planners that were started with an outdated catalog.
+     * The ones that are currently busy are killed when they are checked back in.
+     * @param serializedCatalog
+     */
+    public synchronized void updateCatalog(String serializedCatalog) {
+        assert(serializedCatalog != null);
+        m_serializedCatalog = serializedCatalog;
+        m_generation++;
+
+        ArrayList<PlannerTool> idle = new ArrayList<PlannerTool>();
+        m_idle.drainTo(idle);
+        for (PlannerTool ptool : idle) {
+            m_planners.remove(ptool);
+            ptool.kill();
+        } // FOR
+    }
+
+    /**
+     * Returns the current catalog generation. This is incremented every time that
+     * updateCatalog() is called.
+     */
+    public synchronized int getGeneration() {
+        return (m_generation);
+    }
+
+    /**
+     * Returns the catalog generation that the given PlannerTool was started with
+     * or -1 if it doesn't belong to this pool anymore.
+     * @param ptool
+     */
+    public synchronized int getGeneration(PlannerTool ptool) {
+        Integer generation = m_planners.get(ptool);
+        return (generation != null ? generation.intValue() : -1);
+    }
+
+    /**
+     * Kill any planner process that has been working on the same statement for
+     * longer than the given timeout.
+     * @param msTimeout
+     */
+    public synchronized void killHungPlanners(long msTimeout) {
+        for (PlannerTool ptool : m_planners.keySet()) {
+            if (ptool.perhapsIsHung(msTimeout)) {
+                LOG.error("Was forced to kill the planner process due to a timeout. It will be restarted if needed.");
+                ptool.kill();
+            }
+        } // FOR
+    }
+
+    public synchronized int size() {
+        return (m_planners.size());
+    }
+
+    /**
+     * Kill all of the planner processes
+     */
+    public synchronized void shutdown() {
+        for (PlannerTool ptool : m_planners.keySet()) {
+            ptool.kill();
+        } // FOR
+        m_planners.clear();
+        m_idle.clear();
+    }
+}
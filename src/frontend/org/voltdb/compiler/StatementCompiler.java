@@ -39,7 +39,7 @@ import org.voltdb.planner.CompiledPlan;
 import org.voltdb.planner.ParameterInfo;
 import org.voltdb.planner.PlanColumn;
 import org.voltdb.planner.QueryPlanner;
-import org.voltdb.planner.TrivialCostModel;
+import org.voltdb.planner.StatisticsCostModel;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.DeletePlanNode;
@@ -170,7 +170,7 @@ public abstract class StatementCompiler {
             catalogStmt.setSinglepartition(_singleSited);
             String name = catalogStmt.getParent().getName() + "-" + catalogStmt.getName();
     
-            TrivialCostModel costModel = new TrivialCostModel();
+            StatisticsCostModel costModel = new StatisticsCostModel();
             try {
                 plan = planner.compilePlan(costModel, catalogStmt.getSqltext(),
                         catalogStmt.getName(), catalogStmt.getParent().getName(),
@@ -78,6 +78,7 @@ import org.voltdb.compiler.projectfile.ProjectType;
 import org.voltdb.compiler.projectfile.SchemasType;
 import org.voltdb.compiler.projectfile.SecurityType;
 import org.voltdb.compiler.projectfile.SnapshotType;
+import org.voltdb.compiler.projectfile.StatisticsType;
 import org.voltdb.compiler.projectfile.UsersType;
 import org.voltdb.compiler.projectfile.VerticalpartitionsType.Verticalpartition;
 import org.voltdb.planner.VerticalPartitionPlanner;
@@ -87,6 +88,7 @@ import org.voltdb.sysprocs.ExecutorStatus;
 import org.voltdb.sysprocs.GarbageCollection;
 import org.voltdb.sysprocs.GetCatalog;
 import org.voltdb.sysprocs.LoadMultipartitionTable;
+import org.voltdb.sysprocs.LoadPartitionTable;
 import org.voltdb.sysprocs.NoOp;
 import org.voltdb.sysprocs.RecomputeMarkovs;
 import org.voltdb.sysprocs.Shutdown;
@@ -109,6 +111,7 @@ import edu.brown.catalog.special.MultiColumn;
 import edu.brown.catalog.special.VerticalPartitionColumn;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.statistics.WorkloadStatistics;
 import edu.brown.utils.ClassUtil;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.StringUtil;
@@ -814,7 +817,7 @@ public class VoltCompiler {
         db = m_catalog.getClusters().get("cluster").getDatabases().get(databaseName);
         
         // add database estimates info
-        addDatabaseEstimatesInfo(m_estimates, db);
+        addDatabaseEstimatesInfo(m_estimates, db, database.getStatistics());
         addSystemProcsToCatalog(m_catalog, db);
 
         // Process and add exports and connectors to the catalog
@@ -1006,13 +1009,28 @@ public class VoltCompiler {
         return (catalog_view);
     }
 
-    private void addDatabaseEstimatesInfo(final DatabaseEstimates estimates, final Database db) {
+    private void addDatabaseEstimatesInfo(final DatabaseEstimates estimates, final Database db, final StatisticsType statistics) throws VoltCompilerException {
         /*for (Table table : db.getTables()) {
             DatabaseEstimates.TableEstimates tableEst = new DatabaseEstimates.TableEstimates();
             tableEst.maxTuples = 1000000;
             tableEst.minTuples = 100000;
             estimates.tables.put(table, tableEst);
         }*/
+        if (statistics == null) return;
+
+        // Resolve the path relative to the database definition xml file
+        File statsFile = new File(statistics.getPath());
+        if (!statsFile.isAbsolute()) {
+            statsFile = new File(new File(m_projectFileURL).getParent(), statistics.getPath());
+        }
+        WorkloadStatistics stats = new WorkloadStatistics(db);
+        try {
+            stats.load(statsFile.getAbsolutePath(), db);
+        } catch (final Exception e) {
+            throw new VoltCompilerException("Failed to load workload statistics from '" + statsFile + "'", e);
+        }
+        estimates.addStatistics(db, stats);
+        addInfo("Loaded planner statistics for " + stats.getTableStatistics().size() + " tables from '" + statsFile + "'");
     }
 
     ProcedureDescriptor getProcedure(
@@ -1221,6 +1239,7 @@ public class VoltCompiler {
         final Object[][] procedures = {
             // SysProcedure Class                   readonly    everysite
             {LoadMultipartitionTable.class,         false,      true},
+            {LoadPartitionTable.class,              false,      false},
             {DatabaseDump.class,                    true,       true},
             {RecomputeMarkovs.class,                true,       true},
             {Shutdown.class,                        false,      true},
@@ -255,6 +255,8 @@ public class VoltProjectBuilder {
     private String m_snapshotPrefix = null;
     private String m_snapshotFrequency = null;
 
+    private String m_statisticsPath = null;
+
     public VoltProjectBuilder(String project_name) {
         this.project_name = project_name;
     }
@@ -627,6 +629,16 @@ public class VoltProjectBuilder {
         m_snapshotPrefix = prefix;
     }
 
+    /**
+     * Use the WorkloadStatistics file at the given path to estimate the
+     * cardinalities and selectivities when planning queries
+     * @param path
+     */
+    public void setStatisticsPath(String path) {
+        assert(path != null);
+        m_statisticsPath = path;
+    }
+
 
     public void addELT(final String loader, boolean enabled,
             List<String> users, List<String> groups) {
@@ -1092,6 +1104,12 @@ public class VoltProjectBuilder {
             snapshot.setAttribute("retain", Integer.toString(m_snapshotRetain));
             database.appendChild(snapshot);
         }
+
+        if (m_statisticsPath != null) {
+            final Element statistics = doc.createElement("statistics");
+            statistics.setAttribute("path", m_statisticsPath);
+            database.appendChild(statistics);
+        }
     }
 
     /**
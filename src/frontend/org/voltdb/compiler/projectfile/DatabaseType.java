@@ -34,6 +34,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="classdependencies" type="{}classdependenciesType" minOccurs="0"/>
  *         &lt;element name="exports" type="{}exportsType" minOccurs="0"/>
  *         &lt;element name="snapshot" type="{}snapshotType" minOccurs="0"/>
+ *         &lt;element name="statistics" type="{}statisticsType" minOccurs="0"/>
  *       &lt;/all>
  *       &lt;attribute name="name" use="required" type="{http://www.w3.org/2001/XMLSchema}string" />
  *     &lt;/restriction>
@@ -60,6 +61,7 @@ public class DatabaseType {
     protected ClassdependenciesType classdependencies;
     protected ExportsType exports;
     protected SnapshotType snapshot;
+    protected StatisticsType statistics;
     @XmlAttribute(required = true)
     protected String name;
 
@@ -279,6 +281,30 @@ public class DatabaseType {
         this.snapshot = value;
     }
 
+    /**
+     * Gets the value of the statistics property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link StatisticsType }
+     *     
+     */
+    public StatisticsType getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the value of the statistics property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link StatisticsType }
+     *     
+     */
+    public void setStatistics(StatisticsType value) {
+        this.statistics = value;
+    }
+
     /**
      * Gets the value of the name property.
      * 
@@ -80,6 +80,14 @@ public class ObjectFactory {
         return new SnapshotType();
     }
 
+    /**
+     * Create an instance of {@link StatisticsType }
+     * 
+     */
+    public StatisticsType createStatisticsType() {
+        return new StatisticsType();
+    }
+
     /**
      * Create an instance of {@link ProceduresType }
      * 
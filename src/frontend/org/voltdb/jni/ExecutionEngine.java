@@ -29,6 +29,7 @@ import org.apache.log4j.Logger;
 import org.voltdb.DependencyPair;
 import org.voltdb.DependencySet;
 import org.voltdb.ParameterSet;
+import org.voltdb.PrivateVoltTableFactory;
 import org.voltdb.SysProcSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
@@ -64,6 +65,14 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
     public static final int ERRORCODE_ERROR = 1; // just error or not so far.
     public static final int ERRORCODE_WRONG_SERIALIZED_BYTES = 101;
 
+    /** Copy on write modes (must match CopyOnWriteMode in types.h) */
+    /** Every tuple in the table */
+    public static final int COW_MODE_FULL = 0;
+    /** Every tuple in the table, with each chunk tagged with the tuple block that it came from */
+    public static final int COW_MODE_FULL_BLOCKS = 1;
+    /** Only the tuple blocks that were modified since the last COW_MODE_FULL_BLOCKS or COW_MODE_DELTA snapshot */
+    public static final int COW_MODE_DELTA = 2;
+
     /** Make the EE clean and ready to do new transactional work. */
     public void resetDirtyStatus() {
         m_dirty = false;
@@ -273,7 +282,17 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * Interface frontend invokes to communicate to CPP execution engine.
      */
 
-    abstract public boolean activateCopyOnWrite(final int tableId);
+    public boolean activateCopyOnWrite(final int tableId) {
+        return activateCopyOnWrite(tableId, COW_MODE_FULL);
+    }
+
+    /**
+     * Put the specified table into copy on write mode
+     * @param tableId Catalog ID of the table
+     * @param mode One of the COW_MODE_* values
+     * @return <code>true</code> on success and <code>false</code> on failure
+     */
+    abstract public boolean activateCopyOnWrite(final int tableId, final int mode);
 
     /**
      * Serialize more tuples from the specified table that is already in COW mode
@@ -353,6 +372,18 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         int tableId, VoltTable table, long txnId,
         long lastCommittedTxnId, long undoToken, boolean allowELT) throws EEException;
 
+    /**
+     * Bulk load a block of tuples that is already in the VoltTable serialization
+     * format and sitting in a buffer (e.g., a chunk read out of a snapshot save file).
+     * The default implementation just wraps the buffer in a VoltTable. The JNI engine
+     * hands the buffer's address straight to the EE.
+     */
+    public void loadTableChunk(int tableId, BBContainer chunk, long txnId,
+        long lastCommittedTxnId, long undoToken, boolean allowELT) throws EEException {
+        VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(chunk.b.duplicate(), true);
+        this.loadTable(tableId, table, txnId, lastCommittedTxnId, undoToken, allowELT);
+    }
+
     /**
      * Set the log levels to be used when logging in this engine
      * @param logLevels Levels to set
@@ -505,6 +536,18 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
     protected native int nativeLoadTable(long pointer, int table_id, byte[] serialized_table,
             long txnId, long lastCommittedTxnId, long undoToken, boolean allowELT);
 
+    /**
+     * This method is called to initially load table data from a direct buffer.
+     * The EE reads the serialized table in place without copying it.
+     * @param pointer the VoltDBEngine pointer
+     * @param table_id catalog ID of the table
+     * @param serialized_table the direct buffer containing the table data to be loaded
+     * @param length the number of bytes of serialized_table to read
+     * @param undoToken token for undo quantum where changes should be logged.
+     */
+    protected native int nativeLoadTableDirect(long pointer, int table_id, ByteBuffer serialized_table, int length,
+            long txnId, long lastCommittedTxnId, long undoToken, boolean allowELT);
+
     //Execution
 
     /**
@@ -631,9 +674,10 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * Active copy on write mode for a table.
      * @param pointer Pointer to an engine instance
      * @param tableId Catalog ID of the table
+     * @param mode One of the COW_MODE_* values
      * @return <code>true</code> on success and <code>false</code> on failure
      */
-    protected native boolean nativeActivateCopyOnWrite(long pointer, int tableId);
+    protected native boolean nativeActivateCopyOnWrite(long pointer, int tableId, int mode);
 
     /**
      * Serialize more tuples from the specified table that is already in COW mode
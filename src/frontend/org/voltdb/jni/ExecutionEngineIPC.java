@@ -19,12 +19,16 @@ package org.voltdb.jni;
 
 import java.io.BufferedReader;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -50,6 +54,7 @@ import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.DBBPool.BBContainer;
 
 import edu.brown.hstore.PartitionExecutor;
+import edu.brown.hstore.conf.HStoreConf;
 
 
 /* Serializes data over a connection that presumably is being read
@@ -81,6 +86,12 @@ import edu.brown.hstore.PartitionExecutor;
  * we can this. A length will not prefix the response
  * if the length of the response can be deduced from the original request.
  *
+ * If site.exec_ee_ipc_shared_memory is enabled, the AttachSharedMemory command
+ * hands the EE the path of a memory-mapped file holding two SharedMemoryRings.
+ * After the EE acknowledges it over the socket, every request and response
+ * (in exactly the same format) goes through the rings and the socket is only
+ * used to wake up a process that is blocked waiting on its ring.
+ *
  * The return message format for DMLPlanFragments is all big endian:
  * 1 byte result code
  * 8 byte results codes. Same number of results as numPlanFragments.
@@ -126,7 +137,8 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         ActivateCopyOnWrite(17),
         COWSerializeMore(18),
         UpdateCatalog(19),
-        ELTAction(20);
+        ELTAction(20),
+        AttachSharedMemory(21);
         Commands(final int id) {
             m_id = id;
         }
@@ -136,6 +148,9 @@ public class ExecutionEngineIPC extends ExecutionEngine {
 
     private static AtomicInteger eeCount = new AtomicInteger(21214);
 
+    /** Where we create the memory-mapped files for the shared memory rings */
+    private static final String SHARED_MEMORY_DIR = "/dev/shm";
+
     /**
      * One connection per ExecutionEngineIPC. This connection also interfaces
      * with Valgrind to report any problems that Valgrind may find including
@@ -146,6 +161,11 @@ public class ExecutionEngineIPC extends ExecutionEngine {
     private class Connection {
         private Socket m_socket = null;
         private SocketChannel m_socketChannel = null;
+        /** Java -> EE ring. Null if we are only using the socket */
+        private SharedMemoryRing m_requestRing = null;
+        /** EE -> Java ring. Null if we are only using the socket */
+        private SharedMemoryRing m_responseRing = null;
+        private MappedByteBuffer m_sharedMemory = null;
         private Process m_eeProcess;
         private String m_eePID = null;
         private Thread m_stdoutParser = null;
@@ -338,6 +358,9 @@ public class ExecutionEngineIPC extends ExecutionEngine {
                 }
                 m_socketChannel = null;
                 m_socket = null;
+                m_requestRing = null;
+                m_responseRing = null;
+                m_sharedMemory = null;
             }
             if (m_eeProcess != null) {
                 m_eeProcess.waitFor();
@@ -372,9 +395,58 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             m_dataNetwork.putInt(amt + 4);
             m_dataNetwork.limit(4 + amt);
             m_dataNetwork.rewind();
-            while (m_dataNetwork.hasRemaining()) {
-                m_socketChannel.write(m_dataNetwork);
+            this.writeFully(m_dataNetwork);
+        }
+
+        /**
+         * Switch all further requests and responses over to the given pair of
+         * shared memory rings. The socket is then only used as a doorbell.
+         */
+        void useSharedMemory(MappedByteBuffer mapped, SharedMemoryRing requestRing, SharedMemoryRing responseRing) {
+            m_sharedMemory = mapped;
+            m_requestRing = requestRing;
+            m_responseRing = responseRing;
+        }
+
+        /** blocking write of all the remaining bytes in the buffer to the EE */
+        void writeFully(final ByteBuffer buffer) throws IOException {
+            if (m_requestRing != null) {
+                m_requestRing.write(buffer);
+                return;
+            }
+            while (buffer.hasRemaining()) {
+                m_socketChannel.write(buffer);
+            }
+        }
+
+        /** blocking write of a single byte to the EE */
+        void writeByte(final int value) throws IOException {
+            if (m_requestRing != null) {
+                m_requestRing.write(value);
+                return;
+            }
+            m_socket.getOutputStream().write(value);
+        }
+
+        /** blocking read from the EE until the buffer is full */
+        void readFully(final ByteBuffer buffer) throws IOException {
+            if (m_responseRing != null) {
+                m_responseRing.read(buffer);
+                return;
+            }
+            while (buffer.hasRemaining()) {
+                if (m_socketChannel.read(buffer) == -1) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        /** blocking read of a single byte from the EE */
+        int readByte() throws IOException {
+            if (m_responseRing != null) {
+                return (m_responseRing.read());
             }
+            return (m_socket.getInputStream().read());
         }
 
         /**
@@ -418,15 +490,14 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             int status = kErrorCode_RetrieveDependency;
 
             while (true) {
-                status = m_socket.getInputStream().read();
+                status = readByte();
                 if (status == kErrorCode_RetrieveDependency) {
                     final ByteBuffer dependencyIdBuffer = ByteBuffer.allocate(4);
-                    while (dependencyIdBuffer.hasRemaining()) {
-                        final int read = m_socketChannel.read(dependencyIdBuffer);
-                        if (read == -1) {
-                            throw new IOException("Unable to read enough bytes for dependencyId in order to " +
-                            " satisfy IPC backend request for a dependency table");
-                        }
+                    try {
+                        readFully(dependencyIdBuffer);
+                    } catch (final EOFException ex) {
+                        throw new IOException("Unable to read enough bytes for dependencyId in order to " +
+                        " satisfy IPC backend request for a dependency table");
                     }
                     dependencyIdBuffer.rewind();
                     sendDependencyTable(dependencyIdBuffer.getInt());
@@ -434,20 +505,10 @@ public class ExecutionEngineIPC extends ExecutionEngine {
                 }
                 if (status == kErrorCode_CrashVoltDB) {
                     ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-                    while (lengthBuffer.hasRemaining()) {
-                        final int read = m_socket.getChannel().read(lengthBuffer);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                    }
+                    readFully(lengthBuffer);
                     lengthBuffer.flip();
                     ByteBuffer messageBuffer = ByteBuffer.allocate(lengthBuffer.getInt());
-                    while (messageBuffer.hasRemaining()) {
-                        final int read = m_socket.getChannel().read(messageBuffer);
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                    }
+                    readFully(messageBuffer);
 
                     final int reasonLength = messageBuffer.getInt();
                     final byte reasonBytes[] = new byte[reasonLength];
@@ -500,24 +561,14 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             final ByteBuffer resultTablesLengthBytes = ByteBuffer.allocate(4);
 
             //resultTablesLengthBytes.order(ByteOrder.LITTLE_ENDIAN);
-            while (resultTablesLengthBytes.hasRemaining()) {
-                int read = m_socketChannel.read(resultTablesLengthBytes);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            readFully(resultTablesLengthBytes);
             resultTablesLengthBytes.flip();
 
             final int resultTablesLength = resultTablesLengthBytes.getInt();
             final ByteBuffer resultTablesBuffer = ByteBuffer
                     .allocate(resultTablesLength);
             //resultTablesBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            while (resultTablesBuffer.hasRemaining()) {
-                int read = m_socketChannel.read(resultTablesBuffer);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            readFully(resultTablesBuffer);
             resultTablesBuffer.flip();
 
             final FastDeserializer ds = new FastDeserializer(resultTablesBuffer);
@@ -543,12 +594,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             // length notification!
             final ByteBuffer resultSetSizeBuff = ByteBuffer.allocate(4);
             resultSetSizeBuff.rewind();
-            while (resultSetSizeBuff.hasRemaining()) {
-                int read = m_socketChannel.read(resultSetSizeBuff);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            readFully(resultSetSizeBuff);
 
             resultSetSizeBuff.rewind();
             final int resultsSize = resultSetSizeBuff.getInt();
@@ -556,12 +602,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             // read the serialized dependencies
             final ByteBuffer depsBuff = ByteBuffer.allocate(resultsSize);
             depsBuff.clear().rewind();
-            while (depsBuff.hasRemaining()) {
-                int read = m_socketChannel.read(depsBuff);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            readFully(depsBuff);
 
             // deserialize the dependencies
             depsBuff.rewind();
@@ -585,12 +626,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
 
         public void throwException(final int errorCode) throws IOException {
             final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-            while (lengthBuffer.hasRemaining()) {
-                int read = m_socketChannel.read(lengthBuffer);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            readFully(lengthBuffer);
             lengthBuffer.flip();
             final int exceptionLength = lengthBuffer.getInt();//Length is only between EE and Java.
             if (exceptionLength == 0) {
@@ -598,12 +634,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             } else {
                 final ByteBuffer exceptionBuffer = ByteBuffer.allocate(exceptionLength + 4);
                 exceptionBuffer.putInt(exceptionLength);
-                while(exceptionBuffer.hasRemaining()) {
-                    int read = m_socketChannel.read(exceptionBuffer);
-                    if (read == -1) {
-                        throw new EOFException();
-                    }
-                }
+                readFully(exceptionBuffer);
                 assert(!exceptionBuffer.hasRemaining());
                 exceptionBuffer.rewind();
                 throw SerializableException.deserializeFromBuffer(exceptionBuffer);
@@ -649,9 +680,80 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         m_dataNetwork.position(4);
         m_data = m_dataNetwork.slice();
 
+        HStoreConf hstore_conf = HStoreConf.singleton(true);
+        if (hstore_conf.site.exec_ee_ipc_shared_memory) {
+            final int size = hstore_conf.site.exec_ee_ipc_shared_memory_size;
+            final int capacity = SharedMemoryRing.getCapacity(size);
+            if (size > SharedMemoryRing.MAX_CAPACITY / 1024 / 1024) {
+                System.out.println("Shared memory ring size " + size + "MB is too big. " +
+                                   "Using " + (capacity / 1024 / 1024) + "MB instead.");
+            }
+            attachSharedMemory(capacity);
+        }
+
         initialize(m_clusterIndex, m_siteId, m_partitionId, m_hostId, m_hostname);
     }
 
+    /**
+     * Create a memory-mapped file in SHARED_MEMORY_DIR that holds a pair of rings
+     * and tell the EE to switch over to it. If anything goes wrong before the EE
+     * attaches, then we just keep on using the socket.
+     * @param capacity Size of each ring in bytes. Must be a power of two
+     */
+    private void attachSharedMemory(final int capacity) {
+        final File dir = new File(SHARED_MEMORY_DIR);
+        if (dir.isDirectory() == false) {
+            System.out.println("Shared memory directory " + dir + " does not exist. Using socket for IPC connection.");
+            return;
+        }
+
+        File file = null;
+        MappedByteBuffer mapped = null;
+        try {
+            file = File.createTempFile("hstore-ee-" + m_siteId + "-", ".ipc", dir);
+            final int size = SharedMemoryRing.getMappedSize(capacity);
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        } catch (final IOException e) {
+            System.out.println("Failed to create shared memory file: " + e.getMessage() + ". Using socket for IPC connection.");
+            if (file != null) file.delete();
+            return;
+        }
+
+        final SharedMemoryRing requestRing = new SharedMemoryRing(mapped, 0, capacity, m_connection.m_socketChannel);
+        final SharedMemoryRing responseRing = new SharedMemoryRing(mapped, SharedMemoryRing.HEADER_SIZE + capacity,
+                                                                   capacity, m_connection.m_socketChannel);
+        requestRing.reset();
+        responseRing.reset();
+
+        try {
+            final byte path[] = file.getAbsolutePath().getBytes("UTF-8");
+            m_data.clear();
+            m_data.putInt(Commands.AttachSharedMemory.m_id);
+            m_data.putInt(capacity);
+            m_data.putShort((short)path.length);
+            m_data.put(path);
+            m_data.flip();
+            m_connection.write();
+            m_connection.readStatusByte();
+            m_connection.useSharedMemory(mapped, requestRing, responseRing);
+            System.out.println("Using shared memory IPC connection for site " + m_siteId + " [capacity=" + capacity + "]");
+        } catch (final EEException e) {
+            System.out.println("EE failed to attach to shared memory file " + file + ". Using socket for IPC connection.");
+        } catch (final IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            throw new RuntimeException(e);
+        } finally {
+            // Both processes have the file mapped (or never will), so we don't need the name anymore
+            file.delete();
+        }
+    }
+
     /** Utility method to generate an EEXception that can be overriden by derived classes**/
     @Override
     protected void throwExceptionForError(final int errorCode) {
@@ -1100,20 +1202,10 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         try {
             if (result == ExecutionEngine.ERRORCODE_SUCCESS) {
                 final ByteBuffer messageLengthBuffer = ByteBuffer.allocate(4);
-                while (messageLengthBuffer.hasRemaining()) {
-                    int read = m_connection.m_socketChannel.read(messageLengthBuffer);
-                    if (read == -1) {
-                        throw new EOFException();
-                    }
-                }
+                m_connection.readFully(messageLengthBuffer);
                 messageLengthBuffer.rewind();
                 final ByteBuffer messageBuffer = ByteBuffer.allocate(messageLengthBuffer.getInt());
-                while (messageBuffer.hasRemaining()) {
-                    int read = m_connection.m_socketChannel.read(messageBuffer);
-                    if (read == -1) {
-                        throw new EOFException();
-                    }
-                }
+                m_connection.readFully(messageBuffer);
                 messageBuffer.rewind();
 
                 final FastDeserializer fds = new FastDeserializer(messageBuffer);
@@ -1224,7 +1316,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
     private void sendDependencyTable(final int dependencyId) throws IOException{
         final byte[] dependencyBytes = nextDependencyAsBytes(dependencyId);
         if (dependencyBytes == null) {
-            m_connection.m_socket.getOutputStream().write(Connection.kErrorCode_DependencyNotFound);
+            m_connection.writeByte(Connection.kErrorCode_DependencyNotFound);
             return;
         }
         // 1 for response code + 4 for dependency length prefix + dependencyBytes.length
@@ -1239,17 +1331,15 @@ public class ExecutionEngineIPC extends ExecutionEngine {
         // finally, write dependency table itself
         message.put(dependencyBytes);
         message.rewind();
-        if (m_connection.m_socketChannel.write(message) != message.capacity()) {
-            throw new IOException("Unable to send dependency table to client. Attempted blocking write of " +
-                    message.capacity() + " but not all of it was written");
-        }
+        m_connection.writeFully(message);
     }
 
     @Override
-    public boolean activateCopyOnWrite(int tableId) {
+    public boolean activateCopyOnWrite(int tableId, int mode) {
         m_data.clear();
         m_data.putInt(Commands.ActivateCopyOnWrite.m_id);
         m_data.putInt(tableId);
+        m_data.putInt(mode);
 
         try {
             m_data.flip();
@@ -1289,12 +1379,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
             m_connection.readStatusByte();
 
             ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-            while (lengthBuffer.hasRemaining()) {
-                int read = m_connection.m_socketChannel.read(lengthBuffer);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
+            m_connection.readFully(lengthBuffer);
             lengthBuffer.flip();
             final int length = lengthBuffer.getInt();
             bytesReturned = length;
@@ -1305,9 +1390,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
                 return length;
             }
             view.limit(view.position() + length);
-            while (view.hasRemaining()) {
-                m_connection.m_socketChannel.read(view);
-            }
+            m_connection.readFully(view);
         } catch (final IOException e) {
             System.out.println("Exception: " + e.getMessage());
             throw new RuntimeException(e);
@@ -1331,15 +1414,13 @@ public class ExecutionEngineIPC extends ExecutionEngine {
 
             ByteBuffer data = null;
             ByteBuffer results = ByteBuffer.allocate(12);
-            while (results.remaining() > 0)
-                m_connection.m_socketChannel.read(results);
+            m_connection.readFully(results);
             results.flip();
             long result_offset = results.getLong();
             int result_sz = results.getInt();
             data = ByteBuffer.allocate(result_sz + 4);
             data.putInt(result_sz);
-            while (data.remaining() > 0)
-                m_connection.m_socketChannel.read(data);
+            m_connection.readFully(data);
             data.flip();
 
             ELTProtoMessage reply = null;
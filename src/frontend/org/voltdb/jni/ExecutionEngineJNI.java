@@ -457,18 +457,48 @@ public class ExecutionEngineJNI extends ExecutionEngine {
 
     /**
      * Wrapper for {@link #nativeLoadTable(long, int, byte[], long, long, long, boolean)}.
+     * If the VoltTable is backed by a direct buffer (e.g., it was created by a
+     * {@link org.voltdb.VoltTableBuilder}), then we will hand the buffer's address
+     * to the EE using {@link #nativeLoadTableDirect(long, int, ByteBuffer, int, long, long, long, boolean)}
+     * instead of copying it into a byte array.
      */
     @Override
     public void loadTable(final int tableId, final VoltTable table,
         final long txnId, final long lastCommittedTxnId,
         final long undoToken, boolean allowELT) throws EEException
     {
-        byte[] serialized_table = table.getTableDataReference().array();
-        if (t) LOG.trace(String.format("Passing table into EE [id=%d, bytes=%s]", tableId, serialized_table.length));
-
-        final int errorCode = nativeLoadTable(pointer, tableId, serialized_table,
+        final ByteBuffer buffer = table.getTableDataReference();
+        final int errorCode;
+        if (buffer.isDirect()) {
+            if (t) LOG.trace(String.format("Passing direct table into EE [id=%d, bytes=%s]", tableId, buffer.limit()));
+            errorCode = nativeLoadTableDirect(pointer, tableId, buffer, buffer.limit(),
                                               txnId, lastCommittedTxnId,
                                               undoToken, allowELT);
+        } else {
+            byte[] serialized_table = buffer.array();
+            if (t) LOG.trace(String.format("Passing table into EE [id=%d, bytes=%s]", tableId, serialized_table.length));
+            errorCode = nativeLoadTable(pointer, tableId, serialized_table,
+                                        txnId, lastCommittedTxnId,
+                                        undoToken, allowELT);
+        }
+        checkErrorCode(errorCode);
+    }
+
+    /**
+     * Load a chunk that is already in the VoltTable serialization format without
+     * wrapping it in a VoltTable first. The chunk must be a direct buffer that
+     * starts at position zero.
+     */
+    @Override
+    public void loadTableChunk(final int tableId, final BBContainer chunk,
+        final long txnId, final long lastCommittedTxnId,
+        final long undoToken, boolean allowELT) throws EEException
+    {
+        assert(chunk.b.isDirect());
+        if (t) LOG.trace(String.format("Passing direct chunk into EE [id=%d, bytes=%s]", tableId, chunk.b.limit()));
+        final int errorCode = nativeLoadTableDirect(pointer, tableId, chunk.b, chunk.b.limit(),
+                                                    txnId, lastCommittedTxnId,
+                                                    undoToken, allowELT);
         checkErrorCode(errorCode);
     }
 
@@ -554,8 +584,8 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     }
 
     @Override
-    public boolean activateCopyOnWrite(int tableId) {
-        return nativeActivateCopyOnWrite( pointer, tableId);
+    public boolean activateCopyOnWrite(int tableId, int mode) {
+        return nativeActivateCopyOnWrite( pointer, tableId, mode);
     }
 
     @Override
@@ -17,6 +17,10 @@
 
 package org.voltdb.jni;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.voltdb.DependencyPair;
 import org.voltdb.DependencySet;
 import org.voltdb.ParameterSet;
@@ -29,11 +33,49 @@ import org.voltdb.elt.ELTProtoMessage;
 import org.voltdb.exceptions.EEException;
 import org.voltdb.utils.DBBPool.BBContainer;
 
+import edu.brown.hstore.HStoreConstants;
+
 public class MockExecutionEngine extends ExecutionEngine {
 
+    /**
+     * The number of tuples that loadTable() added to each table under each undo
+     * token that hasn't been released or undone yet. This works like the real EE's
+     * undo log so that tests can check what the undo/release calls would do to the data.
+     */
+    private final TreeMap<Long, Map<Integer, Integer>> undoLog = new TreeMap<Long, Map<Integer, Integer>>();
+    private final Map<Integer, Integer> released = new HashMap<Integer, Integer>();
+    
+    /**
+     * The same bookkeeping that the real EE's UndoLog uses to check that it is
+     * never asked to undo or release something that it no longer can
+     */
+    private long lastUndoToken = Long.MIN_VALUE;
+    private long lastReleaseToken = Long.MIN_VALUE;
+
     public MockExecutionEngine() {
         super(null);
     }
+    
+    /**
+     * Returns the number of tuples that have been loaded into the given table,
+     * including the ones whose undo token hasn't been released yet
+     */
+    public synchronized int getTupleCount(final int tableId) {
+        int count = getCount(this.released, tableId);
+        for (Map<Integer, Integer> m : this.undoLog.values()) {
+            count += getCount(m, tableId);
+        } // FOR
+        return (count);
+    }
+    
+    private static int getCount(final Map<Integer, Integer> m, final int tableId) {
+        final Integer count = m.get(tableId);
+        return (count != null ? count.intValue() : 0);
+    }
+    
+    private static void addCount(final Map<Integer, Integer> m, final int tableId, final int count) {
+        m.put(tableId, getCount(m, tableId) + count);
+    }
 
     @Override
     public DependencyPair executePlanFragment(final long planFragmentId, int outputDepId,
@@ -101,7 +143,23 @@ public class MockExecutionEngine extends ExecutionEngine {
         final long lastCommittedTxnId, final long undoToken, final boolean allowELT)
     throws EEException
     {
-        // TODO Auto-generated method stub
+        synchronized (this) {
+            if (undoToken == HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN) {
+                addCount(this.released, tableId, table.getRowCount());
+            } else {
+                if (undoToken > this.lastUndoToken) {
+                    assert(undoToken > this.lastReleaseToken) :
+                        String.format("Undo token %d was already released [lastRelease=%d]", undoToken, this.lastReleaseToken);
+                    this.lastUndoToken = undoToken;
+                }
+                Map<Integer, Integer> m = this.undoLog.get(undoToken);
+                if (m == null) {
+                    m = new HashMap<Integer, Integer>();
+                    this.undoLog.put(undoToken, m);
+                }
+                addCount(m, tableId, table.getRowCount());
+            }
+        } // SYNCH
     }
 
     @Override
@@ -110,9 +168,19 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public boolean releaseUndoToken(final long undoToken) {
-        // TODO Auto-generated method stub
-        return false;
+    public synchronized boolean releaseUndoToken(final long undoToken) {
+        assert(this.lastReleaseToken < undoToken) :
+            String.format("Releasing undo token %d more than once [lastRelease=%d]", undoToken, this.lastReleaseToken);
+        this.lastReleaseToken = undoToken;
+        // Releasing a token releases everything before it too
+        Map<Long, Map<Integer, Integer>> head = this.undoLog.headMap(undoToken, true);
+        for (Map<Integer, Integer> m : head.values()) {
+            for (Map.Entry<Integer, Integer> e : m.entrySet()) {
+                addCount(this.released, e.getKey(), e.getValue());
+            } // FOR
+        } // FOR
+        head.clear();
+        return true;
     }
 
     @Override
@@ -133,9 +201,15 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public boolean undoUndoToken(final long undoToken) {
-        // TODO Auto-generated method stub
-        return false;
+    public synchronized boolean undoUndoToken(final long undoToken) {
+        assert(this.lastReleaseToken < this.lastUndoToken) :
+            String.format("Nothing left to undo for undo token %d [lastUndo=%d, lastRelease=%d]",
+                          undoToken, this.lastUndoToken, this.lastReleaseToken);
+        if (undoToken > this.lastUndoToken) return true;
+        this.lastUndoToken = undoToken - 1;
+        // Undoing a token undoes everything after it too
+        this.undoLog.tailMap(undoToken, true).clear();
+        return true;
     }
 
     @Override
@@ -151,7 +225,7 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public boolean activateCopyOnWrite(int tableId) {
+    public boolean activateCopyOnWrite(int tableId, int mode) {
         // TODO Auto-generated method stub
         return false;
     }
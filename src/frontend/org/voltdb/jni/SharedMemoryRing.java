@@ -0,0 +1,291 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jni;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import sun.misc.Unsafe;
+
+/**
+ * Single-producer/single-consumer byte ring stored in a memory-mapped file that
+ * is shared with the voltdbipc process. ExecutionEngineIPC uses one ring for each
+ * direction in place of the socket. The ring is a plain byte stream, so messages
+ * larger than the ring are simply streamed through it.
+ *
+ * Each side spins on the ring's counters first. If nothing shows up, it sets its
+ * waiting flag and blocks on a one byte "doorbell" read from the control socket,
+ * which is the same as a futex wait/wake pair except that it works from Java.
+ * The other side only writes a doorbell byte if it sees the waiting flag.
+ * If the EE process dies, the doorbell read gets EOF instead of hanging forever.
+ *
+ * The layout must match src/ee/common/SharedMemoryRing.h. All of the header
+ * fields are in native byte order and are on separate cache lines.
+ */
+class SharedMemoryRing {
+
+    /** Total number of bytes ever written into the ring (int64) */
+    static final int HEAD_OFFSET = 0;
+    /** Total number of bytes ever read from the ring (int64) */
+    static final int TAIL_OFFSET = 64;
+    /** Set to one when the reader is about to block on the doorbell (int32) */
+    static final int READER_WAITING_OFFSET = 128;
+    /** Set to one when the writer is about to block on the doorbell (int32) */
+    static final int WRITER_WAITING_OFFSET = 192;
+    /** The ring's data starts after the header */
+    static final int HEADER_SIZE = 256;
+    /**
+     * The largest capacity that a ring can have. Both rings are in one mapping,
+     * which can't be bigger than Integer.MAX_VALUE bytes
+     */
+    static final int MAX_CAPACITY = 1 << 29;
+
+    /** How many times to poll the ring before we start yielding */
+    private static final int SPIN_LIMIT = 20000;
+    /** How many times to yield before we block on the doorbell */
+    private static final int YIELD_LIMIT = 100;
+
+    private static final Unsafe UNSAFE;
+    static {
+        try {
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            UNSAFE = (Unsafe)f.get(null);
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to access sun.misc.Unsafe", ex);
+        }
+    }
+
+    /**
+     * Returns the capacity in bytes of a ring that is the given number of
+     * megabytes rounded down to a power of two, and no bigger than MAX_CAPACITY
+     */
+    static int getCapacity(int sizeMB) {
+        long capacity = Long.highestOneBit(Math.max(1, sizeMB)) * 1024L * 1024L;
+        return ((int)Math.min(capacity, MAX_CAPACITY));
+    }
+
+    /**
+     * Returns the total number of bytes needed in the mapped file for two rings
+     * with the given capacity
+     */
+    static int getMappedSize(int capacity) {
+        assert(capacity > 0 && capacity <= MAX_CAPACITY) : "Invalid shared memory ring capacity " + capacity;
+        return (2 * (HEADER_SIZE + capacity));
+    }
+
+    private final long m_headAddress;
+    private final long m_tailAddress;
+    private final long m_readerWaitingAddress;
+    private final long m_writerWaitingAddress;
+    private final ByteBuffer m_data;
+    private final int m_capacity;
+    private final int m_mask;
+    private final SocketChannel m_doorbell;
+    private final ByteBuffer m_doorbellBuffer = ByteBuffer.allocate(1);
+
+    /**
+     * Attach to a ring that starts at the given offset of the mapped buffer.
+     * @param mapped The memory-mapped file shared with the EE
+     * @param offset Where this ring's header starts in the mapped file
+     * @param capacity Size of the ring's data. Must be a power of two
+     * @param doorbell Control socket used to wake up the other process
+     */
+    SharedMemoryRing(MappedByteBuffer mapped, int offset, int capacity, SocketChannel doorbell) {
+        assert(Integer.bitCount(capacity) == 1) : "Invalid ring capacity " + capacity;
+        assert(offset + HEADER_SIZE + capacity <= mapped.capacity());
+
+        long base = ((sun.nio.ch.DirectBuffer)mapped).address() + offset;
+        m_headAddress = base + HEAD_OFFSET;
+        m_tailAddress = base + TAIL_OFFSET;
+        m_readerWaitingAddress = base + READER_WAITING_OFFSET;
+        m_writerWaitingAddress = base + WRITER_WAITING_OFFSET;
+
+        ByteBuffer dup = mapped.duplicate();
+        dup.position(offset + HEADER_SIZE);
+        dup.limit(offset + HEADER_SIZE + capacity);
+        m_data = dup.slice();
+        m_capacity = capacity;
+        m_mask = capacity - 1;
+        m_doorbell = doorbell;
+    }
+
+    /**
+     * Clear out the ring's header. This must only be called before the
+     * other process has attached to the ring.
+     */
+    void reset() {
+        UNSAFE.putLongVolatile(null, m_headAddress, 0l);
+        UNSAFE.putLongVolatile(null, m_tailAddress, 0l);
+        UNSAFE.putIntVolatile(null, m_readerWaitingAddress, 0);
+        UNSAFE.putIntVolatile(null, m_writerWaitingAddress, 0);
+    }
+
+    /**
+     * Blocking write of all of the remaining bytes in the given buffer
+     * @param src
+     * @throws IOException
+     */
+    void write(final ByteBuffer src) throws IOException {
+        long head = UNSAFE.getLongVolatile(null, m_headAddress);
+        while (src.hasRemaining()) {
+            int free = (int)(m_capacity - (head - UNSAFE.getLongVolatile(null, m_tailAddress)));
+            if (free == 0) {
+                this.awaitSpace(head);
+                continue;
+            }
+            int index = (int)(head & m_mask);
+            int length = Math.min(Math.min(free, src.remaining()), m_capacity - index);
+
+            ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + length);
+            m_data.position(index);
+            m_data.put(chunk);
+            src.position(src.position() + length);
+
+            // Publish the new bytes. The volatile store is a full fence, so the
+            // reader either sees the new head or we see its waiting flag
+            head += length;
+            UNSAFE.putLongVolatile(null, m_headAddress, head);
+            if (UNSAFE.getIntVolatile(null, m_readerWaitingAddress) != 0) {
+                this.ring();
+            }
+        } // WHILE
+    }
+
+    /**
+     * Blocking write of a single byte
+     * @param value
+     * @throws IOException
+     */
+    void write(final int value) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        b.put((byte)value).flip();
+        this.write(b);
+    }
+
+    /**
+     * Blocking read until the given buffer has no bytes remaining.
+     * @param dst
+     * @throws IOException
+     */
+    void read(final ByteBuffer dst) throws IOException {
+        long tail = UNSAFE.getLongVolatile(null, m_tailAddress);
+        while (dst.hasRemaining()) {
+            int available = (int)(UNSAFE.getLongVolatile(null, m_headAddress) - tail);
+            if (available == 0) {
+                this.awaitData(tail);
+                continue;
+            }
+            int index = (int)(tail & m_mask);
+            int length = Math.min(Math.min(available, dst.remaining()), m_capacity - index);
+
+            ByteBuffer chunk = m_data.duplicate();
+            chunk.position(index);
+            chunk.limit(index + length);
+            dst.put(chunk);
+
+            tail += length;
+            UNSAFE.putLongVolatile(null, m_tailAddress, tail);
+            if (UNSAFE.getIntVolatile(null, m_writerWaitingAddress) != 0) {
+                this.ring();
+            }
+        } // WHILE
+    }
+
+    /**
+     * Blocking read of a single unsigned byte
+     * @return
+     * @throws IOException
+     */
+    int read() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        this.read(b);
+        return (b.get(0) & 0xff);
+    }
+
+    // ----------------------------------------------------------------------------
+    // WAITING
+    // ----------------------------------------------------------------------------
+
+    private boolean hasData(long tail) {
+        return (UNSAFE.getLongVolatile(null, m_headAddress) != tail);
+    }
+
+    private boolean hasSpace(long head) {
+        return (head - UNSAFE.getLongVolatile(null, m_tailAddress) < m_capacity);
+    }
+
+    private void awaitData(long tail) throws IOException {
+        for (int i = 0; i < SPIN_LIMIT; i++) {
+            if (this.hasData(tail)) return;
+        } // FOR
+        for (int i = 0; i < YIELD_LIMIT; i++) {
+            Thread.yield();
+            if (this.hasData(tail)) return;
+        } // FOR
+        while (true) {
+            UNSAFE.putIntVolatile(null, m_readerWaitingAddress, 1);
+            if (this.hasData(tail)) break;
+            this.sleep();
+        } // WHILE
+        UNSAFE.putIntVolatile(null, m_readerWaitingAddress, 0);
+    }
+
+    private void awaitSpace(long head) throws IOException {
+        for (int i = 0; i < SPIN_LIMIT; i++) {
+            if (this.hasSpace(head)) return;
+        } // FOR
+        for (int i = 0; i < YIELD_LIMIT; i++) {
+            Thread.yield();
+            if (this.hasSpace(head)) return;
+        } // FOR
+        while (true) {
+            UNSAFE.putIntVolatile(null, m_writerWaitingAddress, 1);
+            if (this.hasSpace(head)) break;
+            this.sleep();
+        } // WHILE
+        UNSAFE.putIntVolatile(null, m_writerWaitingAddress, 0);
+    }
+
+    /**
+     * Wake up the other process
+     */
+    private void ring() throws IOException {
+        m_doorbellBuffer.clear();
+        while (m_doorbellBuffer.hasRemaining()) {
+            m_doorbell.write(m_doorbellBuffer);
+        }
+    }
+
+    /**
+     * Block until the other process rings the doorbell. Wake ups may be spurious.
+     */
+    private void sleep() throws IOException {
+        m_doorbellBuffer.clear();
+        while (m_doorbellBuffer.hasRemaining()) {
+            if (m_doorbell.read(m_doorbellBuffer) == -1) {
+                throw new EOFException("IPC EE process closed the connection");
+            }
+        }
+    }
+}
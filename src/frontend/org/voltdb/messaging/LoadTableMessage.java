@@ -0,0 +1,60 @@
+package org.voltdb.messaging;
+
+import org.voltdb.VoltTable;
+import org.voltdb.utils.DBBPool;
+
+import com.google.protobuf.RpcCallback;
+
+/**
+ * A bulk loading request for a single partition. These are queued directly
+ * into a PartitionExecutor's work queue and are executed outside of any
+ * transaction, so the loaded tuples are never undo logged.
+ * This message is only used locally and is never sent over the wire.
+ */
+public class LoadTableMessage extends VoltMessage {
+
+    private final long clientHandle;
+    private final String tableName;
+    private final VoltTable data;
+    private final RpcCallback<byte[]> callback;
+
+    public LoadTableMessage(long clientHandle, String tableName, VoltTable data, RpcCallback<byte[]> callback) {
+        assert(tableName != null);
+        assert(data != null);
+        assert(callback != null);
+        this.clientHandle = clientHandle;
+        this.tableName = tableName;
+        this.data = data;
+        this.callback = callback;
+    }
+
+    public long getClientHandle() {
+        return (this.clientHandle);
+    }
+    public String getTableName() {
+        return (this.tableName);
+    }
+    public VoltTable getData() {
+        return (this.data);
+    }
+    public RpcCallback<byte[]> getCallback() {
+        return (this.callback);
+    }
+
+    @Override
+    protected void flattenToBuffer(DBBPool pool) {} // can be empty if only used locally
+    @Override
+    protected void initFromBuffer() {} // can be empty if only used locally
+
+    @Override
+    public byte getSubject() {
+        return Subject.DEFAULT.getId();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[table=%s, tuples=%d, clientHandle=%d]",
+                             this.getClass().getSimpleName(), this.tableName,
+                             this.data.getRowCount(), this.clientHandle);
+    }
+}
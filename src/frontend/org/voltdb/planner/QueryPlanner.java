@@ -225,7 +225,7 @@ public class QueryPlanner {
                     break;
 
                 // run the set of microptimizations, which may return many plans (or not)
-                List<CompiledPlan> optimizedPlans = MicroOptimizationRunner.applyAll(rawplan);
+                List<CompiledPlan> optimizedPlans = MicroOptimizationRunner.applyAll(rawplan, m_db);
 
                 // iterate through the subset of plans
                 for (CompiledPlan plan : optimizedPlans) {
@@ -23,15 +23,19 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
 import org.voltdb.plannodes.ReceivePlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 
 /**
@@ -291,7 +295,13 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
             retval = nlijNode;
         }
         else {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
+            // Use a hash join instead of scanning the inner table for every outer
+            // tuple if the tables are joined on at least one equality clause
+            NestLoopPlanNode nljNode = null;
+            if ((joinClauses != null) && (joinClauses.size() > 0))
+                nljNode = getHashJoinPlanNode(joinOrder[0], joinClauses);
+            if (nljNode == null)
+                nljNode = new NestLoopPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
             if ((joinClauses != null) && (joinClauses.size() > 0))
                 nljNode.setPredicate(ExpressionUtil.combine(joinClauses));
             nljNode.setJoinType(JoinType.LEFT);
@@ -316,6 +326,72 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return retval;
     }
 
+    /**
+     * Create a HashJoinPlanNode keyed on all of the clauses that compare a column of the
+     * outer table to a column of one of the inner tables for equality. The inner table is
+     * the one that gets hashed, so the outer table's scan is the probe side.
+     *
+     * @param outerTable The table whose scan will be the first child of the join.
+     * @param joinClauses The clauses that join the outer table to the inner tables.
+     * @return A HashJoinPlanNode with its join keys set, or null if none of the
+     * clauses can be used as a join key.
+     */
+    private HashJoinPlanNode getHashJoinPlanNode(Table outerTable, List<AbstractExpression> joinClauses) {
+        HashJoinPlanNode hjNode = null;
+        for (AbstractExpression expr : joinClauses) {
+            if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL)
+                continue;
+            if (!(expr.getLeft() instanceof TupleValueExpression) || !(expr.getRight() instanceof TupleValueExpression))
+                continue;
+
+            TupleValueExpression outerKey = (TupleValueExpression)expr.getLeft();
+            TupleValueExpression innerKey = (TupleValueExpression)expr.getRight();
+            if (!outerKey.getTableName().equalsIgnoreCase(outerTable.getTypeName())) {
+                outerKey = (TupleValueExpression)expr.getRight();
+                innerKey = (TupleValueExpression)expr.getLeft();
+            }
+            if (!outerKey.getTableName().equalsIgnoreCase(outerTable.getTypeName()) ||
+                innerKey.getTableName().equalsIgnoreCase(outerTable.getTypeName()))
+                continue;
+            if (!isHashJoinKeyCompatible(outerKey.getValueType(), innerKey.getValueType()))
+                continue;
+
+            if (hjNode == null)
+                hjNode = new HashJoinPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
+            try {
+                hjNode.addJoinKey(ExpressionUtil.clone(outerKey), ExpressionUtil.clone(innerKey));
+            } catch (Exception e) {
+                e.printStackTrace();
+                return (null);
+            }
+        }
+        return hjNode;
+    }
+
+    /**
+     * The EE can only hash values that are going to compare as equal to the same bucket,
+     * which means that both sides of the key have to be the same type or both be integers.
+     */
+    private static boolean isHashJoinKeyCompatible(VoltType outerType, VoltType innerType) {
+        if (outerType == null || innerType == null)
+            return false;
+        if (outerType == innerType)
+            return outerType != VoltType.FLOAT;
+        return isIntegerType(outerType) && isIntegerType(innerType);
+    }
+
+    private static boolean isIntegerType(VoltType type) {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * For each table in the list, compute the set of all valid access paths that will get
      * tuples that match the right predicate (assuming there is a predicate).
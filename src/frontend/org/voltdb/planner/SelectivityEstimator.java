@@ -0,0 +1,156 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
+import org.voltdb.catalog.Table;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.IndexLookupType;
+
+/**
+ * Estimates the fraction of a table's tuples that will satisfy a predicate or
+ * an index lookup. When the DatabaseEstimates have the number of distinct
+ * values for a column from the workload statistics, an equality on that column
+ * selects one of them. Otherwise we fall back on unique indexes and then on
+ * the usual textbook constants.
+ */
+public abstract class SelectivityEstimator {
+
+    public static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+    public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3.0;
+    public static final double DEFAULT_LIKE_SELECTIVITY = 0.25;
+    public static final double DEFAULT_SELECTIVITY = 0.5;
+
+    /**
+     * Returns the fraction of tuples for which the given predicate is true
+     * @param db
+     * @param estimates
+     * @param predicate
+     * @return
+     */
+    public static double getSelectivity(Database db, DatabaseEstimates estimates, AbstractExpression predicate) {
+        if (predicate == null) return (1.0);
+
+        double left, right;
+        switch (predicate.getExpressionType()) {
+            case CONJUNCTION_AND:
+                left = getSelectivity(db, estimates, predicate.getLeft());
+                right = getSelectivity(db, estimates, predicate.getRight());
+                return (left * right);
+            case CONJUNCTION_OR:
+                left = getSelectivity(db, estimates, predicate.getLeft());
+                right = getSelectivity(db, estimates, predicate.getRight());
+                return (Math.min(1.0, left + right - (left * right)));
+            case OPERATOR_NOT:
+                return (1.0 - getSelectivity(db, estimates, predicate.getLeft()));
+            case COMPARE_EQUAL:
+                return (getEqualitySelectivity(db, estimates, predicate.getLeft(), predicate.getRight()));
+            case COMPARE_NOTEQUAL:
+                return (1.0 - getEqualitySelectivity(db, estimates, predicate.getLeft(), predicate.getRight()));
+            case COMPARE_LESSTHAN:
+            case COMPARE_GREATERTHAN:
+            case COMPARE_LESSTHANOREQUALTO:
+            case COMPARE_GREATERTHANOREQUALTO:
+                return (DEFAULT_RANGE_SELECTIVITY);
+            case COMPARE_LIKE:
+                return (DEFAULT_LIKE_SELECTIVITY);
+            default:
+                return (DEFAULT_SELECTIVITY);
+        } // SWITCH
+    }
+
+    /**
+     * Returns the fraction of tuples that will be returned by a lookup on the given
+     * index using the first numKeys columns. All but the last key column are
+     * equality lookups. The last one is a range lookup unless the lookupType is EQ.
+     * @param db
+     * @param estimates
+     * @param catalog_idx
+     * @param numKeys
+     * @param lookupType
+     * @return
+     */
+    public static double getIndexSelectivity(Database db, DatabaseEstimates estimates, Index catalog_idx, int numKeys, IndexLookupType lookupType) {
+        if (numKeys == 0) return (1.0);
+
+        Table catalog_tbl = (Table)catalog_idx.getParent();
+        ColumnRef colrefs[] = new ColumnRef[catalog_idx.getColumns().size()];
+        for (ColumnRef colref : catalog_idx.getColumns()) {
+            colrefs[colref.getIndex()] = colref;
+        } // FOR
+
+        // A lookup on every column of a unique index returns at most one tuple
+        long numTuples = Math.max(1, estimates.getEstimatesForTable(catalog_tbl.getTypeName()).maxTuples);
+        if (catalog_idx.getUnique() && numKeys == colrefs.length && lookupType == IndexLookupType.EQ) {
+            return (1.0 / numTuples);
+        }
+
+        double selectivity = 1.0;
+        for (int i = 0; i < numKeys && i < colrefs.length; i++) {
+            if (i + 1 == numKeys && lookupType != IndexLookupType.EQ) {
+                selectivity *= DEFAULT_RANGE_SELECTIVITY;
+            } else {
+                selectivity *= getColumnEqualitySelectivity(db, estimates, catalog_tbl, colrefs[i].getColumn().getTypeName());
+            }
+        } // FOR
+        return (Math.max(selectivity, 1.0 / numTuples));
+    }
+
+    /**
+     * Equality between two expressions. If both sides are columns (i.e., a join) then
+     * we use the column with more distinct values, otherwise we use whatever column
+     * is being compared against a constant or parameter.
+     */
+    private static double getEqualitySelectivity(Database db, DatabaseEstimates estimates, AbstractExpression left, AbstractExpression right) {
+        double selectivity = 1.0;
+        boolean found = false;
+        for (AbstractExpression exp : new AbstractExpression[]{ left, right }) {
+            if ((exp instanceof TupleValueExpression) == false) continue;
+            TupleValueExpression tve = (TupleValueExpression)exp;
+            Table catalog_tbl = db.getTables().getIgnoreCase(tve.getTableName());
+            if (catalog_tbl == null) continue;
+            selectivity = Math.min(selectivity, getColumnEqualitySelectivity(db, estimates, catalog_tbl, tve.getColumnName()));
+            found = true;
+        } // FOR
+        return (found ? selectivity : DEFAULT_EQUALITY_SELECTIVITY);
+    }
+
+    /**
+     * Equality between a column and a single value.
+     */
+    private static double getColumnEqualitySelectivity(Database db, DatabaseEstimates estimates, Table catalog_tbl, String columnName) {
+        DatabaseEstimates.TableEstimates tableEst = estimates.getEstimatesForTable(catalog_tbl.getTypeName());
+        Long distinct = tableEst.distinctValues.get(columnName);
+        if (distinct != null && distinct > 0) {
+            return (1.0 / distinct);
+        }
+
+        // Every tuple has its own value if the column is a unique index by itself
+        for (Index catalog_idx : catalog_tbl.getIndexes()) {
+            if (catalog_idx.getUnique() && catalog_idx.getColumns().size() == 1 &&
+                catalog_idx.getColumns().get(0).getColumn().getTypeName().equalsIgnoreCase(columnName)) {
+                return (1.0 / Math.max(1, tableEst.maxTuples));
+            }
+        } // FOR
+        return (DEFAULT_EQUALITY_SELECTIVITY);
+    }
+}
@@ -0,0 +1,59 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * A cost model that weighs all of the work in the PlanStatistics instead of just
+ * the number of tuples read. The plan nodes compute these statistics from the
+ * table cardinalities and column selectivities in the DatabaseEstimates, so
+ * this is only as good as the statistics that the planner was given.
+ */
+public class StatisticsCostModel extends AbstractCostModel {
+
+    /**
+     * The relative cost of each unit of work
+     */
+    private static final HashMap<StatsField, Double> WEIGHTS = new HashMap<StatsField, Double>();
+    static {
+        WEIGHTS.put(StatsField.TUPLES_READ, 1.0);
+        WEIGHTS.put(StatsField.TUPLES_WRITTEN, 2.0);
+        WEIGHTS.put(StatsField.TREE_INDEX_LEVELS_TRAVERSED, 1.0);
+        WEIGHTS.put(StatsField.HASH_VALUES_COMPUTED, 0.5);
+        WEIGHTS.put(StatsField.MESSAGES_SENT, 1000.0);
+        WEIGHTS.put(StatsField.BYTES_SENT, 0.01);
+    }
+
+    @Override
+    public double getPlanCost(PlanStatistics stats) {
+        double cost = 0;
+
+        for (int i = 0; i < stats.getLevelCount(); i++) {
+            HashMap<StatsField, Long> level = stats.getStatisticsForLevel(i);
+            for (Entry<StatsField, Long> e : level.entrySet()) {
+                Double weight = WEIGHTS.get(e.getKey());
+                if (weight != null) cost += weight * e.getValue();
+            }
+        }
+
+        return cost;
+    }
+
+}
@@ -0,0 +1,122 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner.microoptimizations;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
+import org.voltdb.catalog.Table;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.TupleAddressExpression;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.planner.CompiledPlan;
+import org.voltdb.planner.PlanColumn;
+import org.voltdb.planner.PlannerContext;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.DistinctPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+import edu.brown.expressions.ExpressionUtil;
+import edu.brown.plannodes.PlanNodeUtil;
+
+/**
+ * Mark the index scans where every column that the scan reads is part of
+ * the index's key. The EE can then copy the values out of the index entries
+ * instead of following them to the tuples in the table.
+ */
+public class IndexOnlyScans implements MicroOptimization {
+
+    @Override
+    public List<CompiledPlan> apply(CompiledPlan plan, Database db) {
+        ArrayList<CompiledPlan> retval = new ArrayList<CompiledPlan>();
+
+        for (CompiledPlan.Fragment fragment : plan.fragments) {
+            for (IndexScanPlanNode scan : PlanNodeUtil.getPlanNodes(fragment.planGraph, IndexScanPlanNode.class)) {
+                scan.setIndexOnly(isCoveredByIndex(scan, db));
+            } // FOR
+        } // FOR
+
+        retval.add(plan);
+        return retval;
+    }
+
+    /**
+     * Returns true if all of the columns of the target table that are
+     * referenced by the scan's predicates, inline nodes, and output
+     * columns are in the key of the scan's index.
+     * @param scan
+     * @param db
+     * @return
+     */
+    boolean isCoveredByIndex(IndexScanPlanNode scan, Database db) {
+        // The inline aggregate remembers where the tuple lives in the table
+        if (scan.getInlinePlanNode(PlanNodeType.AGGREGATE) != null)
+            return false;
+
+        Table catalog_tbl = db.getTables().getIgnoreCase(scan.getTargetTableName());
+        if (catalog_tbl == null)
+            return false;
+        Index catalog_idx = catalog_tbl.getIndexes().getIgnoreCase(scan.getTargetIndexName());
+        if (catalog_idx == null)
+            return false;
+        Set<String> keyColumns = new HashSet<String>();
+        for (ColumnRef colRef : catalog_idx.getColumns()) {
+            keyColumns.add(colRef.getColumn().getName().toUpperCase());
+        } // FOR
+
+        // Gather up every expression that gets evaluated against the tuples
+        // that come out of the index. The search key expressions are not
+        // here because they are evaluated before we ever touch the index.
+        List<AbstractExpression> exps = new ArrayList<AbstractExpression>();
+        exps.add(scan.getPredicate());
+        exps.add(scan.getEndExpression());
+        AbstractPlanNode projection = scan.getInlinePlanNode(PlanNodeType.PROJECTION);
+        for (Integer guid : (projection != null ? projection : scan).getOutputColumnGUIDs()) {
+            PlanColumn column = PlannerContext.singleton().get(guid);
+            if (column != null) exps.add(column.getExpression());
+        } // FOR
+        DistinctPlanNode distinct = scan.getInlinePlanNode(PlanNodeType.DISTINCT);
+        if (distinct != null && distinct.getDistinctColumnGuid() != null) {
+            PlanColumn column = PlannerContext.singleton().get(distinct.getDistinctColumnGuid());
+            if (column != null) exps.add(column.getExpression());
+        }
+
+        for (AbstractExpression exp : exps) {
+            if (exp == null)
+                continue;
+            // DELETEs and UPDATEs need the address of the real tuple
+            if (ExpressionUtil.getExpressions(exp, TupleAddressExpression.class).isEmpty() == false)
+                return false;
+            for (TupleValueExpression tve : ExpressionUtil.getExpressions(exp, TupleValueExpression.class)) {
+                if (tve.getTableName() != null &&
+                    tve.getTableName().equalsIgnoreCase(catalog_tbl.getName()) == false)
+                    continue;
+                if (keyColumns.contains(tve.getColumnName().toUpperCase()) == false)
+                    return false;
+            } // FOR
+        } // FOR
+        return true;
+    }
+
+}
@@ -20,6 +20,7 @@ package org.voltdb.planner.microoptimizations;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.voltdb.catalog.Database;
 import org.voltdb.planner.CompiledPlan;
 
 public class MicroOptimizationRunner {
@@ -28,10 +29,12 @@ public class MicroOptimizationRunner {
     static ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
     static {
         optimizations.add(new PushdownLimitsIntoScans());
+        optimizations.add(new PushdownLimitsIntoOrderBys());
+        optimizations.add(new IndexOnlyScans());
         // optimizations.add(new PushdownReceiveDominators());
     }
 
-    public static List<CompiledPlan> applyAll(CompiledPlan plan) {
+    public static List<CompiledPlan> applyAll(CompiledPlan plan, Database db) {
         ArrayList<CompiledPlan> input = new ArrayList<CompiledPlan>();
         ArrayList<CompiledPlan> retval = new ArrayList<CompiledPlan>();
 
@@ -46,7 +49,7 @@ public class MicroOptimizationRunner {
             retval.clear();
 
             for (CompiledPlan inPlan : input) {
-                List<CompiledPlan> newPlans = opt.apply(inPlan);
+                List<CompiledPlan> newPlans = opt.apply(inPlan, db);
                 assert(newPlans != null);
                 assert(newPlans.size() >= 1);
                 retval.addAll(newPlans);
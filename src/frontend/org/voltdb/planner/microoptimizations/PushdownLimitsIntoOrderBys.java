@@ -0,0 +1,98 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner.microoptimizations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.voltdb.catalog.Database;
+import org.voltdb.planner.CompiledPlan;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.DistinctPlanNode;
+import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.plannodes.OrderByPlanNode;
+import org.voltdb.plannodes.ProjectionPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+/**
+ * Inline a LIMIT into the ORDER BY or DISTINCT below it. The EE then only
+ * keeps the top N tuples while sorting instead of sorting the entire input,
+ * and a DISTINCT stops as soon as it has found enough unique values.
+ */
+public class PushdownLimitsIntoOrderBys implements MicroOptimization {
+
+    @Override
+    public List<CompiledPlan> apply(CompiledPlan plan, Database db) {
+        ArrayList<CompiledPlan> retval = new ArrayList<CompiledPlan>();
+
+        AbstractPlanNode planGraph = plan.fragments.get(0).planGraph;
+        planGraph = recursivelyApply(planGraph);
+        plan.fragments.get(0).planGraph = planGraph;
+
+        retval.add(plan);
+        return retval;
+    }
+
+    AbstractPlanNode recursivelyApply(AbstractPlanNode plan) {
+        assert(plan != null);
+
+        // depth first:
+        //     find LimitPlanNodes with exactly one child
+        //     where that child (skipping over any projections, since
+        //     they don't change the number of tuples) is an
+        //     OrderByPlanNode or a DistinctPlanNode
+        //     disconnect the LimitPlanNode
+        //     and inline the LimitPlanNode in to that node
+
+        ArrayList<AbstractPlanNode> children = new ArrayList<AbstractPlanNode>();
+        for (int i = 0; i < plan.getChildPlanNodeCount(); i++)
+            children.add(plan.getChild(i));
+        plan.clearChildren();
+
+        for (AbstractPlanNode child : children) {
+            // TODO this will break when children feed multiple parents
+            child = recursivelyApply(child);
+            child.clearParents();
+            plan.addAndLinkChild(child);
+        }
+
+        if ((plan instanceof LimitPlanNode) == false)
+            return plan;
+
+        if (plan.getChildPlanNodeCount() != 1)
+            return plan;
+
+        AbstractPlanNode child = plan.getChild(0);
+        AbstractPlanNode target = child;
+        while (target instanceof ProjectionPlanNode && target.getChildPlanNodeCount() == 1)
+            target = target.getChild(0);
+        if ((target instanceof OrderByPlanNode) == false &&
+            (target instanceof DistinctPlanNode) == false)
+            return plan;
+        if (target.getInlinePlanNode(PlanNodeType.LIMIT) != null)
+            return plan;
+
+        plan.clearChildren();
+        child.clearParents();
+        plan.setOutputColumns(target.getOutputColumnGUIDs());
+        target.addInlinePlanNode(plan);
+
+        return child;
+    }
+
+}
@@ -20,6 +20,7 @@ package org.voltdb.planner.microoptimizations;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.voltdb.catalog.Database;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.DistinctPlanNode;
@@ -28,7 +29,7 @@ import org.voltdb.types.PlanNodeType;
 public class PushdownReceiveDominators implements MicroOptimization {
 
     @Override
-    public List<CompiledPlan> apply(CompiledPlan plan) {
+    public List<CompiledPlan> apply(CompiledPlan plan, Database db) {
 
         ArrayList<CompiledPlan> retval = new ArrayList<CompiledPlan>();
 
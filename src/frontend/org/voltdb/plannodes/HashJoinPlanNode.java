@@ -0,0 +1,171 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.json.JSONStringer;
+import org.voltdb.catalog.Database;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.planner.PlanStatistics;
+import org.voltdb.planner.PlannerContext;
+import org.voltdb.planner.StatsField;
+import org.voltdb.types.PlanNodeType;
+
+/**
+ * An equi-join between two input tables. Instead of scanning the inner table once
+ * for every outer tuple, the EE builds a hash table on the inner table's join key
+ * values and then probes it with the key values of each outer tuple. The full join
+ * predicate is still evaluated on every pair of tuples whose keys match, so the
+ * keys only have to be a subset of the equality clauses in the predicate.
+ */
+public class HashJoinPlanNode extends NestLoopPlanNode {
+
+    public enum Members {
+        OUTER_KEYS,
+        INNER_KEYS;
+    }
+
+    // The expressions evaluated on the outer (first child) and inner (second child)
+    // tables to compute the join key. They are matched up by their position.
+    private List<AbstractExpression> m_outerKeys = new ArrayList<AbstractExpression>();
+    private List<AbstractExpression> m_innerKeys = new ArrayList<AbstractExpression>();
+
+    /**
+     * @param id
+     */
+    public HashJoinPlanNode(PlannerContext context, Integer id) {
+        super(context, id);
+    }
+
+    @Override
+    public Object clone(boolean clone_children, boolean clone_inline) throws CloneNotSupportedException {
+        HashJoinPlanNode clone = (HashJoinPlanNode)super.clone(clone_children, clone_inline);
+        clone.m_outerKeys = new ArrayList<AbstractExpression>();
+        for (AbstractExpression exp : this.m_outerKeys) {
+            clone.m_outerKeys.add((AbstractExpression)exp.clone());
+        }
+        clone.m_innerKeys = new ArrayList<AbstractExpression>();
+        for (AbstractExpression exp : this.m_innerKeys) {
+            clone.m_innerKeys.add((AbstractExpression)exp.clone());
+        }
+        return (clone);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ((obj instanceof HashJoinPlanNode) == false) {
+            return (false);
+        }
+        HashJoinPlanNode other = (HashJoinPlanNode)obj;
+        if (this.m_outerKeys.equals(other.m_outerKeys) == false) return (false);
+        if (this.m_innerKeys.equals(other.m_innerKeys) == false) return (false);
+        return super.equals(obj);
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+
+        if (m_outerKeys.isEmpty()) {
+            throw new Exception("ERROR: There were no join key expressions defined for " + this);
+        }
+        if (m_outerKeys.size() != m_innerKeys.size()) {
+            throw new Exception("ERROR: The number of outer and inner join key expressions do not match for " + this);
+        }
+        for (AbstractExpression exp : m_outerKeys) {
+            exp.validate();
+        }
+        for (AbstractExpression exp : m_innerKeys) {
+            exp.validate();
+        }
+    }
+
+    /**
+     * Each outer and inner tuple only has to be read and hashed once
+     */
+    @Override
+    protected void computeJoinEstimates(PlanStatistics stats, long outerTuples, long innerTuples) {
+        stats.incrementStatistic(0, StatsField.TUPLES_READ, outerTuples + innerTuples);
+        stats.incrementStatistic(0, StatsField.HASH_VALUES_COMPUTED, outerTuples + innerTuples);
+    }
+
+    /**
+     * Add a pair of expressions that must be equal for an outer and an inner tuple to join
+     * @param outerKey
+     * @param innerKey
+     */
+    public void addJoinKey(AbstractExpression outerKey, AbstractExpression innerKey) {
+        m_outerKeys.add(outerKey);
+        m_innerKeys.add(innerKey);
+    }
+
+    /**
+     * @return the outer join key expressions
+     */
+    public List<AbstractExpression> getOuterKeys() {
+        return m_outerKeys;
+    }
+
+    /**
+     * @return the inner join key expressions
+     */
+    public List<AbstractExpression> getInnerKeys() {
+        return m_innerKeys;
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_KEYS.name()).array();
+        for (AbstractExpression ae : m_outerKeys) {
+            assert (ae instanceof JSONString);
+            stringer.value(ae);
+        }
+        stringer.endArray();
+        stringer.key(Members.INNER_KEYS.name()).array();
+        for (AbstractExpression ae : m_innerKeys) {
+            assert (ae instanceof JSONString);
+            stringer.value(ae);
+        }
+        stringer.endArray();
+    }
+
+    @Override
+    protected void loadFromJSONObject(JSONObject obj, Database db) throws JSONException {
+        super.loadFromJSONObject(obj, db);
+        JSONArray outerKeys = obj.getJSONArray(Members.OUTER_KEYS.name());
+        for (int ii = 0; ii < outerKeys.length(); ii++) {
+            m_outerKeys.add(AbstractExpression.fromJSONObject(outerKeys.getJSONObject(ii), db));
+        }
+        JSONArray innerKeys = obj.getJSONArray(Members.INNER_KEYS.name());
+        for (int ii = 0; ii < innerKeys.length(); ii++) {
+            m_innerKeys.add(AbstractExpression.fromJSONObject(innerKeys.getJSONObject(ii), db));
+        }
+    }
+}
@@ -27,12 +27,14 @@ import org.json.JSONString;
 import org.json.JSONStringer;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
 import org.voltdb.catalog.Table;
 import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.ScalarValueHints;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.planner.PlanStatistics;
 import org.voltdb.planner.PlannerContext;
+import org.voltdb.planner.SelectivityEstimator;
 import org.voltdb.planner.StatsField;
 import org.voltdb.types.IndexLookupType;
 import org.voltdb.types.PlanNodeType;
@@ -48,6 +50,7 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         END_EXPRESSION,
         SEARCHKEY_EXPRESSIONS,
         KEY_ITERATE,
+        INDEX_ONLY,
         LOOKUP_TYPE,
         SORT_DIRECTION;
     }
@@ -74,6 +77,10 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
     // ???
     private Boolean m_keyIterate = false;
 
+    // All of the columns that this scan reads are in the index key, so the EE
+    // can take their values from the index instead of from the table's tuples
+    private boolean m_indexOnly = false;
+
     // The overall index lookup operation type
     private IndexLookupType m_lookupType = IndexLookupType.EQ;
 
@@ -139,6 +146,22 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         return m_keyIterate;
     }
 
+    /**
+     *
+     * @param indexOnly
+     */
+    public void setIndexOnly(boolean indexOnly) {
+        m_indexOnly = indexOnly;
+    }
+
+    /**
+     *
+     * @return Can this scan read everything it needs from the index key
+     */
+    public boolean isIndexOnly() {
+        return m_indexOnly;
+    }
+
     /**
      *
      * @return The type of this lookup.
@@ -211,8 +234,19 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         assert(target != null);
         DatabaseEstimates.TableEstimates tableEstimates = estimates.getEstimatesForTable(target.getTypeName());
         stats.incrementStatistic(0, StatsField.TREE_INDEX_LEVELS_TRAVERSED, (long)(Math.log(tableEstimates.maxTuples)));
-        stats.incrementStatistic(0, StatsField.TUPLES_READ, 1);
-        m_estimatedOutputTupleCount = 1;
+
+        // The number of tuples that we have to look at depends on how many of the
+        // index's columns that we have search keys for
+        double selectivity = 1.0;
+        Index catalog_idx = target.getIndexes().getIgnoreCase(m_targetIndexName);
+        if (catalog_idx != null) {
+            selectivity = SelectivityEstimator.getIndexSelectivity(db, estimates, catalog_idx, m_searchkeyExpressions.size(), m_lookupType);
+        }
+        long tuplesRead = Math.max(1, (long)Math.ceil(tableEstimates.maxTuples * selectivity));
+        stats.incrementStatistic(0, StatsField.TUPLES_READ, tuplesRead);
+
+        selectivity = SelectivityEstimator.getSelectivity(db, estimates, m_predicate);
+        m_estimatedOutputTupleCount = Math.max(1, (long)Math.ceil(tuplesRead * selectivity));
         return true;
     }
 
@@ -220,6 +254,7 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
     public void toJSONString(JSONStringer stringer) throws JSONException {
         super.toJSONString(stringer);
         stringer.key(Members.KEY_ITERATE.name()).value(m_keyIterate);
+        stringer.key(Members.INDEX_ONLY.name()).value(m_indexOnly);
         stringer.key(Members.LOOKUP_TYPE.name()).value(m_lookupType.toString());
         stringer.key(Members.SORT_DIRECTION.name()).value(m_sortDirection.toString());
         stringer.key(Members.TARGET_INDEX_NAME.name()).value(m_targetIndexName);
@@ -238,6 +273,7 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
     protected void loadFromJSONObject(JSONObject obj, Database db) throws JSONException {
         super.loadFromJSONObject(obj, db);
         m_keyIterate = obj.getBoolean(Members.KEY_ITERATE.name());
+        m_indexOnly = obj.optBoolean(Members.INDEX_ONLY.name(), false);
         m_lookupType = IndexLookupType.valueOf(obj.getString(Members.LOOKUP_TYPE.name()));
         m_targetIndexName = obj.getString(Members.TARGET_INDEX_NAME.name());
         JSONObject endExpressionObject = null;
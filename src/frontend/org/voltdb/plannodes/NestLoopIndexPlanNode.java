@@ -18,9 +18,17 @@
 package org.voltdb.plannodes;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
 
+import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.planner.PlanStatistics;
 import org.voltdb.planner.PlannerContext;
+import org.voltdb.planner.SelectivityEstimator;
+import org.voltdb.planner.StatsField;
 import org.voltdb.types.PlanNodeType;
 
 /**
@@ -51,6 +59,31 @@ public class NestLoopIndexPlanNode extends AbstractJoinPlanNode {
         return (ArrayList<Integer>) input.clone();
     }
 
+    @Override
+    public boolean computeEstimatesRecursively(PlanStatistics stats, Cluster cluster, Database db, DatabaseEstimates estimates, ScalarValueHints[] paramHints) {
+        // Compute the outer side like everybody else
+        boolean result = super.computeEstimatesRecursively(stats, cluster, db, estimates, paramHints);
+        assert(result);
+        long outerTuples = m_estimatedOutputTupleCount;
+
+        // Then the inline IndexScanPlanNode gets executed once per outer tuple
+        IndexScanPlanNode inlineScan = (IndexScanPlanNode) m_inlineNodes.get(PlanNodeType.INDEXSCAN);
+        assert(inlineScan != null);
+        PlanStatistics probeStats = new PlanStatistics();
+        result = inlineScan.computeEstimatesRecursively(probeStats, cluster, db, estimates, paramHints);
+        assert(result);
+        for (int level = 0; level < probeStats.getLevelCount(); level++) {
+            HashMap<StatsField, Long> levelStats = probeStats.getStatisticsForLevel(level);
+            for (Entry<StatsField, Long> e : levelStats.entrySet()) {
+                stats.incrementStatistic(level, e.getKey(), (long)Math.min(Long.MAX_VALUE, (double)outerTuples * e.getValue()));
+            } // FOR
+        } // FOR
+
+        double selectivity = SelectivityEstimator.getSelectivity(db, estimates, m_predicate);
+        m_estimatedOutputTupleCount = Math.max(1, (long)Math.ceil((double)outerTuples * inlineScan.m_estimatedOutputTupleCount * selectivity));
+        return true;
+    }
+
     @Override
     public void validate() throws Exception {
         super.validate();
@@ -17,7 +17,14 @@
 
 package org.voltdb.plannodes;
 
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.planner.PlanStatistics;
 import org.voltdb.planner.PlannerContext;
+import org.voltdb.planner.SelectivityEstimator;
+import org.voltdb.planner.StatsField;
 import org.voltdb.types.PlanNodeType;
 
 /**
@@ -36,4 +43,34 @@ public class NestLoopPlanNode extends AbstractJoinPlanNode {
         return PlanNodeType.NESTLOOP;
     }
 
+    @Override
+    public boolean computeEstimatesRecursively(PlanStatistics stats, Cluster cluster, Database db, DatabaseEstimates estimates, ScalarValueHints[] paramHints) {
+        assert(estimates != null);
+        assert(m_children.size() == 2);
+
+        m_outputColumnHints.clear();
+        for (AbstractPlanNode child : m_children) {
+            boolean result = child.computeEstimatesRecursively(stats, cluster, db, estimates, paramHints);
+            assert(result);
+            m_outputColumnHints.addAll(child.m_outputColumnHints);
+        }
+        long outerTuples = m_children.get(0).m_estimatedOutputTupleCount;
+        long innerTuples = m_children.get(1).m_estimatedOutputTupleCount;
+        this.computeJoinEstimates(stats, outerTuples, innerTuples);
+
+        double selectivity = SelectivityEstimator.getSelectivity(db, estimates, m_predicate);
+        m_estimatedOutputTupleCount = Math.max(1, (long)Math.ceil((double)outerTuples * innerTuples * selectivity));
+        return true;
+    }
+
+    /**
+     * Add the work needed to join the given number of outer and inner tuples.
+     * We compare every outer tuple against every inner tuple.
+     * @param stats
+     * @param outerTuples
+     * @param innerTuples
+     */
+    protected void computeJoinEstimates(PlanStatistics stats, long outerTuples, long innerTuples) {
+        stats.incrementStatistic(0, StatsField.TUPLES_READ, (long)Math.min(Long.MAX_VALUE, (double)outerTuples * innerTuples));
+    }
 }
@@ -24,6 +24,7 @@ import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.ScalarValueHints;
 import org.voltdb.planner.PlanStatistics;
 import org.voltdb.planner.PlannerContext;
+import org.voltdb.planner.SelectivityEstimator;
 import org.voltdb.planner.StatsField;
 import org.voltdb.types.PlanNodeType;
 
@@ -49,7 +50,8 @@ public class SeqScanPlanNode extends AbstractScanPlanNode {
         assert(target != null);
         DatabaseEstimates.TableEstimates tableEstimates = estimates.getEstimatesForTable(target.getTypeName());
         stats.incrementStatistic(0, StatsField.TUPLES_READ, tableEstimates.maxTuples);
-        m_estimatedOutputTupleCount = tableEstimates.maxTuples;
+        double selectivity = SelectivityEstimator.getSelectivity(db, estimates, m_predicate);
+        m_estimatedOutputTupleCount = Math.max(1, (long)Math.ceil(tableEstimates.maxTuples * selectivity));
         return true;
     }
 
@@ -30,6 +30,7 @@ import org.voltdb.ParameterSet;
 import org.voltdb.ProcInfo;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTableBuilder;
 import org.voltdb.VoltType;
 import org.voltdb.catalog.Column;
 import org.voltdb.catalog.MaterializedViewInfo;
@@ -155,7 +156,10 @@ public class LoadMultipartitionTable extends VoltSystemProcedure {
         if (debug.get()) LOG.debug(catalog_tbl + " is not replicated. Splitting table data into separate pieces for partitions");
         
         // Create a table for each partition
-        VoltTable partitionedTables[] = new VoltTable[num_partitions];
+        // We use a VoltTableBuilder so that we can copy the serialized rows
+        // directly without having to deserialize all of their values
+        VoltTableBuilder partitionedTables[] = new VoltTableBuilder[num_partitions];
+        int expectedRows = (table.getRowCount() / num_partitions) + 1;
 
         // Split the input table into per-partition units
         if (debug.get()) LOG.debug("Splitting original table of " + table.getRowCount() + " rows into partitioned tables");
@@ -172,7 +176,7 @@ public class LoadMultipartitionTable extends VoltSystemProcedure {
             assert(p >= 0);
             
             if (partitionedTables[p] == null) {
-                partitionedTables[p] = table.clone(1024 * 1024);
+                partitionedTables[p] = new VoltTableBuilder(table, expectedRows, null);
                 this.m_localTxnState.getTouchedPartitions().put(p);
                 if (this.m_localTxnState.getPredictTouchedPartitions().contains(p) == false) {
                     mispredict = true;
@@ -183,7 +187,7 @@ public class LoadMultipartitionTable extends VoltSystemProcedure {
             // Add the active row from table
             // Don't bother doing it if we know that we're going to mispredict afterwards 
             if (mispredict == false) {
-                partitionedTables[p].add(table);
+                partitionedTables[p].addRow(table);
                 if (trace.get() && table.getActiveRowIndex() > 0 && table.getActiveRowIndex() % 1000 == 0)
                     LOG.trace(String.format("Processed %s tuples for " + catalog_tbl, table.getActiveRowIndex()));
             }
@@ -209,7 +213,7 @@ public class LoadMultipartitionTable extends VoltSystemProcedure {
         for (int i = 0; i < partitionedTables.length; ++i) {
             int partition = i;
             if (partitionedTables[partition] == null || partitionedTables[partition].getRowCount() == 0) continue;
-            ParameterSet params = new ParameterSet(catalog_tbl.getName(), partitionedTables[partition]);
+            ParameterSet params = new ParameterSet(catalog_tbl.getName(), partitionedTables[partition].build());
             SynthesizedPlanFragment pf = new SynthesizedPlanFragment();
             pf.fragmentId = SysProcFragmentId.PF_loadDistribute;
             pf.inputDependencyIds = new int[] { };
@@ -0,0 +1,53 @@
+package org.voltdb.sysprocs;
+
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.DependencySet;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcInfo;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+
+import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.PartitionExecutor;
+
+/**
+ * Bulk load a VoltTable whose tuples all belong to a single partition.
+ * The client is responsible for splitting up the tuples by partition.
+ * <B>NOTE:</B> These requests are intercepted by the HStoreSite and queued
+ * directly at the target partition's PartitionExecutor without a transaction
+ * or undo logging. This procedure's run() method is only used if the request
+ * ends up being executed as a regular transaction.
+ * @see HStoreSite
+ * @see PartitionExecutor#queueLoadTable(long, String, VoltTable, com.google.protobuf.RpcCallback)
+ */
+@ProcInfo(singlePartition = true)
+public class LoadPartitionTable extends VoltSystemProcedure {
+
+    @Override
+    public DependencySet executePlanFragment(long txn_id,
+                                             Map<Integer, List<VoltTable>> dependencies,
+                                             int fragmentId,
+                                             ParameterSet params,
+                                             PartitionExecutor.SystemProcedureExecutionContext context) {
+        // Nothing to do...
+        return null;
+    }
+
+    public VoltTable[] run(int partition, String tableName, VoltTable table) throws VoltAbortException {
+        if (partition != this.partitionId) {
+            throw new VoltAbortException(String.format("Trying to load %s tuples for partition %d at partition %d",
+                                                       tableName, partition, this.partitionId));
+        }
+        Table catalog_tbl = database.getTables().getIgnoreCase(tableName);
+        if (catalog_tbl == null) {
+            throw new VoltAbortException("Table '" + tableName + "' does not exist");
+        } else if (catalog_tbl.getIsreplicated()) {
+            throw new VoltAbortException("Replicated table '" + tableName + "' must be loaded at all partitions");
+        }
+        voltLoadTable(cluster.getName(), database.getName(), catalog_tbl.getName(), table, 0);
+        return (new VoltTable[0]);
+    }
+}
@@ -27,12 +27,15 @@ import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.voltdb.BackendTarget;
@@ -117,6 +120,127 @@ public class SnapshotRestore extends VoltSystemProcedure
         return hasMoreChunks;
     }
 
+    /**
+     * The save files for partitioned tables that are being loaded directly into the
+     * EEs at this site, keyed by (txn id, file path, file nonce, table name). Every local
+     * partition pulls the chunks for its own partition id out of the same files, in
+     * the same order.
+     */
+    private static final Map<List<Object>, ShardedSaveFiles> m_shardedSaveFiles =
+        new HashMap<List<Object>, ShardedSaveFiles>();
+
+    private static class ShardedSaveFiles {
+        private final long m_txnId;
+        private final List<TableSaveFile> m_files = new ArrayList<TableSaveFile>();
+        /** Number of local partitions that have not finished loading from these files */
+        private int m_remaining;
+        /** If we couldn't open the files, then every partition gets this error */
+        private IOException m_error = null;
+
+        private ShardedSaveFiles(long txnId, int remaining) {
+            m_txnId = txnId;
+            m_remaining = remaining;
+        }
+
+        private void close() {
+            for (TableSaveFile savefile : m_files) {
+                try {
+                    savefile.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static List<Object> getShardedSaveFilesKey(long txnId,
+                                                       String filePath,
+                                                       String fileNonce,
+                                                       String tableName) {
+        return Arrays.<Object>asList(txnId, filePath, fileNonce, tableName);
+    }
+
+    /**
+     * Get the save files for the given table that all of the local partitions share.
+     * The first partition to get here opens them. Every partition has to call
+     * finishShardedSaveFiles() when it is done with them, even if this throws.
+     * This is only package-private so that the test cases can get at it
+     */
+    static synchronized List<TableSaveFile> getShardedSaveFiles(
+            long txnId,
+            String filePath,
+            String fileNonce,
+            String tableName,
+            Collection<Integer> originalHostIds,
+            Collection<Integer> localPartitionIds) throws IOException {
+        List<Object> key = getShardedSaveFilesKey(txnId, filePath, fileNonce, tableName);
+        ShardedSaveFiles sharded = m_shardedSaveFiles.get(key);
+        if (sharded == null) {
+            // Anything that is still around from an earlier restore is stale
+            Iterator<ShardedSaveFiles> it = m_shardedSaveFiles.values().iterator();
+            while (it.hasNext()) {
+                ShardedSaveFiles stale = it.next();
+                if (stale.m_txnId != txnId) {
+                    LOG.warn("Closing save files left over from the restore in txn #" + stale.m_txnId);
+                    stale.close();
+                    it.remove();
+                }
+            }
+
+            // The entry stays around even if we fail to open the files, so that
+            // the other partitions get the same error instead of trying again
+            sharded = new ShardedSaveFiles(txnId, localPartitionIds.size());
+            m_shardedSaveFiles.put(key, sharded);
+            int relevantPartitionIds[] = new int[localPartitionIds.size()];
+            int ii = 0;
+            for (int partition_id : localPartitionIds) relevantPartitionIds[ii++] = partition_id;
+            try {
+                for (int originalHostId : originalHostIds) {
+                    final File f = getSaveFileForPartitionedTable(filePath, fileNonce, tableName, originalHostId);
+                    // Give each partition a couple of chunks to chew on while the next ones are read in
+                    TableSaveFile savefile = getTableSaveFile(f, localPartitionIds.size() * 2, relevantPartitionIds);
+                    assert(savefile.getCompleted());
+                    sharded.m_files.add(savefile);
+                }
+            } catch (IOException e) {
+                sharded.close();
+                sharded.m_error = e;
+            }
+        }
+        if (sharded.m_error != null) {
+            throw new IOException(sharded.m_error.getMessage(), sharded.m_error);
+        }
+        return sharded.m_files;
+    }
+
+    /**
+     * Called by each local partition once it is done with the table's save files.
+     * The last one closes them.
+     * This is only package-private so that the test cases can get at it
+     */
+    static synchronized void finishShardedSaveFiles(long txnId,
+                                                    String filePath,
+                                                    String fileNonce,
+                                                    String tableName) {
+        List<Object> key = getShardedSaveFilesKey(txnId, filePath, fileNonce, tableName);
+        ShardedSaveFiles sharded = m_shardedSaveFiles.get(key);
+        if (sharded != null && --sharded.m_remaining == 0) {
+            m_shardedSaveFiles.remove(key);
+            sharded.close();
+        }
+    }
+
+    /**
+     * Returns true if there are save files for the given table that haven't been
+     * closed yet.
+     * This is only package-private so that the test cases can get at it
+     */
+    static synchronized boolean hasShardedSaveFiles(long txnId,
+                                                    String filePath,
+                                                    String fileNonce,
+                                                    String tableName) {
+        return (m_shardedSaveFiles.containsKey(getShardedSaveFilesKey(txnId, filePath, fileNonce, tableName)));
+    }
+
     private static synchronized BBContainer getNextChunk() throws IOException {
         BBContainer c = null;
         while (c == null && m_saveFiles.peek() != null) {
@@ -164,6 +288,12 @@ public class SnapshotRestore extends VoltSystemProcedure
         site.registerPlanFragment(SysProcFragmentId.
                                   PF_restoreSendPartitionedTableResults,
                                   this);
+        site.registerPlanFragment(SysProcFragmentId.
+                                  PF_restoreLoadPartitionedTable,
+                                  this);
+        site.registerPlanFragment(SysProcFragmentId.
+                                  PF_restoreLoadPartitionedTableResults,
+                                  this);
         m_siteId = site.getSiteId();
         m_hostId = site.getHostId();
     }
@@ -490,6 +620,48 @@ public class SnapshotRestore extends VoltSystemProcedure
             }
             return new DependencySet(dependency_id, result);
         }
+        else if (fragmentId ==
+            SysProcFragmentId.PF_restoreLoadPartitionedTable)
+        {
+            Object paramsA[] = params.toArray();
+            assert(paramsA[0] != null);
+            assert(paramsA[1] != null);
+            assert(paramsA[2] != null);
+            assert(paramsA[3] != null);
+
+            String table_name = (String) paramsA[0];
+            int partitionIds[] = (int[]) paramsA[1];
+            int originalHostIds[] = (int[]) paramsA[2];
+            int dependency_id = (Integer) paramsA[3];
+            int allowExport = (Integer) paramsA[4];
+            LOG.trace("Loading partitioned table: " + table_name +
+                      " at partition id: " + context.getExecutionSite().getPartitionId());
+
+            VoltTable result =
+                performLoadPartitionedTable(txn_id, table_name, partitionIds,
+                                            originalHostIds, allowExport, context);
+            return new DependencySet(dependency_id, result);
+        }
+        else if (fragmentId ==
+            SysProcFragmentId.PF_restoreLoadPartitionedTableResults)
+        {
+            LOG.trace("Aggregating direct partitioned table restore results");
+            assert(params.toArray()[0] != null);
+            int dependency_id = (Integer) params.toArray()[0];
+            VoltTable result = constructResultsTable();
+            for (int dep_id : dependencies.keySet())
+            {
+                for (VoltTable t : dependencies.get(dep_id))
+                {
+                    while (t.advanceRow())
+                    {
+                        // this will actually add the active row of t
+                        result.add(t);
+                    }
+                }
+            }
+            return new DependencySet(dependency_id, result);
+        }
         else if (fragmentId ==
             SysProcFragmentId.PF_restoreSendPartitionedTable)
         {
@@ -700,6 +872,24 @@ public class SnapshotRestore extends VoltSystemProcedure
                     savefile_input.getChannel(),
                     readAheadChunks,
                     relevantPartitionIds);
+
+        // If this is a delta snapshot, then chain on the save file for the same table from
+        // the snapshot that it was taken against (and so on until we get to a full snapshot)
+        final String parentNonce = savefile.getParentNonce();
+        if (parentNonce != null && !parentNonce.isEmpty()) {
+            final String name = saveFile.getName();
+            final int suffixStart = name.lastIndexOf("-" + savefile.getTableName());
+            try {
+                if (suffixStart < 0) {
+                    throw new IOException("Unexpected save file name " + name);
+                }
+                final File parentFile = new File(saveFile.getParentFile(), parentNonce + name.substring(suffixStart));
+                savefile.setParent(getTableSaveFile(parentFile, readAheadChunks, relevantPartitionIds));
+            } catch (IOException e) {
+                savefile.close();
+                throw e;
+            }
+        }
         return savefile;
     }
 
@@ -1047,6 +1237,126 @@ public class SnapshotRestore extends VoltSystemProcedure
         return results[0];
    }
 
+    /**
+     * Load all of the chunks for this partition out of the save files at this host
+     * straight into our EE. The other partitions at this host are doing the same
+     * thing at the same time with the same files.
+     */
+    private VoltTable performLoadPartitionedTable(long txn_id,
+                                                  String tableName,
+                                                  int partitionIds[],
+                                                  int originalHostIds[],
+                                                  int allowExport,
+                                                  SystemProcedureExecutionContext context)
+    {
+        String hostname = ConnectionUtil.getHostnameOrAddress();
+        int partition_id = this.executor.getPartitionId();
+        Collection<Integer> localPartitionIds = hstore_site.getLocalPartitionIds();
+
+        // Figure out which of the save files at this host have tuples
+        // for our partitions. It's important that everyone reads
+        // them in the same order.
+        Set<Integer> originalHosts = new TreeSet<Integer>();
+        for (int ii = 0; ii < partitionIds.length; ii++) {
+            if (localPartitionIds.contains(partitionIds[ii])) {
+                originalHosts.add(originalHostIds[ii]);
+            }
+        }
+
+        VoltTable result = constructResultsTable();
+        List<TableSaveFile> saveFiles = null;
+        try
+        {
+            saveFiles = getShardedSaveFiles(txn_id, m_filePath, m_fileNonce, tableName,
+                                            originalHosts, localPartitionIds);
+        }
+        catch (IOException e)
+        {
+            finishShardedSaveFiles(txn_id, m_filePath, m_fileNonce, tableName);
+            result.addRow(m_hostId, hostname, m_siteId, tableName, partition_id, "FAILURE",
+                          "Unable to load table: " + tableName +
+                          " error: " + e.getMessage());
+            return result;
+        }
+
+        final Table new_catalog_table = getCatalogTable(tableName);
+        String result_str = "SUCCESS";
+        String error_msg = "";
+        long tuples = 0;
+        boolean drained = false;
+        try
+        {
+            for (TableSaveFile savefile : saveFiles)
+            {
+                Boolean needsConversion = null;
+                TableSaveFile.Container c = null;
+                while ((c = savefile.getNextChunk(partition_id)) != null)
+                {
+                    try
+                    {
+                        // Keep draining our chunks after a failure so that we
+                        // don't stall the other partitions reading this file
+                        if (error_msg.length() > 0) {
+                            continue;
+                        }
+                        final VoltTable old_table =
+                            PrivateVoltTableFactory.createVoltTableFromBuffer(c.b.duplicate(), true);
+                        if (needsConversion == null) {
+                            needsConversion = SavedTableConverter.needsConversion(old_table, new_catalog_table);
+                        }
+                        if (needsConversion) {
+                            VoltTable table = SavedTableConverter.convertTable(old_table, new_catalog_table);
+                            super.voltLoadTable(context.getCluster().getTypeName(),
+                                                context.getDatabase().getTypeName(),
+                                                tableName, table, allowExport);
+                        } else {
+                            this.executor.loadTableChunk(this.getTransactionState(),
+                                                         new_catalog_table, c, allowExport != 0);
+                        }
+                        tuples += old_table.getRowCount();
+                    }
+                    catch (VoltTypeException e)
+                    {
+                        result_str = "FAILURE";
+                        error_msg = "Unable to load table: " + tableName + " error: " + e.getMessage();
+                    }
+                    catch (VoltAbortException e)
+                    {
+                        result_str = "FAILURE";
+                        error_msg = "Unable to load table: " + tableName + " error: " + e.getMessage();
+                    }
+                    finally
+                    {
+                        c.discard();
+                    }
+                }
+            }
+            drained = true;
+        }
+        catch (IOException e)
+        {
+            result_str = "FAILURE";
+            error_msg = "Unable to load table: " + tableName + " error: " + e.getMessage();
+        }
+        finally
+        {
+            // If we're not going to read the rest of our chunks, then make sure that
+            // they don't fill up the read-ahead queues that the other partitions
+            // at this host are waiting on
+            if (drained == false) {
+                for (TableSaveFile savefile : saveFiles) {
+                    savefile.abandonPartition(partition_id);
+                }
+            }
+            finishShardedSaveFiles(txn_id, m_filePath, m_fileNonce, tableName);
+        }
+        LOG.debug("Loaded " + tuples + " tuples for table: " + tableName +
+                  " at partition id: " + partition_id);
+        result.addRow(m_hostId, hostname, m_siteId, tableName, partition_id,
+                      result_str, error_msg);
+        return result;
+    }
+
     private VoltTable[] createPartitionedTables(String tableName,
                                                 VoltTable loadedTable)
     {
@@ -86,6 +86,8 @@ public class SysProcFragmentId
     public static final int PF_restoreSendReplicatedTableResults = 68;
     public static final int PF_restoreSendPartitionedTable = 69;
     public static final int PF_restoreSendPartitionedTableResults = 70;
+    public static final int PF_restoreLoadPartitionedTable = 71;
+    public static final int PF_restoreLoadPartitionedTableResults = 72;
 
     // @StartSampler
     public static final int PF_startSampler = 80;
@@ -32,10 +32,15 @@ import org.voltdb.ParameterSet;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltSystemProcedure.SynthesizedPlanFragment;
 import org.voltdb.VoltTableRow;
+import org.voltdb.catalog.Partition;
+import org.voltdb.catalog.Site;
 import org.voltdb.catalog.Table;
+import org.voltdb.dtxn.DtxnConstants;
 import org.voltdb.sysprocs.SysProcFragmentId;
 import org.voltdb.utils.Pair;
 
+import edu.brown.catalog.CatalogUtil;
+
 
 public class PartitionedTableSaveFileState extends TableSaveFileState
 {
@@ -96,7 +101,10 @@ public class PartitionedTableSaveFileState extends TableSaveFileState
                  getTotalPartitions());
         if (!catalogTable.getIsreplicated())
         {
-            restore_plan = generatePartitionedToPartitionedPlan();
+            restore_plan = generateDirectLoadPlan(catalogTable);
+            if (restore_plan == null) {
+                restore_plan = generatePartitionedToPartitionedPlan();
+            }
         }
         else
         {
@@ -126,6 +134,82 @@ public class PartitionedTableSaveFileState extends TableSaveFileState
         }
     }
 
+    /**
+     * If the cluster still has the same number of partitions as when the snapshot was
+     * taken and each partition's data is in a save file at the host where that partition
+     * now lives, then every partition can load its own chunks straight into its EE
+     * without rehashing any tuples. All of the partitions at a host share the same
+     * save files, so the table is restored in parallel at every partition.
+     * Returns null if we can't do this.
+     */
+    private SynthesizedPlanFragment[] generateDirectLoadPlan(Table catalogTable)
+    {
+        int num_partitions = CatalogUtil.getNumberOfPartitions(catalogTable);
+        if (num_partitions != getTotalPartitions()) {
+            LOG.info("Table: " + getTableName() + " was saved with " + getTotalPartitions() +
+                     " partitions but the cluster has " + num_partitions + ". Tuples will be rehashed.");
+            return null;
+        }
+
+        // For each partition, find the original host whose save file
+        // has its tuples at the host where the partition lives now
+        int partitionIds[] = new int[num_partitions];
+        int originalHostIds[] = new int[num_partitions];
+        for (int partition_id = 0; partition_id < num_partitions; partition_id++) {
+            Partition catalog_part = CatalogUtil.getPartitionById(catalogTable, partition_id);
+            if (catalog_part == null) {
+                return null;
+            }
+            int host_id = ((Site)catalog_part.getParent()).getHost().getRelativeIndex();
+            Set<Pair<Integer, Integer>> partitionsAndOrigHosts = m_partitionsAtHost.get(host_id);
+            Integer originalHostId = null;
+            if (partitionsAndOrigHosts != null) {
+                for (Pair<Integer, Integer> p : partitionsAndOrigHosts) {
+                    if (p.getFirst().intValue() == partition_id) {
+                        originalHostId = p.getSecond();
+                        break;
+                    }
+                }
+            }
+            if (originalHostId == null) {
+                LOG.info("Table: " + getTableName() + " has no save file for partition " + partition_id +
+                         " at host " + host_id + ". Tuples will be rehashed.");
+                return null;
+            }
+            partitionIds[partition_id] = partition_id;
+            originalHostIds[partition_id] = originalHostId;
+        }
+
+        int load_dependency_id = getNextDependencyId() | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+        SynthesizedPlanFragment load_fragment = new SynthesizedPlanFragment();
+        load_fragment.fragmentId =
+            SysProcFragmentId.PF_restoreLoadPartitionedTable;
+        load_fragment.multipartition = true;
+        load_fragment.outputDependencyIds = new int[]{ load_dependency_id };
+        load_fragment.inputDependencyIds = new int[] {};
+        ParameterSet params = new ParameterSet();
+        params.setParameters(getTableName(),
+                             partitionIds,
+                             originalHostIds,
+                             load_dependency_id,
+                             m_allowExport);
+        load_fragment.parameters = params;
+
+        int result_dependency_id = getNextDependencyId();
+        SynthesizedPlanFragment result_fragment = new SynthesizedPlanFragment();
+        result_fragment.fragmentId =
+            SysProcFragmentId.PF_restoreLoadPartitionedTableResults;
+        result_fragment.multipartition = false;
+        result_fragment.outputDependencyIds = new int[]{ result_dependency_id };
+        result_fragment.inputDependencyIds = new int[]{ load_dependency_id };
+        setRootDependencyId(result_dependency_id);
+        params = new ParameterSet();
+        params.setParameters(result_dependency_id);
+        result_fragment.parameters = params;
+
+        return new SynthesizedPlanFragment[]{ load_fragment, result_fragment };
+    }
+
     private SynthesizedPlanFragment[] generatePartitionedToPartitionedPlan()
     {
         LOG.info("Partition set: " + m_partitionsSeen);
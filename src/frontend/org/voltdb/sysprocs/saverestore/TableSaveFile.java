@@ -24,16 +24,27 @@ import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.CRC32;
 
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.EELibraryLoader;
+import org.voltdb.VoltDB;
+import org.voltdb.utils.CompressionService;
 
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
@@ -55,14 +66,31 @@ import org.voltdb.EELibraryLoader;
 public class TableSaveFile
 {
 
-    private static class Container extends BBContainer {
+    public static class Container extends BBContainer {
         @SuppressWarnings("unused")
         private final BBContainer m_origin;
+        private int m_partitionId = -1;
+        private int m_blockIndex = -1;
         Container(ByteBuffer b, long pointer, BBContainer origin) {
             super(b, pointer);
             m_origin = origin;
         }
 
+        /**
+         * The original partition that the tuples in this chunk came from
+         */
+        public int getPartitionId() {
+            return m_partitionId;
+        }
+
+        /**
+         * The EE tuple block that the tuples in this chunk came from
+         * or -1 if the file doesn't keep track of tuple blocks
+         */
+        public int getBlockIndex() {
+            return m_blockIndex;
+        }
+
         @Override
         public void discard() {
             m_buffers.add(this);
@@ -211,6 +239,8 @@ public class TableSaveFile
             for (int ii = 0; ii < 4; ii++) {
                 m_versionNum[ii] = fd.readInt();
             }
+            m_compressed = (m_versionNum[3] & DefaultSnapshotDataTarget.FORMAT_COMPRESSED) != 0;
+            m_hasTupleBlocks = (m_versionNum[3] & DefaultSnapshotDataTarget.FORMAT_TUPLE_BLOCKS) != 0;
             m_createTime = fd.readLong();
             m_hostId = fd.readInt();
             m_hostname = fd.readString();
@@ -233,6 +263,10 @@ public class TableSaveFile
                     m_corruptedPartitions.add(0);
                 }
             }
+            m_parentNonce = (m_hasTupleBlocks ? fd.readString() : null);
+            if (m_compressed && m_completed) {
+                readBlockIndex();
+            }
             /*
              * Several runtime exceptions can be thrown in valid failure cases where
              * a corrupt save file is being detected.
@@ -290,7 +324,7 @@ public class TableSaveFile
     }
 
     public boolean getCompleted() {
-        return m_completed;
+        return m_completed && (m_parent == null || m_parent.getCompleted());
     }
 
     public long getCreateTime() {
@@ -298,6 +332,9 @@ public class TableSaveFile
     }
 
     public void close() throws IOException {
+        if (m_parent != null) {
+            m_parent.close();
+        }
         if (m_chunkReaderThread != null) {
             m_chunkReaderThread.interrupt();
             try {
@@ -314,7 +351,159 @@ public class TableSaveFile
         }
     }
 
+    public boolean isCompressed() {
+        return m_compressed;
+    }
+
+    /**
+     * Returns the nonce of the snapshot that this file is a delta of. This is an empty string if
+     * this file is the base of a chain of deltas and null if it isn't part of a chain at all.
+     */
+    public String getParentNonce() {
+        return m_parentNonce;
+    }
+
+    /**
+     * Chain the save file for the snapshot that this one is a delta of. Once all of the chunks in
+     * this file have been handed out, the chunks from the parent are handed out, except for the ones
+     * from tuple blocks that were replaced by this file (or any other delta in between).
+     */
+    public void setParent(TableSaveFile parent) throws IOException {
+        assert(m_parent == null);
+        if (!parent.m_hasTupleBlocks || parent.m_isReplicated != m_isReplicated ||
+                !parent.m_tableName.equals(m_tableName)) {
+            throw new IOException("Save file for " + parent.m_tableName + " can't be the base of " + m_tableName);
+        }
+        m_parent = parent;
+        parent.m_child = this;
+    }
+
+    /**
+     * Returns true if a delta of this file has a chunk for the same tuple block as this chunk
+     */
+    private boolean isReplaced(Container c) {
+        if (c.m_blockIndex == -1) {
+            return false;
+        }
+        final Long key = tupleBlockKey(c);
+        for (TableSaveFile child = m_child; child != null; child = child.m_child) {
+            if (child.m_readTupleBlocks.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long tupleBlockKey(Container c) {
+        return (((long)c.m_partitionId) << 32) | (c.m_blockIndex & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Hand a chunk to whoever is waiting for one
+     */
+    private void offerChunk(Container c) {
+        if (c.m_blockIndex != -1) {
+            m_readTupleBlocks.add(tupleBlockKey(c));
+        }
+        synchronized (this) {
+            if (m_abandonedPartitionIds.contains(c.m_partitionId)) {
+                c.discard();
+                m_chunkReads.release();
+                return;
+            }
+            m_availableChunks.offer(c);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Tell this file that the given partition is not going to ask for any more of its chunks
+     * (e.g., because it failed to load one of them). Its chunks are thrown away instead of being
+     * queued up, otherwise they would fill up the read-ahead queue and stall every other
+     * partition that is sharing this file.
+     */
+    public void abandonPartition(int partitionId)
+    {
+        synchronized (this) {
+            m_abandonedPartitionIds.add(partitionId);
+            Iterator<Container> it = m_availableChunks.iterator();
+            while (it.hasNext()) {
+                Container c = it.next();
+                if (c.m_partitionId == partitionId) {
+                    it.remove();
+                    c.discard();
+                    m_chunkReads.release();
+                }
+            }
+            notifyAll();
+        }
+        if (m_parent != null) {
+            m_parent.abandonPartition(partitionId);
+        }
+    }
+
+    /**
+     * Read the index of compressed blocks at the end of the file. This uses positional
+     * reads so the channel is left at the start of the first block.
+     */
+    private void readBlockIndex() throws IOException {
+        final long fileSize = m_saveFile.size();
+        final ByteBuffer trailer = ByteBuffer.allocate(8);
+        readFully(trailer, fileSize - 8);
+        trailer.flip();
+        final long indexOffset = trailer.getLong();
+        if (indexOffset < m_saveFile.position() || indexOffset > fileSize - 16) {
+            throw new IOException("Corrupted save file has an invalid block index offset");
+        }
+        final ByteBuffer index = ByteBuffer.allocate((int)(fileSize - 8 - indexOffset));
+        readFully(index, indexOffset);
+        index.flip();
+        final int numBlocks = index.getInt();
+        if (numBlocks < 0 || index.capacity() != 4 + (numBlocks * 12) + 4) {
+            throw new IOException("Corrupted save file has an invalid block index");
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(index.array(), 0, index.capacity() - 4);
+        m_blockOffsets = new long[numBlocks];
+        m_blockPartitionIds = new int[numBlocks];
+        for (int ii = 0; ii < numBlocks; ii++) {
+            m_blockOffsets[ii] = index.getLong();
+            m_blockPartitionIds[ii] = index.getInt();
+        }
+        if (index.getInt() != (int)crc.getValue()) {
+            throw new IOException("Checksum mismatch in save file block index");
+        }
+    }
+
+    private void readFully(ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            final int read = m_saveFile.read(b, position + b.position());
+            if (read == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Get a direct buffer that is big enough to hold a chunk
+     */
+    private static Container getChunkContainer() {
+        Container c = m_buffers.poll();
+        if (c == null) {
+            final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
+            final ByteBuffer b = originContainer.b;
+            final long pointer = (VoltDB.getLoadLibVOLTDB() ? DBBPool.getBufferAddress(b) : 0);
+            c = new Container(b, pointer, originContainer);
+        }
+        return c;
+    }
+
     public Set<Integer> getCorruptedPartitionIds() {
+        if (m_parent != null) {
+            Set<Integer> corrupted = new HashSet<Integer>(m_corruptedPartitions);
+            corrupted.addAll(m_parent.getCorruptedPartitionIds());
+            return corrupted;
+        }
         return m_corruptedPartitions;
     }
 
@@ -323,7 +512,19 @@ public class TableSaveFile
     }
 
     // Will get the next chunk of the table that is just over the chunk size
-    public synchronized BBContainer getNextChunk() throws IOException
+    public BBContainer getNextChunk() throws IOException
+    {
+        Container c;
+        while ((c = getNextOwnChunk()) != null && isReplaced(c)) {
+            c.discard();
+        }
+        if (c == null && m_parent != null) {
+            return m_parent.getNextChunk();
+        }
+        return c;
+    }
+
+    private synchronized Container getNextOwnChunk() throws IOException
     {
         if (!m_hasMoreChunks) {
             return m_availableChunks.poll();
@@ -355,7 +556,71 @@ public class TableSaveFile
         return c;
     }
 
-    public synchronized boolean hasMoreChunks()
+    /**
+     * Get the next chunk of the table that belongs to the given partition. Chunks for
+     * other partitions are left in the read-ahead queue for their own partitions to pick up,
+     * so multiple threads can share the same file and each one only loads its own tuples.
+     * Every relevant partition must have a thread draining its chunks, otherwise the
+     * read-ahead queue will fill up and the ChunkReader will stall.
+     * Returns null once there are no more chunks for this partition in the file.
+     */
+    public Container getNextChunk(int partitionId) throws IOException
+    {
+        Container c;
+        while ((c = getNextOwnChunk(partitionId)) != null && isReplaced(c)) {
+            c.discard();
+        }
+        if (c == null && m_parent != null) {
+            return m_parent.getNextChunk(partitionId);
+        }
+        return c;
+    }
+
+    private synchronized Container getNextOwnChunk(int partitionId) throws IOException
+    {
+        if (m_chunkReader == null && m_hasMoreChunks) {
+            m_chunkReader = new ChunkReader();
+            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
+            m_chunkReaderThread.start();
+        }
+
+        Container c = null;
+        while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
+            Iterator<Container> it = m_availableChunks.iterator();
+            while (it.hasNext()) {
+                Container next = it.next();
+                if (next.m_partitionId == partitionId) {
+                    it.remove();
+                    c = next;
+                    break;
+                }
+            }
+            if (c == null) {
+                if (!m_hasMoreChunks) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        if (c != null) {
+            m_chunkReads.release();
+        }
+        if (m_chunkReaderException != null) {
+            throw m_chunkReaderException;
+        }
+        return c;
+    }
+
+    public boolean hasMoreChunks()
+    {
+        return hasMoreOwnChunks() || (m_parent != null && m_parent.hasMoreChunks());
+    }
+
+    private synchronized boolean hasMoreOwnChunks()
     {
         return m_hasMoreChunks || !m_availableChunks.isEmpty();
     }
@@ -397,6 +662,46 @@ public class TableSaveFile
     private final ByteBuffer m_tableHeader;
     private final boolean m_completed;
     private final int m_versionNum[] = new int[4];
+    private final boolean m_compressed;
+
+    /**
+     * Whether each chunk is tagged with the EE tuple block that it came from
+     */
+    private final boolean m_hasTupleBlocks;
+    private final String m_parentNonce;
+
+    /**
+     * The save file of the snapshot that this one is a delta of and the one
+     * that is a delta of this one (if they have been chained together)
+     */
+    private TableSaveFile m_parent = null;
+    private TableSaveFile m_child = null;
+
+    /**
+     * The (partition id, tuple block) of every chunk that has been read from this file
+     */
+    private final Set<Long> m_readTupleBlocks = Collections.synchronizedSet(new HashSet<Long>());
+
+    /**
+     * The offsets and partition ids of every block in a compressed save file.
+     * These are null if the file isn't compressed or wasn't completed.
+     */
+    private long m_blockOffsets[] = null;
+    private int m_blockPartitionIds[] = null;
+
+    /**
+     * Compressed chunks are decompressed and verified in parallel
+     */
+    private static final ExecutorService m_decompressionService = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private int threadIndex = 0;
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TableSaveFile decompression - " + threadIndex++);
+            t.setDaemon(true);
+            return t;
+        }
+    });
     private final int m_hostId;
     private final String m_hostname;
     private final String m_clusterName;
@@ -411,6 +716,11 @@ public class TableSaveFile
     private final ArrayDeque<Container> m_availableChunks = new ArrayDeque<Container>();
     private final HashSet<Integer> m_relevantPartitionIds;
 
+    /**
+     * Partitions that are not going to read any more chunks from this file
+     */
+    private final HashSet<Integer> m_abandonedPartitionIds = new HashSet<Integer>();
+
     /**
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
@@ -436,7 +746,168 @@ public class TableSaveFile
      */
     private class ChunkReader implements Runnable {
 
+        /**
+         * Read the compressed blocks (skipping the ones for partitions that we don't care
+         * about) and hand them off to be verified and decompressed in parallel.
+         */
+        private void readCompressedChunks() {
+            final ArrayList<Future<?>> pending = new ArrayList<Future<?>>();
+            int nextBlock = 0;
+            try {
+                while (true) {
+                    if (m_chunkReaderException != null) {
+                        break;
+                    }
+                    /*
+                     * Use the index to jump to the next block that we need.
+                     * Without the index just read the blocks one after another.
+                     */
+                    if (m_blockOffsets != null) {
+                        while (nextBlock < m_blockOffsets.length &&
+                                m_relevantPartitionIds != null &&
+                                !m_relevantPartitionIds.contains(m_blockPartitionIds[nextBlock])) {
+                            nextBlock++;
+                        }
+                        if (nextBlock == m_blockOffsets.length) {
+                            break;
+                        }
+                        m_saveFile.position(m_blockOffsets[nextBlock++]);
+                    }
+
+                    try {
+                        m_chunkReads.acquire();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    final ByteBuffer blockHeader =
+                        ByteBuffer.allocate(DefaultSnapshotDataTarget.COMPRESSED_BLOCK_HEADER_SIZE);
+                    while (blockHeader.hasRemaining()) {
+                        final int read = m_saveFile.read(blockHeader);
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                    }
+                    blockHeader.flip();
+                    final int compressedLength = blockHeader.getInt();
+                    final int partitionId = blockHeader.getInt();
+                    final int uncompressedLength = blockHeader.getInt();
+                    final int blockCRC = blockHeader.getInt();
+
+                    if (compressedLength < 0 || uncompressedLength < 16 ||
+                            uncompressedLength > DEFAULT_CHUNKSIZE ||
+                            compressedLength > CompressionService.maxCompressedLength(uncompressedLength)) {
+                        synchronized (TableSaveFile.this) {
+                            for (int corruptedPartitionId : m_partitionIds) {
+                                m_corruptedPartitions.add(corruptedPartitionId);
+                            }
+                        }
+                        throw new IOException("Corrupted TableSaveFile block has unreasonable length");
+                    }
+
+                    if (m_relevantPartitionIds != null && !m_relevantPartitionIds.contains(partitionId)) {
+                        m_saveFile.position(m_saveFile.position() + compressedLength);
+                        m_chunkReads.release();
+                        continue;
+                    }
+
+                    final byte compressed[] = new byte[compressedLength];
+                    final ByteBuffer compressedBuffer = ByteBuffer.wrap(compressed);
+                    while (compressedBuffer.hasRemaining()) {
+                        final int read = m_saveFile.read(compressedBuffer);
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                    }
+
+                    pending.add(m_decompressionService.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            decompressChunk(compressed, partitionId, blockCRC);
+                        }
+                    }));
+                }
+
+                /*
+                 * Don't say that there are no more chunks until
+                 * all of them have been decompressed
+                 */
+                for (Future<?> f : pending) {
+                    f.get();
+                }
+            } catch (EOFException eof) {
+                // No more blocks
+            } catch (IOException e) {
+                synchronized (TableSaveFile.this) {
+                    m_chunkReaderException = e;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                synchronized (TableSaveFile.this) {
+                    m_chunkReaderException = new IOException(e.getCause());
+                }
+            }
+        }
+
+        /**
+         * Verify and decompress a single block into a chunk using the
+         * VoltTable serialization format, just like readChunks() would.
+         */
+        private void decompressChunk(byte compressed[], int partitionId, int blockCRC) {
+            final CRC32 crc = new CRC32();
+            crc.update(compressed);
+            Container c = null;
+            try {
+                if ((int)crc.getValue() != blockCRC) {
+                    throw new IOException("CRC mismatch in compressed saved table chunk");
+                }
+                /*
+                 * [partition id][partition id CRC][chunk CRC][tuples]([block index])[row count]
+                 */
+                final byte uncompressed[] = CompressionService.decompressBytes(compressed);
+                final ByteBuffer raw = ByteBuffer.wrap(uncompressed);
+                raw.position(8);
+                final int chunkCRC = raw.getInt();
+                crc.reset();
+                crc.update(uncompressed, 12, uncompressed.length - 12);
+                if ((int)crc.getValue() != chunkCRC) {
+                    throw new IOException("CRC mismatch in saved table chunk");
+                }
+
+                // The tuple block index (if there is one) is right before the row count
+                final int trailerLength = (m_hasTupleBlocks ? 8 : 4);
+                c = getChunkContainer();
+                c.b.clear();
+                c.b.put((ByteBuffer)m_tableHeader.duplicate().position(0));
+                final int rowCountPosition = c.b.position();
+                c.b.position(rowCountPosition + 4);
+                c.b.put(uncompressed, 12, uncompressed.length - 12 - trailerLength);
+                c.b.putInt(rowCountPosition, raw.getInt(uncompressed.length - 4));
+                c.b.flip();
+                c.m_partitionId = partitionId;
+                c.m_blockIndex = (m_hasTupleBlocks ? raw.getInt(uncompressed.length - 8) : -1);
+                offerChunk(c);
+            } catch (Exception e) {
+                if (c != null) {
+                    c.discard();
+                }
+                synchronized (TableSaveFile.this) {
+                    m_corruptedPartitions.add(partitionId);
+                    if (!m_continueOnCorruptedChunk && m_chunkReaderException == null) {
+                        m_chunkReaderException = (e instanceof IOException ? (IOException)e : new IOException(e));
+                    }
+                    TableSaveFile.this.notifyAll();
+                }
+                m_chunkReads.release();
+            }
+        }
+
         private void readChunks() {
+            if (m_compressed) {
+                readCompressedChunks();
+                return;
+            }
             int chunksRead = 0;
             while (m_hasMoreChunks) {
                 /*
@@ -511,13 +982,7 @@ public class TableSaveFile
                      * be sucked straight in. There is a little funny business to overwrite the
                      * partition id that is not part of the serialization format
                      */
-                    Container c = m_buffers.poll();
-                    if (c == null) {
-                        final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
-                        final ByteBuffer b = originContainer.b;
-                        final long pointer = org.voltdb.utils.DBBPool.getBufferAddress(b);
-                        c = new Container(b, pointer, originContainer);
-                    }
+                    Container c = getChunkContainer();
 
                     /*
                      * If the length value is wrong or not all data made it to disk this read will
@@ -600,6 +1065,10 @@ public class TableSaveFile
                      */
                     boolean success = false;
                     try {
+                        if (m_hasTupleBlocks) {
+                            c.m_blockIndex = c.b.getInt(c.b.limit() - 8);
+                            c.b.limit(c.b.limit() - 4);
+                        }
                         c.b.limit(c.b.limit() - 4);
                         c.b.position(checksumStartPosition - 4);
                         c.b.putInt(rowCount);
@@ -613,10 +1082,8 @@ public class TableSaveFile
                         }
                     }
                     ++chunksRead;
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        TableSaveFile.this.notifyAll();
-                    }
+                    c.m_partitionId = nextChunkPartitionId;
+                    offerChunk(c);
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
                         m_hasMoreChunks = false;
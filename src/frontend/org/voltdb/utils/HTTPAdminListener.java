@@ -23,14 +23,45 @@ import java.util.Properties;
 import org.voltdb.CatalogContext;
 import org.voltdb.VoltDB;
 
+import edu.brown.hstore.util.TransactionProfileStats;
+
 public class HTTPAdminListener extends NanoHTTPD {
 
+    public static final String MIME_JSON = "application/json";
+    public static final String MIME_PROMETHEUS = "text/plain; version=0.0.4";
+
+    /** Live transaction profile histograms. May be null */
+    private final TransactionProfileStats profileStats;
+
     public HTTPAdminListener(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * If profileStats is not null, then the following pages are also served:
+     * <ul>
+     * <li><B>/metrics</B>: Transaction phase latencies in the Prometheus text format
+     * <li><B>/metrics.json</B>: Transaction phase latencies as JSON
+     * </ul>
+     * Adding <B>reset=true</B> to the query string starts a new interval.
+     */
+    public HTTPAdminListener(int port, TransactionProfileStats profileStats) throws IOException {
         super(port);
+        this.profileStats = profileStats;
     }
 
     @Override
     public Response serve(String uri, String method, Properties header, Properties parms) {
+        if (this.profileStats != null && uri.startsWith("/metrics")) {
+            boolean reset = Boolean.parseBoolean(parms.getProperty("reset", "false"));
+            if (uri.equals("/metrics.json")) {
+                return new NanoHTTPD.Response(HTTP_OK, MIME_JSON, this.profileStats.toJSONString(reset));
+            } else if (uri.equals("/metrics")) {
+                return new NanoHTTPD.Response(HTTP_OK, MIME_PROMETHEUS, this.profileStats.toPrometheusString(reset));
+            }
+            return new NanoHTTPD.Response(HTTP_NOTFOUND, MIME_PLAINTEXT, "Unknown metrics page " + uri);
+        }
+
         // code for debugging
         //System.out.println( method + " '" + uri + "' " );
 
@@ -0,0 +1,269 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <map>
+#include <sys/time.h>
+#include "harness.h"
+#include "indexes/indexkey.h"
+#include "indexes/BPlusTree.h"
+
+using namespace voltdb;
+using namespace std;
+
+typedef IntsKey<1> Key;
+typedef IntsComparator<1> Comparator;
+typedef BPlusTree<Key, const void*, Comparator, true> UniqueTree;
+typedef BPlusTree<Key, const void*, Comparator, false> MultiTree;
+typedef map<Key, const void*, Comparator> UniqueMap;
+typedef multimap<Key, const void*, Comparator> MultiMap;
+
+#define NUM_OF_OPERATIONS 20000
+#define NUM_OF_BENCHMARK_ENTRIES 500000
+
+static inline Key makeKey(uint64_t value) {
+    Key key;
+    key.data[0] = value;
+    return key;
+}
+
+static inline const void* makeValue(int64_t value) {
+    return reinterpret_cast<const void*>(value);
+}
+
+static int64_t elapsed(const timeval &start) {
+    timeval end;
+    gettimeofday(&end, NULL);
+    return (end.tv_sec - start.tv_sec) * 1000000 + (end.tv_usec - start.tv_usec);
+}
+
+class BPlusTreeTest : public Test {
+public:
+    BPlusTreeTest() : m_comparator(NULL) {
+        srand(0);
+    }
+
+    /*
+     * Walk through both containers forwards and backwards and make sure
+     * that they hold the same entries in the same order
+     */
+    template <class Tree, class Map>
+    void checkSame(const Tree &tree, const Map &entries) {
+        ASSERT_EQ(entries.size(), tree.size());
+        typename Tree::const_iterator t = tree.begin();
+        typename Map::const_iterator m = entries.begin();
+        for (; m != entries.end(); ++m, ++t) {
+            ASSERT_TRUE(t != tree.end());
+            EXPECT_EQ(m->first.data[0], t->first.data[0]);
+            EXPECT_EQ(m->second, t->second);
+        }
+        EXPECT_TRUE(t == tree.end());
+
+        typename Tree::const_reverse_iterator rt = tree.rbegin();
+        typename Map::const_reverse_iterator rm = entries.rbegin();
+        for (; rm != entries.rend(); ++rm, ++rt) {
+            ASSERT_TRUE(rt != tree.rend());
+            EXPECT_EQ(rm->first.data[0], rt->first.data[0]);
+        }
+        EXPECT_TRUE(rt == tree.rend());
+    }
+
+    /*
+     * Compare the results of the bound lookups for every key in the range
+     */
+    template <class Tree, class Map>
+    void checkBounds(const Tree &tree, const Map &entries, uint64_t maxKey) {
+        for (uint64_t ii = 0; ii <= maxKey; ii++) {
+            Key key = makeKey(ii);
+            typename Tree::const_iterator t = tree.lower_bound(key);
+            typename Map::const_iterator m = entries.lower_bound(key);
+            ASSERT_EQ(m == entries.end(), t == tree.end());
+            if (m != entries.end()) {
+                EXPECT_EQ(m->first.data[0], t->first.data[0]);
+                EXPECT_EQ(m->second, t->second);
+            }
+            t = tree.upper_bound(key);
+            m = entries.upper_bound(key);
+            ASSERT_EQ(m == entries.end(), t == tree.end());
+            if (m != entries.end()) {
+                EXPECT_EQ(m->first.data[0], t->first.data[0]);
+                EXPECT_EQ(m->second, t->second);
+            }
+            EXPECT_EQ(entries.find(key) == entries.end(), tree.find(key) == tree.end());
+        }
+    }
+
+protected:
+    Comparator m_comparator;
+};
+
+TEST_F(BPlusTreeTest, EmptyTree) {
+    UniqueTree tree(m_comparator);
+    EXPECT_TRUE(tree.empty());
+    EXPECT_TRUE(tree.begin() == tree.end());
+    EXPECT_TRUE(tree.rbegin() == tree.rend());
+    EXPECT_TRUE(tree.find(makeKey(1)) == tree.end());
+    EXPECT_TRUE(tree.lower_bound(makeKey(1)) == tree.end());
+}
+
+TEST_F(BPlusTreeTest, UniqueInsertAndErase) {
+    UniqueTree tree(m_comparator);
+    UniqueMap entries(m_comparator);
+    const uint64_t maxKey = NUM_OF_OPERATIONS / 4;
+
+    for (int64_t ii = 0; ii < NUM_OF_OPERATIONS; ii++) {
+        Key key = makeKey(rand() % maxKey);
+        if (rand() % 3 == 0) {
+            UniqueMap::iterator m = entries.find(key);
+            UniqueTree::iterator t = tree.find(key);
+            ASSERT_EQ(m == entries.end(), t == tree.end());
+            if (m != entries.end()) {
+                entries.erase(m);
+                tree.erase(t);
+            }
+        } else {
+            bool inserted = entries.insert(pair<Key, const void*>(key, makeValue(ii))).second;
+            pair<UniqueTree::iterator, bool> result = tree.insert(pair<Key, const void*>(key, makeValue(ii)));
+            ASSERT_EQ(inserted, result.second);
+            EXPECT_EQ(key.data[0], result.first->first.data[0]);
+        }
+    }
+    checkSame(tree, entries);
+    checkBounds(tree, entries, maxKey);
+
+    // Then take everything back out
+    while (!entries.empty()) {
+        Key key = entries.begin()->first;
+        entries.erase(key);
+        EXPECT_EQ(1, tree.erase(key));
+    }
+    checkSame(tree, entries);
+}
+
+TEST_F(BPlusTreeTest, MultiInsertAndErase) {
+    MultiTree tree(m_comparator);
+    MultiMap entries(m_comparator);
+    const uint64_t maxKey = NUM_OF_OPERATIONS / 50;
+
+    for (int64_t ii = 0; ii < NUM_OF_OPERATIONS; ii++) {
+        Key key = makeKey(rand() % maxKey);
+        if (rand() % 3 == 0) {
+            // Delete a random one of the entries with this key
+            pair<MultiMap::iterator, MultiMap::iterator> m = entries.equal_range(key);
+            if (m.first == m.second) continue;
+            const void *value = m.first->second;
+            entries.erase(m.first);
+
+            pair<MultiTree::iterator, MultiTree::iterator> t = tree.equal_range(key);
+            for (; t.first != t.second; ++t.first) {
+                if (t.first->second == value) break;
+            }
+            ASSERT_TRUE(t.first != t.second);
+            tree.erase(t.first);
+        } else {
+            entries.insert(pair<Key, const void*>(key, makeValue(ii)));
+            tree.insert(pair<Key, const void*>(key, makeValue(ii)));
+        }
+    }
+    checkSame(tree, entries);
+    checkBounds(tree, entries, maxKey);
+
+    for (uint64_t ii = 0; ii < maxKey; ii++) {
+        Key key = makeKey(ii);
+        pair<MultiMap::iterator, MultiMap::iterator> m = entries.equal_range(key);
+        pair<MultiTree::iterator, MultiTree::iterator> t = tree.equal_range(key);
+        EXPECT_EQ(distance(m.first, m.second), distance(t.first, t.second));
+    }
+}
+
+/*
+ * Not really a test: compare the insert, lookup, and range-scan throughput
+ * of the B+tree against the std::map that the BinaryTree indexes use.
+ */
+TEST_F(BPlusTreeTest, Benchmark) {
+    vector<uint64_t> keys;
+    for (uint64_t ii = 0; ii < NUM_OF_BENCHMARK_ENTRIES; ii++) {
+        keys.push_back(ii * 2);
+    }
+    random_shuffle(keys.begin(), keys.end());
+
+    UniqueMap entries(m_comparator);
+    UniqueTree tree(m_comparator);
+    timeval start;
+    int64_t mapTime, treeTime;
+
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        entries.insert(pair<Key, const void*>(makeKey(keys[ii]), makeValue(ii)));
+    }
+    mapTime = elapsed(start);
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        tree.insert(pair<Key, const void*>(makeKey(keys[ii]), makeValue(ii)));
+    }
+    treeTime = elapsed(start);
+    cout << "insert: std::map " << mapTime << "us, BPlusTree " << treeTime << "us" << endl;
+    ASSERT_EQ(entries.size(), tree.size());
+
+    // Look up every key plus the missing one right after it
+    size_t mapFound = 0, treeFound = 0;
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        mapFound += (entries.find(makeKey(keys[ii])) != entries.end());
+        mapFound += (entries.find(makeKey(keys[ii] + 1)) != entries.end());
+    }
+    mapTime = elapsed(start);
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        treeFound += (tree.find(makeKey(keys[ii])) != tree.end());
+        treeFound += (tree.find(makeKey(keys[ii] + 1)) != tree.end());
+    }
+    treeTime = elapsed(start);
+    cout << "lookup: std::map " << mapTime << "us, BPlusTree " << treeTime << "us" << endl;
+    EXPECT_EQ(mapFound, treeFound);
+
+    // Short range scans from random starting points
+    const int scanLength = 100;
+    uint64_t mapSum = 0, treeSum = 0;
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii += scanLength) {
+        UniqueMap::const_iterator m = entries.lower_bound(makeKey(keys[ii]));
+        for (int jj = 0; jj < scanLength && m != entries.end(); jj++, ++m) {
+            mapSum += m->first.data[0];
+        }
+    }
+    mapTime = elapsed(start);
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii += scanLength) {
+        UniqueTree::const_iterator t = tree.lower_bound(makeKey(keys[ii]));
+        for (int jj = 0; jj < scanLength && t != tree.end(); jj++, ++t) {
+            treeSum += t->first.data[0];
+        }
+    }
+    treeTime = elapsed(start);
+    cout << "range scan: std::map " << mapTime << "us, BPlusTree " << treeTime << "us" << endl;
+    EXPECT_EQ(mapSum, treeSum);
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
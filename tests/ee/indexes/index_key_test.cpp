@@ -243,6 +243,46 @@ TEST_F(IndexKeyTest, Int32AndTwoInt8KeyTest) {
     voltdb::TupleSchema::freeTupleSchema(keySchema);
 }
 
+TEST_F(IndexKeyTest, IntsKeyToTupleTest) {
+    std::vector<voltdb::ValueType> columnTypes;
+    std::vector<int32_t> columnLengths;
+    std::vector<bool> columnAllowNull(4, true);
+
+    columnTypes.push_back(voltdb::VALUE_TYPE_BIGINT);
+    columnTypes.push_back(voltdb::VALUE_TYPE_INTEGER);
+    columnTypes.push_back(voltdb::VALUE_TYPE_SMALLINT);
+    columnTypes.push_back(voltdb::VALUE_TYPE_TINYINT);
+
+    columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_BIGINT));
+    columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_INTEGER));
+    columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_SMALLINT));
+    columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_TINYINT));
+
+    voltdb::TupleSchema *keySchema = voltdb::TupleSchema::createTupleSchema(columnTypes, columnLengths, columnAllowNull, true);
+
+    voltdb::TableTuple keyTuple(keySchema);
+    keyTuple.move(new char[keyTuple.tupleLength()]);
+    keyTuple.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(-123456789012LL)));
+    keyTuple.setNValue(1, ValueFactory::getIntegerValue(static_cast<int32_t>(3300)));
+    keyTuple.setNValue(2, ValueFactory::getSmallIntValue(static_cast<int16_t>(-7)));
+    keyTuple.setNValue(3, ValueFactory::getTinyIntValue(static_cast<int8_t>(1)));
+
+    voltdb::IntsKey<2> key;
+    key.setFromKey(&keyTuple);
+
+    // Unpacking the key has to give back the same values
+    voltdb::TableTuple otherTuple(keySchema);
+    otherTuple.move(new char[otherTuple.tupleLength()]);
+    key.toTuple(&otherTuple);
+    for (int ii = 0; ii < 4; ii++) {
+        EXPECT_TRUE(keyTuple.getNValue(ii).op_equals(otherTuple.getNValue(ii)).isTrue());
+    }
+
+    delete [] keyTuple.address();
+    delete [] otherTuple.address();
+    voltdb::TupleSchema::freeTupleSchema(keySchema);
+}
+
 TEST_F(IndexKeyTest, Int32AndTwoInt8KeyTest2) {
 
     std::vector<voltdb::ValueType> columnTypes;
@@ -72,6 +72,10 @@ const char *kUniqueIntsHash = "UniqueIntsHash";
 const char *kUniqueIntsTree = "UniqueIntsTree";
 const char *kUniqueGenericHash = "UniqueGenericHash";
 const char *kUniqueGenericTree = "UniqueGenericTree";
+const char *kMultiIntsBTree = "MultiIntsBTree";
+const char *kMultiGenericBTree = "MultiGenericBTree";
+const char *kUniqueIntsBTree = "UniqueIntsBTree";
+const char *kUniqueGenericBTree = "UniqueGenericBTree";
 
 
 struct Command {
@@ -219,6 +223,22 @@ void setNewCurrent(const char *testName, vector<const char*> indexNames, vector<
             voltdb::TableIndexScheme scheme(indexName, voltdb::BALANCED_TREE_INDEX, columnIndices, columnTypes, true, false, schema);
             index = voltdb::TableIndexFactory::getInstance(scheme);
         }
+        else if (strcmp(indexName, kMultiIntsBTree) == 0) {
+            voltdb::TableIndexScheme scheme(indexName, voltdb::BTREE_INDEX, columnIndices, columnTypes, false, true, schema);
+            index = voltdb::TableIndexFactory::getInstance(scheme);
+        }
+        else if (strcmp(indexName, kMultiGenericBTree) == 0) {
+            voltdb::TableIndexScheme scheme(indexName, voltdb::BTREE_INDEX, columnIndices, columnTypes, false, false, schema);
+            index = voltdb::TableIndexFactory::getInstance(scheme);
+        }
+        else if (strcmp(indexName, kUniqueIntsBTree) == 0) {
+            voltdb::TableIndexScheme scheme(indexName, voltdb::BTREE_INDEX, columnIndices, columnTypes, true, true, schema);
+            index = voltdb::TableIndexFactory::getInstance(scheme);
+        }
+        else if (strcmp(indexName, kUniqueGenericBTree) == 0) {
+            voltdb::TableIndexScheme scheme(indexName, voltdb::BTREE_INDEX, columnIndices, columnTypes, true, false, schema);
+            index = voltdb::TableIndexFactory::getInstance(scheme);
+        }
         else {
             cerr << "Unable to load index named: " << indexName << " on line: " << line << endl;
             exit(-1);
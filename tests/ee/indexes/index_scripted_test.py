@@ -47,7 +47,7 @@ script = """
 #   us = update expecting success
 #   uf = update expecting failure
 
-begin TestName MultiIntsTree,MultiGenericTree,MultiIntsHash,MultiGenericHash,UniqueIntsTree,UniqueGenericTree,UniqueIntsHash,UniqueGenericHash bint,bint,bint
+begin TestName MultiIntsTree,MultiGenericTree,MultiIntsHash,MultiGenericHash,UniqueIntsTree,UniqueGenericTree,UniqueIntsHash,UniqueGenericHash,MultiIntsBTree,MultiGenericBTree,UniqueIntsBTree,UniqueGenericBTree bint,bint,bint
 is 5,6,7
 ls 5,6,7
 #us 5,6,7 8,9,10
@@ -55,7 +55,7 @@ ls 5,6,7
 ds 5,6,7
 df 8,9,10
 exec
-begin GenericTest MultiGenericTree,MultiGenericHash,UniqueGenericTree,UniqueGenericHash str,bint,bint
+begin GenericTest MultiGenericTree,MultiGenericHash,UniqueGenericTree,UniqueGenericHash,MultiGenericBTree,UniqueGenericBTree str,bint,bint
 is foo,6,7
 ls foo,6,7
 #us foo,6,7 bar,9,10
@@ -0,0 +1,224 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <map>
+#include <set>
+#include <algorithm>
+#include <sys/time.h>
+#include "harness.h"
+#include "indexes/indexkey.h"
+#include "indexes/OpenHashTable.h"
+#include "boost/unordered_map.hpp"
+
+using namespace voltdb;
+using namespace std;
+
+typedef IntsKey<1> Key;
+typedef IntsHasher<1> Hasher;
+typedef IntsEqualityChecker<1> EqualityChecker;
+typedef IntsComparator<1> Comparator;
+typedef OpenHashTable<Key, const void*, Hasher, EqualityChecker, true> UniqueTable;
+typedef OpenHashTable<Key, const void*, Hasher, EqualityChecker, false> MultiTable;
+
+#define NUM_OF_OPERATIONS 100000
+#define NUM_OF_BENCHMARK_ENTRIES 1000000
+
+static inline Key makeKey(uint64_t value) {
+    Key key;
+    key.data[0] = value;
+    return key;
+}
+
+static inline const void* makeValue(int64_t value) {
+    return reinterpret_cast<const void*>(value);
+}
+
+static int64_t elapsed(const timeval &start) {
+    timeval end;
+    gettimeofday(&end, NULL);
+    return (end.tv_sec - start.tv_sec) * 1000000 + (end.tv_usec - start.tv_usec);
+}
+
+class OpenHashTableTest : public Test {
+public:
+    OpenHashTableTest() : m_hasher(NULL), m_eq(NULL), m_comparator(NULL) {
+        srand(0);
+    }
+
+protected:
+    Hasher m_hasher;
+    EqualityChecker m_eq;
+    Comparator m_comparator;
+};
+
+TEST_F(OpenHashTableTest, EmptyTable) {
+    UniqueTable table(100, m_hasher, m_eq);
+    UniqueTable::Cursor cursor;
+    EXPECT_EQ(0, table.size());
+    EXPECT_FALSE(table.find(makeKey(1), cursor));
+    EXPECT_FALSE(table.erase(makeKey(1)));
+}
+
+/*
+ * Start out small so that the table has to grow (incrementally) many
+ * times while we're checking it against a std::map
+ */
+TEST_F(OpenHashTableTest, UniqueInsertAndErase) {
+    UniqueTable table(16, m_hasher, m_eq);
+    map<Key, const void*, Comparator> entries(m_comparator);
+    const uint64_t maxKey = NUM_OF_OPERATIONS / 2;
+
+    for (int64_t ii = 0; ii < NUM_OF_OPERATIONS; ii++) {
+        Key key = makeKey(rand() % maxKey);
+        if (rand() % 4 == 0) {
+            bool erased = (entries.erase(key) > 0);
+            ASSERT_EQ(erased, table.erase(key));
+        } else {
+            bool inserted = entries.insert(pair<Key, const void*>(key, makeValue(ii))).second;
+            ASSERT_EQ(inserted, table.insert(key, makeValue(ii)));
+        }
+        ASSERT_EQ(entries.size(), table.size());
+    }
+
+    for (uint64_t ii = 0; ii < maxKey; ii++) {
+        Key key = makeKey(ii);
+        map<Key, const void*, Comparator>::iterator m = entries.find(key);
+        UniqueTable::Cursor cursor;
+        ASSERT_EQ(m != entries.end(), table.find(key, cursor));
+        if (m != entries.end()) {
+            EXPECT_EQ(m->second, cursor.data);
+            EXPECT_EQ(ii, cursor.key.data[0]);
+            EXPECT_FALSE(table.next(cursor));
+        }
+    }
+}
+
+TEST_F(OpenHashTableTest, MultiInsertAndErase) {
+    MultiTable table(16, m_hasher, m_eq);
+    multimap<Key, const void*, Comparator> entries(m_comparator);
+    const uint64_t maxKey = NUM_OF_OPERATIONS / 50;
+
+    for (int64_t ii = 0; ii < NUM_OF_OPERATIONS; ii++) {
+        Key key = makeKey(rand() % maxKey);
+        if (rand() % 3 == 0) {
+            pair<multimap<Key, const void*, Comparator>::iterator,
+                 multimap<Key, const void*, Comparator>::iterator> m = entries.equal_range(key);
+            if (m.first == m.second) {
+                ASSERT_FALSE(table.erase(key, makeValue(ii)));
+                continue;
+            }
+            // take out the last one with this key
+            --m.second;
+            ASSERT_TRUE(table.erase(key, m.second->second));
+            entries.erase(m.second);
+        } else {
+            entries.insert(pair<Key, const void*>(key, makeValue(ii)));
+            ASSERT_TRUE(table.insert(key, makeValue(ii)));
+        }
+        ASSERT_EQ(entries.size(), table.size());
+    }
+
+    // Every key should find exactly the same set of values
+    for (uint64_t ii = 0; ii < maxKey; ii++) {
+        Key key = makeKey(ii);
+        pair<multimap<Key, const void*, Comparator>::iterator,
+             multimap<Key, const void*, Comparator>::iterator> m = entries.equal_range(key);
+        set<const void*> expected;
+        for (; m.first != m.second; ++m.first) {
+            expected.insert(m.first->second);
+        }
+        set<const void*> found;
+        MultiTable::Cursor cursor;
+        for (bool more = table.find(key, cursor); more; more = table.next(cursor)) {
+            EXPECT_EQ(ii, cursor.key.data[0]);
+            EXPECT_TRUE(found.insert(cursor.data).second);
+        }
+        EXPECT_TRUE(expected == found);
+    }
+}
+
+/*
+ * Not really a test: compare the insert and lookup throughput and the
+ * worst-case insert latency against the boost::unordered_map that the
+ * HashTable indexes used to use.
+ */
+TEST_F(OpenHashTableTest, Benchmark) {
+    vector<uint64_t> keys;
+    for (uint64_t ii = 0; ii < NUM_OF_BENCHMARK_ENTRIES; ii++) {
+        keys.push_back(ii * 2);
+    }
+    random_shuffle(keys.begin(), keys.end());
+
+    boost::unordered_map<Key, const void*, Hasher, EqualityChecker> entries(100, m_hasher, m_eq);
+    entries.max_load_factor(.5f);
+    UniqueTable table(100, m_hasher, m_eq);
+    timeval start, opStart;
+    int64_t mapTime, tableTime, mapWorst = 0, tableWorst = 0;
+
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        gettimeofday(&opStart, NULL);
+        entries.insert(pair<Key, const void*>(makeKey(keys[ii]), makeValue(ii)));
+        mapWorst = max(mapWorst, elapsed(opStart));
+    }
+    mapTime = elapsed(start);
+    gettimeofday(&start, NULL);
+    for (size_t ii = 0; ii < keys.size(); ii++) {
+        gettimeofday(&opStart, NULL);
+        table.insert(makeKey(keys[ii]), makeValue(ii));
+        tableWorst = max(tableWorst, elapsed(opStart));
+    }
+    tableTime = elapsed(start);
+    cout << "insert: unordered_map " << mapTime << "us (worst " << mapWorst << "us), "
+         << "OpenHashTable " << tableTime << "us (worst " << tableWorst << "us)" << endl;
+    ASSERT_EQ(entries.size(), table.size());
+
+    // Look up every key, and then the missing one right after each key,
+    // in a different order than they went in. Each lookup depends on the
+    // result of the one before it (like an executor that does something
+    // with the tuple it found) so that we measure latency rather than how
+    // many cache misses the CPU can overlap.
+    random_shuffle(keys.begin(), keys.end());
+    UniqueTable::Cursor cursor;
+    for (uint64_t offset = 0; offset < 2; offset++) {
+        size_t mapFound = 0, tableFound = 0;
+        gettimeofday(&start, NULL);
+        for (size_t ii = 0; ii < keys.size(); ii++) {
+            mapFound += (entries.find(makeKey(keys[ii] + offset + (mapFound >> 62))) != entries.end());
+        }
+        mapTime = elapsed(start);
+        gettimeofday(&start, NULL);
+        for (size_t ii = 0; ii < keys.size(); ii++) {
+            tableFound += table.find(makeKey(keys[ii] + offset + (tableFound >> 62)), cursor);
+        }
+        tableTime = elapsed(start);
+        cout << (offset == 0 ? "hits" : "misses") << ": unordered_map " << mapTime << "us, "
+             << "OpenHashTable " << tableTime << "us" << endl;
+        EXPECT_EQ(mapFound, tableFound);
+    }
+    cout << "OpenHashTable load factor " << table.load_factor() << endl;
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
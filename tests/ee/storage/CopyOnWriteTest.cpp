@@ -528,6 +528,71 @@ TEST_F(CopyOnWriteTest, BigTestUndoEverything) {
     }
 }
 
+/*
+ * Take a snapshot that tracks tuple blocks, update a handful of tuples and then make sure that
+ * a delta snapshot only writes out the blocks that those tuples live in.
+ */
+TEST_F(CopyOnWriteTest, DeltaTest) {
+    initTable(true);
+    addRandomUniqueTuples( m_table, 699048);
+    DefaultTupleSerializer serializer;
+    char serializationBuffer[131072];
+
+    for (int qq = 0; qq < 2; qq++) {
+        std::set<int64_t> updatedTuples;
+        if (qq > 0) {
+            for (int jj = 0; jj < 5; jj++) {
+                voltdb::TableTuple tuple(m_table->schema());
+                voltdb::TableTuple tempTuple = m_table->tempTuple();
+                ASSERT_TRUE(tableutil::getRandomTuple(m_table, tuple));
+                tempTuple.copy(tuple);
+                tempTuple.setNValue(1, ValueFactory::getIntegerValue(::rand()));
+                m_table->updateTuple( tempTuple, tuple, true);
+                int values[2];
+                values[0] = ValuePeeker::peekAsInteger(tempTuple.getNValue(0));
+                values[1] = ValuePeeker::peekAsInteger(tempTuple.getNValue(1));
+                updatedTuples.insert(*reinterpret_cast<int64_t*>(values));
+            }
+        }
+
+        m_table->activateCopyOnWrite(&serializer, 0, qq == 0 ? COW_MODE_FULL_BLOCKS : COW_MODE_DELTA);
+
+        std::set<int64_t> COWTuples;
+        std::set<int32_t> COWBlocks;
+        while (true) {
+            ReferenceSerializeOutput out( serializationBuffer, 131072);
+            m_table->serializeMore(&out);
+            const int serialized = static_cast<int>(out.position());
+            if (out.position() == 0) {
+                break;
+            }
+            const int32_t blockIndex = ntohl(*reinterpret_cast<int32_t*>(&serializationBuffer[serialized - 8]));
+            if (blockIndex != -1) {
+                COWBlocks.insert(blockIndex);
+            }
+            int ii = 16;//skip partition id and CRCs and first tuple length
+            while (ii < (serialized - 8)) {
+                int values[2];
+                values[0] = ntohl(*reinterpret_cast<int32_t*>(&serializationBuffer[ii]));
+                values[1] = ntohl(*reinterpret_cast<int32_t*>(&serializationBuffer[ii + 4]));
+                ASSERT_TRUE(COWTuples.insert(*reinterpret_cast<int64_t*>(values)).second);
+                ii += 12;
+            }
+        }
+
+        if (qq == 0) {
+            ASSERT_EQ(699048, COWTuples.size());
+        } else {
+            ASSERT_TRUE(COWBlocks.size() > 0);
+            ASSERT_TRUE(COWBlocks.size() <= updatedTuples.size());
+            ASSERT_TRUE(COWTuples.size() < 699048);
+            for (std::set<int64_t>::iterator ii = updatedTuples.begin(); ii != updatedTuples.end(); ii++) {
+                ASSERT_TRUE(COWTuples.find(*ii) != COWTuples.end());
+            }
+        }
+    }
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -63,8 +63,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
@@ -74,6 +76,7 @@ import org.json.JSONException;
 import org.json.JSONStringer;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTableBuilder;
 import org.voltdb.VoltTableRow;
 import org.voltdb.benchmark.BlockingClient;
 import org.voltdb.benchmark.Verification;
@@ -85,19 +88,23 @@ import org.voltdb.catalog.Table;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.client.StatsUploaderSettings;
 import org.voltdb.utils.Pair;
 import org.voltdb.utils.VoltSampler;
 
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.designer.partitioners.plan.PartitionPlan;
+import edu.brown.hashing.AbstractHasher;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.statistics.Histogram;
 import edu.brown.statistics.TableStatistics;
 import edu.brown.statistics.WorkloadStatistics;
 import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.ClassUtil;
 import edu.brown.utils.FileUtil;
+import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.ProfileMeasurement;
 import edu.brown.utils.StringUtil;
 import edu.brown.hstore.HStoreConstants;
@@ -337,6 +344,11 @@ public abstract class BenchmarkComponent {
     private final ReentrantLock m_loaderBlock = new ReentrantLock();
     private final ClientResponse m_dummyResponse = new ClientResponseImpl(-1, -1, -1, Status.OK, HStoreConstants.EMPTY_RESULT, "");
     
+    /**
+     * Used to split up tables by partition when ${client.bulkload} is enabled
+     */
+    private PartitionEstimator m_pEstimator;
+    
     /**
      * Keep track of the number of tuples loaded so that we can generate table statistics
      */
@@ -1111,7 +1123,18 @@ public abstract class BenchmarkComponent {
             boolean locked = m_hstoreConf.client.blocking_loader;
             if (locked) m_loaderBlock.lock();
             try {
-                cr = m_voltClient.callProcedure("@LoadMultipartitionTable", tableName, vt);
+                Table catalog_tbl = null;
+                if (m_hstoreConf.client.bulkload) {
+                    catalog_tbl = CatalogUtil.getDatabase(this.getCatalog()).getTables().getIgnoreCase(tableName);
+                }
+                // Replicated tables and tables with vertical partitions have to go 
+                // through @LoadMultipartitionTable so that every partition gets updated
+                if (catalog_tbl != null && catalog_tbl.getIsreplicated() == false &&
+                    CatalogUtil.getVerticalPartition(catalog_tbl) == null) {
+                    cr = this.bulkLoadVoltTable(catalog_tbl, vt);
+                } else {
+                    cr = m_voltClient.callProcedure("@LoadMultipartitionTable", tableName, vt);
+                }
             } catch (Exception e) {
                 throw new RuntimeException("Error when trying load data for '" + tableName + "'", e);
             } finally {
@@ -1155,6 +1178,85 @@ public abstract class BenchmarkComponent {
         return (cr);
     }
     
+    /**
+     * Split the tuples in the given VoltTable by partition and then send each piece 
+     * directly to its partition using @LoadPartitionTable. All of the pieces are sent
+     * at the same time so that the partitions will load them in parallel. The current
+     * thread will block until all of the partitions have responded.
+     * If any of the partitions fail, then the first failed ClientResponse is returned.
+     * @param catalog_tbl
+     * @param vt
+     * @return
+     * @throws Exception
+     */
+    protected ClientResponse bulkLoadVoltTable(Table catalog_tbl, VoltTable vt) throws Exception {
+        PartitionEstimator p_estimator = this.getPartitionEstimator();
+        int num_partitions = CatalogUtil.getNumberOfPartitions(catalog_tbl);
+        VoltTableBuilder partitionedTables[] = new VoltTableBuilder[num_partitions];
+        int expectedRows = (vt.getRowCount() / num_partitions) + 1;
+        
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            int p = p_estimator.getTableRowPartition(catalog_tbl, vt);
+            if (partitionedTables[p] == null) {
+                partitionedTables[p] = new VoltTableBuilder(vt, expectedRows, null);
+            }
+            partitionedTables[p].addRow(vt);
+        } // WHILE
+        
+        int num_requests = 0;
+        for (VoltTableBuilder builder : partitionedTables) {
+            if (builder != null) num_requests++;
+        } // FOR
+        final CountDownLatch latch = new CountDownLatch(num_requests);
+        final AtomicReference<ClientResponse> result = new AtomicReference<ClientResponse>(m_dummyResponse);
+        ProcedureCallback callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse clientResponse) {
+                if (clientResponse.getStatus() != Status.OK) {
+                    result.compareAndSet(m_dummyResponse, clientResponse);
+                } else if (debug.get()) {
+                    VoltTable results[] = clientResponse.getResults();
+                    if (results.length > 0 && results[0].advanceRow()) {
+                        LOG.debug(String.format("Bulk Load %s: partition #%d / %d tuples / %d total",
+                                                results[0].getString("TABLE_NAME"),
+                                                results[0].getLong("PARTITION_ID"),
+                                                results[0].getLong("TUPLES"),
+                                                results[0].getLong("TOTAL_TUPLES")));
+                    }
+                }
+                latch.countDown();
+            }
+        };
+        for (int p = 0; p < partitionedTables.length; p++) {
+            if (partitionedTables[p] == null) continue;
+            VoltTable data = partitionedTables[p].build();
+            // If the client has backpressure, then the request wasn't queued
+            // So we have to wait until it goes away and then try again
+            while (m_voltClient.callProcedure(callback, "@LoadPartitionTable",
+                                              p, catalog_tbl.getName(), data) == false) {
+                m_voltClient.backpressureBarrier();
+            } // WHILE
+        } // FOR
+        latch.await();
+        return (result.get());
+    }
+    
+    /**
+     * Returns the PartitionEstimator used to split up tables when bulk loading
+     * @return
+     */
+    private synchronized PartitionEstimator getPartitionEstimator() {
+        if (m_pEstimator == null) {
+            Database catalog_db = CatalogUtil.getDatabase(this.getCatalog());
+            AbstractHasher hasher = ClassUtil.newInstance(m_hstoreConf.global.hasherClass,
+                                                          new Object[]{ catalog_db, CatalogUtil.getNumberOfPartitions(catalog_db) },
+                                                          new Class<?>[]{ Database.class, int.class });
+            m_pEstimator = new PartitionEstimator(catalog_db, hasher);
+        }
+        return (m_pEstimator);
+    }
+    
     /**
      * Return an overridden transaction weight
      * @param txnName
@@ -2,8 +2,19 @@ package edu.brown.benchmark;
 
 import java.io.IOException;
 
+import org.voltdb.VoltTableBuilder;
+import org.voltdb.catalog.Table;
+import org.voltdb.utils.DBBPool;
+
+import edu.brown.catalog.CatalogUtil;
+
 public abstract class Loader extends BenchmarkComponent {
 
+    /**
+     * Direct buffers used by the VoltTableBuilders for this loader
+     */
+    private final DBBPool bufferPool = new DBBPool(false, false);
+    
     public Loader(String[] args) {
         super(args);
     }
@@ -20,5 +31,17 @@ public abstract class Loader extends BenchmarkComponent {
         // Not needed here
         return null;
     }
+    
+    /**
+     * Create a new VoltTableBuilder for the given catalog table whose buffer
+     * is pre-sized to hold the given number of rows. The caller is responsible
+     * for calling VoltTableBuilder.discard() once it is finished loading.
+     * @param catalog_tbl
+     * @param expectedRows
+     * @return
+     */
+    protected VoltTableBuilder createTableBuilder(Table catalog_tbl, int expectedRows) {
+        return new VoltTableBuilder(CatalogUtil.getVoltTable(catalog_tbl), expectedRows, this.bufferPool);
+    }
 
 }
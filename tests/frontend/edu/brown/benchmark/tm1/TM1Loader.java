@@ -34,6 +34,7 @@ package edu.brown.benchmark.tm1;
 
 import org.apache.log4j.Logger;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltTableBuilder;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
@@ -154,56 +155,54 @@ public class TM1Loader extends Loader {
      * Populate Subscriber table per benchmark spec.
      */
     void genSubscriber(Table catalog_tbl) {
-        final VoltTable table = CatalogUtil.getVoltTable(catalog_tbl);
+        final VoltTableBuilder table = this.createTableBuilder(catalog_tbl, TM1Constants.BATCH_SIZE);
         long s_id = 0;
-        Object row[] = new Object[table.getColumnCount()];
 
         long total = 0;
         while (s_id++ < subscriberSize) {
-            int col = 0;
-            row[col++] = new Long(s_id);
-            row[col++] = TM1Util.padWithZero((Long) row[0]);
+            table.putLong(s_id);
+            table.putString(TM1Util.padWithZero(s_id));
 
             // BIT_##
             for (int j = 0; j < 10; j++) {
-                row[col++] = TM1Util.number(0, 1).intValue();
+                table.putLong(TM1Util.number(0, 1));
             } // FOR
               // HEX_##
             for (int j = 0; j < 10; j++) {
-                row[col++] = TM1Util.number(0, 15).intValue();
+                table.putLong(TM1Util.number(0, 15));
             }
             // BYTE2_##
             for (int j = 0; j < 10; j++) {
-                row[col++] = TM1Util.number(0, 255).intValue();
+                table.putLong(TM1Util.number(0, 255));
             }
             // msc_location + vlr_location
             for (int j = 0; j < 2; j++) {
-                row[col++] = TM1Util.number(0, Integer.MAX_VALUE).intValue();
+                table.putLong(TM1Util.number(0, Integer.MAX_VALUE));
             }
-            assert col == table.getColumnCount();
-            table.addRow(row);
+            table.endRow();
             total++;
 
             if (table.getRowCount() >= TM1Constants.BATCH_SIZE) {
                 if (d)
                     LOG.debug(String.format("%s: %6d / %d", TM1Constants.TABLENAME_SUBSCRIBER, total, subscriberSize));
-                loadVoltTable(TM1Constants.TABLENAME_SUBSCRIBER, table);
-                table.clearRowData();
+                loadVoltTable(TM1Constants.TABLENAME_SUBSCRIBER, table.build());
+                table.reset();
             }
         } // WHILE
         if (table.getRowCount() > 0) {
             if (d)
                 LOG.debug(String.format("%s: %6d / %d", TM1Constants.TABLENAME_SUBSCRIBER, total, subscriberSize));
-            loadVoltTable(TM1Constants.TABLENAME_SUBSCRIBER, table);
-            table.clearRowData();
+            loadVoltTable(TM1Constants.TABLENAME_SUBSCRIBER, table.build());
+            table.reset();
         }
+        table.discard();
     }
 
     /**
      * Populate Access_Info table per benchmark spec.
      */
     void genAccessInfo(Table catalog_tbl) {
-        final VoltTable table = CatalogUtil.getVoltTable(catalog_tbl);
+        final VoltTableBuilder table = this.createTableBuilder(catalog_tbl, TM1Constants.BATCH_SIZE);
         int s_id = 0;
         int[] arr = { 1, 2, 3, 4 };
 
@@ -211,29 +210,29 @@ public class TM1Loader extends Loader {
         long total = 0;
         while (s_id++ < subscriberSize) {
             for (int ai_type : ai_types) {
-                Object row[] = new Object[table.getColumnCount()];
-                row[0] = new Long(s_id);
-                row[1] = ai_type;
-                row[2] = TM1Util.number(0, 255).intValue();
-                row[3] = TM1Util.number(0, 255).intValue();
-                row[4] = TM1Util.astring(3, 3);
-                row[5] = TM1Util.astring(5, 5);
-                table.addRow(row);
+                table.putLong(s_id);
+                table.putLong(ai_type);
+                table.putLong(TM1Util.number(0, 255));
+                table.putLong(TM1Util.number(0, 255));
+                table.putString(TM1Util.astring(3, 3));
+                table.putString(TM1Util.astring(5, 5));
+                table.endRow();
                 total++;
             } // FOR
             if (table.getRowCount() >= TM1Constants.BATCH_SIZE) {
                 if (d)
                     LOG.debug(String.format("%s: %6d / %d", TM1Constants.TABLENAME_ACCESS_INFO, total, ai_types.length * subscriberSize));
-                loadVoltTable(TM1Constants.TABLENAME_ACCESS_INFO, table);
-                table.clearRowData();
+                loadVoltTable(TM1Constants.TABLENAME_ACCESS_INFO, table.build());
+                table.reset();
             }
         } // WHILE
         if (table.getRowCount() > 0) {
             if (d)
                 LOG.debug(String.format("%s: %6d / %d", TM1Constants.TABLENAME_ACCESS_INFO, total, ai_types.length * subscriberSize));
-            loadVoltTable(TM1Constants.TABLENAME_ACCESS_INFO, table);
-            table.clearRowData();
+            loadVoltTable(TM1Constants.TABLENAME_ACCESS_INFO, table.build());
+            table.reset();
         }
+        table.discard();
     }
 
     /**
@@ -241,8 +240,8 @@ public class TM1Loader extends Loader {
      * spec.
      */
     void genSpeAndCal(Table catalog_spe, Table catalog_cal) {
-        VoltTable speTbl = CatalogUtil.getVoltTable(catalog_spe);
-        VoltTable calTbl = CatalogUtil.getVoltTable(catalog_cal);
+        VoltTableBuilder speTbl = this.createTableBuilder(catalog_spe, TM1Constants.BATCH_SIZE);
+        VoltTableBuilder calTbl = this.createTableBuilder(catalog_cal, TM1Constants.BATCH_SIZE);
 
         int s_id = 0;
         long speTotal = 0;
@@ -253,26 +252,24 @@ public class TM1Loader extends Loader {
         while (s_id++ < subscriberSize) {
             int[] sf_types = TM1Util.subArr(arrSpe, 1, 4);
             for (int sf_type : sf_types) {
-                Object row[] = new Object[speTbl.getColumnCount()];
-                row[0] = new Long(s_id);
-                row[1] = sf_type;
-                row[2] = TM1Util.isActive();
-                row[3] = TM1Util.number(0, 255).intValue();
-                row[4] = TM1Util.number(0, 255).intValue();
-                row[5] = TM1Util.astring(5, 5);
-                speTbl.addRow(row);
+                speTbl.putLong(s_id);
+                speTbl.putLong(sf_type);
+                speTbl.putLong(TM1Util.isActive());
+                speTbl.putLong(TM1Util.number(0, 255));
+                speTbl.putLong(TM1Util.number(0, 255));
+                speTbl.putString(TM1Util.astring(5, 5));
+                speTbl.endRow();
                 speTotal++;
 
                 // now call_forwarding
                 int[] start_times = TM1Util.subArr(arrCal, 0, 3);
                 for (int start_time : start_times) {
-                    Object row_cal[] = new Object[calTbl.getColumnCount()];
-                    row_cal[0] = row[0];
-                    row_cal[1] = row[1];
-                    row_cal[2] = start_time;
-                    row_cal[3] = start_time + TM1Util.number(1, 8);
-                    row_cal[4] = TM1Util.nstring(15, 15);
-                    calTbl.addRow(row_cal);
+                    calTbl.putLong(s_id);
+                    calTbl.putLong(sf_type);
+                    calTbl.putLong(start_time);
+                    calTbl.putLong(start_time + TM1Util.number(1, 8));
+                    calTbl.putString(TM1Util.nstring(15, 15));
+                    calTbl.endRow();
                     calTotal++;
                 } // FOR
             } // FOR
@@ -280,27 +277,29 @@ public class TM1Loader extends Loader {
             if (calTbl.getRowCount() >= TM1Constants.BATCH_SIZE) {
                 if (d)
                     LOG.debug(String.format("%s: %d", TM1Constants.TABLENAME_CALL_FORWARDING, calTotal));
-                loadVoltTable(TM1Constants.TABLENAME_CALL_FORWARDING, calTbl);
-                calTbl.clearRowData();
+                loadVoltTable(TM1Constants.TABLENAME_CALL_FORWARDING, calTbl.build());
+                calTbl.reset();
             }
             if (speTbl.getRowCount() >= TM1Constants.BATCH_SIZE) {
                 if (d)
                     LOG.debug(String.format("%s: %d", TM1Constants.TABLENAME_SPECIAL_FACILITY, speTotal));
-                loadVoltTable(TM1Constants.TABLENAME_SPECIAL_FACILITY, speTbl);
-                speTbl.clearRowData();
+                loadVoltTable(TM1Constants.TABLENAME_SPECIAL_FACILITY, speTbl.build());
+                speTbl.reset();
             }
         } // WHILE
         if (calTbl.getRowCount() > 0) {
             if (d)
                 LOG.debug(String.format("%s: %d", TM1Constants.TABLENAME_CALL_FORWARDING, calTotal));
-            loadVoltTable(TM1Constants.TABLENAME_CALL_FORWARDING, calTbl);
-            calTbl.clearRowData();
+            loadVoltTable(TM1Constants.TABLENAME_CALL_FORWARDING, calTbl.build());
+            calTbl.reset();
         }
         if (speTbl.getRowCount() > 0) {
             if (d)
                 LOG.debug(String.format("%s: %d", TM1Constants.TABLENAME_SPECIAL_FACILITY, speTotal));
-            loadVoltTable(TM1Constants.TABLENAME_SPECIAL_FACILITY, speTbl);
-            speTbl.clearRowData();
+            loadVoltTable(TM1Constants.TABLENAME_SPECIAL_FACILITY, speTbl.build());
+            speTbl.reset();
         }
+        calTbl.discard();
+        speTbl.discard();
     }
-}
\ No newline at end of file
+}
@@ -3,18 +3,25 @@
  */
 package edu.brown.hstore;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Random;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.voltdb.DependencySet;
+import org.voltdb.ParameterSet;
+import org.voltdb.SQLStmt;
 import org.voltdb.VoltProcedure;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
+import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Site;
+import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.jni.MockExecutionEngine;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.VoltTypeUtil;
 
@@ -22,6 +29,8 @@ import com.google.protobuf.ByteString;
 
 import edu.brown.BaseTestCase;
 import edu.brown.benchmark.tm1.TM1Constants;
+import edu.brown.benchmark.tm1.procedures.GetSubscriberData;
+import edu.brown.benchmark.tm1.procedures.UpdateLocation;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.hstore.Hstoreservice.WorkResult;
@@ -34,7 +43,10 @@ import edu.brown.utils.StringUtil;
 import edu.brown.hstore.HStore;
 import edu.brown.hstore.HStoreSite;
 import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.dtxn.ExecutionState;
+import edu.brown.hstore.dtxn.LocalTransaction;
 import edu.brown.hstore.dtxn.RemoteTransaction;
+import edu.brown.markov.TransactionEstimator;
 
 /**
  * @author pavlo
@@ -52,6 +64,7 @@ public class TestPartitionExecutor extends BaseTestCase {
     
     private HStoreSite hstore_site;
     private PartitionExecutor executor;
+    private boolean orig_speculative_writes;
     
     private final Random rand = new Random(1); 
     
@@ -69,11 +82,18 @@ public class TestPartitionExecutor extends BaseTestCase {
         
         Site catalog_site = CollectionUtil.first(CatalogUtil.getCluster(catalog).getSites());
         HStoreConf hstore_conf = HStoreConf.singleton();
+        orig_speculative_writes = hstore_conf.site.exec_speculative_writes;
         hstore_site = new MockHStoreSite(catalog_site, hstore_conf);
         executor = hstore_site.getPartitionExecutor(PARTITION_ID);
         assertNotNull(executor);
     }
     
+    @Override
+    protected void tearDown() throws Exception {
+        HStoreConf.singleton().site.exec_speculative_writes = orig_speculative_writes;
+        super.tearDown();
+    }
+    
     protected class BlockingObserver extends EventObserver<ClientResponse> {
         public final LinkedBlockingDeque<ClientResponse> lock = new LinkedBlockingDeque<ClientResponse>(1);
         
@@ -309,4 +329,247 @@ public class TestPartitionExecutor extends BaseTestCase {
         
     }
     
+    /**
+     * Pretend that the given txn wrote some tuples at our partition in a new round
+     */
+    private void executeWrite(LocalTransaction ts, Table catalog_tbl, int num_rows, long undoToken) throws Exception {
+        VoltTable vt = CatalogUtil.getVoltTable(catalog_tbl);
+        for (int i = 0; i < num_rows; i++) {
+            Object row[] = new Object[catalog_tbl.getColumns().size()];
+            for (int j = 0; j < row.length; j++) {
+                VoltType vtype = VoltType.get(catalog_tbl.getColumns().get(j).getType());
+                row[j] = VoltTypeUtil.getRandomValue(vtype, rand);
+            } // FOR
+            vt.addRow(row);
+        } // FOR
+        
+        ts.fastInitRound(PARTITION_ID, undoToken);
+        executor.getExecutionEngine().loadTable(catalog_tbl.getRelativeIndex(), vt, ts.getTransactionId(),
+                                                LAST_SAFE_TXN, undoToken, false);
+        ts.setSubmittedEE(PARTITION_ID);
+        ts.markExecNotReadOnly(PARTITION_ID);
+    }
+    
+    /**
+     * Create a distributed txn and two speculative txns that executed after it
+     * at our partition. Each of them writes to the given table. The dtxn's base
+     * partition is somewhere else so that it can execute more than one round here.
+     */
+    private LocalTransaction[] executeSpeculative(Table catalog_tbl) throws Exception {
+        Procedure catalog_proc = this.getProcedure(UpdateLocation.class);
+        long txn_id = 1000;
+        
+        LocalTransaction dtxn = new LocalTransaction(hstore_site);
+        dtxn.testInit(txn_id++, PARTITION_ID + 1, Arrays.asList(PARTITION_ID, PARTITION_ID + 1), catalog_proc);
+        this.executeWrite(dtxn, catalog_tbl, 1, executor.getNextUndoToken());
+        
+        LocalTransaction spec0 = new LocalTransaction(hstore_site);
+        spec0.testInit(txn_id++, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+        spec0.setSpeculative(true);
+        this.executeWrite(spec0, catalog_tbl, 2, executor.getNextUndoToken());
+        
+        LocalTransaction spec1 = new LocalTransaction(hstore_site);
+        spec1.testInit(txn_id++, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+        spec1.setSpeculative(true);
+        this.executeWrite(spec1, catalog_tbl, 4, executor.getNextUndoToken());
+        
+        return (new LocalTransaction[]{ dtxn, spec0, spec1 });
+    }
+    
+    /**
+     * testSpeculativeAbort
+     */
+    public void testSpeculativeAbort() throws Exception {
+        HStoreConf.singleton().site.exec_speculative_writes = true;
+        Table catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+        MockExecutionEngine ee = (MockExecutionEngine)executor.getExecutionEngine();
+        int base = ee.getTupleCount(catalog_tbl.getRelativeIndex());
+        
+        LocalTransaction txns[] = this.executeSpeculative(catalog_tbl);
+        assertEquals(base + 7, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // The last speculative txn aborts, so only its own writes go away
+        executor.finishWork(txns[2], false);
+        assertTrue(txns[2].isFinishedEE(PARTITION_ID));
+        assertEquals(base + 3, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // Then the dtxn and the other speculative txn commit
+        executor.finishWork(txns[0], true);
+        executor.finishWork(txns[1], true);
+        assertEquals(base + 3, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // Everything should be released, so rolling back the next txn can't touch it
+        Procedure catalog_proc = this.getProcedure(UpdateLocation.class);
+        LocalTransaction after = new LocalTransaction(hstore_site);
+        after.testInit(2000l, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+        this.executeWrite(after, catalog_tbl, 8, executor.getNextUndoToken());
+        executor.finishWork(after, false);
+        assertEquals(base + 3, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+    }
+    
+    /**
+     * testDistributedAbortCascades
+     */
+    public void testDistributedAbortCascades() throws Exception {
+        HStoreConf.singleton().site.exec_speculative_writes = true;
+        Table catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+        MockExecutionEngine ee = (MockExecutionEngine)executor.getExecutionEngine();
+        int base = ee.getTupleCount(catalog_tbl.getRelativeIndex());
+        
+        LocalTransaction txns[] = this.executeSpeculative(catalog_tbl);
+        assertEquals(base + 7, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // When the dtxn aborts, everything that was speculatively executed 
+        // after it has to be rolled back too
+        executor.finishWork(txns[0], false);
+        assertEquals(base, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // The speculative txns then get aborted and restarted, which shouldn't
+        // touch anything that came before the dtxn
+        executor.finishWork(txns[1], false);
+        executor.finishWork(txns[2], false);
+        assertEquals(base, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+    }
+    
+    /**
+     * testDistributedAbortWithRounds
+     */
+    public void testDistributedAbortWithRounds() throws Exception {
+        HStoreConf.singleton().site.exec_speculative_writes = true;
+        Table catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+        MockExecutionEngine ee = (MockExecutionEngine)executor.getExecutionEngine();
+        int base = ee.getTupleCount(catalog_tbl.getRelativeIndex());
+        
+        // Commit a single-partition txn before the dtxn shows up
+        Procedure catalog_proc = this.getProcedure(UpdateLocation.class);
+        LocalTransaction before = new LocalTransaction(hstore_site);
+        before.testInit(999l, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+        this.executeWrite(before, catalog_tbl, 8, executor.getNextUndoToken());
+        executor.finishWork(before, true);
+        
+        // The dtxn executes another round after the speculative txns
+        LocalTransaction txns[] = this.executeSpeculative(catalog_tbl);
+        txns[0].startRound(PARTITION_ID);
+        txns[0].finishRound(PARTITION_ID);
+        this.executeWrite(txns[0], catalog_tbl, 16, executor.getNextUndoToken());
+        assertEquals(base + 8 + 7 + 16, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        
+        // Aborting the dtxn rolls back both of its rounds and the speculative
+        // txns in between them, but not the txn that committed before it
+        executor.finishWork(txns[0], false);
+        assertEquals(base + 8, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+    }
+    
+    /**
+     * testCascadingAbortAfterRelease
+     */
+    public void testCascadingAbortAfterRelease() throws Exception {
+        HStoreConf hstore_conf = HStoreConf.singleton();
+        hstore_conf.site.exec_speculative_writes = true;
+        int orig_release_batch = hstore_conf.site.exec_undo_release_batch;
+        hstore_conf.site.exec_undo_release_batch = 1;
+        try {
+            Table catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+            MockExecutionEngine ee = (MockExecutionEngine)executor.getExecutionEngine();
+            int base = ee.getTupleCount(catalog_tbl.getRelativeIndex());
+            
+            // Release the token right before the dtxn's first token, so that the EE 
+            // has nothing left to undo once the dtxn rolls back
+            Procedure catalog_proc = this.getProcedure(UpdateLocation.class);
+            LocalTransaction before = new LocalTransaction(hstore_site);
+            before.testInit(999l, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+            this.executeWrite(before, catalog_tbl, 8, executor.getNextUndoToken());
+            executor.finishWork(before, true);
+            
+            // The first speculative txn aborts on its own, then the dtxn aborts
+            LocalTransaction txns[] = this.executeSpeculative(catalog_tbl);
+            executor.finishWork(txns[2], false);
+            assertEquals(base + 8 + 3, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+            executor.finishWork(txns[0], false);
+            assertEquals(base + 8, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+            
+            // The other speculative txn gets aborted because of the dtxn, but the
+            // EE must not be asked to undo its token again
+            executor.finishWork(txns[1], false);
+            assertTrue(txns[1].isFinishedEE(PARTITION_ID));
+            assertEquals(base + 8, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+            
+            // And the next txn can still be rolled back by itself
+            LocalTransaction after = new LocalTransaction(hstore_site);
+            after.testInit(2000l, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+            this.executeWrite(after, catalog_tbl, 32, executor.getNextUndoToken());
+            assertEquals(base + 8 + 32, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+            executor.finishWork(after, false);
+            assertEquals(base + 8, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        } finally {
+            hstore_conf.site.exec_undo_release_batch = orig_release_batch;
+        }
+    }
+
+    /**
+     * Plan a batch with a single invocation of the given Statement at our partition
+     */
+    private BatchPlanner.BatchPlan makeBatchPlan(LocalTransaction ts, Statement catalog_stmt) throws Exception {
+        Object params[] = this.makeRandomStatementParameters(catalog_stmt);
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] instanceof Number) params[i] = new Long(PARTITION_ID);
+        } // FOR
+        SQLStmt batch[] = { new SQLStmt(catalog_stmt) };
+        BatchPlanner planner = new BatchPlanner(batch, (Procedure)catalog_stmt.getParent(), p_estimator);
+        BatchPlanner.BatchPlan plan = planner.plan(ts.getTransactionId(),
+                                                   CLIENT_HANDLE,
+                                                   PARTITION_ID,
+                                                   ts.getPredictTouchedPartitions(),
+                                                   ts.isPredictSinglePartition(),
+                                                   ts.getTouchedPartitions(),
+                                                   new ParameterSet[]{ new ParameterSet(params) });
+        assertNotNull(plan);
+        return (plan);
+    }
+    
+    /**
+     * testNoUndoLoggingAbort
+     */
+    public void testNoUndoLoggingAbort() throws Exception {
+        Table catalog_tbl = this.getTable(TM1Constants.TABLENAME_SUBSCRIBER);
+        MockExecutionEngine ee = (MockExecutionEngine)executor.getExecutionEngine();
+        int base = ee.getTupleCount(catalog_tbl.getRelativeIndex());
+        
+        HStoreConf hstore_conf = HStoreConf.singleton();
+        boolean orig_no_undo = hstore_conf.site.exec_no_undo_logging;
+        hstore_conf.site.exec_no_undo_logging = true;
+        try {
+            Procedure catalog_proc = this.getProcedure(UpdateLocation.class);
+            LocalTransaction ts = new LocalTransaction(hstore_site);
+            ts.testInit(1000l, PARTITION_ID, Collections.singleton(PARTITION_ID), catalog_proc);
+            ts.setExecutionState(new ExecutionState(executor));
+            ts.setEstimatorState((TransactionEstimator.State)new TransactionEstimator.State.Factory(NUM_PARTITONS).makeObject());
+            
+            // The first batch only reads, so it doesn't need an undo buffer
+            Statement catalog_stmt = this.getStatement(this.getProcedure(GetSubscriberData.class), "GetData");
+            BatchPlanner.BatchPlan plan = this.makeBatchPlan(ts, catalog_stmt);
+            assertTrue(plan.isReadOnly());
+            assertFalse(executor.needsUndoBuffer(ts, plan));
+            ts.fastInitRound(PARTITION_ID, HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN);
+            ts.setSubmittedEE(PARTITION_ID);
+            ts.fastFinishRound(PARTITION_ID);
+            
+            // But the second batch writes, so it always gets one
+            catalog_stmt = this.getStatement(catalog_proc, "updateSubscriber");
+            plan = this.makeBatchPlan(ts, catalog_stmt);
+            assertFalse(plan.isReadOnly());
+            assertTrue(executor.needsUndoBuffer(ts, plan));
+            this.executeWrite(ts, catalog_tbl, 2, executor.getNextUndoToken());
+            assertEquals(base + 2, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+            
+            // Aborting the txn rolls back its write without taking down the site
+            executor.finishWork(ts, false);
+            assertTrue(ts.isFinishedEE(PARTITION_ID));
+            assertFalse(hstore_site.isShuttingDown());
+            assertEquals(base, ee.getTupleCount(catalog_tbl.getRelativeIndex()));
+        } finally {
+            hstore_conf.site.exec_no_undo_logging = orig_no_undo;
+        }
+    }
+    
 }
@@ -0,0 +1,55 @@
+package edu.brown.hstore;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.messaging.InitiateTaskMessage;
+import org.voltdb.messaging.LoadTableMessage;
+import org.voltdb.messaging.PotentialSnapshotWorkMessage;
+import org.voltdb.messaging.VoltMessage;
+
+import com.google.protobuf.RpcCallback;
+
+public class TestPartitionExecutorQueue extends TestCase {
+
+    private final RpcCallback<byte[]> callback = new RpcCallback<byte[]>() {
+        @Override
+        public void run(byte[] parameter) {
+            // Nothing
+        }
+    };
+
+    private final PartitionExecutorQueue queue = new PartitionExecutorQueue();
+
+    /**
+     * testNonTransactionalMessages
+     */
+    public void testNonTransactionalMessages() throws Exception {
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT));
+        vt.addRow(1l);
+
+        InitiateTaskMessage itask = new InitiateTaskMessage();
+        this.queue.add(itask);
+
+        // We should be able to have multiple non-transactional messages in the
+        // queue at the same time and they should always come out first
+        int num_msgs = 10;
+        for (int i = 0; i < num_msgs; i++) {
+            if (i % 2 == 0) {
+                this.queue.add(new LoadTableMessage(i, "TABLE", vt, this.callback));
+            } else {
+                this.queue.add(new PotentialSnapshotWorkMessage());
+            }
+        } // FOR
+        assertEquals(num_msgs + 1, this.queue.size());
+
+        for (int i = 0; i < num_msgs; i++) {
+            VoltMessage msg = this.queue.poll();
+            assertNotNull(msg);
+            assertNotSame(itask, msg);
+        } // FOR
+        assertSame(itask, this.queue.poll());
+        assertNull(this.queue.poll());
+    }
+}
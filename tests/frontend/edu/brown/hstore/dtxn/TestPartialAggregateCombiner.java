@@ -0,0 +1,164 @@
+package edu.brown.hstore.dtxn;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+import edu.brown.hstore.dtxn.PartialAggregateCombiner.Combine;
+
+public class TestPartialAggregateCombiner extends TestCase {
+
+    private static final int NUM_PARTITIONS = 8;
+    private static final int NUM_GROUPS = 20;
+
+    // GROUP_ID, SUM, MIN, MAX, AVG_SUM, AVG_COUNT
+    private static final VoltTable.ColumnInfo COLUMNS[] = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("GROUP_ID", VoltType.INTEGER),
+        new VoltTable.ColumnInfo("SUM_VAL", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("MIN_VAL", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("MAX_VAL", VoltType.STRING),
+        new VoltTable.ColumnInfo("AVG_VAL", VoltType.FLOAT),
+        new VoltTable.ColumnInfo("_DTXN_COUNT4", VoltType.BIGINT),
+    };
+    private static final PartialAggregateCombiner.Spec SPEC = new PartialAggregateCombiner.Spec(
+        Combine.GROUP_BY, Combine.SUM, Combine.MIN, Combine.MAX, Combine.SUM, Combine.SUM
+    );
+
+    private final Random rand = new Random(0);
+
+    /**
+     * Generate the partial aggregates for each partition, and at the same time
+     * compute what the combined rows should be
+     */
+    private VoltTable[] generatePartials(Map<Integer, Object[]> expected) {
+        VoltTable partials[] = new VoltTable[NUM_PARTITIONS];
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            partials[p] = new VoltTable(COLUMNS);
+            for (int group = 0; group < NUM_GROUPS; group++) {
+                // Not every partition has every group
+                if (rand.nextInt(4) == 0) continue;
+                long sum = rand.nextInt(1000);
+                long min = rand.nextInt(1000);
+                String max = Integer.toString(rand.nextInt(1000));
+                Double avgSum = (rand.nextInt(5) == 0 ? null : rand.nextDouble());
+                long avgCount = (avgSum == null ? 0 : rand.nextInt(10) + 1);
+                partials[p].addRow(group, sum, min, max, avgSum, avgCount);
+
+                Object row[] = expected.get(group);
+                if (row == null) {
+                    expected.put(group, new Object[]{ group, sum, min, max, avgSum, avgCount });
+                    continue;
+                }
+                row[1] = (Long)row[1] + sum;
+                row[2] = Math.min((Long)row[2], min);
+                row[3] = (((String)row[3]).compareTo(max) >= 0 ? row[3] : max);
+                if (avgSum != null) row[4] = (row[4] == null ? avgSum : (Double)row[4] + avgSum);
+                row[5] = (Long)row[5] + avgCount;
+            } // FOR
+        } // FOR
+        return (partials);
+    }
+
+    private void checkCombined(VoltTable vt, Map<Integer, Object[]> expected) {
+        assertEquals(COLUMNS.length, vt.getColumnCount());
+        assertEquals(expected.size(), vt.getRowCount());
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            Object row[] = expected.get((int)vt.getLong(0));
+            assertNotNull(row);
+            assertEquals(row[1], vt.getLong(1));
+            assertEquals(row[2], vt.getLong(2));
+            assertEquals(row[3], vt.getString(3));
+            double avgSum = vt.getDouble(4);
+            if (row[4] == null) {
+                assertTrue(vt.wasNull());
+            } else {
+                assertEquals((Double)row[4], avgSum, 0.0001);
+            }
+            assertEquals(row[5], vt.getLong(5));
+        } // WHILE
+    }
+
+    /**
+     * testCombine
+     */
+    @Test
+    public void testCombine() throws Exception {
+        Map<Integer, Object[]> expected = new HashMap<Integer, Object[]>();
+        VoltTable partials[] = this.generatePartials(expected);
+
+        PartialAggregateCombiner combiner = new PartialAggregateCombiner(SPEC);
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            combiner.add(partials[p]);
+            assertEquals(p+1, combiner.getInputCount());
+        } // FOR
+        this.checkCombined(combiner.getResult(), expected);
+    }
+
+    /**
+     * testCombineNoGroupBy
+     */
+    @Test
+    public void testCombineNoGroupBy() throws Exception {
+        VoltTable.ColumnInfo columns[] = new VoltTable.ColumnInfo[] {
+            new VoltTable.ColumnInfo("SUM_VAL", VoltType.BIGINT),
+            new VoltTable.ColumnInfo("MAX_VAL", VoltType.INTEGER),
+        };
+        PartialAggregateCombiner combiner = new PartialAggregateCombiner(
+                new PartialAggregateCombiner.Spec(Combine.SUM, Combine.MAX));
+
+        // A partition with no rows still sends back a row of NULLs
+        VoltTable vt = new VoltTable(columns);
+        vt.addRow(null, null);
+        combiner.add(vt);
+        vt = new VoltTable(columns);
+        vt.addRow(10l, 3);
+        combiner.add(vt);
+        vt = new VoltTable(columns);
+        vt.addRow(5l, 7);
+        combiner.add(vt);
+
+        VoltTable result = combiner.getResult();
+        assertEquals(1, result.getRowCount());
+        assertTrue(result.advanceRow());
+        assertEquals(15l, result.getLong(0));
+        assertEquals(7l, result.getLong(1));
+    }
+
+    /**
+     * testDependencyInfo
+     */
+    @Test
+    public void testDependencyInfo() throws Exception {
+        Map<Integer, Object[]> expected = new HashMap<Integer, Object[]>();
+        VoltTable partials[] = this.generatePartials(expected);
+
+        DependencyInfo dinfo = new DependencyInfo();
+        dinfo.init(1000l, 0, 0, 1);
+        dinfo.markInternal();
+        dinfo.setPartialAggregateCombiner(SPEC);
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            dinfo.addPartition(p);
+        } // FOR
+        for (int p = NUM_PARTITIONS - 1; p >= 0; p--) {
+            dinfo.addResult(p, partials[p]);
+        } // FOR
+        assertEquals(NUM_PARTITIONS, dinfo.getResultsCount());
+
+        // The blocked PlanFragment only gets the one combined table
+        List<VoltTable> results = dinfo.getResults();
+        assertEquals(1, results.size());
+        this.checkCombined(results.get(0), expected);
+
+        // And then it should go back to normal when it's reused
+        dinfo.finish();
+        assertFalse(dinfo.hasPartialAggregateCombiner());
+    }
+}
@@ -0,0 +1,184 @@
+package edu.brown.hstore.dtxn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.benchmark.tpcc.procedures.GetTableCounts;
+import org.voltdb.benchmark.tpcc.procedures.ResetWarehouse;
+import org.voltdb.benchmark.tpcc.procedures.SelectAll;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.PlanFragment;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.planner.PlanColumn;
+import org.voltdb.planner.PlannerContext;
+import org.voltdb.plannodes.AbstractPlanNode;
+
+import edu.brown.BaseTestCase;
+import edu.brown.plannodes.PlanNodeUtil;
+import edu.brown.utils.ProjectType;
+
+public class TestResultStream extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 4;
+
+    private static final VoltTable.ColumnInfo COLUMNS[] = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+    }
+
+    private PlanFragment getRootFragment(Statement catalog_stmt) {
+        for (PlanFragment catalog_frag : catalog_stmt.getMs_fragments()) {
+            if (catalog_frag.getHasdependencies()) return (catalog_frag);
+        } // FOR
+        return (null);
+    }
+
+    private boolean isUnionStatement(Procedure catalog_proc, String stmtName) {
+        Statement catalog_stmt = this.getStatement(catalog_proc, stmtName);
+        PlanFragment catalog_frag = this.getRootFragment(catalog_stmt);
+        assertNotNull(catalog_frag);
+        return (ResultStream.isUnionFragment(catalog_proc, Integer.parseInt(catalog_frag.getName())));
+    }
+
+    private List<VoltTable> generateTables() {
+        List<VoltTable> tables = new ArrayList<VoltTable>();
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            VoltTable vt = new VoltTable(COLUMNS);
+            for (int i = 0; i < p + 1; i++) {
+                vt.addRow(p * 100 + i, "row" + i);
+            } // FOR
+            tables.add(vt);
+        } // FOR
+        return (tables);
+    }
+
+    /**
+     * testIsUnionFragment
+     */
+    @Test
+    public void testIsUnionFragment() throws Exception {
+        // SEND -> RECEIVE
+        assertTrue(this.isUnionStatement(this.getProcedure(neworder.class), "getDistrict"));
+        // SEND -> PROJECTION -> RECEIVE, where the PROJECTION doesn't change anything
+        assertTrue(this.isUnionStatement(this.getProcedure(SelectAll.class), "customer"));
+        // SEND -> HASHAGGREGATE -> RECEIVE
+        assertFalse(this.isUnionStatement(this.getProcedure(GetTableCounts.class), "CustomerCount"));
+        // Not read-only
+        assertFalse(this.isUnionStatement(this.getProcedure(ResetWarehouse.class), "cleanOrders"));
+    }
+
+    /**
+     * testUnionFragmentColumns
+     */
+    @Test
+    public void testUnionFragmentColumns() throws Exception {
+        // The tables from the partitions need to look exactly like the ones that
+        // the union PlanFragment would have sent back
+        int num_unions = 0;
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                PlanFragment root_frag = this.getRootFragment(catalog_stmt);
+                if (root_frag == null) continue;
+                if (ResultStream.isUnionFragment(catalog_proc, Integer.parseInt(root_frag.getName())) == false) continue;
+
+                AbstractPlanNode root = PlanNodeUtil.getPlanNodeTreeForPlanFragment(root_frag);
+                for (PlanFragment catalog_frag : catalog_stmt.getMs_fragments()) {
+                    if (catalog_frag.equals(root_frag)) continue;
+                    AbstractPlanNode node = PlanNodeUtil.getPlanNodeTreeForPlanFragment(catalog_frag);
+                    List<Integer> expected = root.getOutputColumnGUIDs();
+                    List<Integer> actual = node.getOutputColumnGUIDs();
+                    assertEquals(catalog_stmt.fullName(), expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        PlanColumn expected_col = PlannerContext.singleton().get(expected.get(i));
+                        PlanColumn actual_col = PlannerContext.singleton().get(actual.get(i));
+                        assertEquals(catalog_stmt.fullName(), expected_col.getDisplayName(), actual_col.getDisplayName());
+                        assertEquals(catalog_stmt.fullName(), expected_col.type(), actual_col.type());
+                    } // FOR
+                } // FOR
+                num_unions++;
+            } // FOR
+        } // FOR
+        assert(num_unions > 0);
+    }
+
+    /**
+     * testResultStream
+     */
+    @Test
+    public void testResultStream() throws Exception {
+        List<VoltTable> tables = this.generateTables();
+        tables.add(1, null);
+
+        ResultStream stream = new ResultStream(tables);
+        assertEquals(NUM_PARTITIONS, stream.getTableCount());
+        assertEquals(1 + 2 + 3 + 4, stream.getRowCount());
+        int p = 0;
+        while (stream.hasNext()) {
+            VoltTable vt = stream.next();
+            assertNotNull(vt);
+            assertEquals(p + 1, vt.getRowCount());
+            p++;
+        } // WHILE
+        assertEquals(NUM_PARTITIONS, p);
+        try {
+            stream.next();
+            fail();
+        } catch (java.util.NoSuchElementException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * testDependencyInfo
+     */
+    @Test
+    public void testDependencyInfo() throws Exception {
+        List<VoltTable> tables = this.generateTables();
+
+        DependencyInfo dinfo = new DependencyInfo();
+        dinfo.init(1000l, 0, 0, 1);
+        dinfo.markUnion();
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            dinfo.addPartition(p);
+        } // FOR
+        for (int p = NUM_PARTITIONS - 1; p >= 0; p--) {
+            dinfo.addResult(p, tables.get(p));
+        } // FOR
+        assertFalse(dinfo.isInternal());
+
+        // One table with all of the rows, in partition order
+        VoltTable result = dinfo.getResult();
+        assertEquals(COLUMNS.length, result.getColumnCount());
+        assertEquals(1 + 2 + 3 + 4, result.getRowCount());
+        int p = 0;
+        int i = 0;
+        while (result.advanceRow()) {
+            assertEquals(p * 100 + i, result.getLong(0));
+            assertEquals("row" + i, result.getString(1));
+            if (++i > p) {
+                p++;
+                i = 0;
+            }
+        } // WHILE
+
+        // Or each partition's table by itself
+        ResultStream stream = dinfo.getResultStream();
+        assertEquals(NUM_PARTITIONS, stream.getTableCount());
+        for (p = 0; p < NUM_PARTITIONS; p++) {
+            assertSame(tables.get(p), stream.next());
+        } // FOR
+        assertFalse(stream.hasNext());
+
+        dinfo.finish();
+        assertFalse(dinfo.isUnion());
+    }
+}
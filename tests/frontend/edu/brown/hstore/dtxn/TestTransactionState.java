@@ -206,6 +206,28 @@ public class TestTransactionState extends BaseTestCase {
         //System.err.println(this.ts);
     }
     
+    /**
+     * testFirstUndoToken
+     */
+    @Test
+    public void testFirstUndoToken() throws Exception {
+        assertEquals(HStoreConstants.NULL_UNDO_LOGGING_TOKEN, this.ts.getFirstUndoToken(LOCAL_PARTITION));
+        
+        // Rounds without an undo buffer don't count
+        this.ts.initRound(LOCAL_PARTITION, HStoreConstants.DISABLE_UNDO_LOGGING_TOKEN);
+        this.ts.startRound(LOCAL_PARTITION);
+        this.ts.finishRound(LOCAL_PARTITION);
+        assertEquals(HStoreConstants.NULL_UNDO_LOGGING_TOKEN, this.ts.getFirstUndoToken(LOCAL_PARTITION));
+        
+        for (int i = 0; i < 3; i++) {
+            this.ts.initRound(LOCAL_PARTITION, UNDO_TOKEN + i);
+            this.ts.startRound(LOCAL_PARTITION);
+            this.ts.finishRound(LOCAL_PARTITION);
+            assertEquals(UNDO_TOKEN, this.ts.getFirstUndoToken(LOCAL_PARTITION));
+            assertEquals(UNDO_TOKEN + i, this.ts.getLastUndoToken(LOCAL_PARTITION));
+        } // FOR
+    }
+    
     /**
      * testStartRound
      */
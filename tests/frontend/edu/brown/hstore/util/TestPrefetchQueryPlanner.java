@@ -7,19 +7,27 @@ import java.util.Set;
 
 import org.voltdb.ParameterSet;
 import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Partition;
 import org.voltdb.catalog.ProcParameter;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Site;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.StmtParameter;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+
+import com.google.protobuf.ByteString;
 
 import edu.brown.BaseTestCase;
 import edu.brown.benchmark.seats.procedures.NewReservation;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.HStoreCoordinator;
+import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.hstore.Hstoreservice.TransactionInitRequest;
 import edu.brown.hstore.Hstoreservice.WorkFragment;
+import edu.brown.hstore.Hstoreservice.WorkResult;
 import edu.brown.hstore.MockHStoreSite;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.dtxn.LocalTransaction;
@@ -80,6 +88,7 @@ public class TestPrefetchQueryPlanner extends BaseTestCase {
         } // FOR
 
         this.prefetcher = new PrefetchQueryPlanner(catalog_db, p_estimator);
+        HStoreConf.singleton().site.exec_prefetch_queries = true;
         for (int i = 0; i < NUM_SITES; i++) {
             Site catalog_site = this.getSite(i);
             this.hstore_sites[i] = new MockHStoreSite(catalog_site, HStoreConf.singleton());
@@ -176,5 +185,46 @@ public class TestPrefetchQueryPlanner extends BaseTestCase {
         }
 
     }
+    
+    /**
+     * testAddPrefetchResults
+     */
+    public void testAddPrefetchResults() throws Exception {
+        this.ts.setTransactionId(TXN_ID);
+        TransactionInitRequest[] requests = this.prefetcher.generateWorkFragments(this.ts);
+        assertTrue(this.ts.hasPrefetchQueries());
+        
+        int remote_site = this.partition_site_xref[LOCAL_PARTITION + 1];
+        TransactionInitRequest request = requests[remote_site];
+        assertEquals(1, request.getPrefetchFragmentsCount());
+        WorkFragment frag = request.getPrefetchFragments(0);
+        
+        // Fake the result coming back from the remote partition
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("C_ID", VoltType.BIGINT));
+        vt.addRow(1234l);
+        FastSerializer fs = new FastSerializer();
+        vt.writeExternal(fs);
+        WorkResult result = WorkResult.newBuilder()
+                                .setPartitionId(frag.getPartitionId())
+                                .addDepId(frag.getOutputDepId(0))
+                                .addDepData(ByteString.copyFrom(fs.getBBContainer().b))
+                                .setStatus(Status.OK)
+                                .build();
+        
+        // The txn will look it up using the same query parameters that it prefetched with
+        FastDeserializer fd = new FastDeserializer(request.getPrefetchParams(frag.getParamIndex(0)).asReadOnlyByteBuffer());
+        ParameterSet params = fd.readObject(ParameterSet.class);
+        assertNull(this.ts.getPrefetchResult(frag.getPartitionId(), frag.getFragmentId(0), params));
+        this.ts.addPrefetchResults(result);
+        
+        VoltTable cached = this.ts.getPrefetchResult(frag.getPartitionId(), frag.getFragmentId(0), params);
+        assertNotNull(cached);
+        assertTrue(cached.advanceRow());
+        assertEquals(1234l, cached.getLong(0));
+        
+        // But not for some other partition or other parameters
+        assertNull(this.ts.getPrefetchResult(LOCAL_PARTITION, frag.getFragmentId(0), params));
+        assertNull(this.ts.getPrefetchResult(frag.getPartitionId(), frag.getFragmentId(0), new ParameterSet(-1l)));
+    }
 
 }
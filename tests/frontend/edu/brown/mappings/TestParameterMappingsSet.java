@@ -1,5 +1,6 @@
 package edu.brown.mappings;
 
+import java.io.File;
 import java.util.Random;
 
 import org.json.*;
@@ -10,6 +11,7 @@ import edu.brown.catalog.CatalogKey;
 import edu.brown.mappings.ParameterMapping;
 import edu.brown.mappings.ParameterMappingsSet;
 import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
 import edu.brown.utils.ProjectType;
 
 public class TestParameterMappingsSet extends BaseTestCase {
@@ -95,4 +97,30 @@ public class TestParameterMappingsSet extends BaseTestCase {
         } // FOR
         
     }
+    
+    /**
+     * testSaveBinary
+     */
+    public void testSaveBinary() throws Exception {
+        File temp = FileUtil.getTempFile("mappings", false);
+        this.pc.saveBinary(temp.getAbsolutePath());
+        assertTrue(ParameterMappingsSet.isBinary(temp));
+        
+        ParameterMappingsSet clone = new ParameterMappingsSet();
+        clone.load(temp.getAbsolutePath(), catalog_db);
+        assertEquals(this.pc.size(), clone.size());
+        for (ParameterMapping c : this.pc) {
+            assert(clone.contains(c));
+            ParameterMapping other = CollectionUtil.first(clone.get(c.getStatement(), c.getStatementIndex(), c.getStmtParameter()));
+            assertNotNull(other);
+            assertEquals(c.getColumn(), other.getColumn());
+        } // FOR
+        
+        // We should still be able to read JSON files
+        this.pc.save(temp.getAbsolutePath());
+        assertFalse(ParameterMappingsSet.isBinary(temp));
+        clone = new ParameterMappingsSet();
+        clone.load(temp.getAbsolutePath(), catalog_db);
+        assertEquals(this.pc.size(), clone.size());
+    }
 }
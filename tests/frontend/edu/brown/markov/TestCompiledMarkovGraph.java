@@ -0,0 +1,142 @@
+package edu.brown.markov;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.voltdb.VoltProcedure;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.TransactionTrace;
+import edu.brown.workload.Workload;
+import edu.brown.workload.filters.BasePartitionTxnFilter;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+import edu.brown.workload.filters.ProcedureNameFilter;
+
+public class TestCompiledMarkovGraph extends BaseTestCase {
+
+    private static final Class<? extends VoltProcedure> TARGET_PROCEDURE = neworder.class;
+    private static final int WORKLOAD_XACT_LIMIT = 100;
+    private static final int BASE_PARTITION = 1;
+    private static final int NUM_PARTITIONS = 10;
+
+    private static MarkovGraph markov;
+    private static CompiledMarkovGraph compiled;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+
+        if (markov == null) {
+            Procedure catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+            Filter filter = new ProcedureNameFilter(false)
+                    .include(TARGET_PROCEDURE.getSimpleName())
+                    .attach(new BasePartitionTxnFilter(p_estimator, BASE_PARTITION))
+                    .attach(new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+            File file = this.getWorkloadFile(ProjectType.TPCC);
+            Workload workload = new Workload(catalog);
+            workload.load(file.getAbsolutePath(), catalog_db, filter);
+            assert(workload.getTransactionCount() > 0);
+
+            markov = new MarkovGraph(catalog_proc).initialize();
+            for (TransactionTrace txn_trace : workload.getTransactions()) {
+                markov.processTransaction(txn_trace, p_estimator);
+            } // FOR
+            markov.calculateProbabilities();
+            compiled = markov.compile();
+        }
+        assertNotNull(compiled);
+    }
+
+    /**
+     * testVertices
+     */
+    public void testVertices() throws Exception {
+        assertEquals(markov.getVertexCount(), compiled.getVertexCount());
+        assertEquals(markov.getEdgeCount(), compiled.getEdgeCount());
+        assertEquals(markov.getStartVertex(), compiled.getVertex(compiled.getStartId()));
+        assertEquals(markov.getCommitVertex(), compiled.getVertex(compiled.getCommitId()));
+        assertEquals(markov.getAbortVertex(), compiled.getVertex(compiled.getAbortId()));
+
+        for (MarkovVertex v : markov.getVertices()) {
+            int v_id = compiled.getVertexId(v);
+            assertTrue(v.toString(), v_id >= 0);
+            assertSame(v, compiled.getVertex(v_id));
+            assertEquals(v.getCatalogItem(), compiled.getStatement(v_id));
+            assertEquals(v.getQueryInstanceIndex(), compiled.getQueryInstanceIndex(v_id));
+            assertEquals(v.getPartitions().size(), compiled.getPartitions(v_id).length);
+            for (int p : compiled.getPartitions(v_id)) {
+                assertTrue(v.getPartitions().contains(p));
+            } // FOR
+            if (v.isStartVertex()) continue;
+
+            assertEquals(v.getSingleSitedProbability(), compiled.getSingleSitedProbability(v_id));
+            assertEquals(v.getAbortProbability(), compiled.getAbortProbability(v_id));
+            for (int p = 0; p < NUM_PARTITIONS; p++) {
+                assertEquals(v.getReadOnlyProbability(p), compiled.getReadOnlyProbability(v_id, p));
+                assertEquals(v.getWriteProbability(p), compiled.getWriteProbability(v_id, p));
+                assertEquals(v.getDoneProbability(p), compiled.getDoneProbability(v_id, p));
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testSuccessors
+     */
+    public void testSuccessors() throws Exception {
+        long partitions[] = new long[compiled.getBitmapLength()];
+        long past[] = new long[compiled.getBitmapLength()];
+
+        for (MarkovVertex v : markov.getVertices()) {
+            int v_id = compiled.getVertexId(v);
+            Collection<MarkovEdge> edges = markov.getOutEdges(v);
+            assertEquals(edges.size(), compiled.getEdgeEnd(v_id) - compiled.getEdgeStart(v_id));
+
+            MarkovEdge last = null;
+            for (int e_id = compiled.getEdgeStart(v_id); e_id < compiled.getEdgeEnd(v_id); e_id++) {
+                MarkovEdge e = compiled.getEdge(e_id);
+                assertTrue(edges.contains(e));
+                assertEquals(e.getProbability(), compiled.getEdgeProbability(e_id));
+
+                // The edges must be sorted the same way as MarkovPathEstimator's candidates
+                if (last != null) assertTrue(last.compareTo(e) <= 0);
+                last = e;
+
+                // We should be able to find the edge again by looking up its destination
+                MarkovVertex dest = markov.getDest(e);
+                assertSame(dest, compiled.getVertex(compiled.getEdgeDestination(e_id)));
+                assertEquals(e_id, compiled.findEdge(v_id, compiled.getVertexId(dest)));
+                if (dest.isQueryVertex()) {
+                    CompiledMarkovGraph.toBitmap(dest.getPartitions(), partitions);
+                    CompiledMarkovGraph.toBitmap(dest.getPastPartitions(), past);
+                    int found = compiled.findSuccessor(v_id, dest.getCatalogItem(), dest.getQueryInstanceIndex(), partitions, past);
+                    assertEquals(e_id, found);
+                }
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testRecompile
+     */
+    public void testRecompile() throws Exception {
+        MarkovVertex v = markov.getStartVertex();
+        assertEquals(compiled.getStartId(), compiled.getVertexId(v));
+
+        // Recomputing the probabilities should swap in a new compiled graph
+        markov.calculateProbabilities();
+        CompiledMarkovGraph new_compiled = markov.getCompiled();
+        assertNotSame(compiled, new_compiled);
+        assertEquals(compiled.getVertexCount(), new_compiled.getVertexCount());
+        assertSame(v, new_compiled.getVertex(new_compiled.getVertexId(v)));
+        compiled = new_compiled;
+
+        // A vertex that was never in the graph is unknown
+        MarkovVertex other = new MarkovVertex(v);
+        assertEquals(CompiledMarkovGraph.NULL_ID, compiled.getVertexId(other));
+    }
+}
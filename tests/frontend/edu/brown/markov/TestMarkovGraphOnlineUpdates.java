@@ -0,0 +1,183 @@
+package edu.brown.markov;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.voltdb.VoltProcedure;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.ProjectType;
+
+public class TestMarkovGraphOnlineUpdates extends BaseTestCase {
+
+    private static final Class<? extends VoltProcedure> TARGET_PROCEDURE = neworder.class;
+    private static final int BASE_PARTITION = 1;
+    private static final int NUM_PARTITIONS = 10;
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_TXNS = 5000;
+
+    private MarkovGraph markov;
+    private MarkovVertex v0;
+    private MarkovVertex v1;
+    private MarkovEdge e0;
+    private MarkovEdge e1;
+    private MarkovEdge e2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+
+        Procedure catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+        Statement catalog_stmt = this.getStatement(catalog_proc, "getWarehouseTaxRate");
+        Set<Integer> partitions = new HashSet<Integer>();
+        partitions.add(BASE_PARTITION);
+
+        this.markov = new MarkovGraph(catalog_proc).initialize();
+        this.v0 = this.markov.getStartVertex();
+        this.v1 = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0, partitions, new HashSet<Integer>());
+        this.markov.addVertex(this.v1);
+        this.e0 = this.markov.addToEdge(this.v0, this.v1);
+        this.e1 = this.markov.addToEdge(this.v1, this.markov.getCommitVertex());
+        this.e2 = this.markov.addToEdge(this.v1, this.markov.getAbortVertex());
+    }
+
+    /**
+     * Update the counters the same way that TransactionEstimator.completeTransaction() does
+     */
+    private void finishTxn(boolean abort) {
+        MarkovVertex last = (abort ? this.markov.getAbortVertex() : this.markov.getCommitVertex());
+        for (MarkovVertex v : new MarkovVertex[]{ this.v0, this.v1, last }) {
+            v.incrementInstanceHits();
+        } // FOR
+        for (MarkovEdge e : new MarkovEdge[]{ this.e0, (abort ? this.e2 : this.e1) }) {
+            e.incrementInstanceHits();
+        } // FOR
+        this.markov.incrementInstanceTransactionCount();
+    }
+
+    /**
+     * testConcurrentRecompute
+     */
+    public void testConcurrentRecompute() throws Throwable {
+        this.markov.compile();
+        final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS + 1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            final boolean abort = (i == 0);
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        barrier.await();
+                        for (int j = 0; j < NUM_TXNS; j++) {
+                            finishTxn(abort);
+                        } // FOR
+                    } catch (Throwable ex) {
+                        error.set(ex);
+                    }
+                }
+            };
+            threads[i].start();
+        } // FOR
+
+        // Keep recomputing the graph while the other threads are updating it
+        barrier.await();
+        boolean running = true;
+        while (running) {
+            CompiledMarkovGraph compiled = this.markov.getCompiled();
+            this.markov.calculateProbabilities();
+            assertNotSame(compiled, this.markov.getCompiled());
+            running = false;
+            for (Thread t : threads) {
+                running = running || t.isAlive();
+            } // FOR
+        } // WHILE
+        for (Thread t : threads) t.join();
+        if (error.get() != null) throw error.get();
+
+        // Nothing should have been lost along the way
+        this.markov.calculateProbabilities();
+        assertEquals(0, this.markov.getInstanceTransactionCount());
+        int total = NUM_THREADS * NUM_TXNS;
+        assertEquals(total, this.v0.getTotalHits());
+        assertEquals(total, this.v1.getTotalHits());
+        assertEquals(total, this.e0.getTotalHits());
+        assertEquals(total - NUM_TXNS, this.e1.getTotalHits());
+        assertEquals(NUM_TXNS, this.e2.getTotalHits());
+        assertEquals(0, this.v1.getInstanceHits());
+
+        CompiledMarkovGraph compiled = this.markov.getCompiled();
+        int v1_id = compiled.getVertexId(this.v1);
+        int commit_id = compiled.getCommitId();
+        int e_id = compiled.findEdge(v1_id, commit_id);
+        assertEquals((total - NUM_TXNS) / (float)total, compiled.getEdgeProbability(e_id), MarkovGraph.PROBABILITY_EPSILON);
+    }
+
+    /**
+     * testInstanceTimes
+     */
+    public void testInstanceTimes() throws Exception {
+        this.v1.addInstanceTime(10);
+        this.v1.addInstanceTime(20);
+        this.finishTxn(false);
+        this.markov.calculateProbabilities();
+        assertEquals(15, this.v1.getExecutionTime());
+
+        // The times should only be applied once
+        this.v1.addInstanceTime(45);
+        this.finishTxn(false);
+        this.markov.calculateProbabilities();
+        assertEquals(25, this.v1.getExecutionTime());
+        this.markov.calculateProbabilities();
+        assertEquals(25, this.v1.getExecutionTime());
+    }
+
+    /**
+     * testConcurrentInstanceTimes
+     */
+    public void testConcurrentInstanceTimes() throws Throwable {
+        // Every txn has the same time, so the average has to stay the same no matter
+        // which round each of the times gets applied in
+        final long time = 1000;
+        final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS + 1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        barrier.await();
+                        for (int j = 0; j < NUM_TXNS; j++) {
+                            v1.addInstanceTime(time);
+                        } // FOR
+                    } catch (Throwable ex) {
+                        error.set(ex);
+                    }
+                }
+            };
+            threads[i].start();
+        } // FOR
+
+        barrier.await();
+        boolean running = true;
+        while (running) {
+            this.v1.applyInstanceTimes();
+            assertTrue(this.v1.getExecutionTime() == 0 || this.v1.getExecutionTime() == time);
+            running = false;
+            for (Thread t : threads) {
+                running = running || t.isAlive();
+            } // FOR
+        } // WHILE
+        for (Thread t : threads) t.join();
+        if (error.get() != null) throw error.get();
+
+        this.v1.applyInstanceTimes();
+        assertEquals(time, this.v1.getExecutionTime());
+    }
+}
@@ -1,13 +1,21 @@
 package edu.brown.markov;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.voltdb.VoltProcedure;
 import org.voltdb.benchmark.tpcc.procedures.neworder;
 import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
 
 import edu.brown.BaseTestCase;
 import edu.brown.catalog.CatalogUtil;
+import edu.brown.markov.containers.MarkovGraphContainersUtil;
 import edu.brown.markov.containers.MarkovGraphsContainer;
 import edu.brown.utils.FileUtil;
 import edu.brown.utils.ProjectType;
@@ -47,4 +55,113 @@ public class TestMarkovGraphsContainer extends BaseTestCase {
         } // FOR
     }
     
+    private Map<Integer, MarkovGraphsContainer> createBinaryFile(File temp) throws Exception {
+        Statement catalog_stmt = this.getStatement(catalog_proc, "getWarehouseTaxRate");
+        Map<Integer, MarkovGraphsContainer> markovs = new HashMap<Integer, MarkovGraphsContainer>();
+        for (Integer p : CatalogUtil.getAllPartitionIds(catalog_db)) {
+            MarkovGraphsContainer m = new MarkovGraphsContainer();
+            MarkovGraph markov = m.getOrCreate(p, catalog_proc, true);
+            Set<Integer> partitions = new HashSet<Integer>();
+            partitions.add(p);
+            MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0, partitions, new HashSet<Integer>());
+            markov.addVertex(v);
+            for (int i = 0; i <= p; i++) {
+                MarkovVertex last = (i % 2 == 0 ? markov.getCommitVertex() : markov.getAbortVertex());
+                for (MarkovVertex x : new MarkovVertex[]{ markov.getStartVertex(), v, last }) {
+                    x.incrementInstanceHits();
+                } // FOR
+                markov.addToEdge(markov.getStartVertex(), v).incrementInstanceHits();
+                markov.addToEdge(v, last).incrementInstanceHits();
+            } // FOR
+            v.addInstanceTime(100 + p);
+            markov.calculateProbabilities();
+            markovs.put(p, m);
+        } // FOR
+        MarkovGraphContainersUtil.saveBinary(markovs, temp.getAbsolutePath());
+        return (markovs);
+    }
+    
+    /**
+     * testBinarySerialization
+     */
+    public void testBinarySerialization() throws Exception {
+        File temp = FileUtil.getTempFile("markovs", false);
+        Map<Integer, MarkovGraphsContainer> markovs = this.createBinaryFile(temp);
+        assertTrue(MarkovGraphContainersUtil.isBinary(temp));
+        
+        // Nothing should get deserialized until we ask for it
+        Map<Integer, MarkovGraphsContainer> clones = MarkovGraphContainersUtil.load(catalog_db, temp.getAbsolutePath(), null, null);
+        assertEquals(markovs.size(), clones.size());
+        for (Integer id : markovs.keySet()) {
+            MarkovGraphsContainer clone = clones.get(id);
+            assertNotNull(clone);
+            assertEquals(1, clone.getPendingCount());
+            assertEquals(1, clone.size());
+            assertTrue(clone.getLoaded().isEmpty());
+            
+            MarkovGraph markov = markovs.get(id).get(id, catalog_proc);
+            MarkovGraph clone_m = clone.get(id, catalog_proc);
+            assertNotNull(clone_m);
+            assertEquals(0, clone.getPendingCount());
+            assertNotNull(clone_m.getCompiled());
+            assertEquals(markov.getGraphId(), clone_m.getGraphId());
+            assertEquals(markov.getVertexCount(), clone_m.getVertexCount());
+            assertEquals(markov.getEdgeCount(), clone_m.getEdgeCount());
+            
+            for (MarkovVertex v : markov.getVertices()) {
+                MarkovVertex clone_v = null;
+                if (v.isQueryVertex()) {
+                    clone_v = clone_m.getVertex((Statement)v.getCatalogItem(), v.getPartitions(), v.getPastPartitions(), v.getQueryInstanceIndex());
+                } else {
+                    clone_v = clone_m.getSpecialVertex(v.getType());
+                }
+                assertNotNull(v.toString(), clone_v);
+                assertEquals(v.getTotalHits(), clone_v.getTotalHits());
+                assertEquals(v.getExecutionTime(), clone_v.getExecutionTime());
+                for (int i = 0; i < v.probabilities.length; i++) {
+                    assertEquals(v.probabilities[i].length, clone_v.probabilities[i].length);
+                    for (int j = 0; j < v.probabilities[i].length; j++) {
+                        assertEquals(v.probabilities[i][j], clone_v.probabilities[i][j]);
+                    } // FOR
+                } // FOR
+                
+                for (MarkovEdge e : markov.getOutEdges(v)) {
+                    MarkovVertex dest = markov.getDest(e);
+                    MarkovEdge clone_e = null;
+                    for (MarkovEdge other : clone_m.getOutEdges(clone_v)) {
+                        if (clone_m.getDest(other).equals(dest)) clone_e = other;
+                    } // FOR
+                    assertNotNull(e.toString(), clone_e);
+                    assertEquals(e.getTotalHits(), clone_e.getTotalHits());
+                    assertEquals(e.getProbability(), clone_e.getProbability());
+                } // FOR
+            } // FOR
+        } // FOR
+        
+        // Only load the ids that we ask for
+        Set<Integer> ids = new HashSet<Integer>();
+        ids.add(1);
+        clones = MarkovGraphContainersUtil.loadIds(catalog_db, temp.getAbsolutePath(), ids);
+        assertEquals(ids, clones.keySet());
+        assertEquals(1, clones.get(1).getAll().size());
+        assertEquals(0, clones.get(1).getPendingCount());
+    }
+    
+    /**
+     * testBinaryVersion
+     */
+    public void testBinaryVersion() throws Exception {
+        File temp = FileUtil.getTempFile("markovs", false);
+        this.createBinaryFile(temp);
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        raf.seek(4);
+        raf.writeInt(MarkovGraphContainersUtil.BINARY_VERSION + 1);
+        raf.close();
+        try {
+            MarkovGraphContainersUtil.load(catalog_db, temp.getAbsolutePath(), null, null);
+            fail("Loaded a file with an unknown version");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
 }
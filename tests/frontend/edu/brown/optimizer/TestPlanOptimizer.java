@@ -1,12 +1,17 @@
 package edu.brown.optimizer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Column;
+import org.voltdb.catalog.PlanFragment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
 import org.voltdb.catalog.Table;
@@ -16,15 +21,19 @@ import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.plannodes.HashAggregatePlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
 import org.voltdb.plannodes.OrderByPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
 import org.voltdb.plannodes.SeqScanPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.PlanNodeType;
 
 import edu.brown.benchmark.AbstractProjectBuilder;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.expressions.ExpressionUtil;
+import edu.brown.hstore.dtxn.PartialAggregateCombiner;
+import edu.brown.hstore.dtxn.PartialAggregateCombiner.Combine;
 import edu.brown.plannodes.PlanNodeTreeWalker;
 import edu.brown.plannodes.PlanNodeUtil;
 import edu.brown.utils.CollectionUtil;
@@ -142,6 +151,64 @@ public class TestPlanOptimizer extends BasePlanOptimizerTestCase {
         this.check(catalog_stmt);
     }
     
+    /**
+* testMultipleAggregatesPartialStates
+*/
+    @Test
+    public void testMultipleAggregatesPartialStates() throws Exception {
+        Procedure catalog_proc = this.getProcedure("MultipleAggregates");
+        Statement catalog_stmt = this.getStatement(catalog_proc, "sql");
+        AbstractPlanNode root = PlanNodeUtil.getRootPlanNodeForStatement(catalog_stmt, false);
+        
+        // The partitions should send back the SUM and COUNT for each AVG,
+        // and then the COUNTs should be the last columns
+        List<HashAggregatePlanNode> agg_nodes = new ArrayList<HashAggregatePlanNode>(PlanNodeUtil.getPlanNodes(root, HashAggregatePlanNode.class));
+        assertEquals(2, agg_nodes.size());
+        HashAggregatePlanNode final_node = agg_nodes.get(0);
+        HashAggregatePlanNode partial_node = agg_nodes.get(1);
+        // Only the final node computes the averages from the partial states
+        if (final_node.getAggregateTypes().contains(ExpressionType.AGGREGATE_WEIGHTED_AVG) == false) {
+            final_node = agg_nodes.get(1);
+            partial_node = agg_nodes.get(0);
+        }
+        assertEquals(Arrays.asList(ExpressionType.AGGREGATE_SUM, ExpressionType.AGGREGATE_SUM,
+                                   ExpressionType.AGGREGATE_WEIGHTED_AVG, ExpressionType.AGGREGATE_WEIGHTED_AVG),
+                     final_node.getAggregateTypes());
+        assertEquals(Arrays.asList(ExpressionType.AGGREGATE_SUM, ExpressionType.AGGREGATE_SUM,
+                                   ExpressionType.AGGREGATE_SUM, ExpressionType.AGGREGATE_SUM,
+                                   ExpressionType.AGGREGATE_COUNT, ExpressionType.AGGREGATE_COUNT),
+                     partial_node.getAggregateTypes());
+        int num_cols = partial_node.getOutputColumnGUIDCount();
+        for (int i = 0; i < 2; i++) {
+            // Each COUNT is of the same column as its AVG
+            assertEquals(partial_node.getAggregateColumnGuids().get(2 + i), partial_node.getAggregateColumnGuids().get(4 + i));
+            assertEquals(num_cols - 2 + i, partial_node.getAggregateOutputColumns().get(4 + i).intValue());
+            
+            // The partial SUM for each AVG gets its own BIGINT column so that it
+            // can't overflow the AVG's type, and that's what the final AVG reads
+            int sum_guid = partial_node.getOutputColumnGUID(partial_node.getAggregateOutputColumns().get(2 + i));
+            PlanColumn sum_pc = PlannerContext.singleton().get(sum_guid);
+            assertNotNull(sum_pc);
+            assertEquals(VoltType.BIGINT, sum_pc.getExpression().getValueType());
+            assertFalse(final_node.getOutputColumnGUIDs().contains(sum_guid));
+            assertEquals(sum_guid, final_node.getAggregateColumnGuids().get(2 + i).intValue());
+        } // FOR
+        
+        // And then the base partition should be able to combine them as they arrive
+        int num_combinable = 0;
+        for (PlanFragment catalog_frag : catalog_stmt.getMs_fragments()) {
+            PartialAggregateCombiner.Spec spec = PartialAggregateCombiner.getSpec(catalog_frag);
+            if (spec == null) continue;
+            assertEquals(num_cols, spec.getCombineOps().length);
+            assertEquals(Combine.GROUP_BY, spec.getCombineOps()[0]);
+            for (int i = 1; i < num_cols; i++) {
+                assertEquals(Combine.SUM, spec.getCombineOps()[i]);
+            } // FOR
+            num_combinable++;
+        } // FOR
+        assertEquals(1, num_combinable);
+    }
+    
     /**
 * testExtractReferencedColumns
 */
@@ -563,18 +630,18 @@ public class TestPlanOptimizer extends BasePlanOptimizerTestCase {
         AbstractPlanNode root = PlanNodeUtil.getRootPlanNodeForStatement(catalog_stmt, false);
         assertNotNull(root);
         
-        // We should have two LIMITs and two ORDER BYs
-        Class<?> planClasses[] = { LimitPlanNode.class, OrderByPlanNode.class };
-        for (Class<?> c : planClasses) {
-            @SuppressWarnings("unchecked")
-            Collection<AbstractPlanNode> nodes = PlanNodeUtil.getPlanNodes(root, (Class<AbstractPlanNode>)c);
-            assertNotNull(nodes);
-            assertEquals(2, nodes.size());
-            
-            // Make sure each one only has one child!
-            for (AbstractPlanNode node : nodes) {
-                assertEquals(PlanNodeUtil.debug(node), 1, node.getChildPlanNodeCount());
-            } // FOR
+        // We should have two ORDER BYs that each have their own inline LIMIT
+        Collection<OrderByPlanNode> nodes = PlanNodeUtil.getPlanNodes(root, OrderByPlanNode.class);
+        assertNotNull(nodes);
+        assertEquals(2, nodes.size());
+        assertEquals(0, PlanNodeUtil.getPlanNodes(root, LimitPlanNode.class).size());
+        
+        // Make sure each one only has one child!
+        for (OrderByPlanNode node : nodes) {
+            assertEquals(PlanNodeUtil.debug(node), 1, node.getChildPlanNodeCount());
+            LimitPlanNode limit_node = node.getInlinePlanNode(PlanNodeType.LIMIT);
+            assertNotNull(PlanNodeUtil.debug(node), limit_node);
+            assertEquals(1000, limit_node.getLimit());
         } // FOR
     }
     
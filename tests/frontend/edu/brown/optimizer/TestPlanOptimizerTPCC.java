@@ -16,6 +16,7 @@ import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.DistinctPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
 import org.voltdb.types.PlanNodeType;
 
@@ -89,9 +90,9 @@ public class TestPlanOptimizerTPCC extends BasePlanOptimizerTestCase {
         Procedure catalog_proc = this.getProcedure(slev.class);
         Statement catalog_stmt = this.getStatement(catalog_proc, "GetStockCount");
         
-        Table catalog_tbl = this.getTable("STOCK");
+        Table catalog_tbl = this.getTable("ORDER_LINE");
         Map<String, Integer> col_offset_xref = new HashMap<String, Integer>();
-        for (String colName : new String[]{ "S_I_ID", "S_W_ID", "S_QUANTITY"}) {
+        for (String colName : new String[]{ "OL_W_ID", "OL_D_ID", "OL_O_ID", "OL_I_ID"}) {
             Column catalog_col = this.getColumn(catalog_tbl, colName);
             col_offset_xref.put(colName, catalog_col.getIndex());
         }
@@ -99,6 +100,15 @@ public class TestPlanOptimizerTPCC extends BasePlanOptimizerTestCase {
         AbstractPlanNode root = PlanNodeUtil.getRootPlanNodeForStatement(catalog_stmt, false);
         assertNotNull(root);
         
+        // The range of ORDER_LINE records is much smaller than the STOCK records
+        // for the warehouse, so we scan ORDER_LINE and then look up each STOCK record
+        // by its primary key in the join
+        Collection<NestLoopIndexPlanNode> join_nodes = PlanNodeUtil.getPlanNodes(root, NestLoopIndexPlanNode.class);
+        assertEquals(1, join_nodes.size());
+        IndexScanPlanNode join_scan_node = CollectionUtil.first(join_nodes).getInlinePlanNode(PlanNodeType.INDEXSCAN);
+        assertNotNull(join_scan_node);
+        assertEquals("STOCK", join_scan_node.getTargetTableName());
+        
         // Make sure the bottom-most IndexScan has an inline projection with the right columns
         Collection<IndexScanPlanNode> scan_nodes = PlanNodeUtil.getPlanNodes(root, IndexScanPlanNode.class);
         assertEquals(1, scan_nodes.size());
@@ -111,7 +121,7 @@ public class TestPlanOptimizerTPCC extends BasePlanOptimizerTestCase {
         assertEquals(catalog_tbl.getName(), scan_node.getTargetTableName());
         
         // The inline projection in the leaf ScanPlanNode should only output a 
-        // single column (S_I_ID), since this is the only column used in the JOIN
+        // single column (OL_I_ID), since this is the only column used in the JOIN
         ProjectionPlanNode proj_node = scan_node.getInlinePlanNode(PlanNodeType.PROJECTION);
         assertNotNull(proj_node);
         assertEquals(1, proj_node.getOutputColumnGUIDCount());
@@ -0,0 +1,87 @@
+package edu.brown.statistics;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestLatencyHistogram extends TestCase {
+
+    private final LatencyHistogram h = new LatencyHistogram();
+
+    /**
+     * testBuckets
+     */
+    public void testBuckets() throws Exception {
+        Random rand = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long value = Math.abs(rand.nextLong()) % LatencyHistogram.DEFAULT_MAX_VALUE;
+            int idx = h.getBucketIndex(value);
+            assertTrue(idx < h.getBucketCount());
+            assertTrue(value + " -> " + idx, h.getBucketLowerBound(idx) <= value);
+            assertTrue(value + " -> " + idx, h.getBucketUpperBound(idx) >= value);
+        } // FOR
+
+        // The buckets must be contiguous
+        for (int i = 1; i < h.getBucketCount(); i++) {
+            assertEquals(h.getBucketUpperBound(i-1) + 1, h.getBucketLowerBound(i));
+        } // FOR
+    }
+
+    /**
+     * testPercentiles
+     */
+    public void testPercentiles() throws Exception {
+        for (long i = 1; i <= 100000; i++) {
+            h.record(i * 1000);
+        } // FOR
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(100000, s.getCount());
+        assertEquals(100000000l, s.getMax());
+
+        double error = 1.0 / (1 << LatencyHistogram.DEFAULT_PRECISION);
+        double expected[] = { 50000000d, 90000000d, 99000000d };
+        double percentiles[] = { 50d, 90d, 99d };
+        for (int i = 0; i < percentiles.length; i++) {
+            long actual = s.getValueAtPercentile(percentiles[i]);
+            assertEquals(expected[i], actual, expected[i] * error);
+        } // FOR
+        assertEquals(50000500d, s.getMean(), 0.1);
+    }
+
+    /**
+     * testSnapshotAndReset
+     */
+    public void testSnapshotAndReset() throws Exception {
+        h.record(10);
+        h.record(LatencyHistogram.DEFAULT_MAX_VALUE * 2);
+        LatencyHistogram.Snapshot s = h.snapshotAndReset();
+        assertEquals(2, s.getCount());
+        assertEquals(LatencyHistogram.DEFAULT_MAX_VALUE * 2, s.getMax());
+
+        s = h.snapshot();
+        assertEquals(0, s.getCount());
+        assertEquals(0, s.getMax());
+        assertEquals(0, s.getValueAtPercentile(99d));
+    }
+
+    /**
+     * testConcurrentRecord
+     */
+    public void testConcurrentRecord() throws Exception {
+        final int num_threads = 4;
+        final int num_values = 100000;
+        Thread threads[] = new Thread[num_threads];
+        for (int i = 0; i < num_threads; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < num_values; j++) {
+                        h.record(j);
+                    } // FOR
+                }
+            };
+            threads[i].start();
+        } // FOR
+        for (Thread t : threads) t.join();
+        assertEquals(num_threads * num_values, h.snapshot().getCount());
+    }
+}
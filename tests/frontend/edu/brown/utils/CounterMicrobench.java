@@ -0,0 +1,86 @@
+package edu.brown.utils;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.brown.hstore.util.TxnCounter;
+import edu.brown.statistics.Histogram;
+
+/**
+ * Compares the cost of updating the profiling counters from many threads at once.
+ * The synchronized Histogram is what TxnCounter used to be built on.
+ * Usage: CounterMicrobench [threads] [updates-per-thread]
+ */
+public class CounterMicrobench {
+
+    static abstract class Runner {
+        final String name;
+        Runner(String name) {
+            this.name = name;
+        }
+        public abstract void run(int i);
+    }
+
+    private static long measure(final Runner runner, int num_threads, final int num_updates) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(num_threads + 1);
+        Thread threads[] = new Thread[num_threads];
+        for (int t = 0; t < num_threads; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    for (int i = 0; i < num_updates; i++) {
+                        runner.run(i);
+                    } // FOR
+                }
+            };
+            threads[t].start();
+        } // FOR
+        long start = System.nanoTime();
+        barrier.await();
+        for (Thread t : threads) t.join();
+        return (System.nanoTime() - start);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int num_threads = (args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors());
+        int num_updates = (args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+
+        final Histogram<String> histogram = new Histogram<String>();
+        final AtomicLong atomic = new AtomicLong();
+        final StripedCounter striped = new StripedCounter();
+        final ThreadLocal<ProfileMeasurement> pms = new ThreadLocal<ProfileMeasurement>() {
+            @Override
+            protected ProfileMeasurement initialValue() {
+                return (new ProfileMeasurement("BENCH"));
+            }
+        };
+        Runner runners[] = {
+            new Runner("Histogram.put (old TxnCounter)") {
+                public void run(int i) { histogram.put("neworder"); }
+            },
+            new Runner("TxnCounter.inc") {
+                public void run(int i) { TxnCounter.EXECUTED.inc("neworder"); }
+            },
+            new Runner("AtomicLong.incrementAndGet") {
+                public void run(int i) { atomic.incrementAndGet(); }
+            },
+            new Runner("StripedCounter.inc") {
+                public void run(int i) { striped.inc(); }
+            },
+            new Runner("ProfileMeasurement.start/stop") {
+                public void run(int i) { pms.get().start(i).stop(i + 1); }
+            },
+        };
+
+        System.out.printf("%d threads x %d updates\n", num_threads, num_updates);
+        for (Runner r : runners) {
+            measure(r, num_threads, num_updates / 10); // warm-up
+            long elapsed = measure(r, num_threads, num_updates);
+            System.out.printf("%-35s %8.2f ns/op\n", r.name, elapsed / (double)num_updates);
+        } // FOR
+    }
+}
@@ -0,0 +1,84 @@
+package edu.brown.utils;
+
+import junit.framework.TestCase;
+
+public class TestStripedCounter extends TestCase {
+
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_UPDATES = 100000;
+
+    /**
+     * testConcurrentUpdates
+     */
+    public void testConcurrentUpdates() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < NUM_UPDATES; j++) {
+                        counter.inc();
+                    } // FOR
+                    counter.dec();
+                }
+            };
+            threads[i].start();
+        } // FOR
+        for (Thread t : threads) t.join();
+        assertEquals(NUM_THREADS * (NUM_UPDATES - 1), counter.get());
+    }
+
+    /**
+     * testGetAndReset
+     */
+    public void testGetAndReset() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(10);
+        assertEquals(10, counter.getAndReset());
+        assertEquals(0, counter.get());
+
+        // Nothing should be lost while another thread is resetting
+        Thread t = new Thread() {
+            public void run() {
+                for (int j = 0; j < NUM_UPDATES; j++) {
+                    counter.inc();
+                } // FOR
+            }
+        };
+        t.start();
+        long total = 0;
+        while (t.isAlive()) {
+            total += counter.getAndReset();
+        } // WHILE
+        t.join();
+        total += counter.getAndReset();
+        assertEquals(NUM_UPDATES, total);
+    }
+
+    /**
+     * testProfileMeasurementReset
+     */
+    public void testProfileMeasurementReset() throws Exception {
+        ProfileMeasurement pm = new ProfileMeasurement("TEST");
+        pm.start(100);
+        pm.stop(200);
+        assertEquals(100, pm.getTotalThinkTime());
+        assertEquals(1, pm.getInvocations());
+
+        // A reset from another thread just starts a new interval
+        pm.reset();
+        assertEquals(0, pm.getTotalThinkTime());
+        assertEquals(0, pm.getInvocations());
+        assertTrue(pm.isStopped());
+
+        long start = ProfileMeasurement.getTime();
+        pm.start(start);
+        pm.stop(start + 50);
+        assertEquals(50, pm.getTotalThinkTime());
+        assertEquals(1, pm.getInvocations());
+
+        pm.clear();
+        assertEquals(0, pm.getTotalThinkTime());
+        assertEquals(0, pm.getInvocations());
+    }
+}
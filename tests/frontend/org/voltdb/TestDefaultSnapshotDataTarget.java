@@ -0,0 +1,154 @@
+package org.voltdb;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.DBBPool;
+
+public class TestDefaultSnapshotDataTarget extends TestCase {
+
+    private static final int NUM_BLOCKS = 10;
+    private static final int NUM_TUPLES = 100;
+    private static final int PARTITION_IDS[] = { 0, 1 };
+
+    private File file;
+    private byte blocks[][];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_noLoadLibVOLTDB = true;
+        VoltDB.replaceVoltDBInstanceForTest(new MockVoltDB());
+        VoltDB.initialize(config);
+
+        this.file = File.createTempFile("snapshot", ".vpt");
+        this.file.deleteOnExit();
+        this.blocks = new byte[NUM_BLOCKS][];
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.file.delete();
+        super.tearDown();
+    }
+
+    private DefaultSnapshotDataTarget makeTarget(boolean compress) throws Exception {
+        VoltTable schema = new VoltTable(new VoltTable.ColumnInfo("A_ID", VoltType.BIGINT));
+        return new DefaultSnapshotDataTarget(this.file, 0, "cluster", "database", "TABLEA",
+                                             PARTITION_IDS.length, false, PARTITION_IDS,
+                                             schema, System.currentTimeMillis(), compress);
+    }
+
+    /**
+     * Write out blocks that look like what the EE hands back for a table:
+     * [header space][partition id][partition id CRC][chunk CRC][tuples][row count]
+     */
+    private void writeBlocks(DefaultSnapshotDataTarget target) throws Exception {
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            int partitionId = PARTITION_IDS[i % PARTITION_IDS.length];
+            ByteBuffer b = ByteBuffer.allocateDirect(target.getHeaderSize() + 12 + (NUM_TUPLES * 12) + 4);
+            b.position(target.getHeaderSize());
+            b.putInt(partitionId);
+            b.putInt(0);
+            b.putInt(0);
+            for (int t = 0; t < NUM_TUPLES; t++) {
+                b.putInt(8);
+                b.putLong(t % 7);
+            } // FOR
+            b.putInt(NUM_TUPLES);
+            b.flip();
+
+            b.position(target.getHeaderSize());
+            this.blocks[i] = new byte[b.remaining()];
+            b.get(this.blocks[i]);
+            b.position(0);
+            target.write(DBBPool.wrapBB(b)).get();
+        } // FOR
+        target.close();
+    }
+
+    /**
+     * testCompressedBlockIndex
+     */
+    public void testCompressedBlockIndex() throws Exception {
+        this.writeBlocks(this.makeTarget(true));
+
+        RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+        try {
+            raf.seek(raf.length() - 8);
+            long indexOffset = raf.readLong();
+            raf.seek(indexOffset);
+            int numBlocks = raf.readInt();
+            assertEquals(NUM_BLOCKS, numBlocks);
+
+            // Check the index's own checksum
+            byte index[] = new byte[4 + (numBlocks * 12)];
+            raf.seek(indexOffset);
+            raf.readFully(index);
+            CRC32 crc = new CRC32();
+            crc.update(index);
+            assertEquals((int)crc.getValue(), raf.readInt());
+
+            // Then jump to each block and make sure that it decompresses back
+            // to what we gave to the target
+            ByteBuffer indexBuffer = ByteBuffer.wrap(index);
+            indexBuffer.getInt();
+            long lastOffset = -1;
+            for (int i = 0; i < numBlocks; i++) {
+                long offset = indexBuffer.getLong();
+                int partitionId = indexBuffer.getInt();
+                assertTrue(offset > lastOffset);
+                lastOffset = offset;
+
+                raf.seek(offset);
+                int compressedLength = raf.readInt();
+                assertEquals(partitionId, raf.readInt());
+                int uncompressedLength = raf.readInt();
+                int blockCRC = raf.readInt();
+                byte compressed[] = new byte[compressedLength];
+                raf.readFully(compressed);
+                crc.reset();
+                crc.update(compressed);
+                assertEquals(blockCRC, (int)crc.getValue());
+
+                byte uncompressed[] = CompressionService.decompressBytes(compressed);
+                assertEquals(uncompressedLength, uncompressed.length);
+                assertTrue(Arrays.equals(this.blocks[i], uncompressed));
+                assertTrue(compressedLength < uncompressedLength);
+            } // FOR
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * testUncompressed
+     */
+    public void testUncompressed() throws Exception {
+        this.writeBlocks(this.makeTarget(false));
+
+        // The raw blocks should be at the end of the file with their length
+        // in front of them and no index after them
+        RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+        try {
+            int blockSize = 4 + this.blocks[0].length;
+            raf.seek(raf.length() - (NUM_BLOCKS * blockSize));
+            for (int i = 0; i < NUM_BLOCKS; i++) {
+                assertEquals(this.blocks[i].length, raf.readInt());
+                byte block[] = new byte[this.blocks[i].length];
+                raf.readFully(block);
+                assertTrue(Arrays.equals(this.blocks[i], block));
+            } // FOR
+            assertEquals(raf.length(), raf.getFilePointer());
+        } finally {
+            raf.close();
+        }
+    }
+}
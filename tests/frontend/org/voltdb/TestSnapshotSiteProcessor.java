@@ -0,0 +1,170 @@
+package org.voltdb;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.voltdb.SnapshotSiteProcessor.SnapshotTableTask;
+import org.voltdb.jni.MockExecutionEngine;
+import org.voltdb.utils.DBBPool.BBContainer;
+
+public class TestSnapshotSiteProcessor extends TestCase {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int NUM_CHUNKS = 5;
+    private static final int NUM_TABLES = 2;
+
+    /**
+     * Fake EE that hands back NUM_CHUNKS blocks for each table
+     */
+    private static class MockSnapshotEngine extends MockExecutionEngine {
+        final Map<Integer, Integer> remaining = new HashMap<Integer, Integer>();
+
+        @Override
+        public boolean activateCopyOnWrite(int tableId, int mode) {
+            remaining.put(tableId, NUM_CHUNKS);
+            return true;
+        }
+        @Override
+        public int cowSerializeMore(BBContainer c, int tableId) {
+            Integer left = remaining.get(tableId);
+            if (left == null) return (-1);
+            if (left == 0) {
+                remaining.remove(tableId);
+                return (0);
+            }
+            remaining.put(tableId, left - 1);
+            return (CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Fake target that gives the buffer back right away
+     */
+    private static class MockDataTarget implements SnapshotDataTarget {
+        long bytes = 0;
+        boolean closed = false;
+
+        @Override
+        public int getHeaderSize() {
+            return (4);
+        }
+        @Override
+        public Future<?> write(BBContainer tupleData) {
+            bytes += tupleData.b.remaining() - this.getHeaderSize();
+            tupleData.discard();
+            return (null);
+        }
+        @Override
+        public void close() throws IOException, InterruptedException {
+            closed = true;
+        }
+        @Override
+        public long getBytesWritten() {
+            return (bytes);
+        }
+        @Override
+        public void setOnCloseHandler(Runnable onClose) {
+            // Nothing
+        }
+        @Override
+        public IOException getLastWriteException() {
+            return (null);
+        }
+    }
+
+    private final AtomicInteger potential_work = new AtomicInteger(0);
+    private final Runnable onPotentialWork = new Runnable() {
+        @Override
+        public void run() {
+            potential_work.incrementAndGet();
+        }
+    };
+    private MockSnapshotEngine ee;
+    private MockDataTarget targets[];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_noLoadLibVOLTDB = true;
+        VoltDB.replaceVoltDBInstanceForTest(new MockVoltDB());
+        VoltDB.initialize(config);
+
+        SnapshotSiteProcessor.ExecutionSitesCurrentlySnapshotting.set(1);
+        this.ee = new MockSnapshotEngine();
+        this.targets = new MockDataTarget[NUM_TABLES];
+    }
+
+    private Deque<SnapshotTableTask> makeTasks() {
+        Deque<SnapshotTableTask> tasks = new ArrayDeque<SnapshotTableTask>();
+        for (int i = 0; i < NUM_TABLES; i++) {
+            this.targets[i] = new MockDataTarget();
+            tasks.add(new SnapshotTableTask(i, this.targets[i], false, "TABLE" + i));
+        } // FOR
+        return (tasks);
+    }
+
+    /**
+     * testIdleWork
+     */
+    public void testIdleWork() throws Exception {
+        SnapshotSiteProcessor snapshotter = new SnapshotSiteProcessor(onPotentialWork, 1);
+        snapshotter.initiateSnapshots(ee, this.makeTasks());
+        assertTrue(snapshotter.hasSnapshotWork());
+
+        // Idle work is never throttled
+        while (snapshotter.canDoSnapshotWork()) {
+            snapshotter.doSnapshotWork(ee, true);
+        } // WHILE
+        assertFalse(snapshotter.hasSnapshotWork());
+        assertEquals(NUM_TABLES * NUM_CHUNKS, potential_work.get());
+
+        // Check that the progress for each table was recorded
+        assertEquals(NUM_TABLES, snapshotter.getTableTasks().size());
+        for (SnapshotTableTask task : snapshotter.getTableTasks()) {
+            assertTrue(task.toString(), task.isFinished());
+            assertEquals(NUM_CHUNKS, task.getChunkCount());
+            assertEquals(NUM_CHUNKS * CHUNK_SIZE, task.getBytesSerialized());
+        } // FOR
+        for (MockDataTarget target : this.targets) {
+            assertEquals(NUM_CHUNKS * CHUNK_SIZE, target.getBytesWritten());
+        } // FOR
+        snapshotter.shutdown();
+    }
+
+    /**
+     * testRateLimit
+     */
+    public void testRateLimit() throws Exception {
+        SnapshotSiteProcessor snapshotter = new SnapshotSiteProcessor(onPotentialWork, CHUNK_SIZE * 10);
+        snapshotter.initiateSnapshots(ee, this.makeTasks());
+
+        // We shouldn't be allowed to do anything until the budget gets refilled
+        snapshotter.doSnapshotWork(ee, false);
+        SnapshotTableTask first = snapshotter.getTableTasks().get(0);
+        assertTrue(first.getBytesSerialized() <= CHUNK_SIZE);
+
+        // After a little bit we should be allowed to write at least one
+        // chunk but not the entire snapshot
+        Thread.sleep(200);
+        for (int i = 0; i < NUM_TABLES * NUM_CHUNKS; i++) {
+            snapshotter.doSnapshotWork(ee, false);
+        } // FOR
+        assertTrue(first.getBytesSerialized() > 0);
+        assertTrue(snapshotter.hasSnapshotWork());
+
+        // But we can always finish it off when we're idle
+        while (snapshotter.canDoSnapshotWork()) {
+            snapshotter.doSnapshotWork(ee, true);
+        } // WHILE
+        assertFalse(snapshotter.hasSnapshotWork());
+        snapshotter.shutdown();
+    }
+}
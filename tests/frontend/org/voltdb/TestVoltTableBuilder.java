@@ -0,0 +1,188 @@
+package org.voltdb;
+
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.messaging.FastSerializableTestUtil;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.DBBPool;
+
+public class TestVoltTableBuilder extends TestCase {
+
+    private static final ColumnInfo COLUMNS[] = {
+        new ColumnInfo("ID", VoltType.BIGINT),
+        new ColumnInfo("SMALL", VoltType.SMALLINT),
+        new ColumnInfo("NAME", VoltType.STRING),
+        new ColumnInfo("CREATED", VoltType.TIMESTAMP),
+        new ColumnInfo("PRICE", VoltType.FLOAT),
+        new ColumnInfo("AMOUNT", VoltType.DECIMAL),
+    };
+
+    private DBBPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.pool = new DBBPool(false, false);
+    }
+
+    private Object[] makeRow(int i) {
+        return new Object[] {
+            (long)i,
+            (short)(i % 100),
+            "row" + i,
+            new TimestampType(i * 1000l),
+            i * 1.5d,
+            new BigDecimal(i).setScale(VoltDecimalHelper.kDefaultScale),
+        };
+    }
+
+    private void addRow(VoltTableBuilder builder, Object row[]) {
+        builder.putLong((Long)row[0])
+               .putLong((Short)row[1])
+               .putString((String)row[2])
+               .putTimestamp((TimestampType)row[3])
+               .putDouble((Double)row[4])
+               .putDecimal((BigDecimal)row[5])
+               .endRow();
+    }
+
+    /**
+     * testBuildMatchesAddRow
+     */
+    public void testBuildMatchesAddRow() throws Exception {
+        // Only expect a couple of rows so that we have to grow the buffer
+        VoltTableBuilder builder = new VoltTableBuilder(COLUMNS, 2, this.pool);
+        VoltTable expected = new VoltTable(COLUMNS);
+        for (int i = 0; i < 1000; i++) {
+            Object row[] = this.makeRow(i);
+            expected.addRow(row);
+            this.addRow(builder, row);
+        } // FOR
+        assertEquals(expected.getRowCount(), builder.getRowCount());
+
+        VoltTable vt = builder.build();
+        assertTrue(vt.getTableDataReference().isDirect());
+        assertTrue(expected.hasSameContents(vt));
+
+        // Make sure that it survives serialization
+        VoltTable clone = FastSerializableTestUtil.roundTrip(vt);
+        assertTrue(expected.hasSameContents(clone));
+        builder.discard();
+    }
+
+    /**
+     * testNulls
+     */
+    public void testNulls() throws Exception {
+        VoltTableBuilder builder = new VoltTableBuilder(COLUMNS, 10, null);
+        builder.putNull().putNull().putString((String)null).putTimestamp((TimestampType)null)
+               .putNull().putDecimal(null).endRow();
+
+        VoltTable vt = builder.build();
+        assertFalse(vt.getTableDataReference().isDirect());
+        assertTrue(vt.advanceRow());
+        for (int i = 0; i < COLUMNS.length; i++) {
+            vt.get(i, COLUMNS[i].getType());
+            assert(vt.wasNull()) : "Column #" + i + " is not null";
+        } // FOR
+    }
+
+    /**
+     * testReset
+     */
+    public void testReset() throws Exception {
+        VoltTableBuilder builder = new VoltTableBuilder(COLUMNS, 10, this.pool);
+        for (int i = 0; i < 10; i++) {
+            this.addRow(builder, this.makeRow(i));
+        } // FOR
+        assertEquals(10, builder.getRowCount());
+        builder.reset();
+        assertEquals(0, builder.getRowCount());
+        assertEquals(0, builder.build().getRowCount());
+
+        this.addRow(builder, this.makeRow(99));
+        VoltTable vt = builder.build();
+        assertEquals(1, vt.getRowCount());
+        assertTrue(vt.advanceRow());
+        assertEquals(99l, vt.getLong(0));
+        assertEquals("row99", vt.getString(2));
+        builder.discard();
+    }
+
+    /**
+     * testAddRowCopy
+     */
+    public void testAddRowCopy() throws Exception {
+        VoltTable expected = new VoltTable(COLUMNS);
+        for (int i = 0; i < 100; i++) {
+            expected.addRow(this.makeRow(i));
+        } // FOR
+
+        VoltTableBuilder builder = new VoltTableBuilder(expected, 10, this.pool);
+        expected.resetRowPosition();
+        while (expected.advanceRow()) {
+            builder.addRow(expected);
+        } // WHILE
+        assertTrue(expected.hasSameContents(builder.build()));
+        builder.discard();
+    }
+
+    /**
+     * testInvalidRows
+     */
+    public void testInvalidRows() throws Exception {
+        VoltTableBuilder builder = new VoltTableBuilder(COLUMNS, 10, this.pool);
+
+        // Wrong type for the first column
+        try {
+            builder.putString("abc");
+            fail("Expected a type mismatch");
+        } catch (VoltTypeException ex) {
+            // Expected
+        }
+        // Overflow the SMALLINT column
+        try {
+            builder.putLong(1).putLong(Short.MAX_VALUE + 1);
+            fail("Expected an overflow");
+        } catch (VoltTypeException ex) {
+            // Expected
+        }
+        // Not enough columns
+        try {
+            builder.putLong(1).endRow();
+            fail("Expected an incomplete row");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        // None of the failed rows should have been added
+        assertEquals(0, builder.getRowCount());
+        this.addRow(builder, this.makeRow(1));
+        assertEquals(1, builder.build().getRowCount());
+        builder.discard();
+    }
+
+    /**
+     * testGrowSize
+     */
+    public void testGrowSize() throws Exception {
+        assertEquals(2048, VoltTableBuilder.growSize(1024, 1025));
+        assertEquals(5000, VoltTableBuilder.growSize(1024, 5000));
+
+        // Doubling can't go past the max, even if the current buffer is already huge
+        int max = VoltTableBuilder.MAX_BUFFER_SIZE;
+        assertEquals(max, VoltTableBuilder.growSize(max / 2 + 1, max / 2 + 2));
+        assertEquals(max, VoltTableBuilder.growSize(max, max));
+
+        // But asking for more than the max is an error
+        try {
+            VoltTableBuilder.growSize(max, max + 1l);
+            fail("Expected an overflow");
+        } catch (VoltOverflowException ex) {
+            // Expected
+        }
+    }
+}
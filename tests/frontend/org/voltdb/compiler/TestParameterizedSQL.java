@@ -0,0 +1,215 @@
+package org.voltdb.compiler;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+import org.voltdb.VoltType;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ComparisonExpression;
+import org.voltdb.expressions.ConstantValueExpression;
+import org.voltdb.expressions.ParameterValueExpression;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.ExpressionType;
+
+public class TestParameterizedSQL extends TestCase {
+
+    /**
+     * Make a fake plan fragment with a predicate that compares a column
+     * to the given parameter
+     */
+    private static PlannerTool.Result makePlan(VoltType type) throws Exception {
+        TupleValueExpression tve = new TupleValueExpression();
+        tve.setTableName("T");
+        tve.setColumnName("A");
+        tve.setColumnAlias("A");
+        tve.setColumnIndex(0);
+        tve.setValueType(type);
+
+        ParameterValueExpression pve = new ParameterValueExpression();
+        pve.setParameterId(0);
+        pve.setValueType(type);
+        pve.setValueSize(type == VoltType.STRING ? 64 : type.getLengthInBytesForFixedTypes());
+
+        ComparisonExpression cmp = new ComparisonExpression(ExpressionType.COMPARE_EQUAL, tve, pve);
+        JSONObject json = new JSONObject();
+        json.put("PREDICATE", new JSONObject(cmp.toJSONString()));
+
+        PlannerTool.Result result = new PlannerTool.Result();
+        result.onePlan = json.toString();
+        return (result);
+    }
+
+    private static AbstractExpression getPredicateRight(String plan) throws Exception {
+        JSONObject json = new JSONObject(plan).getJSONObject("PREDICATE");
+        return (AbstractExpression.fromJSONObject(json, null).getRight());
+    }
+
+    /**
+     * testParse
+     */
+    public void testParse() throws Exception {
+        ParameterizedSQL psql = ParameterizedSQL.parse("SELECT * FROM T1 WHERE A = 10 AND B = 'it''s' AND C > 1.5e3;");
+        assertNotNull(psql);
+        assertEquals("SELECT * FROM T1 WHERE A = ? AND B = ? AND C > ?;", psql.getSQL());
+        assertEquals(3, psql.getLiterals().size());
+        assertEquals("10", psql.getLiterals().get(0));
+        assertEquals("it's", psql.getLiterals().get(1));
+        assertEquals("1.5e3", psql.getLiterals().get(2));
+
+        // Statements that only differ by their literals share the same SQL
+        ParameterizedSQL other = ParameterizedSQL.parse("SELECT * FROM T1 WHERE A = 99 AND B = 'xyz' AND C > 2;");
+        assertEquals(psql.getSQL(), other.getSQL());
+    }
+
+    /**
+     * testParseOrdinals
+     */
+    public void testParseOrdinals() throws Exception {
+        ParameterizedSQL psql = ParameterizedSQL.parse("SELECT A, B FROM T WHERE A > 5 ORDER BY 1, 2 LIMIT 10");
+        assertNotNull(psql);
+        assertEquals("SELECT A, B FROM T WHERE A > ? ORDER BY 1, 2 LIMIT 10", psql.getSQL());
+        assertEquals(1, psql.getLiterals().size());
+    }
+
+    /**
+     * testParseInvalid
+     */
+    public void testParseInvalid() throws Exception {
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = ?"));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE B = 'abc"));
+        assertNull(ParameterizedSQL.parse(null));
+    }
+
+    /**
+     * testBind
+     */
+    public void testBind() throws Exception {
+        PlannerTool.Result plan = makePlan(VoltType.BIGINT);
+        ParameterizedSQL psql = ParameterizedSQL.parse("SELECT * FROM T WHERE A = 1234");
+        PlannerTool.Result bound = psql.bind(plan);
+        assertNotNull(bound);
+        assertNull(bound.allPlan);
+
+        AbstractExpression right = getPredicateRight(bound.onePlan);
+        assertEquals(ExpressionType.VALUE_CONSTANT, right.getExpressionType());
+        assertEquals(VoltType.BIGINT, right.getValueType());
+        assertEquals("1234", ((ConstantValueExpression)right).getValue());
+
+        // The cached plan must not be modified
+        assertEquals(ExpressionType.VALUE_PARAMETER, getPredicateRight(plan.onePlan).getExpressionType());
+    }
+
+    /**
+     * testBindString
+     */
+    public void testBindString() throws Exception {
+        PlannerTool.Result plan = makePlan(VoltType.STRING);
+        ParameterizedSQL psql = ParameterizedSQL.parse("SELECT * FROM T WHERE A = 'abc'");
+        PlannerTool.Result bound = psql.bind(plan);
+        assertNotNull(bound);
+        assertEquals("abc", ((ConstantValueExpression)getPredicateRight(bound.onePlan)).getValue());
+    }
+
+    /**
+     * testBindMismatch
+     */
+    public void testBindMismatch() throws Exception {
+        // A string can't be bound to an integer parameter and a decimal
+        // value can't be bound to an integer parameter either
+        PlannerTool.Result plan = makePlan(VoltType.INTEGER);
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 'abc'").bind(plan));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 1.5").bind(plan));
+    }
+
+    /**
+     * testBindOutOfRange
+     */
+    public void testBindOutOfRange() throws Exception {
+        // Literals that don't fit in the parameter's type can't be bound
+        PlannerTool.Result plan = makePlan(VoltType.TINYINT);
+        assertNotNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 127").bind(plan));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 128").bind(plan));
+
+        plan = makePlan(VoltType.SMALLINT);
+        assertNotNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 32767").bind(plan));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 32768").bind(plan));
+
+        plan = makePlan(VoltType.INTEGER);
+        assertNotNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 2147483647").bind(plan));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 2147483648").bind(plan));
+
+        plan = makePlan(VoltType.BIGINT);
+        assertNotNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 9223372036854775807").bind(plan));
+        assertNull(ParameterizedSQL.parse("SELECT * FROM T WHERE A = 9223372036854775808").bind(plan));
+    }
+
+    /**
+     * testPlanCache
+     */
+    public void testPlanCache() throws Exception {
+        AdHocPlanCache cache = new AdHocPlanCache(2);
+        PlannerTool.Result plan = makePlan(VoltType.BIGINT);
+        cache.put("A", plan, 0);
+        cache.put("B", plan, 0);
+        assertNotNull(cache.get("A"));
+
+        // B is the least recently used, so it gets evicted
+        cache.put("C", plan, 0);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("A"));
+        assertNull(cache.get("B"));
+        assertNotNull(cache.get("C"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Plans with errors never get cached
+        PlannerTool.Result error = new PlannerTool.Result();
+        error.errors = "Bad SQL";
+        cache.put("D", error, 0);
+        assertNull(cache.get("D"));
+
+        cache.clear(1);
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * testPlanCacheUnbindable
+     */
+    public void testPlanCacheUnbindable() throws Exception {
+        AdHocPlanCache cache = new AdHocPlanCache(10);
+        assertFalse(cache.isUnbindable("A"));
+        cache.putUnbindable("A", 0);
+        assertTrue(cache.isUnbindable("A"));
+        assertFalse(cache.contains("A"));
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+
+        // Entries from an old catalog are ignored and a new catalog clears them
+        cache.putUnbindable("B", 1);
+        assertFalse(cache.isUnbindable("B"));
+        cache.clear(1);
+        assertFalse(cache.isUnbindable("A"));
+    }
+
+    /**
+     * testPlanCacheCatalogChange
+     */
+    public void testPlanCacheCatalogChange() throws Exception {
+        AdHocPlanCache cache = new AdHocPlanCache(10);
+        PlannerTool.Result plan = makePlan(VoltType.BIGINT);
+        cache.put("A", plan, 0);
+        assertNotNull(cache.get("A"));
+
+        // A planner that was still working against the old catalog when it
+        // changed can't put its plan in the cache afterwards
+        cache.clear(1);
+        assertEquals(1, cache.getCatalogVersion());
+        cache.put("B", plan, 0);
+        assertNull(cache.get("B"));
+        assertEquals(0, cache.size());
+
+        // But plans from the new catalog are fine
+        cache.put("B", plan, 1);
+        assertNotNull(cache.get("B"));
+        assertNull(cache.get("A"));
+    }
+}
@@ -0,0 +1,133 @@
+package org.voltdb.jni;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class TestSharedMemoryRing extends TestCase {
+
+    private static final int CAPACITY = 1024;
+
+    private File file;
+    private MappedByteBuffer mapped;
+    private SocketChannel writerSocket;
+    private SocketChannel readerSocket;
+    private SharedMemoryRing writer;
+    private SharedMemoryRing reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.file = File.createTempFile("ring-", ".ipc");
+        int size = SharedMemoryRing.getMappedSize(CAPACITY);
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        raf.setLength(size);
+        this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        raf.close();
+
+        // The doorbell needs a connected pair of sockets
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        this.writerSocket = SocketChannel.open(server.socket().getLocalSocketAddress());
+        this.readerSocket = server.accept();
+        server.close();
+
+        // Both ends point at the same ring in the file
+        this.writer = new SharedMemoryRing(this.mapped, 0, CAPACITY, this.writerSocket);
+        this.reader = new SharedMemoryRing(this.mapped, 0, CAPACITY, this.readerSocket);
+        this.writer.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.writerSocket.close();
+        this.readerSocket.close();
+        this.file.delete();
+        super.tearDown();
+    }
+
+    /**
+     * testReadWrite
+     */
+    public void testReadWrite() throws Exception {
+        ByteBuffer src = ByteBuffer.allocate(100);
+        src.putInt(1234).putLong(5678l).put((byte)9).flip();
+        this.writer.write(src);
+        this.writer.write(255);
+        assertFalse(src.hasRemaining());
+
+        ByteBuffer dst = ByteBuffer.allocate(13);
+        this.reader.read(dst);
+        dst.flip();
+        assertEquals(1234, dst.getInt());
+        assertEquals(5678l, dst.getLong());
+        assertEquals(9, dst.get());
+        assertEquals(255, this.reader.read());
+    }
+
+    /**
+     * testWrapAround
+     */
+    public void testWrapAround() throws Exception {
+        // Push through a message that is much larger than the ring so that both
+        // sides have to block on each other and the data wraps around many times
+        final int num_bytes = CAPACITY * 50 + 17;
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ByteBuffer src = ByteBuffer.allocate(num_bytes);
+                    for (int i = 0; i < num_bytes; i++) {
+                        src.put((byte)i);
+                    }
+                    src.flip();
+                    writer.write(src);
+                } catch (Throwable ex) {
+                    error.set(ex);
+                }
+            }
+        };
+        t.start();
+
+        ByteBuffer dst = ByteBuffer.allocate(num_bytes);
+        while (dst.hasRemaining()) {
+            ByteBuffer chunk = dst.slice();
+            chunk.limit(Math.min(chunk.remaining(), 333));
+            this.reader.read(chunk);
+            dst.position(dst.position() + chunk.limit());
+        } // WHILE
+        t.join();
+        assertNull(error.get());
+
+        dst.flip();
+        for (int i = 0; i < num_bytes; i++) {
+            assertEquals("Offset " + i, (byte)i, dst.get(i));
+        } // FOR
+    }
+
+    /**
+     * testGetCapacity
+     */
+    public void testGetCapacity() throws Exception {
+        assertEquals(1024 * 1024, SharedMemoryRing.getCapacity(0));
+        assertEquals(8 * 1024 * 1024, SharedMemoryRing.getCapacity(8));
+        assertEquals(8 * 1024 * 1024, SharedMemoryRing.getCapacity(12));
+        assertEquals(512 * 1024 * 1024, SharedMemoryRing.getCapacity(512));
+
+        // Anything that won't fit in one mapping gets capped instead of overflowing
+        for (int size : new int[]{ 1024, 2048, 4096, Integer.MAX_VALUE }) {
+            int capacity = SharedMemoryRing.getCapacity(size);
+            assertEquals(SharedMemoryRing.MAX_CAPACITY, capacity);
+            assertTrue(SharedMemoryRing.getMappedSize(capacity) > 0);
+        } // FOR
+    }
+}
@@ -56,6 +56,7 @@ public class PlannerTestAideDeCamp {
     private final Procedure proc;
     private final HSQLInterface hsql;
     private final Database db;
+    private final DatabaseEstimates estimates = new DatabaseEstimates();
     int compileCounter = 0;
 
     /**
@@ -92,6 +93,10 @@ public class PlannerTestAideDeCamp {
         return catalog;
     }
 
+    public DatabaseEstimates getEstimates() {
+        return estimates;
+    }
+
 
     /**
      * Compile a statement and return the final plan graph.
@@ -124,8 +129,7 @@ public class PlannerTestAideDeCamp {
         // name will look like "basename-stmt-#"
         String name = catalogStmt.getParent().getTypeName() + "-" + catalogStmt.getTypeName();
 
-        DatabaseEstimates estimates = new DatabaseEstimates();
-        TrivialCostModel costModel = new TrivialCostModel();
+        StatisticsCostModel costModel = new StatisticsCostModel();
         QueryPlanner planner =
             new QueryPlanner(catalog.getClusters().get("cluster"), db, hsql,
                              estimates, true, false);
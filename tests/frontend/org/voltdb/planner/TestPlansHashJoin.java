@@ -0,0 +1,107 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Table;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansHashJoin extends TestCase {
+
+    private PlannerTestAideDeCamp aide;
+
+    private AbstractPlanNode compile(String sql, int paramCount) {
+        AbstractPlanNode pn = null;
+        try {
+            pn =  aide.compile(sql, paramCount);
+        }
+        catch (NullPointerException ex) {
+            // aide may throw NPE if no plangraph was created
+            ex.printStackTrace();
+            fail();
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail();
+        }
+        assertTrue(pn != null);
+        return pn;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        aide = new PlannerTestAideDeCamp(TestPlansHashJoin.class.getResource("testplans-hashjoin-ddl.sql"), "testplanshashjoin");
+
+        // Set all tables to replicated.
+        Cluster cluster = aide.getCatalog().getClusters().get("cluster");
+        CatalogMap<Table> tmap = cluster.getDatabases().get("database").getTables();
+        for (Table t : tmap) {
+            t.setIsreplicated(true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        aide.tearDown();
+    }
+
+    public void testEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.R1_INT = R2.R2_INT", 0);
+        List<AbstractPlanNode> nodes = pn.findAllNodesOfType(PlanNodeType.HASHJOIN);
+        assertEquals(1, nodes.size());
+        HashJoinPlanNode hjNode = (HashJoinPlanNode)nodes.get(0);
+        assertEquals(1, hjNode.getOuterKeys().size());
+        assertEquals(1, hjNode.getInnerKeys().size());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+    }
+
+    public void testEquiJoinWithFilter() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.R1_STR = R2.R2_STR AND R1.R1_INT < R2.R2_INT", 0);
+        List<AbstractPlanNode> nodes = pn.findAllNodesOfType(PlanNodeType.HASHJOIN);
+        assertEquals(1, nodes.size());
+        HashJoinPlanNode hjNode = (HashJoinPlanNode)nodes.get(0);
+        assertEquals(1, hjNode.getOuterKeys().size());
+        assertNotNull(hjNode.getPredicate());
+    }
+
+    public void testNonEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.R1_INT < R2.R2_INT", 0);
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+    }
+
+    public void testFloatJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.R1_FLT = R2.R2_FLT", 0);
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Table;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansIndexOnly extends TestCase {
+
+    private PlannerTestAideDeCamp aide;
+
+    private IndexScanPlanNode compileIndexScan(String sql, int paramCount) {
+        AbstractPlanNode pn = null;
+        try {
+            pn =  aide.compile(sql, paramCount);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail();
+        }
+        assertNotNull(pn);
+        List<AbstractPlanNode> scans = pn.findAllNodesOfType(PlanNodeType.INDEXSCAN);
+        assertEquals(1, scans.size());
+        return ((IndexScanPlanNode)scans.get(0));
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        aide = new PlannerTestAideDeCamp(TestPlansIndexOnly.class.getResource("testplans-indexonly-ddl.sql"), "testplansindexonly");
+
+        // Set all tables to replicated.
+        Cluster cluster = aide.getCatalog().getClusters().get("cluster");
+        CatalogMap<Table> tmap = cluster.getDatabases().get("database").getTables();
+        for (Table t : tmap) {
+            t.setIsreplicated(true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        aide.tearDown();
+    }
+
+    public void testKeyColumnsOnly() {
+        IndexScanPlanNode scan = compileIndexScan("SELECT T_D1 FROM T WHERE T_PKEY = ?", 1);
+        assertTrue(scan.isIndexOnly());
+    }
+
+    public void testKeyColumnsInPredicate() {
+        IndexScanPlanNode scan = compileIndexScan("SELECT T_PKEY FROM T WHERE T_PKEY = ? AND T_D1 > ?", 2);
+        assertTrue(scan.isIndexOnly());
+    }
+
+    public void testNonKeyColumnInOutput() {
+        IndexScanPlanNode scan = compileIndexScan("SELECT T_D1, T_D2 FROM T WHERE T_PKEY = ?", 1);
+        assertFalse(scan.isIndexOnly());
+    }
+
+    public void testNonKeyColumnInPredicate() {
+        IndexScanPlanNode scan = compileIndexScan("SELECT T_D1 FROM T WHERE T_PKEY = ? AND T_D2 = ?", 2);
+        assertFalse(scan.isIndexOnly());
+    }
+}
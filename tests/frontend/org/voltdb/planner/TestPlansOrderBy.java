@@ -23,12 +23,16 @@
 
 package org.voltdb.planner;
 
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Table;
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.types.IndexType;
 import org.voltdb.types.PlanNodeType;
 
 public class TestPlansOrderBy extends TestCase {
@@ -131,6 +135,44 @@ public class TestPlansOrderBy extends TestCase {
         }
     }
 
+    public void testOrderByBTree() {
+        Table catalog_tbl = aide.getCatalog().getClusters().get("cluster").getDatabases().get("database").getTables().get("B");
+        assertEquals(IndexType.BTREE.getValue(), catalog_tbl.getIndexes().iterator().next().getType());
+
+        AbstractPlanNode pn = null;
+        pn = compile("SELECT * from B WHERE B_ID > ? ORDER BY B_ID", 1);
+        if (pn != null) {
+            assertFalse(pn.findAllNodesOfType(PlanNodeType.INDEXSCAN).isEmpty());
+            assertTrue(pn.findAllNodesOfType(PlanNodeType.SEQSCAN).isEmpty());
+            assertTrue(pn.findAllNodesOfType(PlanNodeType.ORDERBY).isEmpty());
+        }
+    }
+
+    public void testOrderByLimit() {
+        AbstractPlanNode pn = null;
+        pn = compile("SELECT * FROM T ORDER BY T_D2 LIMIT 10", 0);
+        if (pn != null) {
+            // The LIMIT should be inlined so that the ORDER BY only keeps the top 10
+            assertTrue(pn.findAllNodesOfType(PlanNodeType.LIMIT).isEmpty());
+            List<AbstractPlanNode> orderby_nodes = pn.findAllNodesOfType(PlanNodeType.ORDERBY);
+            assertEquals(1, orderby_nodes.size());
+            LimitPlanNode limit_node = orderby_nodes.get(0).getInlinePlanNode(PlanNodeType.LIMIT);
+            assertNotNull(limit_node);
+            assertEquals(10, limit_node.getLimit());
+        }
+    }
+
+    public void testDistinctLimit() {
+        AbstractPlanNode pn = null;
+        pn = compile("SELECT DISTINCT T_D2 FROM T LIMIT 5", 0);
+        if (pn != null) {
+            assertTrue(pn.findAllNodesOfType(PlanNodeType.LIMIT).isEmpty());
+            List<AbstractPlanNode> distinct_nodes = pn.findAllNodesOfType(PlanNodeType.DISTINCT);
+            assertEquals(1, distinct_nodes.size());
+            assertNotNull(distinct_nodes.get(0).getInlinePlanNode(PlanNodeType.LIMIT));
+        }
+    }
+
     public void testEng450()
     {
         compile("select T.T_PKEY, " +
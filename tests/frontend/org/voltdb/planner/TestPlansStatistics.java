@@ -0,0 +1,112 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Table;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansStatistics extends TestCase {
+
+    private static final long NUM_TUPLES = 100000;
+
+    private PlannerTestAideDeCamp aide;
+
+    private AbstractPlanNode compile(String sql, int paramCount) {
+        AbstractPlanNode pn = null;
+        try {
+            pn =  aide.compile(sql, paramCount);
+        }
+        catch (NullPointerException ex) {
+            // aide may throw NPE if no plangraph was created
+            ex.printStackTrace();
+            fail();
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail();
+        }
+        assertTrue(pn != null);
+        return pn;
+    }
+
+    private String getTargetIndexName(AbstractPlanNode pn) {
+        List<AbstractPlanNode> nodes = pn.findAllNodesOfType(PlanNodeType.INDEXSCAN);
+        assertEquals(1, nodes.size());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.SEQSCAN).isEmpty());
+        return ((IndexScanPlanNode)nodes.get(0)).getTargetIndexName();
+    }
+
+    private void setDistinctValues(long a, long b) {
+        DatabaseEstimates.TableEstimates tableEst = aide.getEstimates().getEstimatesForTable("T");
+        tableEst.maxTuples = NUM_TUPLES;
+        tableEst.minTuples = NUM_TUPLES;
+        tableEst.distinctValues.put("T_A", a);
+        tableEst.distinctValues.put("T_B", b);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        aide = new PlannerTestAideDeCamp(TestPlansStatistics.class.getResource("testplans-statistics-ddl.sql"), "testplansstatistics");
+
+        // Set all tables to replicated.
+        Cluster cluster = aide.getCatalog().getClusters().get("cluster");
+        CatalogMap<Table> tmap = cluster.getDatabases().get("database").getTables();
+        for (Table t : tmap) {
+            t.setIsreplicated(true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        aide.tearDown();
+    }
+
+    public void testPrimaryKeyLookup() {
+        // Without any statistics we should still always pick the unique index
+        AbstractPlanNode pn = compile("SELECT * FROM T WHERE T_ID = ? AND T_A = ?", 2);
+        assertTrue(getTargetIndexName(pn).toUpperCase().startsWith("SYS_"));
+    }
+
+    public void testMostSelectiveIndex() {
+        // T_A only has a couple of values, so IDX_T_B is a much better choice
+        setDistinctValues(2, NUM_TUPLES / 2);
+        AbstractPlanNode pn = compile("SELECT * FROM T WHERE T_A = ? AND T_B = ?", 2);
+        assertEquals("IDX_T_B", getTargetIndexName(pn).toUpperCase());
+
+        // And now the other way around
+        setDistinctValues(NUM_TUPLES / 2, 2);
+        pn = compile("SELECT * FROM T WHERE T_A = ? AND T_B = ?", 2);
+        assertEquals("IDX_T_A", getTargetIndexName(pn).toUpperCase());
+    }
+}
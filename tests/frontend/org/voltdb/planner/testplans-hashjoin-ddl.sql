@@ -0,0 +1,15 @@
+CREATE TABLE R1 (
+        R1_PKEY INTEGER NOT NULL,
+        R1_INT  INTEGER NOT NULL,
+        R1_STR  VARCHAR(16),
+        R1_FLT  FLOAT,
+        PRIMARY KEY (R1_PKEY)
+);
+
+CREATE TABLE R2 (
+        R2_PKEY INTEGER NOT NULL,
+        R2_INT  BIGINT NOT NULL,
+        R2_STR  VARCHAR(32),
+        R2_FLT  FLOAT,
+        PRIMARY KEY (R2_PKEY)
+);
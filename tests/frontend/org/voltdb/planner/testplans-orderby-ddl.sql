@@ -4,3 +4,8 @@ CREATE TABLE T (
         T_D2   INTEGER NOT NULL,
         CONSTRAINT T_TREE PRIMARY KEY (T_PKEY,T_D1)
 );
+CREATE TABLE B (
+        B_ID   INTEGER NOT NULL,
+        B_V    INTEGER NOT NULL,
+        CONSTRAINT B_PK_BTREE PRIMARY KEY (B_ID)
+);
@@ -0,0 +1,8 @@
+CREATE TABLE T (
+        T_ID   INTEGER NOT NULL,
+        T_A    INTEGER NOT NULL,
+        T_B    INTEGER NOT NULL,
+        PRIMARY KEY (T_ID)
+);
+CREATE INDEX IDX_T_A ON T (T_A);
+CREATE INDEX IDX_T_B ON T (T_B);
@@ -0,0 +1,158 @@
+package org.voltdb.regressionsuites;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.voltdb.BackendTarget;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcCallException;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.Hstoreservice.Status;
+
+/**
+ * Check that equi-joins on columns without an index come back with
+ * the same rows that a nested-loop join would have produced.
+ */
+public class TestHashJoinSuite extends RegressionSuite {
+
+    private static final String PREFIX = "hashjoin";
+    private static final int NUM_REGIONS = 10;
+    private static final int NUM_CODES = 4;
+    private static final int NUM_ORDERS = 200;
+
+    private VoltTable regions;
+    private VoltTable orders;
+
+    @Test
+    public void testJoinOnIntegerColumn() throws IOException, ProcCallException {
+        Client client = this.getClient();
+        this.loadTables(client);
+
+        // The join keys are an INTEGER and a BIGINT column
+        Set<String> expected = new HashSet<String>();
+        this.orders.resetRowPosition();
+        while (this.orders.advanceRow()) {
+            this.regions.resetRowPosition();
+            while (this.regions.advanceRow()) {
+                if (this.orders.getLong(1) == this.regions.getLong(1)) {
+                    expected.add(this.orders.getLong(0) + "-" + this.regions.getLong(0));
+                }
+            } // WHILE
+        } // WHILE
+        assertFalse(expected.isEmpty());
+
+        ClientResponse cr = client.callProcedure("JoinOnCode");
+        assertEquals(Status.OK, cr.getStatus());
+        assertEquals(cr.toString(), 1, cr.getResults().length);
+        this.checkResult(expected, cr.getResults()[0]);
+    }
+
+    @Test
+    public void testJoinOnStringColumn() throws IOException, ProcCallException {
+        Client client = this.getClient();
+        this.loadTables(client);
+
+        // Orders without a region name should never match anything
+        long minAmount = 50;
+        Set<String> expected = new HashSet<String>();
+        this.orders.resetRowPosition();
+        while (this.orders.advanceRow()) {
+            String name = this.orders.getString(2);
+            if (name == null || this.orders.getLong(3) <= minAmount) continue;
+            this.regions.resetRowPosition();
+            while (this.regions.advanceRow()) {
+                if (name.equals(this.regions.getString(2))) {
+                    expected.add(this.orders.getLong(0) + "-" + this.regions.getLong(0));
+                }
+            } // WHILE
+        } // WHILE
+        assertFalse(expected.isEmpty());
+
+        ClientResponse cr = client.callProcedure("JoinOnName", minAmount);
+        assertEquals(Status.OK, cr.getStatus());
+        assertEquals(cr.toString(), 1, cr.getResults().length);
+        this.checkResult(expected, cr.getResults()[0]);
+    }
+
+    private void checkResult(Set<String> expected, VoltTable result) {
+        assertNotNull(result);
+        assertEquals(result.toString(), expected.size(), result.getRowCount());
+        while (result.advanceRow()) {
+            String key = result.getLong(0) + "-" + result.getLong(1);
+            assertTrue(key, expected.contains(key));
+        } // WHILE
+    }
+
+    private void loadTables(Client client) throws IOException, ProcCallException {
+        Database catalog_db = CatalogUtil.getDatabase(this.getCatalog());
+        Random rand = new Random(0);
+
+        Table catalog_tbl = catalog_db.getTables().get("REGIONS");
+        assertNotNull(catalog_tbl);
+        this.regions = CatalogUtil.getVoltTable(catalog_tbl);
+        for (int i = 0; i < NUM_REGIONS; i++) {
+            this.regions.addRow(i, i % NUM_CODES, "REGION" + (i % (NUM_REGIONS / 2)));
+        } // FOR
+        ClientResponse cr = client.callProcedure("@LoadMultipartitionTable", catalog_tbl.getName(), this.regions);
+        assertEquals(Status.OK, cr.getStatus());
+
+        catalog_tbl = catalog_db.getTables().get("ORDERS");
+        assertNotNull(catalog_tbl);
+        this.orders = CatalogUtil.getVoltTable(catalog_tbl);
+        for (int i = 0; i < NUM_ORDERS; i++) {
+            String name = (i % 10 == 0 ? null : "REGION" + rand.nextInt(NUM_REGIONS));
+            this.orders.addRow(i, rand.nextInt(NUM_CODES + 2), name, rand.nextInt(100));
+        } // FOR
+        cr = client.callProcedure("@LoadMultipartitionTable", catalog_tbl.getName(), this.orders);
+        assertEquals(Status.OK, cr.getStatus());
+    }
+
+    /**
+     * JUnit / RegressionSuite Boilerplate Constructor
+     * @param name The name of this test suite
+     */
+    public TestHashJoinSuite(String name) {
+        super(name);
+    }
+
+    static public junit.framework.Test suite() {
+        MultiConfigSuiteBuilder builder = new MultiConfigSuiteBuilder(TestHashJoinSuite.class);
+        VoltProjectBuilder project = new VoltProjectBuilder(PREFIX);
+        VoltServerConfig config = null;
+
+        project.addSchema(TestHashJoinSuite.class.getResource("hashjoinprocs/hashjoin-ddl.sql"));
+        project.addTablePartitionInfo("ORDERS", "O_ID");
+
+        // Neither of the join columns have an index on them
+        project.addStmtProcedure("JoinOnCode",
+                                 "SELECT O_ID, R_ID FROM ORDERS, REGIONS " +
+                                 "WHERE O_R_CODE = R_CODE");
+        project.addStmtProcedure("JoinOnName",
+                                 "SELECT O_ID, R_ID FROM ORDERS, REGIONS " +
+                                 "WHERE O_R_NAME = R_NAME AND O_AMOUNT > ?");
+
+        // CLUSTER CONFIG #1
+        // One site with four partitions running in this JVM
+        config = new LocalSingleProcessServer(PREFIX + "-twoPart.jar", 4, BackendTarget.NATIVE_EE_JNI);
+        config.compile(project);
+        builder.addServerConfig(config);
+
+        // CLUSTER CONFIG #2
+        // Two sites, each with two partitions running in separate JVMs
+        config = new LocalCluster(PREFIX + "-twoSiteTwoPart.jar", 2, 2, 1, BackendTarget.NATIVE_EE_JNI);
+        config.compile(project);
+        builder.addServerConfig(config);
+
+        return builder;
+    }
+
+}
@@ -26,10 +26,13 @@ package org.voltdb.regressionsuites;
 import java.io.IOException;
 import java.net.URL;
 import junit.framework.Test;
+import edu.brown.hstore.Hstoreservice.Status;
 import org.voltdb.BackendTarget;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
 import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.regressionsuites.matviewprocs.*;
@@ -39,7 +42,8 @@ public class TestMaterializedViewSuite extends RegressionSuite {
     // procedures used by these tests
     static final Class<?>[] PROCEDURES = {
         AddPerson.class, DeletePerson.class, UpdatePerson.class, AggAges.class,
-        SelectAllPeople.class, AggThings.class, AddThing.class, OverflowTest.class
+        SelectAllPeople.class, AggThings.class, AddThing.class, OverflowTest.class,
+        UpdatePeople.class, DeletePeople.class
     };
 
     public TestMaterializedViewSuite(String name) {
@@ -251,6 +255,170 @@ public class TestMaterializedViewSuite extends RegressionSuite {
         assert(results != null);
     }
 
+    /**
+     * Check that MATPEOPLE has exactly one row for each of the given ages
+     * with the expected count and sums
+     */
+    private void checkMatPeople(VoltTable vt, long ages[], long nums[], double salaries[], long kids[]) {
+        assertEquals(ages.length, vt.getRowCount());
+        for (int i = 0; i < ages.length; i++) {
+            boolean found = false;
+            vt.resetRowPosition();
+            while (vt.advanceRow()) {
+                if (vt.getLong(0) != ages[i]) continue;
+                assertFalse("Duplicate view row for age " + ages[i], found);
+                assertEquals("Age " + ages[i], nums[i], vt.getLong(1));
+                assertEquals("Age " + ages[i], salaries[i], vt.getDouble(2), .01);
+                assertEquals("Age " + ages[i], kids[i], vt.getLong(3));
+                found = true;
+            } // WHILE
+            assertTrue("Missing view row for age " + ages[i], found);
+        } // FOR
+    }
+
+    private VoltTable makePeople(long rows[][]) {
+        VoltTable vt = new VoltTable(
+                new VoltTable.ColumnInfo("PARTITION", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("AGE", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("SALARY", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("CHILDREN", VoltType.INTEGER));
+        for (long row[] : rows) {
+            vt.addRow(row[0], row[1], row[2], (double)row[3], row[4]);
+        } // FOR
+        return (vt);
+    }
+
+    public void testLoadTableMultiRow() throws IOException, ProcCallException {
+        Client client = getClient();
+        VoltTable[] results = null;
+
+        // Several rows for the same group in one bulk load, plus one that the
+        // view's predicate filters out
+        VoltTable people = this.makePeople(new long[][] {
+            { 1, 1, 31, 1000, 1 },
+            { 1, 2, 31, 2000, 2 },
+            { 1, 3, 32, 4000, 3 },
+            { 1, 4, 31, 8000, 4 },
+            { 1, 5, 2, 16000, 5 },
+            { 1, 6, 32, 32000, 6 },
+        });
+        ClientResponse cr = client.callProcedure("@LoadMultipartitionTable", "PEOPLE", people);
+        assertEquals(Status.OK, cr.getStatus());
+
+        results = client.callProcedure("AggAges", 1L).getResults();
+        assertEquals(results.length, 1);
+        this.checkMatPeople(results[0], new long[]{ 31, 32 },
+                                        new long[]{ 3, 2 },
+                                        new double[]{ 11000, 36000 },
+                                        new long[]{ 7, 9 });
+
+        // A second load has to add to the groups that are already there
+        people = this.makePeople(new long[][] {
+            { 1, 7, 32, 64000, 7 },
+            { 1, 8, 33, 128000, 8 },
+            { 1, 9, 32, 256000, 9 },
+        });
+        cr = client.callProcedure("@LoadMultipartitionTable", "PEOPLE", people);
+        assertEquals(Status.OK, cr.getStatus());
+
+        results = client.callProcedure("AggAges", 1L).getResults();
+        assertEquals(results.length, 1);
+        this.checkMatPeople(results[0], new long[]{ 31, 32, 33 },
+                                        new long[]{ 3, 4, 1 },
+                                        new double[]{ 11000, 356000, 128000 },
+                                        new long[]{ 7, 25, 8 });
+    }
+
+    public void testUpdateMultiRow() throws IOException, ProcCallException {
+        Client client = getClient();
+        VoltTable[] results = null;
+
+        client.callProcedure("AddPerson", 1L, 1L, 31L, 1000.0, 1);
+        client.callProcedure("AddPerson", 1L, 2L, 31L, 2000.0, 2);
+        client.callProcedure("AddPerson", 1L, 3L, 31L, 4000.0, 3);
+        client.callProcedure("AddPerson", 1L, 4L, 32L, 8000.0, 4);
+
+        // Every row in a group changes without leaving the group
+        results = client.callProcedure("UpdatePeople", 1L, 31L, 31L, 500.0, 2).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 31, 32 },
+                                        new long[]{ 3, 1 },
+                                        new double[]{ 1500, 8000 },
+                                        new long[]{ 6, 4 });
+
+        // Every row in a group moves to another group, so the old group's count
+        // goes to zero and its row has to go away
+        results = client.callProcedure("UpdatePeople", 1L, 31L, 32L, 100.0, 1).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 32 },
+                                        new long[]{ 4 },
+                                        new double[]{ 8300 },
+                                        new long[]{ 7 });
+
+        // Every row moves to a new group that didn't exist before
+        results = client.callProcedure("UpdatePeople", 1L, 32L, 40L, 100.0, 1).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 40 },
+                                        new long[]{ 4 },
+                                        new double[]{ 400 },
+                                        new long[]{ 4 });
+
+        // Every row falls out of the view's predicate
+        results = client.callProcedure("UpdatePeople", 1L, 40L, 3L, 100.0, 1).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        assertEquals(0, results[0].getRowCount());
+    }
+
+    public void testDeleteMultiRow() throws IOException, ProcCallException {
+        Client client = getClient();
+        VoltTable[] results = null;
+
+        client.callProcedure("AddPerson", 1L, 1L, 31L, 1000.0, 1);
+        client.callProcedure("AddPerson", 1L, 2L, 31L, 2000.0, 2);
+        client.callProcedure("AddPerson", 1L, 3L, 31L, 4000.0, 3);
+        client.callProcedure("AddPerson", 1L, 4L, 32L, 8000.0, 4);
+        client.callProcedure("AddPerson", 1L, 5L, 32L, 16000.0, 5);
+        client.callProcedure("AddPerson", 1L, 6L, 2L, 32000.0, 6);
+
+        // Rows that the view filters out don't touch it
+        results = client.callProcedure("DeletePeople", 1L, 2L).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 31, 32 },
+                                        new long[]{ 3, 2 },
+                                        new double[]{ 7000, 24000 },
+                                        new long[]{ 6, 9 });
+
+        // Deleting a whole group removes its row and leaves the others alone
+        results = client.callProcedure("DeletePeople", 1L, 31L).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 32 },
+                                        new long[]{ 2 },
+                                        new double[]{ 24000 },
+                                        new long[]{ 9 });
+
+        // Add a row back to the group that was removed
+        client.callProcedure("AddPerson", 1L, 7L, 31L, 64000.0, 7);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        this.checkMatPeople(results[0], new long[]{ 31, 32 },
+                                        new long[]{ 1, 2 },
+                                        new double[]{ 64000, 24000 },
+                                        new long[]{ 7, 9 });
+
+        results = client.callProcedure("DeletePeople", 1L, 32L).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("DeletePeople", 1L, 31L).getResults();
+        assertEquals(results.length, 1);
+        results = client.callProcedure("AggAges", 1L).getResults();
+        assertEquals(0, results[0].getRowCount());
+    }
+
 // FIXME
 //    public void testInsertAndOverflowSum() throws IOException, ProcCallException {
 //        if (isHSQL()) {
@@ -0,0 +1,14 @@
+CREATE TABLE REGIONS (
+    R_ID INTEGER NOT NULL,
+    R_CODE INTEGER NOT NULL,
+    R_NAME VARCHAR(16),
+    PRIMARY KEY (R_ID)
+);
+
+CREATE TABLE ORDERS (
+    O_ID INTEGER NOT NULL,
+    O_R_CODE BIGINT NOT NULL,
+    O_R_NAME VARCHAR(16),
+    O_AMOUNT INTEGER NOT NULL,
+    PRIMARY KEY (O_ID)
+);
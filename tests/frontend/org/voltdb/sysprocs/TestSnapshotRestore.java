@@ -0,0 +1,229 @@
+package org.voltdb.sysprocs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.MockVoltDB;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.sysprocs.saverestore.TableSaveFile;
+import org.voltdb.utils.DBBPool;
+
+public class TestSnapshotRestore extends TestCase {
+
+    private static final long TXN_ID = 1000;
+    private static final String NONCE = "testnonce";
+    private static final String TABLE_NAME = "TABLEA";
+    private static final int HOST_ID = 0;
+    private static final int NUM_BLOCKS = 30;
+    private static final int NUM_TUPLES = 100;
+    private static final Integer PARTITION_IDS[] = { 0, 1, 2 };
+    private static final Collection<Integer> ORIGINAL_HOSTS = Collections.singleton(HOST_ID);
+
+    private File dir;
+    private String filePath;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        VoltDB.Configuration config = new VoltDB.Configuration();
+        config.m_noLoadLibVOLTDB = true;
+        VoltDB.replaceVoltDBInstanceForTest(new MockVoltDB());
+        VoltDB.initialize(config);
+
+        this.dir = File.createTempFile("snapshot", "");
+        this.dir.delete();
+        assertTrue(this.dir.mkdir());
+        this.filePath = this.dir.getAbsolutePath();
+        this.writeSaveFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File f : this.dir.listFiles()) {
+            f.delete();
+        } // FOR
+        this.dir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Write out a compressed save file for TABLE_NAME at HOST_ID where the
+     * blocks for each partition are interleaved with each other
+     * [header space][partition id][partition id CRC][chunk CRC][tuples][row count]
+     */
+    private void writeSaveFile() throws Exception {
+        int partitionIds[] = new int[PARTITION_IDS.length];
+        for (int i = 0; i < partitionIds.length; i++) {
+            partitionIds[i] = PARTITION_IDS[i];
+        } // FOR
+        File f = new File(this.filePath, NONCE + "-" + TABLE_NAME + "-host_" + HOST_ID + ".vpt");
+        VoltTable schema = new VoltTable(new VoltTable.ColumnInfo("A_ID", VoltType.BIGINT));
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(f, HOST_ID, "cluster", "database", TABLE_NAME,
+                                                                         partitionIds.length, false, partitionIds,
+                                                                         schema, System.currentTimeMillis(), true);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            int partitionId = partitionIds[i % partitionIds.length];
+            ByteBuffer b = ByteBuffer.allocateDirect(target.getHeaderSize() + 12 + (NUM_TUPLES * 12) + 4);
+            b.position(target.getHeaderSize());
+            b.putInt(partitionId);
+            b.putInt(0);
+            b.putInt(0);
+            byte tuples[] = new byte[(NUM_TUPLES * 12) + 4];
+            ByteBuffer tb = ByteBuffer.wrap(tuples);
+            for (int t = 0; t < NUM_TUPLES; t++) {
+                tb.putInt(8);
+                tb.putLong(partitionId);
+            } // FOR
+            tb.putInt(NUM_TUPLES);
+            b.put(tuples);
+            crc.reset();
+            crc.update(tuples);
+            b.putInt(target.getHeaderSize() + 8, (int)crc.getValue());
+            b.flip();
+            target.write(DBBPool.wrapBB(b)).get();
+        } // FOR
+        target.close();
+    }
+
+    /**
+     * Pull all of the chunks for the given partition out of the shared save files
+     * the same way that SnapshotRestore does. If fail is true, then the partition
+     * gives up after its first chunk.
+     */
+    private class Loader extends Thread {
+        final int partitionId;
+        final boolean fail;
+        int chunks = 0;
+        Throwable error = null;
+
+        Loader(int partitionId, boolean fail) {
+            this.partitionId = partitionId;
+            this.fail = fail;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<TableSaveFile> saveFiles = SnapshotRestore.getShardedSaveFiles(TXN_ID, filePath, NONCE, TABLE_NAME,
+                                                                                    ORIGINAL_HOSTS, Arrays.asList(PARTITION_IDS));
+                for (TableSaveFile savefile : saveFiles) {
+                    TableSaveFile.Container c = null;
+                    while ((c = savefile.getNextChunk(this.partitionId)) != null) {
+                        try {
+                            assertEquals(this.partitionId, c.getPartitionId());
+                            VoltTable vt = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b.duplicate(), true);
+                            assertEquals(NUM_TUPLES, vt.getRowCount());
+                            while (vt.advanceRow()) {
+                                assertEquals(this.partitionId, vt.getLong(0));
+                            } // WHILE
+                            this.chunks++;
+                        } finally {
+                            c.discard();
+                        }
+                        if (this.fail) break;
+                    } // WHILE
+                    if (this.fail) savefile.abandonPartition(this.partitionId);
+                } // FOR
+            } catch (Throwable ex) {
+                this.error = ex;
+            } finally {
+                SnapshotRestore.finishShardedSaveFiles(TXN_ID, filePath, NONCE, TABLE_NAME);
+            }
+        }
+    }
+
+    private List<Loader> runLoaders(Integer failPartition) throws Exception {
+        List<Loader> loaders = new ArrayList<Loader>();
+        for (int partitionId : PARTITION_IDS) {
+            loaders.add(new Loader(partitionId, failPartition != null && failPartition.intValue() == partitionId));
+        } // FOR
+        for (Loader l : loaders) l.start();
+        for (Loader l : loaders) {
+            l.join(30000);
+            assertFalse("Loader for partition " + l.partitionId + " is stuck", l.isAlive());
+            if (l.error != null) throw new Exception("Loader for partition " + l.partitionId + " failed", l.error);
+        } // FOR
+        return (loaders);
+    }
+
+    /**
+     * testShardedRestore
+     */
+    public void testShardedRestore() throws Exception {
+        // Every partition should get its own chunks out of the same file at the same time,
+        // even though the read-ahead queue can't hold all of them
+        List<Loader> loaders = this.runLoaders(null);
+        for (Loader l : loaders) {
+            assertEquals(NUM_BLOCKS / PARTITION_IDS.length, l.chunks);
+        } // FOR
+        assertFalse(SnapshotRestore.hasShardedSaveFiles(TXN_ID, this.filePath, NONCE, TABLE_NAME));
+    }
+
+    /**
+     * testAbandonPartition
+     */
+    public void testAbandonPartition() throws Exception {
+        // If one partition stops reading its chunks, the other ones still need to get all of theirs
+        List<Loader> loaders = this.runLoaders(PARTITION_IDS[1]);
+        for (Loader l : loaders) {
+            assertEquals((l.fail ? 1 : NUM_BLOCKS / PARTITION_IDS.length), l.chunks);
+        } // FOR
+        assertFalse(SnapshotRestore.hasShardedSaveFiles(TXN_ID, this.filePath, NONCE, TABLE_NAME));
+    }
+
+    /**
+     * testOpenFailure
+     */
+    public void testOpenFailure() throws Exception {
+        // Every partition has to get the same error, not just the first one to try
+        String badNonce = NONCE + "-missing";
+        for (int i = 0; i < PARTITION_IDS.length; i++) {
+            try {
+                SnapshotRestore.getShardedSaveFiles(TXN_ID, this.filePath, badNonce, TABLE_NAME,
+                                                    ORIGINAL_HOSTS, Arrays.asList(PARTITION_IDS));
+                fail("Opened missing save file for partition " + PARTITION_IDS[i]);
+            } catch (IOException ex) {
+                // Expected
+            }
+            assertTrue(SnapshotRestore.hasShardedSaveFiles(TXN_ID, this.filePath, badNonce, TABLE_NAME));
+            SnapshotRestore.finishShardedSaveFiles(TXN_ID, this.filePath, badNonce, TABLE_NAME);
+        } // FOR
+        assertFalse(SnapshotRestore.hasShardedSaveFiles(TXN_ID, this.filePath, badNonce, TABLE_NAME));
+
+        // And the good files are still keyed separately
+        this.runLoaders(null);
+    }
+
+    /**
+     * testStaleSaveFiles
+     */
+    public void testStaleSaveFiles() throws Exception {
+        // Only one partition shows up for the first restore
+        List<TableSaveFile> saveFiles = SnapshotRestore.getShardedSaveFiles(TXN_ID - 1, this.filePath, NONCE, TABLE_NAME,
+                                                                            ORIGINAL_HOSTS, Arrays.asList(PARTITION_IDS));
+        assertEquals(ORIGINAL_HOSTS.size(), saveFiles.size());
+        assertTrue(SnapshotRestore.hasShardedSaveFiles(TXN_ID - 1, this.filePath, NONCE, TABLE_NAME));
+
+        // The next restore can't reuse those files
+        List<Loader> loaders = this.runLoaders(null);
+        for (Loader l : loaders) {
+            assertEquals(NUM_BLOCKS / PARTITION_IDS.length, l.chunks);
+        } // FOR
+        assertFalse(SnapshotRestore.hasShardedSaveFiles(TXN_ID - 1, this.filePath, NONCE, TABLE_NAME));
+        assertFalse(SnapshotRestore.hasShardedSaveFiles(TXN_ID, this.filePath, NONCE, TABLE_NAME));
+    }
+}